@@ -12,15 +12,20 @@ package org.openlowcode.client.runtime;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
-import java.io.CharArrayWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.math.BigDecimal;
 import java.net.Socket;
 import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 
 import org.openlowcode.tools.enc.AESCommunicator;
+import org.openlowcode.tools.enc.EncryptedChannel;
+import org.openlowcode.tools.enc.MultiplexedChannel;
 import org.openlowcode.tools.messages.MessageBufferedWriter;
 import org.openlowcode.tools.messages.MessageElement;
 import org.openlowcode.tools.messages.MessageReader;
@@ -38,13 +43,17 @@ import org.openlowcode.tools.messages.SFile;
  */
 public class ConnectionToServer {
 
-	private Socket clientsocket;
+	private volatile Socket clientsocket;
 	private MessageSimpleReader reader;
 	private MessageBufferedWriter writer;
 	private String server = null;
 	private int port = -1;
 	private boolean relevant;
 	private AESCommunicator aescommunicator;
+	private EncryptedChannel channel;
+	private MessageReader framedreader;
+	private volatile MultiplexedChannel multiplexedchannel;
+	private ThreadLocal<MessageReader> multiplexedreader = new ThreadLocal<MessageReader>();
 
 	/**
 	 * @return the AES Communicator for the connection
@@ -57,6 +66,39 @@ public class ConnectionToServer {
 	public String decryptwithaeskey(byte[] encryptedcontent) throws Exception {
 		return aescommunicator.decryptandunzip(encryptedcontent);
 	}
+
+	/**
+	 * decrypts a message received from the server, and provides a reader using the
+	 * codec agreed with the server during handshake
+	 * 
+	 * @param encryptedcontent encrypted content received from the server
+	 * @return a reader on the decrypted message
+	 * @throws Exception if any issue is encountered during decryption
+	 * @since 1.16
+	 */
+	public MessageReader getDecryptedMessageReader(byte[] encryptedcontent) throws Exception {
+		return aescommunicator.decryptandgetreader(encryptedcontent);
+	}
+
+	/**
+	 * @return true if messages are exchanged with the server on a framed or
+	 *         multiplexed encrypted channel. In this case, the reader of the
+	 *         connection provides directly the decrypted message, without the
+	 *         ENCRES envelope
+	 * @since 1.16
+	 */
+	public boolean isFramedChannel() {
+		return (channel != null) || (multiplexedchannel != null);
+	}
+
+	/**
+	 * @return true if several requests can be sent at the same time to the server
+	 *         on this connection
+	 * @since 1.16
+	 */
+	public boolean isMultiplexed() {
+		return multiplexedchannel != null;
+	}
 	
 	/**
 	 * Should include all actions to send a full command to the server. The
@@ -76,7 +118,10 @@ public class ConnectionToServer {
 	/**
 	 * Sends the message to the server, restarting the connection if necessary, and
 	 * getting the first element, as in some cases of broken connection, the error
-	 * appears only after trying to get the first element
+	 * appears only after trying to get the first element.<br>
+	 * If the connection is multiplexed, several threads can send messages at the
+	 * same time, and each thread gets the answer to its own message through
+	 * {@link #getReader()}.
 	 * 
 	 * @param writertoserver function to send the message to the server
 	 * @return the first message element
@@ -86,19 +131,36 @@ public class ConnectionToServer {
 	public MessageElement sendMessage(WriterToServer writertoserver) throws Exception {
 		int index = 0;
 		boolean sent = false;
+		Map<String, Long> transferresumeoffsets = null;
 		while ((index < 2) && (!sent)) {
+			Socket usedsocket = clientsocket;
+			Map<String, Long> resumeoffsets = transferresumeoffsets;
+			MessageWriter[] usedwriter = new MessageWriter[1];
+			WriterToServer resumingwritertoserver = (messagewriter) -> {
+				messagewriter.setTransferResumeOffsets(resumeoffsets);
+				usedwriter[0] = messagewriter;
+				writertoserver.apply(messagewriter);
+			};
 			try {
-				if (clientsocket == null) {
-					initConnection();
+				if (usedsocket == null) {
+					reconnect(null);
+					usedsocket = clientsocket;
+				}
+				MultiplexedChannel usedmultiplexedchannel = multiplexedchannel;
+				if (usedmultiplexedchannel != null) {
+					MessageReader answer = usedmultiplexedchannel.sendRequest(resumingwritertoserver::apply);
+					multiplexedreader.set(answer);
+					sent = true;
+					return answer.getNextElement();
 				}
-				CharArrayWriter encryptedmessageloc = new CharArrayWriter();
-				MessageBufferedWriter writertoencrypt = new MessageBufferedWriter(new BufferedWriter(encryptedmessageloc), false); 
-				writertoencrypt.setAESCommunicator(aescommunicator);
-				writertoserver.apply(writertoencrypt);
-				writertoencrypt.flushMessage();
-				String messagetoencrypt = encryptedmessageloc.toString();
-				writertoencrypt.close();
-				byte[]encodedmessagetosend = aescommunicator.zipandencrypt(messagetoencrypt);
+				if (channel != null) {
+					resumingwritertoserver.apply(channel.startMessage());
+					channel.finishMessage();
+					framedreader = channel.nextMessage();
+					sent = true;
+					return framedreader.getNextElement();
+				}
+				byte[]encodedmessagetosend = aescommunicator.encodeandencrypt(resumingwritertoserver::apply);
 				writer.startNewMessage();
 				writer.startStructure("ENCMES");
 				writer.addLongBinaryField("ENCMES",new SFile("ENC",encodedmessagetosend));
@@ -112,13 +174,64 @@ public class ConnectionToServer {
 				
 			} catch (IOException e) {
 				logger.warning("Client disconnected");
-				initConnection();
+				reconnect(usedsocket);
 				index++;
+				if (usedwriter[0] != null)
+					if (usedwriter[0].getChunkedTransfers().size() > 0)
+						if (index < 2)
+							transferresumeoffsets = queryTransferStatus(usedwriter[0].getChunkedTransfers());
 			}
 		}
 		throw new RuntimeException("Did not manage to send message after attempt "+(index+1));
 	}
 
+	/**
+	 * asks the server how much it received of chunked transfers interrupted by a
+	 * dropped connection. This is only possible on a framed or multiplexed
+	 * channel, as on the text envelope, a message is either received fully or not
+	 * at all.
+	 * 
+	 * @param transferids ids of the transfers interrupted
+	 * @return the offsets from which to resume the transfers, or null if the
+	 *         transfers should be sent again in full
+	 */
+	private Map<String, Long> queryTransferStatus(List<String> transferids) {
+		if (!isFramedChannel())
+			return null;
+		try {
+			sendMessage((messagewriter) -> {
+				messagewriter.startNewMessage();
+				messagewriter.startStructure("TRANSFERSTATUS");
+				messagewriter.startStructure("TRANSFERS");
+				for (int i = 0; i < transferids.size(); i++) {
+					messagewriter.startStructure("TRANSFER");
+					messagewriter.addStringField("ID", transferids.get(i));
+					messagewriter.endStructure("TRANSFER");
+				}
+				messagewriter.endStructure("TRANSFERS");
+				messagewriter.endStructure("TRANSFERSTATUS");
+				messagewriter.endMessage();
+			});
+			MessageReader statusreader = getReader();
+			HashMap<String, Long> resumeoffsets = new HashMap<String, Long>();
+			statusreader.returnNextStartStructure("TRANSFERSTATUS");
+			statusreader.startStructureArray("TRANSFER");
+			while (statusreader.structureArrayHasNextElement("TRANSFER")) {
+				String transferid = statusreader.returnNextStringField("ID");
+				BigDecimal received = statusreader.returnNextDecimalField("RECEIVED");
+				statusreader.returnNextEndStructure("TRANSFER");
+				resumeoffsets.put(transferid, new Long(received.longValue()));
+				logger.info("Resuming transfer " + transferid + " from offset " + received);
+			}
+			statusreader.returnNextEndStructure("TRANSFERSTATUS");
+			statusreader.returnNextEndMessage();
+			return resumeoffsets;
+		} catch (Exception e) {
+			logger.warning("Could not get status of interrupted transfers, sending them in full: " + e.getMessage());
+			return null;
+		}
+	}
+
 	/**
 	 * @return the server (after it has been initiated by the method
 	 *         connectToAddressAndGetApplication )
@@ -188,6 +301,20 @@ public class ConnectionToServer {
 		return application;
 	}
 
+	/**
+	 * reconnects to the server after a communication issue. If several requests
+	 * were sent at the same time on a multiplexed connection, only the first one
+	 * to fail reconnects.
+	 * 
+	 * @param failedsocket the socket on which the communication issue happened
+	 * @throws Exception if the connection cannot be reestablished
+	 */
+	private synchronized void reconnect(Socket failedsocket) throws Exception {
+		if (clientsocket != failedsocket)
+			return;
+		initConnection();
+	}
+
 	private void initConnection() throws Exception {
 
 		clientsocket = new Socket(server, new Integer(port).intValue());
@@ -200,8 +327,20 @@ public class ConnectionToServer {
 				Charset.forName("UTF-8"));
 		logger.fine("OutputStream reader encoding" + socketoutputstream.getEncoding());
 		BufferedWriter bufferedwriter = new BufferedWriter(socketoutputstream);
-		writer = new MessageBufferedWriter(bufferedwriter, true);
-		aescommunicator = AESCommunicator.performServerHandshake(reader, writer);
+		writer = new MessageBufferedWriter(bufferedwriter, true, true);
+		aescommunicator = AESCommunicator.performServerHandshake(reader, writer, true);
+		channel = null;
+		framedreader = null;
+		multiplexedchannel = null;
+		if (aescommunicator.isFramedChannel())
+			channel = new EncryptedChannel(aescommunicator, clientsocket.getInputStream(),
+					clientsocket.getOutputStream());
+		if (aescommunicator.isMultiplexedChannel()) {
+			MultiplexedChannel newmultiplexedchannel = new MultiplexedChannel(aescommunicator,
+					clientsocket.getInputStream(), clientsocket.getOutputStream());
+			newmultiplexedchannel.startReceiving(null);
+			multiplexedchannel = newmultiplexedchannel;
+		}
 		
 		
 	}
@@ -209,9 +348,16 @@ public class ConnectionToServer {
 	
 	
 	/**
-	 * @return the reader of this connection
+	 * @return the reader of this connection. On a framed channel, this is the
+	 *         reader of the last message received. On a multiplexed channel, this
+	 *         is the reader of the answer to the last message sent by the calling
+	 *         thread
 	 */
 	public MessageReader getReader() {
+		if (multiplexedchannel != null)
+			return multiplexedreader.get();
+		if (channel != null)
+			return framedreader;
 		return reader;
 	}
 
@@ -252,6 +398,20 @@ public class ConnectionToServer {
 
 	public void resetSendingMessage() {
 		try {
+			// on a multiplexed channel, errors while sending are signalled to the server
+			// by the channel itself
+			if (multiplexedchannel != null)
+				return;
+			if (channel != null) {
+				MessageWriter framedwriter = channel.getOpenWriter();
+				if (framedwriter != null)
+					if (framedwriter.isActive()) {
+						logger.warning("Error during sending message, sending error to server to reset connection");
+						framedwriter.sendMessageError(1, "Error during sending of client data");
+						channel.finishMessage();
+					}
+				return;
+			}
 			if (writer != null)
 				if (writer.isActive()) {
 					logger.warning("Error during sending message, sending error to server to reset connection");
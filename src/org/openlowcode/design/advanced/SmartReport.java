@@ -628,6 +628,11 @@ public class SmartReport
 		sg.wl("	}");
 		sg.wl("");
 		sg.wl("	@Override");
+		sg.wl("	public boolean isReadReplicaAllowed() {");
+		sg.wl("		return true;");
+		sg.wl("	}");
+		sg.wl("");
+		sg.wl("	@Override");
 		sg.wl("	public ActionOutputData executeActionLogic(");
 		if (hasparentobject) {
 			sg.wl("			DataObjectId<" + parentobjectclass + "> parentid,");
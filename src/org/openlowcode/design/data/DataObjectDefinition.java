@@ -96,6 +96,8 @@ public class DataObjectDefinition
 		Named {
 
 	private String preferedspreadsheettabname = null;
+	private int objectcachemaxsize = 0;
+	private int objectcachettl = 0;
 
 	private Logger logger = Logger.getLogger("");
 	NamedList<Field> fieldlist;
@@ -143,6 +145,29 @@ public class DataObjectDefinition
 		this.preferedspreadsheettabname = preferedspreadsheettabname;
 	}
 
+	/**
+	 * enables a cache of objects read by id, shared by all users of the server.
+	 * This is interesting for objects that are read very often and seldom
+	 * modified (e.g. reference data). The objects written through the server are
+	 * removed from the cache. The object should be unique identified.
+	 * 
+	 * @param maxsize    maximum number of objects in cache
+	 * @param ttlseconds time to live of an object in cache, in seconds. This is
+	 *                   the maximum delay to see changes done outside of the
+	 *                   server, or in data of other objects shown with this object
+	 * @since 1.16
+	 */
+	public void setObjectCache(int maxsize, int ttlseconds) {
+		if (maxsize <= 0)
+			throw new RuntimeException(
+					"Object cache size should be strictly positive for object " + this.getName() + ", got " + maxsize);
+		if (ttlseconds <= 0)
+			throw new RuntimeException("Object cache time to live should be strictly positive for object "
+					+ this.getName() + ", got " + ttlseconds);
+		this.objectcachemaxsize = maxsize;
+		this.objectcachettl = ttlseconds;
+	}
+
 	private ChoiceCategory categoryforextractor = null;
 
 	private DataObjectDefinition dynamicaliasfilteronparent;
@@ -3674,6 +3699,12 @@ public class DataObjectDefinition
 		if (this.preferedspreadsheettabname != null)
 			sg.wl("		this.setPreferedSpreadsheetTab(\""
 					+ StringFormatter.escapeforjavastring(this.preferedspreadsheettabname) + "\");");
+		if (this.objectcachemaxsize > 0) {
+			if (!this.isUniqueIdentified())
+				throw new RuntimeException(
+						"Object cache can only be set on a unique identified object, object " + this.getName());
+			sg.wl("		this.setObjectCache(" + this.objectcachemaxsize + "," + this.objectcachettl + ");");
+		}
 
 		sg.wl("	}");
 		sg.wl("");
@@ -11,6 +11,7 @@
 package org.openlowcode.design.data;
 
 import java.io.IOException;
+import java.util.ArrayList;
 
 import org.openlowcode.design.action.ActionDefinition;
 import org.openlowcode.design.action.DynamicActionDefinition;
@@ -228,10 +229,6 @@ public class DataObjectDefinitionSearchPagesAndActions {
 		@SuppressWarnings("rawtypes")
 		ConstraintOnLinkObjectSameParent<?, ?> constraintonparent = (ConstraintOnLinkObjectSameParent) linkobject
 				.getBusinessRuleByName("CONSTRAINTONLINKSAMEPARENT");
-		boolean canorder = false;
-		if ((linkobject.getRightobjectforlink().getPropertyByName("CREATIONLOG") != null)
-				|| (linkobject.getRightobjectforlink().getPropertyByName("UPDATELOG") != null))
-			canorder = true;
 
 		String objectclass = StringFormatter.formatForJavaClass(linkobject.getRightobjectforlink().getName());
 		String objectattribute = StringFormatter.formatForAttribute(linkobject.getRightobjectforlink().getName());
@@ -247,12 +244,8 @@ public class DataObjectDefinitionSearchPagesAndActions {
 		sg.wl("");
 		sg.wl("import java.util.ArrayList;");
 		sg.wl("import java.util.Date;");
-		if (canorder) {
-			sg.wl("import java.util.Arrays;");
-			sg.wl("import java.util.Collections;");
-			sg.wl("import java.util.List;");
-		}
 		sg.wl("");
+		sg.wl("import org.openlowcode.server.data.DataObjectPage;");
 		sg.wl("import " + module.getPath() + ".action.generated.Abs" + actionname + ";");
 		sg.wl("");
 
@@ -389,20 +382,8 @@ public class DataObjectDefinitionSearchPagesAndActions {
 		sg.wl("			");
 		sg.wl("		");
 		sg.wl("");
-		sg.wl("		" + objectclass + "[] result = " + objectclass
-				+ ".getallactive(new QueryFilter(finalquerycondition,(additionalcondition!=null?additionalcondition.getAliases():null)));");
+		this.generatePagedSearchQuery(sg, linkobject.getRightobjectforlink(), actionname);
 		sg.wl("		AtgMassupdate" + objectattribute + "Action.get().freezeUnauthorizedObjects(result);");
-		if (canorder) {
-
-			sg.wl("		List<" + objectclass + "> resultlist = Arrays.asList(result);");
-			if (linkobject.getRightobjectforlink().getPropertyByName("UPDATELOG") != null) {
-				sg.wl("		Collections.sort(resultlist,(a,b)->(b.getUpdatetime().compareTo(a.getUpdatetime())));");
-			} else {
-				sg.wl("		Collections.sort(resultlist,(a,b)->(b.getCreatetime().compareTo(a.getCreatetime())));");
-			}
-			sg.wl("		result = resultlist.toArray(new " + objectclass + "[0]);");
-
-		}
 
 		if (isaddress) {
 			sg.wl("		return new ActionOutputData(result);");
@@ -1070,20 +1051,13 @@ public class DataObjectDefinitionSearchPagesAndActions {
 		String objectattribute = StringFormatter.formatForAttribute(object.getName());
 		boolean isaddress = false;
 		SearchWidgetDefinition[] searchwidgets = object.getSearchWidgets();
-		boolean canorder = false;
-		if ((object.getPropertyByName("CREATIONLOG") != null) || (object.getPropertyByName("UPDATELOG") != null))
-			canorder = true;
 
 		sg.wl("package " + module.getPath() + ".action.generated;");
 		sg.wl("");
 		sg.wl("import java.util.ArrayList;");
 		sg.wl("import java.util.Date;");
-		if (canorder) {
-			sg.wl("import java.util.Arrays;");
-			sg.wl("import java.util.Collections;");
-			sg.wl("import java.util.List;");
-		}
 		sg.wl("import java.util.function.Function;");
+		sg.wl("import org.openlowcode.server.data.DataObjectPage;");
 		sg.wl("import org.openlowcode.server.data.storage.QueryFilter;");
 		sg.wl("");
 		sg.wl("import " + module.getPath() + ".action.generated.Abs" + actionname + ";");
@@ -1126,6 +1100,11 @@ public class DataObjectDefinitionSearchPagesAndActions {
 		sg.wl("		super(parent);");
 		sg.wl("	}");
 		sg.wl("");
+		sg.wl("	@Override");
+		sg.wl("	public boolean isReadReplicaAllowed() {");
+		sg.wl("		return true;");
+		sg.wl("	}");
+		sg.wl("");
 		sg.wl("	");
 		sg.wl("");
 
@@ -1170,20 +1149,8 @@ public class DataObjectDefinitionSearchPagesAndActions {
 		sg.wl("			");
 		sg.wl("		");
 		sg.wl("");
-		sg.wl("		" + objectclass + "[] result = " + objectclass
-				+ ".getallactive(new QueryFilter(finalquerycondition,(additionalcondition!=null?additionalcondition.getAliases():null)));");
+		this.generatePagedSearchQuery(sg, object, actionname);
 		sg.wl("		AtgMassupdate" + objectattribute + "Action.get().freezeUnauthorizedObjects(result);");
-		if (canorder) {
-
-			sg.wl("		List<" + objectclass + "> resultlist = Arrays.asList(result);");
-			if (object.getPropertyByName("UPDATELOG") != null) {
-				sg.wl("		Collections.sort(resultlist,(a,b)->(b.getUpdatetime().compareTo(a.getUpdatetime())));");
-			} else {
-				sg.wl("		Collections.sort(resultlist,(a,b)->(b.getCreatetime().compareTo(a.getCreatetime())));");
-			}
-			sg.wl("		result = resultlist.toArray(new " + objectclass + "[0]);");
-
-		}
 		if (isaddress) {
 			sg.wl("		return new ActionOutputData(result);");
 		} else {
@@ -1204,6 +1171,55 @@ public class DataObjectDefinitionSearchPagesAndActions {
 		sg.close();
 	}
 
+	/**
+	 * generates the query of a search action. Only the first page of the result is
+	 * read from the database, ordered by last update or creation time if the
+	 * object has the corresponding property, most recent first. If there are more
+	 * objects than shown, a message is sent to the user with the result.
+	 * 
+	 * @param sg             source generator
+	 * @param searchedobject object being searched
+	 * @param actionname     name of the search action
+	 * @throws IOException if anything bad happens while writing the file
+	 * @since 1.16
+	 */
+	private void generatePagedSearchQuery(SourceGenerator sg, DataObjectDefinition searchedobject, String actionname)
+			throws IOException {
+		String objectclass = StringFormatter.formatForJavaClass(searchedobject.getName());
+		ArrayList<String> orderby = new ArrayList<String>();
+		if (searchedobject.getPropertyByName("UPDATELOG") != null) {
+			orderby.add(objectclass + ".getDefinition().getUpdatelogDefinition().getUpdatetime()");
+		} else if (searchedobject.getPropertyByName("CREATIONLOG") != null) {
+			orderby.add(objectclass + ".getDefinition().getCreationlogDefinition().getCreatetime()");
+		}
+		// the id makes the order unique, so that pages are consistent
+		if (searchedobject.getPropertyByName("HASID") != null)
+			orderby.add(objectclass + ".getDefinition().getHasidDefinition().getId()");
+		if (orderby.size() == 0) {
+			// the first page cannot be defined without an order
+			sg.wl("		" + objectclass + "[] result = " + objectclass
+					+ ".getallactive(new QueryFilter(finalquerycondition,(additionalcondition!=null?additionalcondition.getAliases():null)));");
+			return;
+		}
+		sg.wl("		DataObjectPage<" + objectclass + "> resultpage = StoredobjectQueryHelper.get().getactivepage(");
+		sg.wl("				new QueryFilter(finalquerycondition,(additionalcondition!=null?additionalcondition.getAliases():null)),");
+		sg.wl("				" + objectclass + ".getDefinition(),");
+		sg.wl("				" + objectclass + ".getDefinition().getStoredobjectDefinition(),");
+		sg.w("				new StoredFieldSchema<?>[] {");
+		for (int i = 0; i < orderby.size(); i++) {
+			if (i > 0)
+				sg.w(",");
+			sg.w(orderby.get(i));
+		}
+		sg.wl("},");
+		sg.wl("				true,StoredobjectQueryHelper.SEARCH_PAGE_SIZE,null);");
+		sg.wl("		" + objectclass + "[] result = resultpage.getObjects();");
+		// the message is set on each execution, so that it does not stay from a previous search
+		sg.wl("		this.setMessage(resultpage.hasMore()");
+		sg.wl("				? \"Only the first \"+StoredobjectQueryHelper.SEARCH_PAGE_SIZE+\" results are shown, refine the search to see the others\"");
+		sg.wl("				: null);");
+	}
+
 	private void generateSearchcriteria(SearchWidgetDefinition[] searchwidgets, String objectclass, SourceGenerator sg)
 			throws IOException {
 
@@ -13,6 +13,10 @@ package org.openlowcode.module.system.page;
 import org.openlowcode.module.system.action.AudittextAction;
 import org.openlowcode.module.system.action.GeneratefaultymessageAction;
 import org.openlowcode.module.system.page.generated.AbsTechnicaltoolsPage;
+import org.openlowcode.server.data.ChangeJournal;
+import org.openlowcode.server.data.DataObjectCache;
+import org.openlowcode.server.data.properties.ObjectIdAllocator;
+import org.openlowcode.server.data.storage.UnitOfWork;
 import org.openlowcode.server.graphic.SPageNode;
 import org.openlowcode.server.graphic.widget.SActionButton;
 import org.openlowcode.server.graphic.widget.SComponentBand;
@@ -66,6 +70,20 @@ public class TechnicaltoolsPage extends AbsTechnicaltoolsPage {
 		
 		SActionButton audittextbutton = new SActionButton("Audit", audittextaction,this);
 		mainband.addElement(audittextbutton);
+		mainband.addElement(new SPageText("Object cache", SPageText.TYPE_TITLE, this));
+		DataObjectCache[] caches = DataObjectCache.getAllCaches();
+		if (caches.length == 0)
+			mainband.addElement(new SPageText("No object cache is enabled.", SPageText.TYPE_NORMAL, this));
+		for (int i = 0; i < caches.length; i++)
+			mainband.addElement(new SPageText(caches[i].getTableName() + ": " + caches[i].getStatistics(),
+					SPageText.TYPE_NORMAL, this));
+		mainband.addElement(new SPageText("Object id allocator: " + ObjectIdAllocator.get().getStatistics(),
+				SPageText.TYPE_NORMAL, this));
+		mainband.addElement(
+				new SPageText("Units of work: " + UnitOfWork.getStatistics(), SPageText.TYPE_NORMAL, this));
+		String journalstatistics = ChangeJournal.getStatistics();
+		if (journalstatistics != null)
+			mainband.addElement(new SPageText("Change journal: " + journalstatistics, SPageText.TYPE_NORMAL, this));
 		return mainband;
 	}
 
@@ -40,7 +40,8 @@ import org.openlowcode.server.data.storage.QueryFilter;
  */
 public abstract class ActionExecution extends Named {
 
-	private String message;
+	// the action may be executed by several threads at the same time
+	private ThreadLocal<String> message = new ThreadLocal<String>();
 	private boolean popup = false;
 	private SModule parent;
 
@@ -48,7 +49,7 @@ public abstract class ActionExecution extends Named {
 	 * @return the message to show in title
 	 */
 	public String getMessage() {
-		return message;
+		return message.get();
 	}
 
 	/**
@@ -60,12 +61,17 @@ public abstract class ActionExecution extends Named {
 	}
 	
 	/**
-	 * sets the message to show in title
+	 * sets the message to show in title for the execution in progress in the
+	 * current thread
 	 * 
-	 * @param message the message to show in title
+	 * @param message the message to show in title (null to show no message)
 	 */
 	public void setMessage(String message) {
-		this.message = message;
+		if (message == null) {
+			this.message.remove();
+		} else {
+			this.message.set(message);
+		}
 	}
 
 	/**
@@ -101,6 +107,18 @@ public abstract class ActionExecution extends Named {
 
 	}
 
+	/**
+	 * @return true if the selects of the action can be sent to the read replica
+	 *         of the database, if one is configured. This should be true only for
+	 *         actions mostly reading data, such as searches and reports. The
+	 *         action will anyway read from the primary database after it writes
+	 *         data. Default is false.
+	 * @since 1.16
+	 */
+	public boolean isReadReplicaAllowed() {
+		return false;
+	}
+
 	/**
 	 * @return -1 if there is no input security argument, the index of the security
 	 *         argument (0 or higher)
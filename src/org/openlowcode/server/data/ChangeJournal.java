@@ -0,0 +1,454 @@
+/********************************************************************************
+ * Copyright (c) 2020 [Open Lowcode SAS](https://openlowcode.com/)
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0 .
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ********************************************************************************/
+
+package org.openlowcode.server.data;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import org.openlowcode.tools.misc.NamedList;
+
+import org.openlowcode.server.data.storage.DeleteQuery;
+import org.openlowcode.server.data.storage.IntegerStoredField;
+import org.openlowcode.server.data.storage.PersistenceGateway;
+import org.openlowcode.server.data.storage.PersistentStorage;
+import org.openlowcode.server.data.storage.QueryOperatorGreaterThan;
+import org.openlowcode.server.data.storage.QueryOperatorSmallerThan;
+import org.openlowcode.server.data.storage.Row;
+import org.openlowcode.server.data.storage.SelectQuery;
+import org.openlowcode.server.data.storage.SimpleQueryCondition;
+import org.openlowcode.server.data.storage.StoredTableIndex;
+import org.openlowcode.server.data.storage.StoredTableRow;
+import org.openlowcode.server.data.storage.StoredTableSchema;
+import org.openlowcode.server.data.storage.StringStoredField;
+import org.openlowcode.server.data.storage.TableAlias;
+import org.openlowcode.server.data.storage.TimestampStoredField;
+import org.openlowcode.server.data.storage.UnitOfWork;
+
+/**
+ * A journal of changes in the database, allowing several servers sharing the
+ * same database to keep their in-memory caches coherent without a message
+ * broker.<br>
+ * When the journal is enabled, each write on a journaled table (a table with
+ * an object cache, or a table a listener registered to) adds a line in the
+ * journal table, in the same transaction as the write, so that a committed
+ * write is always journaled, and a write rolled back never is. Each server
+ * polls the journal regularly, and applies the changes done by other servers:
+ * objects are removed from the object cache, and listeners (e.g. the security
+ * buffer) are called. Staleness of caches on other servers is bounded by the
+ * poll interval.<br>
+ * As writes from several servers do not commit in order, each poll reads all
+ * lines of a recent time window (the overlap), and skips the lines already
+ * applied. The overlap should be larger than the longest transaction plus the
+ * difference of clocks between servers. Old lines are purged after the
+ * retention delay.
+ *
+ * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
+ *         SAS</a>
+ * @since 1.16
+ *
+ */
+public class ChangeJournal
+		extends
+		Thread {
+	private static Logger logger = Logger.getLogger(ChangeJournal.class.getName());
+	/**
+	 * default interval between two polls of the journal in milliseconds
+	 */
+	public static final int DEFAULT_POLL_INTERVAL = 2000;
+	/**
+	 * default window in seconds read at each poll
+	 */
+	public static final int DEFAULT_OVERLAP = 60;
+	/**
+	 * default delay in seconds after which lines are purged from the journal
+	 */
+	public static final int DEFAULT_RETENTION = 3600;
+	/**
+	 * object id meaning all objects of the table were potentially changed
+	 */
+	public static final String ALL_OBJECTS = "*";
+	/**
+	 * above this number of objects written at once, the whole table is
+	 * journaled as changed
+	 */
+	private static final int MAX_OBJECTS_PER_CHANGE = 64;
+	private static final int PURGE_FREQUENCY = 100;
+
+	private static final StoredTableSchema journaltable;
+	private static final StringStoredField serveridfield;
+	private static final IntegerStoredField entryidfield;
+	private static final StringStoredField tablenamefield;
+	private static final StringStoredField objectidfield;
+	private static final TimestampStoredField changetimefield;
+
+	static {
+		journaltable = new StoredTableSchema("OLCCHANGEJOURNAL");
+		serveridfield = new StringStoredField("SERVERID", journaltable, 64);
+		entryidfield = new IntegerStoredField("ENTRYID", journaltable);
+		tablenamefield = new StringStoredField("TABLENAME", journaltable, 64);
+		objectidfield = new StringStoredField("OBJECTID", journaltable, 64);
+		changetimefield = new TimestampStoredField("CHANGETIME", journaltable);
+		journaltable.addField(serveridfield);
+		journaltable.addField(entryidfield);
+		journaltable.addField(tablenamefield);
+		journaltable.addField(objectidfield);
+		journaltable.addField(changetimefield);
+		StoredTableIndex changetimeindex = new StoredTableIndex("CHANGETIMEIDX");
+		changetimeindex.addStoredFieldSchema(changetimefield);
+		journaltable.addIndex(changetimeindex);
+	}
+
+	private static Set<String> journaledtables = ConcurrentHashMap.newKeySet();
+	private static ConcurrentHashMap<String, CopyOnWriteArrayList<Runnable>> listeners = new ConcurrentHashMap<
+			String, CopyOnWriteArrayList<Runnable>>();
+	private static volatile ChangeJournal journal = null;
+
+	private String serverid;
+	private int pollinterval;
+	private long overlap;
+	private long retention;
+	private AtomicInteger nextentryid = new AtomicInteger(0);
+	private HashMap<String, Long> appliedentries = new HashMap<String, Long>();
+	private AtomicLong journaled = new AtomicLong(0);
+	private AtomicLong applied = new AtomicLong(0);
+	private AtomicLong pollerrors = new AtomicLong(0);
+	private volatile long lastpoll = 0;
+
+	/**
+	 * creates the change journal
+	 *
+	 * @param serverid     unique id of the server process
+	 * @param pollinterval interval between two polls in milliseconds
+	 * @param overlap      window read at each poll in seconds
+	 * @param retention    delay after which lines are purged in seconds
+	 */
+	private ChangeJournal(String serverid, int pollinterval, int overlap, int retention) {
+		super("ChangeJournal");
+		this.setDaemon(true);
+		this.serverid = (serverid.length() > 64 ? serverid.substring(serverid.length() - 64) : serverid);
+		this.pollinterval = pollinterval;
+		this.overlap = overlap * 1000L;
+		this.retention = retention * 1000L;
+		if (this.retention <= this.overlap)
+			throw new RuntimeException("Change journal retention (" + retention
+					+ "s) should be larger than overlap (" + overlap + "s)");
+	}
+
+	/**
+	 * creates the journal table if needed, and starts the poller for this server.
+	 * Changes are only journaled after this method is called.
+	 *
+	 * @param serverid     an id unique to this server process (including its
+	 *                     start time, so that a restarted server is seen as a new
+	 *                     server)
+	 * @param pollinterval interval between two polls in milliseconds
+	 * @param overlap      window read at each poll in seconds
+	 * @param retention    delay after which lines are purged in seconds
+	 */
+	public static synchronized void initiate(String serverid, int pollinterval, int overlap, int retention) {
+		if (journal != null)
+			throw new RuntimeException("Change journal already initiated");
+		PersistentStorage storage = PersistenceGateway.getStorage();
+		if (!storage.DoesObjectExist(journaltable)) {
+			logger.warning("PERSISTENCE: adding change journal table " + journaltable.getName());
+			storage.createObject(journaltable);
+			for (int i = 0; i < journaltable.getIndexSize(); i++) {
+				StoredTableIndex thisindex = journaltable.getIndex(i);
+				storage.createSearchIndex(thisindex.getFullName(), thisindex.getParent(), thisindex.getAllFields(),
+						false);
+			}
+		}
+		PersistenceGateway.checkinStorage(storage);
+		ChangeJournal newjournal = new ChangeJournal(serverid, pollinterval, overlap, retention);
+		// lines already in the journal do not concern caches of this server
+		newjournal.poll(false);
+		PersistenceGateway.releaseForThread();
+		journal = newjournal;
+		newjournal.start();
+		logger.info("Change journal started for server " + newjournal.serverid + ", poll interval = "
+				+ pollinterval + "ms, overlap = " + overlap + "s, retention = " + retention + "s");
+	}
+
+	/**
+	 * @return true if the change journal is active on this server
+	 */
+	public static boolean isActive() {
+		return journal != null;
+	}
+
+	/**
+	 * declares a table as journaled: writes on the table will be added to the
+	 * journal. Tables with an object cache are journaled automatically
+	 *
+	 * @param tablename name of the table
+	 */
+	public static void registerTable(String tablename) {
+		journaledtables.add(tablename);
+	}
+
+	/**
+	 * adds a listener called when another server changed data of the table. The
+	 * listener is called at most once per poll, on the poller thread, whatever
+	 * the number of changes.
+	 *
+	 * @param tablename name of the table
+	 * @param listener  action to perform
+	 */
+	public static void addListener(String tablename, Runnable listener) {
+		registerTable(tablename);
+		CopyOnWriteArrayList<Runnable> listenersfortable = listeners.computeIfAbsent(tablename,
+				(a) -> new CopyOnWriteArrayList<Runnable>());
+		if (!listenersfortable.contains(listener))
+			listenersfortable.add(listener);
+	}
+
+	/**
+	 * @param tablename name of a table
+	 * @return true if the journal is active and writes on the table are
+	 *         journaled
+	 */
+	public static boolean isJournaled(String tablename) {
+		if (journal == null)
+			return false;
+		return journaledtables.contains(tablename);
+	}
+
+	/**
+	 * performs a write with the given storage, and records it in the journal in
+	 * the same transaction. If the storage is in the action transaction of the
+	 * thread, the journal lines are committed or rolled back with the action.
+	 * Else, if the table is journaled, the write and the journal lines are
+	 * committed together in a transaction of their own.
+	 *
+	 * @param storage   a storage on the primary database, got from the
+	 *                  persistence gateway for the write
+	 * @param tablename table written
+	 * @param ids       ids of the objects written, or null if not known
+	 * @param write     the write to perform with the storage
+	 */
+	public static void performJournaledWrite(
+			PersistentStorage storage,
+			String tablename,
+			String[] ids,
+			Consumer<PersistentStorage> write) {
+		if ((!isJournaled(tablename)) || (PersistenceGateway.hasActionTransaction())) {
+			write.accept(storage);
+			recordChange(storage, tablename, ids);
+			return;
+		}
+		storage.setAutoCommit(false);
+		try {
+			write.accept(storage);
+			recordChange(storage, tablename, ids);
+			storage.commitTransaction();
+		} catch (RuntimeException e) {
+			try {
+				storage.rollbackTransaction();
+			} catch (RuntimeException rollbackexception) {
+				logger.warning("Error during rollback of journaled write on " + tablename + ": "
+						+ rollbackexception.getMessage());
+			}
+			throw e;
+		} finally {
+			storage.setAutoCommit(true);
+		}
+	}
+
+	/**
+	 * records a write in the journal if the journal is active and the table is
+	 * journaled. The journal lines are inserted with the given storage, and
+	 * should be in the same transaction as the write, before it is committed.
+	 * Other servers only see the lines once the transaction is committed.
+	 *
+	 * @param storage   the storage used for the write
+	 * @param tablename table written
+	 * @param ids       ids of the objects written, or null if not known
+	 */
+	public static void recordChange(PersistentStorage storage, String tablename, String[] ids) {
+		recordChange(tablename, ids, (line) -> {
+			storage.insertOnDB(line);
+			journal.journaled.incrementAndGet();
+		});
+	}
+
+	/**
+	 * records a write added to a unit of work in the journal if the journal is
+	 * active and the table is journaled. The journal lines are added to the unit
+	 * of work, and so are written in the same transaction as the write when the
+	 * unit of work is flushed, or discarded with it.
+	 *
+	 * @param unitofwork the unit of work the write was added to
+	 * @param tablename  table written
+	 * @param ids        ids of the objects written, or null if not known
+	 */
+	public static void recordChange(UnitOfWork unitofwork, String tablename, String[] ids) {
+		recordChange(tablename, ids, (line) -> unitofwork.addInsert(line, (storage) -> {
+			ChangeJournal currentjournal = journal;
+			if (currentjournal != null)
+				currentjournal.journaled.incrementAndGet();
+		}));
+	}
+
+	/**
+	 * creates the journal lines for a write
+	 *
+	 * @param tablename table written
+	 * @param ids       ids of the objects written, or null if not known
+	 * @param writer    writes each journal line
+	 */
+	private static void recordChange(String tablename, String[] ids, Consumer<StoredTableRow> writer) {
+		ChangeJournal currentjournal = journal;
+		if (currentjournal == null)
+			return;
+		if (!journaledtables.contains(tablename))
+			return;
+		Date now = new Date();
+		if (ids == null || ids.length == 0 || ids.length > MAX_OBJECTS_PER_CHANGE) {
+			writer.accept(currentjournal.generateLine(tablename, ALL_OBJECTS, now));
+			return;
+		}
+		for (int i = 0; i < ids.length; i++)
+			writer.accept(currentjournal.generateLine(tablename, (ids[i] != null ? ids[i] : ALL_OBJECTS), now));
+	}
+
+	/**
+	 * generates a line of the journal table
+	 *
+	 * @param tablename table written
+	 * @param objectid  id of the object written, or ALL_OBJECTS
+	 * @param now       time of the change
+	 * @return the line to insert
+	 */
+	private StoredTableRow generateLine(String tablename, String objectid, Date now) {
+		StoredTableRow row = new StoredTableRow(journaltable);
+		row.setPayload(serveridfield, serverid);
+		row.setPayload(entryidfield, Integer.valueOf(nextentryid.incrementAndGet()));
+		row.setPayload(tablenamefield, tablename);
+		row.setPayload(objectidfield, objectid);
+		row.setPayload(changetimefield, now);
+		return row;
+	}
+
+	@Override
+	public void run() {
+		int pollcount = 0;
+		while (true) {
+			try {
+				Thread.sleep(pollinterval);
+			} catch (InterruptedException e) {
+				logger.warning("Change journal poller interrupted: " + e.getMessage());
+				return;
+			}
+			try {
+				poll(true);
+				pollcount++;
+				if (pollcount % PURGE_FREQUENCY == 0)
+					purge();
+			} catch (Throwable t) {
+				pollerrors.incrementAndGet();
+				logger.warning("Change journal poll failed, " + t.getClass().getName() + ": " + t.getMessage());
+			} finally {
+				PersistenceGateway.releaseForThread();
+			}
+		}
+	}
+
+	/**
+	 * reads the lines of the journal in the overlap window, and applies the lines
+	 * not yet applied, written by other servers
+	 *
+	 * @param apply true to apply the changes, false to only mark them as applied
+	 */
+	private void poll(boolean apply) {
+		long polltime = System.currentTimeMillis();
+		NamedList<TableAlias> aliaslist = new NamedList<TableAlias>();
+		TableAlias alias = new TableAlias(journaltable, "JOURNAL");
+		aliaslist.add(alias);
+		SelectQuery query = new SelectQuery(aliaslist, new SimpleQueryCondition<Date>(alias, changetimefield,
+				new QueryOperatorGreaterThan<Date>(), new Date(polltime - overlap)));
+		PersistentStorage storage = PersistenceGateway.getStorage();
+		Row row = storage.selectOnDB(query);
+		PersistenceGateway.checkinStorage(storage);
+		LinkedHashSet<Runnable> listenerstocall = new LinkedHashSet<Runnable>();
+		while (row.next()) {
+			String lineserverid = row.getValue(serveridfield, alias);
+			Integer entryid = row.getValue(entryidfield, alias);
+			String key = lineserverid + "/" + entryid;
+			if (appliedentries.containsKey(key))
+				continue;
+			appliedentries.put(key, Long.valueOf(polltime));
+			if (!apply)
+				continue;
+			if (serverid.equals(lineserverid))
+				continue;
+			String tablename = row.getValue(tablenamefield, alias);
+			String objectid = row.getValue(objectidfield, alias);
+			DataObjectCache cache = DataObjectCache.getCacheForTable(tablename);
+			if (cache != null) {
+				if (objectid == null || ALL_OBJECTS.equals(objectid)) {
+					cache.invalidateAll();
+				} else {
+					cache.invalidate(objectid);
+				}
+			}
+			CopyOnWriteArrayList<Runnable> listenersfortable = listeners.get(tablename);
+			if (listenersfortable != null)
+				listenerstocall.addAll(listenersfortable);
+			applied.incrementAndGet();
+		}
+		Iterator<Runnable> listeneriterator = listenerstocall.iterator();
+		while (listeneriterator.hasNext())
+			listeneriterator.next().run();
+		// forget lines that are out of the window of next polls
+		Iterator<Long> appliedtimes = appliedentries.values().iterator();
+		while (appliedtimes.hasNext())
+			if (appliedtimes.next().longValue() < polltime - 2 * overlap)
+				appliedtimes.remove();
+		lastpoll = polltime;
+	}
+
+	/**
+	 * deletes the lines of the journal older than the retention delay
+	 */
+	private void purge() {
+		PersistentStorage storage = PersistenceGateway.getStorage();
+		storage.DeleteOnDB(new DeleteQuery(journaltable, new SimpleQueryCondition<Date>(null, changetimefield,
+				new QueryOperatorSmallerThan<Date>(), new Date(System.currentTimeMillis() - retention))));
+		PersistenceGateway.checkinStorage(storage);
+	}
+
+	/**
+	 * @return a one line summary of the activity of the journal, or null if the
+	 *         journal is not active
+	 */
+	public static String getStatistics() {
+		ChangeJournal currentjournal = journal;
+		if (currentjournal == null)
+			return null;
+		ArrayList<String> tables = new ArrayList<String>(journaledtables);
+		tables.sort(null);
+		return "server=" + currentjournal.serverid + ", lines journaled=" + currentjournal.journaled.get()
+				+ ", changes applied=" + currentjournal.applied.get() + ", poll errors="
+				+ currentjournal.pollerrors.get() + ", last poll="
+				+ (currentjournal.lastpoll > 0 ? new Date(currentjournal.lastpoll).toString() : "never")
+				+ ", tables=" + tables;
+	}
+}
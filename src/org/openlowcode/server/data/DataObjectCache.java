@@ -0,0 +1,488 @@
+/********************************************************************************
+ * Copyright (c) 2020 [Open Lowcode SAS](https://openlowcode.com/)
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0 .
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ********************************************************************************/
+
+package org.openlowcode.server.data;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import org.openlowcode.server.data.storage.FieldSchema;
+import org.openlowcode.server.data.storage.InQueryCondition;
+import org.openlowcode.server.data.storage.OrQueryCondition;
+import org.openlowcode.server.data.storage.QueryCondition;
+import org.openlowcode.server.data.storage.QueryOperatorEqual;
+import org.openlowcode.server.data.storage.Row;
+import org.openlowcode.server.data.storage.SimpleQueryCondition;
+import org.openlowcode.server.data.storage.TableAlias;
+import org.openlowcode.tools.messages.SFile;
+
+/**
+ * A cache of data objects read by id, shared by all users of the server. The
+ * cache is enabled per data object in the design, and is used by the readone
+ * and readseveral methods of objects with a unique id.<br>
+ * The cache does not hold data objects, that are mutable and carry the state
+ * of an action, but the values read from the database to build them. An object
+ * found in cache is generated again from those values, exactly as if it was
+ * read from the database.<br>
+ * The cache is limited in number of objects (the least recently used objects
+ * are removed first), and each entry expires after a time to live. Any write
+ * on the table through the persistence layer invalidates the objects written,
+ * or the whole cache if the objects written are not known, once the write is
+ * committed. A thread with writes on the table not yet committed does not use
+ * the cache, so that uncommitted values are never shared with other threads. Values of other
+ * tables brought by joins (e.g. name of the parent) are only refreshed at
+ * expiry of the entry. Objects holding a binary file are not kept in cache.
+ *
+ * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
+ *         SAS</a>
+ * @since 1.16
+ *
+ */
+public class DataObjectCache {
+	private static Logger logger = Logger.getLogger(DataObjectCache.class.getName());
+	private static ConcurrentHashMap<String, DataObjectCache> cachesbytable = new ConcurrentHashMap<
+			String, DataObjectCache>();
+
+	private String tablename;
+	private int maxsize;
+	private long ttl;
+	private LinkedHashMap<String, CachedRow> entries;
+	private long version = 0;
+	private AtomicLong hits = new AtomicLong(0);
+	private AtomicLong misses = new AtomicLong(0);
+	private AtomicLong evictions = new AtomicLong(0);
+	private AtomicLong invalidations = new AtomicLong(0);
+
+	/**
+	 * creates a cache for objects of a table and registers it, so that writes on
+	 * the table invalidate the cache
+	 *
+	 * @param tablename  name of the table of the data object
+	 * @param maxsize    maximum number of objects in cache (strictly positive)
+	 * @param ttlseconds time to live of an object in cache, in seconds (strictly
+	 *                   positive)
+	 */
+	public DataObjectCache(String tablename, int maxsize, int ttlseconds) {
+		if (maxsize <= 0)
+			throw new RuntimeException("Object cache size should be strictly positive, got " + maxsize
+					+ " for table " + tablename);
+		if (ttlseconds <= 0)
+			throw new RuntimeException("Object cache time to live should be strictly positive, got " + ttlseconds
+					+ " for table " + tablename);
+		this.tablename = tablename;
+		this.maxsize = maxsize;
+		this.ttl = ttlseconds * 1000L;
+		this.entries = new LinkedHashMap<String, CachedRow>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedRow> eldest) {
+				if (size() > DataObjectCache.this.maxsize) {
+					evictions.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+		};
+		DataObjectCache oldcache = cachesbytable.put(tablename, this);
+		if (oldcache != null)
+			logger.warning("Object cache replaced for table " + tablename);
+		ChangeJournal.registerTable(tablename);
+	}
+
+	/**
+	 * @param tablename name of a table
+	 * @return the cache for objects of the table, or null if objects of the table
+	 *         are not cached
+	 */
+	public static DataObjectCache getCacheForTable(String tablename) {
+		if (tablename == null)
+			return null;
+		return cachesbytable.get(tablename);
+	}
+
+	/**
+	 * @return all object caches, sorted by table name
+	 */
+	public static DataObjectCache[] getAllCaches() {
+		ArrayList<DataObjectCache> allcaches = new ArrayList<DataObjectCache>(cachesbytable.values());
+		allcaches.sort((a, b) -> a.tablename.compareTo(b.tablename));
+		return allcaches.toArray(new DataObjectCache[0]);
+	}
+
+	/**
+	 * @return the name of the table of the cached objects
+	 */
+	public String getTableName() {
+		return tablename;
+	}
+
+	/**
+	 * gets the values of an object in cache. The hit or miss is counted in the
+	 * statistics
+	 *
+	 * @param id id of the object
+	 * @return a row holding the values of the object to generate it with the
+	 *         alias it was read with, or null if the object is not in cache or
+	 *         expired
+	 */
+	public Row get(String id) {
+		CachedRow cachedrow;
+		synchronized (this) {
+			cachedrow = entries.get(id);
+			if (cachedrow != null)
+				if (cachedrow.expiry < System.currentTimeMillis()) {
+					entries.remove(id);
+					cachedrow = null;
+				}
+		}
+		if (cachedrow == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return cachedrow.replay();
+	}
+
+	/**
+	 * @return the current version of the cache. It should be taken before a query
+	 *         whose result will be put in cache, so that the result is not kept if
+	 *         a write happened during the query
+	 */
+	public synchronized long getVersion() {
+		return version;
+	}
+
+	/**
+	 * puts the values of an object in cache
+	 *
+	 * @param id           id of the object
+	 * @param recordingrow the row that recorded the values used to generate the
+	 *                     object
+	 * @param version      version of the cache taken before the query
+	 */
+	public void put(String id, RecordingRow recordingrow, long version) {
+		if (id == null)
+			return;
+		if (!recordingrow.isCacheable())
+			return;
+		CachedRow cachedrow = recordingrow.getCachedRow(System.currentTimeMillis() + ttl);
+		synchronized (this) {
+			// a write happened since the query, the values may be stale
+			if (version != this.version)
+				return;
+			entries.put(id, cachedrow);
+		}
+	}
+
+	/**
+	 * removes an object from the cache after a write
+	 *
+	 * @param id id of the object
+	 */
+	public synchronized void invalidate(String id) {
+		version++;
+		invalidations.incrementAndGet();
+		entries.remove(id);
+	}
+
+	/**
+	 * removes objects from the cache after a write
+	 *
+	 * @param ids ids of the objects written, or null if they are not known, in
+	 *            which case the whole cache is invalidated
+	 */
+	public void invalidate(String[] ids) {
+		if (ids == null) {
+			invalidateAll();
+			return;
+		}
+		for (int i = 0; i < ids.length; i++)
+			invalidate(ids[i]);
+	}
+
+	/**
+	 * gets the ids of the objects written by a query on their condition
+	 *
+	 * @param condition condition of an update or delete query
+	 * @return the object ids if the condition is only on object ids (one id,
+	 *         several ids linked by OR, or a list of ids in an IN condition),
+	 *         null else
+	 */
+	public static String[] getIdsFromCondition(QueryCondition condition) {
+		ArrayList<String> ids = new ArrayList<String>();
+		if (collectIds(condition, ids) && ids.size() > 0)
+			return ids.toArray(new String[0]);
+		return null;
+	}
+
+	/**
+	 * collects the ids from a condition on object ids
+	 *
+	 * @param condition a query condition
+	 * @param ids       list to add the ids to
+	 * @return true if the condition is only on object ids, false else
+	 */
+	private static boolean collectIds(QueryCondition condition, ArrayList<String> ids) {
+		if (condition instanceof SimpleQueryCondition) {
+			SimpleQueryCondition<?> simplecondition = (SimpleQueryCondition<?>) condition;
+			if (!simplecondition.getField().getName().equals("ID"))
+				return false;
+			if (!(simplecondition.getOperator() instanceof QueryOperatorEqual))
+				return false;
+			if (!(simplecondition.getPayload() instanceof String))
+				return false;
+			ids.add((String) simplecondition.getPayload());
+			return true;
+		}
+		if (condition instanceof InQueryCondition) {
+			InQueryCondition<?> incondition = (InQueryCondition<?>) condition;
+			if (!incondition.getField().getName().equals("ID"))
+				return false;
+			for (int i = 0; i < incondition.getValueNumber(); i++) {
+				if (!(incondition.getValue(i) instanceof String))
+					return false;
+				ids.add((String) incondition.getValue(i));
+			}
+			return true;
+		}
+		if (condition instanceof OrQueryCondition) {
+			QueryCondition[] subconditions = ((OrQueryCondition) condition).returnAllConditions();
+			for (int i = 0; i < subconditions.length; i++)
+				if (subconditions[i] != null)
+					if (!collectIds(subconditions[i], ids))
+						return false;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * removes all objects from the cache, typically after a write on the table
+	 * for which the objects written are not known
+	 */
+	public synchronized void invalidateAll() {
+		version++;
+		invalidations.incrementAndGet();
+		entries.clear();
+	}
+
+	/**
+	 * @return the number of objects currently in cache
+	 */
+	public synchronized int getSize() {
+		return entries.size();
+	}
+
+	/**
+	 * @return the maximum number of objects in cache
+	 */
+	public int getMaxSize() {
+		return maxsize;
+	}
+
+	/**
+	 * @return the number of reads served by the cache since server start
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return the number of reads not found in cache since server start
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return the number of objects removed as the cache was full
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * @return the number of invalidations due to writes on the table
+	 */
+	public long getInvalidations() {
+		return invalidations.get();
+	}
+
+	/**
+	 * @return the hit ratio, between 0 and 1 (0 if the cache was never used)
+	 */
+	public double getHitRatio() {
+		long hitvalue = hits.get();
+		long total = hitvalue + misses.get();
+		if (total == 0)
+			return 0;
+		return ((double) hitvalue) / total;
+	}
+
+	/**
+	 * @return a one line summary of the cache statistics
+	 */
+	public String getStatistics() {
+		return "size=" + getSize() + "/" + maxsize + ", ttl=" + (ttl / 1000) + "s, hits=" + hits.get()
+				+ ", misses=" + misses.get() + ", hit ratio=" + Math.round(getHitRatio() * 1000) / 10.0
+				+ "%, evictions=" + evictions.get() + ", invalidations=" + invalidations.get();
+	}
+
+	/**
+	 * copies values that are mutable, so that objects generated from the cache do
+	 * not share them
+	 *
+	 * @param value a value read from the database
+	 * @return the value or a copy of it
+	 */
+	private static Object copyIfMutable(Object value) {
+		if (value instanceof Date)
+			return new Date(((Date) value).getTime());
+		if (value instanceof byte[])
+			return ((byte[]) value).clone();
+		return value;
+	}
+
+	/**
+	 * @param field a field
+	 * @param alias an alias
+	 * @return the key of the value in the cached row
+	 */
+	private static String getKey(FieldSchema<?> field, TableAlias alias) {
+		return (alias != null ? alias.getName() : "") + "/" + field.getName();
+	}
+
+	/**
+	 * A row wrapping the result of a query, recording the values read for the
+	 * current line, so that they can be put in cache.
+	 *
+	 */
+	public static class RecordingRow
+			implements
+			Row {
+		private Row row;
+		private HashMap<String, Object> values;
+		private boolean cacheable;
+
+		/**
+		 * creates a recording row on the result of a query
+		 *
+		 * @param row the result of a query
+		 */
+		public RecordingRow(Row row) {
+			this.row = row;
+		}
+
+		@Override
+		public <E> E getValue(FieldSchema<E> fd, TableAlias objectalias) {
+			E value = row.getValue(fd, objectalias);
+			if (value instanceof SFile)
+				cacheable = false;
+			values.put(getKey(fd, objectalias), copyIfMutable(value));
+			return value;
+		}
+
+		@Override
+		public boolean next() {
+			boolean hasnext = row.next();
+			// values of the last line are kept after the end of the result
+			if (hasnext) {
+				values = new HashMap<String, Object>();
+				cacheable = true;
+			}
+			return hasnext;
+		}
+
+		@Override
+		public void close() {
+			row.close();
+		}
+
+		/**
+		 * @return true if the values of the current line (or of the last line if the
+		 *         end of the result is reached) can be put in cache
+		 */
+		boolean isCacheable() {
+			return cacheable;
+		}
+
+		/**
+		 * @param expiry expiry time of the entry in cache
+		 * @return the cached row for the values of the current line
+		 */
+		CachedRow getCachedRow(long expiry) {
+			return new CachedRow(values, expiry);
+		}
+	}
+
+	/**
+	 * values of an object in cache
+	 *
+	 */
+	private static class CachedRow {
+		private HashMap<String, Object> values;
+		private long expiry;
+
+		private CachedRow(HashMap<String, Object> values, long expiry) {
+			this.values = values;
+			this.expiry = expiry;
+		}
+
+		private Row replay() {
+			return new ReplayRow(values);
+		}
+	}
+
+	/**
+	 * A row of one line sending back values held in cache
+	 *
+	 */
+	private static class ReplayRow
+			implements
+			Row {
+		private HashMap<String, Object> values;
+
+		private ReplayRow(HashMap<String, Object> values) {
+			this.values = values;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public <E> E getValue(FieldSchema<E> fd, TableAlias objectalias) {
+			String key = getKey(fd, objectalias);
+			if (!values.containsKey(key)) {
+				StringBuffer knownkeys = new StringBuffer();
+				Iterator<String> keyiterator = values.keySet().iterator();
+				while (keyiterator.hasNext())
+					knownkeys.append(keyiterator.next() + " ");
+				throw new RuntimeException(
+						"Value " + key + " not found in object cache, known values = " + knownkeys.toString());
+			}
+			return (E) copyIfMutable(values.get(key));
+		}
+
+		@Override
+		public boolean next() {
+			return false;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,126 @@
+/********************************************************************************
+ * Copyright (c) 2020 [Open Lowcode SAS](https://openlowcode.com/)
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0 .
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ********************************************************************************/
+
+package org.openlowcode.server.data;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.openlowcode.server.data.storage.PersistenceGateway;
+import org.openlowcode.server.data.storage.PersistentStorage;
+import org.openlowcode.server.data.storage.Row;
+import org.openlowcode.server.data.storage.TableAlias;
+
+/**
+ * A cursor on the result of a query, creating data objects one by one while
+ * the result is read. Contrary to the methods sending back an array, only the
+ * current object is kept in memory, so that a very large number of objects can
+ * be processed (e.g. for an export or a migration).<br>
+ * The cursor holds a statement open on the database, and keeps the storage it
+ * runs on out of the pool, until it is fully read or closed. It should be used
+ * in a try-with-resources statement:<br>
+ * <code>try (DataObjectCursor&lt;E&gt; cursor = ...) { while (cursor.hasNext())
+ * ... }</code>
+ *
+ * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
+ *         SAS</a>
+ * @since 1.16
+ *
+ * @param <E> type of data object
+ */
+public class DataObjectCursor<E extends DataObject<E>>
+		implements
+		Iterator<E>,
+		AutoCloseable {
+	private Row row;
+	private PersistentStorage storage;
+	private TableAlias alias;
+	private DataObjectDefinition<E> definition;
+	private boolean positioned = false;
+	private boolean hasnext = false;
+	private boolean closed = false;
+	private long count = 0;
+
+	/**
+	 * creates a cursor on the result of a query
+	 *
+	 * @param row        the result of the query, not yet read
+	 * @param storage    the storage the query runs on. It is given back to the
+	 *                   persistence gateway when the cursor is closed
+	 * @param alias      alias of the table of the object in the query
+	 * @param definition definition of the data object
+	 */
+	public DataObjectCursor(
+			Row row,
+			PersistentStorage storage,
+			TableAlias alias,
+			DataObjectDefinition<E> definition) {
+		this.row = row;
+		this.storage = storage;
+		this.alias = alias;
+		this.definition = definition;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (closed)
+			return false;
+		if (!positioned) {
+			try {
+				hasnext = row.next();
+			} catch (RuntimeException e) {
+				close();
+				throw e;
+			}
+			positioned = true;
+			if (!hasnext)
+				close();
+		}
+		return hasnext;
+	}
+
+	@Override
+	public E next() {
+		if (!hasNext())
+			throw new NoSuchElementException("No more object in cursor for " + definition.getName());
+		positioned = false;
+		count++;
+		try {
+			return definition.generateFromRow(row, alias);
+		} catch (RuntimeException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the number of objects read until now
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * closes the cursor and the underlying statement, and gives back the storage.
+	 * This can be called several times, and is done automatically when the last
+	 * object is read.
+	 */
+	@Override
+	public void close() {
+		if (closed)
+			return;
+		closed = true;
+		try {
+			row.close();
+		} finally {
+			PersistenceGateway.checkinStorage(storage);
+		}
+	}
+}
@@ -83,6 +83,7 @@ public abstract class DataObjectDefinition<E extends DataObject<E>>
 	private HashMap<Integer, ArrayList<Pair<String, String>>> dynamicloaderinsertionorder;
 
 	private String preferedspreadsheettabname = null;
+	private DataObjectCache objectcache = null;
 
 	/**
 	 * @return the prefered table row height
@@ -230,6 +231,26 @@ public abstract class DataObjectDefinition<E extends DataObject<E>>
 		return this.preferedspreadsheettabname;
 	}
 
+	/**
+	 * enables the shared cache of objects read by id for this object
+	 * 
+	 * @param maxsize    maximum number of objects in cache
+	 * @param ttlseconds time to live of an object in cache in seconds
+	 * @since 1.16
+	 */
+	public void setObjectCache(int maxsize, int ttlseconds) {
+		this.objectcache = new DataObjectCache(this.modulecode + "_" + this.getName(), maxsize, ttlseconds);
+	}
+
+	/**
+	 * @return the shared cache of objects read by id, or null if objects are not
+	 *         cached
+	 * @since 1.16
+	 */
+	public DataObjectCache getObjectCache() {
+		return this.objectcache;
+	}
+
 	/**
 	 * @return
 	 */
@@ -0,0 +1,63 @@
+/********************************************************************************
+ * Copyright (c) 2020 [Open Lowcode SAS](https://openlowcode.com/)
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0 .
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ********************************************************************************/
+
+package org.openlowcode.server.data;
+
+/**
+ * A page of data objects brought back by a paged query. The page holds the
+ * objects, a marker showing if more objects exist after the page, and the key
+ * of the last object, to use to get the next page.
+ *
+ * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
+ *         SAS</a>
+ * @since 1.16
+ *
+ * @param <E> type of data object
+ */
+public class DataObjectPage<E extends DataObject<E>> {
+	private E[] objects;
+	private boolean more;
+	private Object[] nextpagekey;
+
+	/**
+	 * creates a page of data objects
+	 *
+	 * @param objects     objects of the page, in the order of the query
+	 * @param more        true if more objects exist after the page
+	 * @param nextpagekey values of the order by fields for the last object of the
+	 *                    page, or null if the page is empty
+	 */
+	public DataObjectPage(E[] objects, boolean more, Object[] nextpagekey) {
+		this.objects = objects;
+		this.more = more;
+		this.nextpagekey = nextpagekey;
+	}
+
+	/**
+	 * @return the objects of the page, in the order of the query
+	 */
+	public E[] getObjects() {
+		return objects;
+	}
+
+	/**
+	 * @return true if more objects exist after this page
+	 */
+	public boolean hasMore() {
+		return more;
+	}
+
+	/**
+	 * @return the key to use to get the next page, or null if the page is empty
+	 */
+	public Object[] getNextPageKey() {
+		return nextpagekey;
+	}
+}
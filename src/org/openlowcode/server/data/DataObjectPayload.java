@@ -10,6 +10,9 @@
 
 package org.openlowcode.server.data;
 
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
 import org.openlowcode.tools.misc.NamedList;
 
 import org.openlowcode.server.data.storage.DeleteQuery;
@@ -24,6 +27,7 @@ import org.openlowcode.server.data.storage.StoredField;
 import org.openlowcode.server.data.storage.StoredTableRow;
 import org.openlowcode.server.data.storage.StoredTableSchema;
 import org.openlowcode.server.data.storage.TableAlias;
+import org.openlowcode.server.data.storage.UnitOfWork;
 import org.openlowcode.server.data.storage.UpdateQuery;
 
 /**
@@ -208,18 +212,132 @@ public class DataObjectPayload {
 	}
 
 	/**
+	 * @return the value of the unique id of the object, or null if the object does
+	 *         not have a unique id or it is not set
+	 * @since 1.16
+	 */
+	@SuppressWarnings("rawtypes")
+	private String getIdForCache() {
+		DataObjectProperty hasid = properties.lookupOnName("HASID");
+		if (hasid == null)
+			return null;
+		for (int i = 0; i < hasid.getFieldNumber(); i++) {
+			Field field = hasid.getStoredField(i);
+			if (field instanceof StoredField)
+				if (field.getName().equals("ID")) {
+					Object payload = field.getPayload();
+					if (payload instanceof String)
+						if (((String) payload).length() > 0)
+							return (String) payload;
+				}
+		}
+		return null;
+	}
+
+	/**
+	 * performs a direct write on objects, and propagates it to the caches. The
+	 * change is recorded in the change journal in the same transaction as the
+	 * write, and the objects are removed from the object cache of the table once
+	 * the write is committed. If the id of one of the objects is not known, the
+	 * whole table is considered as changed. If the write is in an action
+	 * transaction, the objects are also removed from the object cache if the
+	 * transaction is rolled back
 	 * 
+	 * @param storage  the storage to use for the write
+	 * @param payloads payloads of the objects written
+	 * @param write    the write to perform with the storage
+	 * @since 1.16
+	 */
+	private static void writeAndPropagateChange(
+			PersistentStorage storage,
+			DataObjectPayload[] payloads,
+			Consumer<PersistentStorage> write) {
+		String tablename = payloads[0].schema.getName();
+		String[] ids = getIdsForCache(payloads);
+		ChangeJournal.performJournaledWrite(storage, tablename, ids, write);
+		PersistenceGateway.registerUncommittedWrite(tablename, () -> invalidateCache(tablename, ids));
+		PersistenceGateway.performAfterCommit(storage, (committedstorage) -> invalidateCache(tablename, ids));
+	}
+
+	/**
+	 * @param payloads payloads of objects
+	 * @return the ids of the objects, or null if the id of one object is not known
+	 * @since 1.16
+	 */
+	private static String[] getIdsForCache(DataObjectPayload[] payloads) {
+		String[] ids = new String[payloads.length];
+		for (int i = 0; i < payloads.length; i++) {
+			ids[i] = payloads[i].getIdForCache();
+			if (ids[i] == null)
+				return null;
+		}
+		return ids;
+	}
+
+	/**
+	 * invalidates objects in the object cache of the table if it exists
+	 * 
+	 * @param tablename name of the table
+	 * @param ids       ids of the objects, or null to invalidate all objects
+	 * @since 1.16
+	 */
+	private static void invalidateCache(String tablename, String[] ids) {
+		DataObjectCache cache = DataObjectCache.getCacheForTable(tablename);
+		if (cache != null)
+			cache.invalidate(ids);
+	}
+
+	/**
+	 * adds a write to the unit of work of the current thread. The object cache is
+	 * invalidated immediately, so that the action does not read a previous
+	 * version of the object from the cache, and again once the write is
+	 * committed. The record in the change journal is added to the unit of work,
+	 * so that it is written in the same transaction as the write. If the write
+	 * is rolled back, the change is not propagated, and objects are removed from
+	 * the cache if the rollback is the one of an action transaction
+	 * 
+	 * @param unitofwork the unit of work of the current thread
+	 * @param payload    payload of the object written
+	 * @param addition   adds the write to the unit of work, with the given action
+	 *                   to perform after the commit
+	 * @since 1.16
+	 */
+	private static void addToUnitOfWork(
+			UnitOfWork unitofwork,
+			DataObjectPayload payload,
+			BiConsumer<UnitOfWork, Consumer<PersistentStorage>> addition) {
+		String tablename = payload.schema.getName();
+		String[] ids = getIdsForCache(new DataObjectPayload[] { payload });
+		invalidateCache(tablename, ids);
+		PersistenceGateway.registerUncommittedWrite(tablename, () -> invalidateCache(tablename, ids));
+		addition.accept(unitofwork, (storage) -> invalidateCache(tablename, ids));
+		ChangeJournal.recordChange(unitofwork, tablename, ids);
+		PersistenceGateway.afterUnitOfWorkWrite();
+	}
+
+	/**
+	 * inserts the object in the persistence layer. If the current thread has a
+	 * unit of work, the insert is performed when the unit of work is flushed, and
+	 * an error on the insert is only raised at that time
 	 */
 	public void insert() {
+		UnitOfWork unitofwork = PersistenceGateway.getUnitOfWork();
+		if (unitofwork != null) {
+			StoredTableRow row = getStoredObject();
+			addToUnitOfWork(unitofwork, this, (work, afterwrite) -> work.addInsert(row, afterwrite));
+			return;
+		}
 		PersistentStorage store = PersistenceGateway.getStorage();
-		store.insertOnDB(getStoredObject());
+		StoredTableRow row = getStoredObject();
+		writeAndPropagateChange(store, new DataObjectPayload[] { this }, (storage) -> storage.insertOnDB(row));
 
 		PersistenceGateway.checkinStorage(store);
 
 	}
 
 	/**
-	 * Performs a massive update
+	 * Performs a massive update. If the current thread has a unit of work, the
+	 * updates are added to it
 	 * 
 	 * @param payloads        the payloads of objects to update
 	 * @param queryconditions the query conditions for each object to ensure only
@@ -234,6 +352,12 @@ public class DataObjectPayload {
 		if (payloads.length != queryconditions.length)
 			throw new RuntimeException("Payload length " + payloads.length
 					+ " is different from query condition length " + queryconditions.length);
+		UnitOfWork unitofwork = PersistenceGateway.getUnitOfWork();
+		if (unitofwork != null) {
+			for (int i = 0; i < payloads.length; i++)
+				payloads[i].update(queryconditions[i]);
+			return;
+		}
 		if (payloads.length > 0) {
 			MultipleTableRow multiplerow = new MultipleTableRow(payloads[0].schema);
 			for (int i = 0; i < payloads.length; i++) {
@@ -243,13 +367,14 @@ public class DataObjectPayload {
 				multiplerow.addQueryCondition(queryconditions[i]);
 			}
 			PersistentStorage store = PersistenceGateway.getStorage();
-			store.MassiveUpdateOnDB(multiplerow);
+			writeAndPropagateChange(store, payloads, (storage) -> storage.MassiveUpdateOnDB(multiplerow));
 			PersistenceGateway.checkinStorage(store);
 		}
 	}
 
 	/**
-	 * Performs a massive delete in the databse
+	 * Performs a massive delete in the databse. If the current thread has a unit
+	 * of work, the deletes are added to it
 	 * 
 	 * @param payloads        the array of payloads to delete
 	 * @param queryconditions query conditions for each payload (array has to be
@@ -264,6 +389,12 @@ public class DataObjectPayload {
 		if (payloads.length != queryconditions.length)
 			throw new RuntimeException("Payload length " + payloads.length
 					+ " is different from query condition length " + queryconditions.length);
+		UnitOfWork unitofwork = PersistenceGateway.getUnitOfWork();
+		if (unitofwork != null) {
+			for (int i = 0; i < payloads.length; i++)
+				payloads[i].delete(queryconditions[i]);
+			return;
+		}
 		if (payloads.length > 0) {
 			MultipleTableRow multiplerow = new MultipleTableRow(payloads[0].schema);
 			for (int i = 0; i < payloads.length; i++) {
@@ -272,18 +403,26 @@ public class DataObjectPayload {
 				multiplerow.addQueryCondition(queryconditions[i]);
 			}
 			PersistentStorage store = PersistenceGateway.getStorage();
-			store.MassiveDeleteOnDB(multiplerow);
+			writeAndPropagateChange(store, payloads, (storage) -> storage.MassiveDeleteOnDB(multiplerow));
 			PersistenceGateway.checkinStorage(store);
 		}
 	}
 
 	/**
 	 * performs a massive insert of a series of payloads. This uses massive array
-	 * processing in the database, and is typically significantly faster
+	 * processing in the database, and is typically significantly faster. If the
+	 * current thread has a unit of work, the inserts are added to it
 	 * 
 	 * @param payloads the array of payload.
 	 */
 	public static void massiveinsert(DataObjectPayload[] payloads) {
+		UnitOfWork unitofwork = PersistenceGateway.getUnitOfWork();
+		if (unitofwork != null) {
+			if (payloads != null)
+				for (int i = 0; i < payloads.length; i++)
+					payloads[i].insert();
+			return;
+		}
 		if (payloads != null)
 			if (payloads.length > 0) {
 				MultipleTableRow multiplerow = new MultipleTableRow(payloads[0].schema);
@@ -293,32 +432,49 @@ public class DataObjectPayload {
 					multiplerow.addAllStoredFieldToCurrentRow(payloads[i].generateStoredFieldList());
 				}
 				PersistentStorage store = PersistenceGateway.getStorage();
-				store.MassiveInsertOnDB(multiplerow);
+				writeAndPropagateChange(store, payloads, (storage) -> storage.MassiveInsertOnDB(multiplerow));
 				PersistenceGateway.checkinStorage(store);
 			}
 	}
 
 	/**
-	 * performs an update in the persistence layer
+	 * performs an update in the persistence layer. If the current thread has a
+	 * unit of work, the update is performed when the unit of work is flushed, and
+	 * an error on the update is only raised at that time
 	 * 
 	 * @param condition this method should be called with a query condition ensuring
 	 *                  that the correct rows are updated
 	 */
 	public void update(QueryCondition condition) {
+		UnitOfWork unitofwork = PersistenceGateway.getUnitOfWork();
+		if (unitofwork != null) {
+			StoredTableRow row = getStoredObject();
+			addToUnitOfWork(unitofwork, this, (work, afterwrite) -> work.addUpdate(row, condition, afterwrite));
+			return;
+		}
 		PersistentStorage store = PersistenceGateway.getStorage();
-		store.UpdateOnDB(new UpdateQuery(getStoredObject(), condition));
+		UpdateQuery query = new UpdateQuery(getStoredObject(), condition);
+		writeAndPropagateChange(store, new DataObjectPayload[] { this }, (storage) -> storage.UpdateOnDB(query));
 		PersistenceGateway.checkinStorage(store);
 	}
 
 	/**
-	 * performs a delete in the persistence layer
+	 * performs a delete in the persistence layer. If the current thread has a
+	 * unit of work, the delete is performed when the unit of work is flushed, and
+	 * an error on the delete is only raised at that time
 	 * 
 	 * @param condition this method should be called with a query condition ensuring
 	 *                  that the correct rows are deleted
 	 */
 	public void delete(QueryCondition condition) {
+		UnitOfWork unitofwork = PersistenceGateway.getUnitOfWork();
+		if (unitofwork != null) {
+			addToUnitOfWork(unitofwork, this, (work, afterwrite) -> work.addDelete(schema, condition, afterwrite));
+			return;
+		}
 		PersistentStorage store = PersistenceGateway.getStorage();
-		store.DeleteOnDB(new DeleteQuery(getStoredObject().getStoredTableSchema(), condition));
+		DeleteQuery query = new DeleteQuery(getStoredObject().getStoredTableSchema(), condition);
+		writeAndPropagateChange(store, new DataObjectPayload[] { this }, (storage) -> storage.DeleteOnDB(query));
 		PersistenceGateway.checkinStorage(store);
 	}
 
@@ -34,13 +34,15 @@ public class QueryHelper {
 	}
 
 	/**
-	 * executes properly the query through persistence gateway
+	 * executes properly the query through persistence gateway. The query may be
+	 * executed on the read replica of the database (see
+	 * {@link PersistenceGateway#getReadStorage()})
 	 * 
 	 * @param sq a select query
 	 * @return rows
 	 */
 	public Row query(SelectQuery sq) {
-		PersistentStorage storage = PersistenceGateway.getStorage();
+		PersistentStorage storage = PersistenceGateway.getReadStorage();
 
 		Row row = storage.selectOnDB(sq);
 		PersistenceGateway.checkinStorage(storage);
@@ -49,14 +51,29 @@ public class QueryHelper {
 	}
 	
 	/**
-	 * Executes a limited update query thourhg the persistence gateway
+	 * Executes a limited update query thourhg the persistence gateway. The change
+	 * is recorded in the change journal in the same transaction as the update.
+	 * Once the update is committed, objects updated are removed from the object
+	 * cache if it exists for the table.
 	 * 
 	 * @param limitedupdatequery a limited update query
 	 * @since 1.14
 	 */
 	public void limitedUpdate(LimitedFieldsUpdateQuery limitedupdatequery) {
 		PersistentStorage storage = PersistenceGateway.getStorage();
-		storage.LimitedFieldUpdateOnDB(limitedupdatequery);
+		String tablename = limitedupdatequery.getTableSchema().getName();
+		String[] ids = DataObjectCache.getIdsFromCondition(limitedupdatequery.getCondition());
+		ChangeJournal.performJournaledWrite(storage, tablename, ids,
+				(journaledstorage) -> journaledstorage.LimitedFieldUpdateOnDB(limitedupdatequery));
+		DataObjectCache cache = DataObjectCache.getCacheForTable(tablename);
+		PersistenceGateway.registerUncommittedWrite(tablename, () -> {
+			if (cache != null)
+				cache.invalidate(ids);
+		});
+		PersistenceGateway.performAfterCommit(storage, (committedstorage) -> {
+			if (cache != null)
+				cache.invalidate(ids);
+		});
 		PersistenceGateway.checkinStorage(storage);
 	}
 }
@@ -10,13 +10,22 @@
 
 package org.openlowcode.server.data;
 
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntUnaryOperator;
+
 import org.openlowcode.tools.misc.Named;
 
 import org.openlowcode.server.data.storage.PersistenceGateway;
 import org.openlowcode.server.data.storage.PersistentStorage;
 
 /**
- * An helper object to access to a persisted sequence
+ * An helper object to access to a persisted sequence.<br>
+ * By default, each value is taken from the database, so that values are
+ * strictly consecutive. Since 1.16, a sequence can reserve values in the
+ * database by block (hi/lo allocation), and serve them from memory: this is
+ * much faster, but values not used when the server stops are lost (creating
+ * gaps), and with several servers, values are not given in creation order.
  * 
  * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
  *         SAS</a>
@@ -25,14 +34,60 @@ import org.openlowcode.server.data.storage.PersistentStorage;
 public class Sequence
 		extends
 		Named {
+	private int blocksize;
+	private volatile ValueBlock currentblock = null;
+	private ReentrantLock refilllock = new ReentrantLock();
+	private IntUnaryOperator valuesource;
 
 	/**
-	 * creates an helper to access a sequence
+	 * creates an helper to access a sequence, each value being taken from the
+	 * database
 	 * 
 	 * @param name name of the sequence
 	 */
 	public Sequence(String name) {
+		this(name, 1);
+	}
+
+	/**
+	 * creates an helper to access a sequence
+	 * 
+	 * @param name      name of the sequence
+	 * @param blocksize number of values reserved in the database at once. 1 means
+	 *                  gapless sequence, each value being taken from the database
+	 * @since 1.16
+	 */
+	public Sequence(String name, int blocksize) {
+		this(name, blocksize, null);
+	}
+
+	/**
+	 * creates an helper to access a sequence, with values taken from the given
+	 * source instead of the database
+	 * 
+	 * @param name        name of the sequence
+	 * @param blocksize   number of values reserved at once
+	 * @param valuesource reserves the given number of consecutive values, and
+	 *                    returns the first one (null to reserve values in the
+	 *                    database)
+	 * @since 1.16
+	 */
+	Sequence(String name, int blocksize, IntUnaryOperator valuesource) {
 		super(name.toUpperCase());
+		if (blocksize <= 0)
+			throw new RuntimeException(
+					"Block size should be strictly positive for sequence " + name + ", got " + blocksize);
+		this.blocksize = blocksize;
+		this.valuesource = (valuesource != null ? valuesource : this::reserveValues);
+	}
+
+	/**
+	 * @return the number of values reserved in the database at once, 1 for a
+	 *         gapless sequence
+	 * @since 1.16
+	 */
+	public int getBlockSize() {
+		return blocksize;
 	}
 
 	/**
@@ -41,10 +96,38 @@ public class Sequence
 	 * @return the next sequence
 	 */
 	public int getNextValue() {
-		PersistentStorage storage = PersistenceGateway.getStorage();
-		int nextvalue = storage.getNextValue(this.getName());
+		if (blocksize == 1)
+			return valuesource.applyAsInt(1);
+		while (true) {
+			ValueBlock block = currentblock;
+			if (block != null) {
+				int index = block.next.getAndIncrement();
+				if (index < blocksize)
+					return block.first + index;
+			}
+			// only one thread reserves the next block, others wait for it
+			refilllock.lock();
+			try {
+				if (currentblock == block)
+					currentblock = new ValueBlock(valuesource.applyAsInt(blocksize));
+			} finally {
+				refilllock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * reserves values of the sequence in the database
+	 * 
+	 * @param number number of values to reserve
+	 * @return the first value reserved
+	 */
+	private int reserveValues(int number) {
+		PersistentStorage storage = PersistenceGateway.getAutonomousStorage();
+		int first = (number == 1 ? storage.getNextValue(this.getName())
+				: storage.getNextValues(this.getName(), number));
 		PersistenceGateway.checkinStorage(storage);
-		return nextvalue;
+		return first;
 	}
 
 	/**
@@ -58,4 +141,18 @@ public class Sequence
 		}
 		PersistenceGateway.checkinStorage(storage);
 	}
+
+	/**
+	 * a block of values reserved in the database
+	 *
+	 */
+	private static class ValueBlock {
+		private final int first;
+		private final AtomicInteger next;
+
+		private ValueBlock(int first) {
+			this.first = first;
+			this.next = new AtomicInteger(0);
+		}
+	}
 }
@@ -11,6 +11,7 @@
 package org.openlowcode.server.data.properties;
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Logger;
 
 import org.openlowcode.tools.misc.NamedList;
@@ -22,7 +23,6 @@ import org.openlowcode.server.data.TwoDataObjects;
 import org.openlowcode.server.data.properties.constraints.ConstraintOnAutolinkObject;
 import org.openlowcode.server.data.storage.AndQueryCondition;
 import org.openlowcode.server.data.storage.JoinQueryCondition;
-import org.openlowcode.server.data.storage.OrQueryCondition;
 import org.openlowcode.server.data.storage.QueryCondition;
 import org.openlowcode.server.data.storage.QueryFilter;
 import org.openlowcode.server.data.storage.QueryOperatorEqual;
@@ -41,7 +41,6 @@ import org.openlowcode.server.data.storage.TableAlias;
  */
 public class AutolinkobjectQueryHelper {
 
-	private static final int BATCH_QUERY_SIZE = 20;
 	private static final String BLANK_ID = "NEVERLAND";
 
 	private static Logger logger = Logger.getLogger(AutolinkobjectQueryHelper.class.getName());
@@ -201,7 +200,8 @@ public class AutolinkobjectQueryHelper {
 		ArrayList<E> results = new ArrayList<E>();
 
 		// work by batches to ensure query is not too long
-		for (int i = 0; i < (leftid.length / BATCH_QUERY_SIZE) + 1; i++) {
+		List<List<String>> leftidbatches = HasidQueryHelper.getIdBatches(leftid);
+		for (int i = 0; i < leftidbatches.size(); i++) {
 			NamedList<TableAlias> aliaslist = new NamedList<TableAlias>();
 			TableAlias alias = parentobjectdefinition.getAlias("SINGLEOBJECT");
 			aliaslist.add(alias);
@@ -211,23 +211,9 @@ public class AutolinkobjectQueryHelper {
 						aliaslist.add(additionalcondition.getAliases()[k]);
 			QueryCondition objectuniversalcondition = parentobjectdefinition
 					.getUniversalQueryCondition(autolinkobjectDefinition, "SINGLEOBJECT");
-			OrQueryCondition uniqueidcondition = new OrQueryCondition();
-			int min = i * BATCH_QUERY_SIZE;
-			if (min<leftid.length) {
-			for (int j = min; j < min + BATCH_QUERY_SIZE; j++) {
-				QueryCondition thisuniqueidcondition = null;
-				if (j < leftid.length) {
-					thisuniqueidcondition = getLeftidQueryCondition(alias, leftid[j], parentobjectdefinition,
-							linkedobjectdefinition);
-				} else {
-					// all queries will have batch size conditions. If not enough id, a blank id is
-					// used
-					thisuniqueidcondition = getLeftidQueryCondition(alias, null, parentobjectdefinition,
-							linkedobjectdefinition);
-
-				}
-				uniqueidcondition.addCondition(thisuniqueidcondition);
-			}
+			QueryCondition uniqueidcondition = HasidQueryHelper.getIdBatchQueryCondition(
+					getLeftidQueryCondition(alias, null, parentobjectdefinition, linkedobjectdefinition),
+					leftidbatches.get(i));
 
 			QueryCondition finalcondition = uniqueidcondition;
 			if (objectuniversalcondition != null) {
@@ -244,11 +230,11 @@ public class AutolinkobjectQueryHelper {
 				// put all results in a hasmap;
 				results.add(formattedanswer);
 			}
-		}}
+		}
 
 		if (autolinkobjectDefinition.isSymetricLink()) {
 
-			for (int i = 0; i < (leftid.length / BATCH_QUERY_SIZE) + 1; i++) {
+			for (int i = 0; i < leftidbatches.size(); i++) {
 				NamedList<TableAlias> aliaslist = new NamedList<TableAlias>();
 				TableAlias alias = parentobjectdefinition.getAlias("SINGLEOBJECT");
 				aliaslist.add(alias);
@@ -258,23 +244,9 @@ public class AutolinkobjectQueryHelper {
 							aliaslist.add(additionalcondition.getAliases()[k]);
 				QueryCondition objectuniversalcondition = parentobjectdefinition
 						.getUniversalQueryCondition(autolinkobjectDefinition, "SINGLEOBJECT");
-				OrQueryCondition uniqueidcondition = new OrQueryCondition();
-				int min = i * BATCH_QUERY_SIZE;
-				if (min<leftid.length) {
-				for (int j = min; j < min + BATCH_QUERY_SIZE; j++) {
-					QueryCondition thisuniqueidcondition = null;
-					if (j < leftid.length) {
-						thisuniqueidcondition = getRightidQueryCondition(alias, leftid[j], parentobjectdefinition,
-								linkedobjectdefinition);
-					} else {
-						// all queries will have batch size conditions. If not enough id, a blank id is
-						// used
-						thisuniqueidcondition = getRightidQueryCondition(alias, null, parentobjectdefinition,
-								linkedobjectdefinition);
-
-					}
-					uniqueidcondition.addCondition(thisuniqueidcondition);
-				}
+				QueryCondition uniqueidcondition = HasidQueryHelper.getIdBatchQueryCondition(
+						getRightidQueryCondition(alias, null, parentobjectdefinition, linkedobjectdefinition),
+						leftidbatches.get(i));
 
 				QueryCondition finalcondition = uniqueidcondition;
 				if (objectuniversalcondition != null) {
@@ -293,7 +265,7 @@ public class AutolinkobjectQueryHelper {
 					// put all results in a hasmap;
 					results.add(formattedanswer);
 				}
-			}}
+			}
 				
 
 		}
@@ -363,7 +335,8 @@ public class AutolinkobjectQueryHelper {
 		ArrayList<E> results = new ArrayList<E>();
 
 		// work by batches to ensure query is not too long
-		for (int i = 0; i < (rightid.length / BATCH_QUERY_SIZE) + 1; i++) {
+		List<List<String>> rightidbatches = HasidQueryHelper.getIdBatches(rightid);
+		for (int i = 0; i < rightidbatches.size(); i++) {
 			NamedList<TableAlias> aliaslist = new NamedList<TableAlias>();
 			TableAlias alias = parentobjectdefinition.getAlias("SINGLEOBJECT");
 			aliaslist.add(alias);
@@ -374,24 +347,9 @@ public class AutolinkobjectQueryHelper {
 
 			QueryCondition objectuniversalcondition = parentobjectdefinition
 					.getUniversalQueryCondition(autolinkobjectDefinition, "SINGLEOBJECT");
-			OrQueryCondition uniqueidcondition = new OrQueryCondition();
-			int min = i * BATCH_QUERY_SIZE;
-			if (min<rightid.length) {
-			for (int j = min; j < min + BATCH_QUERY_SIZE; j++) {
-				QueryCondition thisuniqueidcondition = null;
-				if (j < rightid.length) {
-					thisuniqueidcondition = getRightidQueryCondition(alias, rightid[j], parentobjectdefinition,
-							linkedobjectdefinition);
-				} else {
-					// all queries will have batch size conditions. If not enough id, a blank id is
-					// used
-					thisuniqueidcondition = getRightidQueryCondition(alias, null, parentobjectdefinition,
-							linkedobjectdefinition);
-
-				}
-				uniqueidcondition.addCondition(thisuniqueidcondition);
-
-			}
+			QueryCondition uniqueidcondition = HasidQueryHelper.getIdBatchQueryCondition(
+					getRightidQueryCondition(alias, null, parentobjectdefinition, linkedobjectdefinition),
+					rightidbatches.get(i));
 
 			QueryCondition finalcondition = uniqueidcondition;
 			if (objectuniversalcondition != null) {
@@ -410,7 +368,7 @@ public class AutolinkobjectQueryHelper {
 				// put all results in a hasmap;
 				results.add(formattedanswer);
 			}
-		}}
+		}
 
 		return results.toArray(parentobjectdefinition.generateArrayTemplate());
 	}
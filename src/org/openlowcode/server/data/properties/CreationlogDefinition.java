@@ -67,6 +67,14 @@ public class CreationlogDefinition<E extends DataObject<E>> extends DataObjectPr
 
 	}
 
+	/**
+	 * @return the field holding the creation time of the object
+	 * @since 1.16
+	 */
+	public TimestampStoredField getCreatetime() {
+		return createtime;
+	}
+
 	public void setFieldsInTitle() {
 		this.fieldsintitle = true;
 	}
@@ -61,6 +61,14 @@ public class HasidDefinition<E extends DataObject<E>>
 		deletedindex.addStoredFieldSchema(deleted);
 		this.addIndex(deletedindex);
 	}
+
+	/**
+	 * @return the field holding the id of the object
+	 * @since 1.16
+	 */
+	public StringStoredField getId() {
+		return id;
+	}
 	
 	@Override
 	public FieldSchemaForDisplay<E>[] setFieldSchemaToDisplay() {
@@ -12,14 +12,17 @@ package org.openlowcode.server.data.properties;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 
 import org.openlowcode.tools.misc.NamedList;
 
 import org.openlowcode.server.data.DataObject;
+import org.openlowcode.server.data.DataObjectCache;
 import org.openlowcode.server.data.DataObjectDefinition;
 import org.openlowcode.server.data.QueryHelper;
 import org.openlowcode.server.data.storage.AndQueryCondition;
-import org.openlowcode.server.data.storage.OrQueryCondition;
+import org.openlowcode.server.data.storage.InQueryCondition;
+import org.openlowcode.server.data.storage.PersistenceGateway;
 import org.openlowcode.server.data.storage.QueryCondition;
 import org.openlowcode.server.data.storage.QueryOperatorEqual;
 import org.openlowcode.server.data.storage.Row;
@@ -38,8 +41,6 @@ import org.openlowcode.server.data.storage.TableAlias;
  */
 public class HasidQueryHelper {
 	private static HasidQueryHelper singleton = new HasidQueryHelper();
-	private static final int BATCH_QUERY_SIZE = 20;
-	private static final String BLANK_ID = "NEVERLAND";
 
 	/**
 	 * @return the singleton query helper
@@ -67,7 +68,71 @@ public class HasidQueryHelper {
 	}
 
 	/**
-	 * Reads one element on the provided id
+	 * splits a list of ids in batches to query with
+	 * {@link #getIdBatchQueryCondition(QueryCondition, List)}. Null and duplicate
+	 * ids are removed.
+	 * 
+	 * @param ids a list of object ids
+	 * @return the batches of id values
+	 * @since 1.16
+	 */
+	public static List<List<String>> getIdBatches(DataObjectId<?>[] ids) {
+		ArrayList<String> idvalues = new ArrayList<String>();
+		for (int i = 0; i < ids.length; i++)
+			if (ids[i] != null)
+				if (ids[i].getId() != null)
+					idvalues.add(ids[i].getId());
+		return InQueryCondition.getBatches(idvalues);
+	}
+
+	/**
+	 * splits a list of master ids in batches to query with
+	 * {@link #getIdBatchQueryCondition(QueryCondition, List)}. Null and duplicate
+	 * ids are removed.
+	 * 
+	 * @param masterids a list of object master ids
+	 * @return the batches of master id values
+	 * @since 1.16
+	 */
+	public static List<List<String>> getIdBatches(DataObjectMasterId<?>[] masterids) {
+		ArrayList<String> idvalues = new ArrayList<String>();
+		for (int i = 0; i < masterids.length; i++)
+			if (masterids[i] != null)
+				if (masterids[i].getId() != null)
+					idvalues.add(masterids[i].getId());
+		return InQueryCondition.getBatches(idvalues);
+	}
+
+	/**
+	 * Generates a query condition to filter on a batch of ids. The condition is
+	 * built from the query condition on a single id, so that any id field (object
+	 * id, parent id, left or right id of a link...) can be used.
+	 * 
+	 * @param singleidcondition condition on a single id, as a simple equal
+	 *                          condition on a string field (the value is not used)
+	 * @param idbatch           a batch of id values, as provided by
+	 *                          {@link #getIdBatches(DataObjectId[])} or
+	 *                          {@link #getIdBatches(DataObjectMasterId[])}
+	 * @return the requested query condition
+	 * @since 1.16
+	 */
+	public static QueryCondition getIdBatchQueryCondition(QueryCondition singleidcondition, List<String> idbatch) {
+		if (!(singleidcondition instanceof SimpleQueryCondition))
+			throw new RuntimeException("Id batch query condition can only be built from a simple query condition, got "
+					+ singleidcondition);
+		SimpleQueryCondition<?> simplecondition = (SimpleQueryCondition<?>) singleidcondition;
+		if (!(simplecondition.getOperator() instanceof QueryOperatorEqual))
+			throw new RuntimeException(
+					"Id batch query condition can only be built from an equal condition, got " + singleidcondition);
+		@SuppressWarnings("unchecked")
+		StoredFieldSchema<String> idfield = (StoredFieldSchema<String>) simplecondition.getField();
+		return new InQueryCondition<String>(simplecondition.getAlias(), idfield, idbatch);
+	}
+
+	/**
+	 * Reads one element on the provided id. If the object cache is enabled for
+	 * the object, the object is taken from the cache if present, else put in
+	 * cache after the query if it was read on the primary database.
 	 * 
 	 * @param id                 unique id of the object
 	 * @param definition         definition of the object type
@@ -79,6 +144,18 @@ public class HasidQueryHelper {
 		NamedList<TableAlias> aliaslist = new NamedList<TableAlias>();
 		TableAlias alias = definition.getAlias("SINGLEOBJECT");
 		aliaslist.add(alias);
+		DataObjectCache cache = definition.getObjectCache();
+		// values written by the thread and not yet committed should not be shared
+		if (cache != null)
+			if (PersistenceGateway.hasUncommittedWrites(cache.getTableName()))
+				cache = null;
+		long cacheversion = 0;
+		if (cache != null) {
+			Row cachedrow = cache.get(id.getId());
+			if (cachedrow != null)
+				return definition.generateFromRow(cachedrow, alias);
+			cacheversion = cache.getVersion();
+		}
 		QueryCondition objectuniversalcondition = definition.getUniversalQueryCondition(propertydefinition,
 				"SINGLEOBJECT");
 		QueryCondition uniqueidcondition = HasidQueryHelper.getIdQueryCondition(alias, id.getId(),
@@ -89,7 +166,15 @@ public class HasidQueryHelper {
 		}
 
 		QueryCondition extendedcondition = definition.extendquery(aliaslist, alias, finalcondition);
+		// a lagging read replica may send back a copy older than the last
+		// invalidation, that should not be put in cache
+		boolean fillcache = !PersistenceGateway.isReadOnReplica();
 		Row answer = QueryHelper.getHelper().query(new SelectQuery(aliaslist, extendedcondition));
+		DataObjectCache.RecordingRow recordingrow = null;
+		if ((cache != null) && (fillcache)) {
+			recordingrow = new DataObjectCache.RecordingRow(answer);
+			answer = recordingrow;
+		}
 		boolean hasline = answer.next();
 		if (hasline) {
 			E formattedanswer = definition.generateFromRow(answer, alias);
@@ -102,7 +187,8 @@ public class HasidQueryHelper {
 						"Expected one row, got more, for object type = " + definition.getName() + ", id = " + id.getId()
 								+ " normal object " + firstobject + ", additional object " + secondillegalanswerdrop);
 			}
-
+			if (recordingrow != null)
+				cache.put(id.getId(), recordingrow, cacheversion);
 			return formattedanswer;
 		} else {
 			return null;
@@ -125,7 +211,8 @@ public class HasidQueryHelper {
 	}
 
 	/**
-	 * gets a list of objects
+	 * gets a list of objects. If the object cache is enabled for the object,
+	 * objects present in cache are not queried.
 	 * 
 	 * @param id                 list of the object ids
 	 * @param definition         definition of the data boject
@@ -141,29 +228,42 @@ public class HasidQueryHelper {
 			boolean blowifabsent) {
 		ArrayList<E> results = new ArrayList<E>();
 		HashMap<String, E> resultsbyid = new HashMap<String, E>();
-		// work by batches to ensure query is not too long
-		for (int i = 0; i < (id.length / BATCH_QUERY_SIZE) + 1; i++) {
+		DataObjectCache cache = definition.getObjectCache();
+		// values written by the thread and not yet committed should not be shared
+		if (cache != null)
+			if (PersistenceGateway.hasUncommittedWrites(cache.getTableName()))
+				cache = null;
+		long cacheversion = 0;
+		List<List<String>> batches;
+		if (cache != null) {
+			// objects in cache are taken first, only the other objects are queried
+			ArrayList<String> idstoquery = new ArrayList<String>();
+			TableAlias alias = definition.getAlias("SINGLEOBJECT");
+			cacheversion = cache.getVersion();
+			for (int i = 0; i < id.length; i++)
+				if (id[i] != null)
+					if (id[i].getId() != null)
+						if (!resultsbyid.containsKey(id[i].getId())) {
+							Row cachedrow = cache.get(id[i].getId());
+							if (cachedrow != null) {
+								resultsbyid.put(id[i].getId(), definition.generateFromRow(cachedrow, alias));
+							} else {
+								idstoquery.add(id[i].getId());
+							}
+						}
+			batches = InQueryCondition.getBatches(idstoquery);
+		} else {
+			batches = getIdBatches(id);
+		}
+		// work by batches of ids, each batch being one IN query
+		for (int i = 0; i < batches.size(); i++) {
 			NamedList<TableAlias> aliaslist = new NamedList<TableAlias>();
 			TableAlias alias = definition.getAlias("SINGLEOBJECT");
 			aliaslist.add(alias);
 			QueryCondition objectuniversalcondition = definition.getUniversalQueryCondition(propertydefinition,
 					"SINGLEOBJECT");
-			OrQueryCondition uniqueidcondition = new OrQueryCondition();
-			int min = i * BATCH_QUERY_SIZE;
-			if (min < id.length) {
-			for (int j = min; j < min + BATCH_QUERY_SIZE; j++) {
-				QueryCondition thisuniqueidcondition = null;
-				if (j < id.length) {
-					thisuniqueidcondition = HasidQueryHelper.getIdQueryCondition(alias, id[j].getId(),
-							definition);
-				} else {
-					// all queries will have batch size conditions. If not enough id, a blank id is
-					// used
-					thisuniqueidcondition = HasidQueryHelper.getIdQueryCondition(alias, BLANK_ID,
-							definition);
-				}
-				uniqueidcondition.addCondition(thisuniqueidcondition);
-			}
+			QueryCondition uniqueidcondition = getIdBatchQueryCondition(
+					HasidQueryHelper.getIdQueryCondition(alias, null, definition), batches.get(i));
 
 			QueryCondition finalcondition = uniqueidcondition;
 			if (objectuniversalcondition != null) {
@@ -171,12 +271,21 @@ public class HasidQueryHelper {
 			}
 
 			QueryCondition extendedcondition = definition.extendquery(aliaslist, alias, finalcondition);
+			// a lagging read replica may send back a copy older than the last
+			// invalidation, that should not be put in cache
+			boolean fillcache = !PersistenceGateway.isReadOnReplica();
 			Row answer = QueryHelper.getHelper().query(new SelectQuery(aliaslist, extendedcondition));
+			DataObjectCache.RecordingRow recordingrow = null;
+			if ((cache != null) && (fillcache)) {
+				recordingrow = new DataObjectCache.RecordingRow(answer);
+				answer = recordingrow;
+			}
 			while (answer.next()) {
 				E formattedanswer = definition.generateFromRow(answer, alias);
 				// put all results in a hasmap;
 				resultsbyid.put(formattedanswer.getId().getId(), formattedanswer);
-			}
+				if (recordingrow != null)
+					cache.put(formattedanswer.getId().getId(), recordingrow, cacheversion);
 			}
 		}
 		for (int i = 0; i < id.length; i++) {
@@ -12,6 +12,7 @@ package org.openlowcode.server.data.properties;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 
 import java.util.logging.Logger;
 
@@ -20,7 +21,6 @@ import org.openlowcode.server.data.DataObject;
 import org.openlowcode.server.data.DataObjectDefinition;
 import org.openlowcode.server.data.QueryHelper;
 import org.openlowcode.server.data.storage.AndQueryCondition;
-import org.openlowcode.server.data.storage.OrQueryCondition;
 import org.openlowcode.server.data.storage.QueryCondition;
 import org.openlowcode.server.data.storage.QueryFilter;
 import org.openlowcode.server.data.storage.QueryOperatorEqual;
@@ -42,7 +42,6 @@ public class LinkedtoparentQueryHelper {
 			String, LinkedtoparentQueryHelper> helperlist = new HashMap<String, LinkedtoparentQueryHelper>();
 	private static Logger logger = Logger.getLogger(LinkedtoparentQueryHelper.class.getCanonicalName());
 	public final static String CHILD_OBJECT_ALIAS = "SINGLEOBJECT";
-	private static final int BATCH_QUERY_SIZE = 20;
 	private static final String BLANK_ID = "NEVERLAND";
 	private String name;
 
@@ -128,7 +127,8 @@ public class LinkedtoparentQueryHelper {
 		ArrayList<E> results = new ArrayList<E>();
 
 		// work by batches to ensure query is not too long
-		for (int i = 0; i < (parentid.length / BATCH_QUERY_SIZE) + 1; i++) {
+		List<List<String>> parentidbatches = HasidQueryHelper.getIdBatches(parentid);
+		for (int i = 0; i < parentidbatches.size(); i++) {
 			NamedList<TableAlias> aliaslist = new NamedList<TableAlias>();
 			TableAlias alias = parentobjectdefinition.getAlias(CHILD_OBJECT_ALIAS);
 			aliaslist.add(alias);
@@ -138,37 +138,25 @@ public class LinkedtoparentQueryHelper {
 						aliaslist.add(additionalcondition.getAliases()[j]);
 			QueryCondition objectuniversalcondition = parentobjectdefinition
 					.getUniversalQueryCondition(propertydefinition, CHILD_OBJECT_ALIAS);
-			OrQueryCondition uniqueidcondition = new OrQueryCondition();
-			int min = i * BATCH_QUERY_SIZE;
-			// condition added for issue #28 to avoid query without parent clause
-			if (min < parentid.length) {
-				for (int j = min; j < min + BATCH_QUERY_SIZE; j++) {
-					QueryCondition thisuniqueparentidcondition = null;
-					if (j < parentid.length) {
-						thisuniqueparentidcondition = getParentIdQueryCondition(alias, parentid[j],
-								parentobjectdefinition, linkedobjectdefinition);
-						uniqueidcondition.addCondition(thisuniqueparentidcondition);
-
-					}
-
-				}
-
-				QueryCondition finalcondition = uniqueidcondition;
-				if (objectuniversalcondition != null) {
-					finalcondition = new AndQueryCondition(objectuniversalcondition, uniqueidcondition);
-				}
-
-				QueryCondition extendedcondition = parentobjectdefinition.extendquery(aliaslist, alias, finalcondition);
-				if (additionalcondition != null)
-					if (additionalcondition.getCondition() != null)
-						extendedcondition = new AndQueryCondition(extendedcondition,
-								additionalcondition.getCondition());
-				Row answer = QueryHelper.getHelper().query(new SelectQuery(aliaslist, extendedcondition));
-				while (answer.next()) {
-					E formattedanswer = parentobjectdefinition.generateFromRow(answer, alias);
-					// put all results in a hasmap;
-					results.add(formattedanswer);
-				}
+			QueryCondition uniqueidcondition = HasidQueryHelper.getIdBatchQueryCondition(
+					getParentIdQueryCondition(alias, null, parentobjectdefinition, linkedobjectdefinition),
+					parentidbatches.get(i));
+
+			QueryCondition finalcondition = uniqueidcondition;
+			if (objectuniversalcondition != null) {
+				finalcondition = new AndQueryCondition(objectuniversalcondition, uniqueidcondition);
+			}
+
+			QueryCondition extendedcondition = parentobjectdefinition.extendquery(aliaslist, alias, finalcondition);
+			if (additionalcondition != null)
+				if (additionalcondition.getCondition() != null)
+					extendedcondition = new AndQueryCondition(extendedcondition,
+							additionalcondition.getCondition());
+			Row answer = QueryHelper.getHelper().query(new SelectQuery(aliaslist, extendedcondition));
+			while (answer.next()) {
+				E formattedanswer = parentobjectdefinition.generateFromRow(answer, alias);
+				// put all results in a hasmap;
+				results.add(formattedanswer);
 			}
 		}
 
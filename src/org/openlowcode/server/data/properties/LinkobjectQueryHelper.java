@@ -11,6 +11,7 @@
 package org.openlowcode.server.data.properties;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import org.openlowcode.tools.misc.NamedList;
 
@@ -22,7 +23,6 @@ import org.openlowcode.server.data.TwoDataObjects;
 import org.openlowcode.server.data.properties.constraints.ConstraintOnLinkObject;
 import org.openlowcode.server.data.storage.AndQueryCondition;
 import org.openlowcode.server.data.storage.JoinQueryCondition;
-import org.openlowcode.server.data.storage.OrQueryCondition;
 import org.openlowcode.server.data.storage.QueryCondition;
 import org.openlowcode.server.data.storage.QueryFilter;
 import org.openlowcode.server.data.storage.QueryOperatorEqual;
@@ -42,7 +42,6 @@ import org.openlowcode.server.data.storage.TableAlias;
  */
 public class LinkobjectQueryHelper {
 
-	private static final int BATCH_QUERY_SIZE = 20;
 	private static final String BLANK_ID = "NEVERLAND";
 	private static LinkobjectQueryHelper singleton = new LinkobjectQueryHelper();
 
@@ -183,29 +182,16 @@ public class LinkobjectQueryHelper {
 		ArrayList<E> results = new ArrayList<E>();
 
 		// work by batches to ensure query is not too long
-		for (int i = 0; i < (leftid.length / BATCH_QUERY_SIZE) + 1; i++) {
+		List<List<String>> leftidbatches = HasidQueryHelper.getIdBatches(leftid);
+		for (int i = 0; i < leftidbatches.size(); i++) {
 			NamedList<TableAlias> aliaslist = new NamedList<TableAlias>();
 			TableAlias alias = parentobjectdefinition.getAlias("SINGLEOBJECT");
 			aliaslist.add(alias);
 			QueryCondition objectuniversalcondition = parentobjectdefinition
 					.getUniversalQueryCondition(propertydefinition, "SINGLEOBJECT");
-			OrQueryCondition uniqueidcondition = new OrQueryCondition();
-			int min = i * BATCH_QUERY_SIZE;
-			if (min < leftid.length) {
-			for (int j = min; j < min + BATCH_QUERY_SIZE; j++) {
-				QueryCondition thisuniqueidcondition = null;
-				if (j < leftid.length) {
-					thisuniqueidcondition = getLeftidQueryCondition(alias, leftid[j], parentobjectdefinition,
-							leftobjectdefinition, rightobjectdefinition);
-				} else {
-					// all queries will have batch size conditions. If not enough id, a blank id is
-					// used
-					thisuniqueidcondition = getLeftidQueryCondition(alias, null, parentobjectdefinition,
-							leftobjectdefinition, rightobjectdefinition);
-
-				}
-				uniqueidcondition.addCondition(thisuniqueidcondition);
-			}
+			QueryCondition uniqueidcondition = HasidQueryHelper.getIdBatchQueryCondition(
+					getLeftidQueryCondition(alias, null, parentobjectdefinition, leftobjectdefinition, rightobjectdefinition),
+					leftidbatches.get(i));
 
 			QueryCondition finalcondition = uniqueidcondition;
 			if (objectuniversalcondition != null) {
@@ -219,7 +205,6 @@ public class LinkobjectQueryHelper {
 				// put all results in a hasmap;
 				results.add(formattedanswer);
 			}
-			}
 		}
 
 		return results.toArray(parentobjectdefinition.generateArrayTemplate());
@@ -245,7 +230,8 @@ public class LinkobjectQueryHelper {
 		ArrayList<E> results = new ArrayList<E>();
 
 		// work by batches to ensure query is not too long
-		for (int i = 0; i < (rightid.length / BATCH_QUERY_SIZE) + 1; i++) {
+		List<List<String>> rightidbatches = HasidQueryHelper.getIdBatches(rightid);
+		for (int i = 0; i < rightidbatches.size(); i++) {
 			NamedList<TableAlias> aliaslist = new NamedList<TableAlias>();
 			TableAlias alias = parentobjectdefinition.getAlias("SINGLEOBJECT");
 			aliaslist.add(alias);
@@ -259,23 +245,9 @@ public class LinkobjectQueryHelper {
 				if (additionalcondition.getCondition() != null)
 					objectuniversalcondition = new AndQueryCondition(objectuniversalcondition,
 							additionalcondition.getCondition());
-			OrQueryCondition uniqueidcondition = new OrQueryCondition();
-			int min = i * BATCH_QUERY_SIZE;
-			if (min<rightid.length) {
-			for (int j = min; j < min + BATCH_QUERY_SIZE; j++) {
-				QueryCondition thisuniqueidcondition = null;
-				if (j < rightid.length) {
-					thisuniqueidcondition = getRightidQueryCondition(alias, rightid[j], parentobjectdefinition,
-							leftobjectdefinition, rightobjectdefinition);
-				} else {
-					// all queries will have batch size conditions. If not enough id, a blank id is
-					// used
-					thisuniqueidcondition = getRightidQueryCondition(alias, null, parentobjectdefinition,
-							leftobjectdefinition, rightobjectdefinition);
-
-				}
-				uniqueidcondition.addCondition(thisuniqueidcondition);
-			}
+			QueryCondition uniqueidcondition = HasidQueryHelper.getIdBatchQueryCondition(
+					getRightidQueryCondition(alias, null, parentobjectdefinition, leftobjectdefinition, rightobjectdefinition),
+					rightidbatches.get(i));
 
 			QueryCondition finalcondition = uniqueidcondition;
 			if (objectuniversalcondition != null) {
@@ -289,7 +261,7 @@ public class LinkobjectQueryHelper {
 				// put all results in a hasmap;
 				results.add(formattedanswer);
 			}
-		}}
+		}
 
 		return results.toArray(parentobjectdefinition.generateArrayTemplate());
 	}
@@ -741,30 +713,17 @@ public class LinkobjectQueryHelper {
 		ArrayList<TwoDataObjects<F, G>> results = new ArrayList<TwoDataObjects<F, G>>();
 
 		// work by batches to ensure query is not too long
-		for (int i = 0; i < (leftid.length / BATCH_QUERY_SIZE) + 1; i++) {
+		List<List<String>> leftidbatches = HasidQueryHelper.getIdBatches(leftid);
+		for (int i = 0; i < leftidbatches.size(); i++) {
 			NamedList<TableAlias> aliaslist = new NamedList<TableAlias>();
 			TableAlias linkalias = linkobjectdefinition.getAlias(LINKSANDBOTHOBJECTS_LINKOBJECTALIAS);
 			TableAlias rightobjectalias = rightobjectdefinition.getAlias(LINKSANDBOTHOBJECTS_RIGHTOBJECTALIAS);
 			aliaslist.add(linkalias);
 			aliaslist.add(rightobjectalias);
 
-			OrQueryCondition uniqueidcondition = new OrQueryCondition();
-			int min = i * BATCH_QUERY_SIZE;
-			if (min<leftid.length) {
-			for (int j = min; j < min + BATCH_QUERY_SIZE; j++) {
-				QueryCondition thisuniqueidcondition = null;
-				if (j < leftid.length) {
-					thisuniqueidcondition = getLeftidQueryCondition(linkalias, leftid[j], linkobjectdefinition,
-							leftobjectdefinition, rightobjectdefinition);
-				} else {
-					// all queries will have batch size conditions. If not enough id, a blank id is
-					// used
-					thisuniqueidcondition = getLeftidQueryCondition(linkalias, null, linkobjectdefinition,
-							leftobjectdefinition, rightobjectdefinition);
-
-				}
-				uniqueidcondition.addCondition(thisuniqueidcondition);
-			}
+			QueryCondition uniqueidcondition = HasidQueryHelper.getIdBatchQueryCondition(
+					getLeftidQueryCondition(linkalias, null, linkobjectdefinition, leftobjectdefinition, rightobjectdefinition),
+					leftidbatches.get(i));
 
 			AndQueryCondition joinquerycondition = new AndQueryCondition();
 			joinquerycondition.addCondition(uniqueidcondition);
@@ -797,7 +756,7 @@ public class LinkobjectQueryHelper {
 				G objecttwo = rightobjectdefinition.generateFromRow(answer, rightobjectalias);
 				results.add(new TwoDataObjects<F, G>(objectone, objecttwo));
 			}
-		}}
+		}
 
 		return results.toArray(new TwoDataObjects[0]);
 
@@ -889,7 +848,8 @@ public class LinkobjectQueryHelper {
 		ArrayList<TwoDataObjects<E, F>> results = new ArrayList<TwoDataObjects<E, F>>();
 
 		// work by batches to ensure query is not too long
-		for (int i = 0; i < (rightid.length / BATCH_QUERY_SIZE) + 1; i++) {
+		List<List<String>> rightidbatches = HasidQueryHelper.getIdBatches(rightid);
+		for (int i = 0; i < rightidbatches.size(); i++) {
 			
 			// generate aliases
 			TableAlias linkalias = linkobjectdefinition.getAlias(LINKSANDBOTHOBJECTS_LINKOBJECTALIAS);
@@ -899,23 +859,9 @@ public class LinkobjectQueryHelper {
 			aliaslist.add(leftobjectalias);
 			
 			// condition on unique ids
-			OrQueryCondition uniqueidcondition = new OrQueryCondition();
-			int min = i * BATCH_QUERY_SIZE;
-			if (min<rightid.length) {
-			for (int j = min; j < min + BATCH_QUERY_SIZE; j++) {
-				QueryCondition thisuniqueidcondition = null;
-				if (j < rightid.length) {
-					thisuniqueidcondition = getRightidQueryCondition(linkalias, rightid[j], linkobjectdefinition,
-							leftobjectdefinition, rightobjectdefinition);
-				} else {
-					// all queries will have batch size conditions. If not enough id, a blank id is
-					// used
-					thisuniqueidcondition = getLeftidQueryCondition(linkalias, null, linkobjectdefinition,
-							leftobjectdefinition, rightobjectdefinition);
-
-				}
-				uniqueidcondition.addCondition(thisuniqueidcondition);
-			}
+			QueryCondition uniqueidcondition = HasidQueryHelper.getIdBatchQueryCondition(
+					getRightidQueryCondition(linkalias, null, linkobjectdefinition, leftobjectdefinition, rightobjectdefinition),
+					rightidbatches.get(i));
 			
 			
 			AndQueryCondition joinquerycondition = new AndQueryCondition();
@@ -951,8 +897,7 @@ public class LinkobjectQueryHelper {
 				results.add(new TwoDataObjects<E, F>(objectone, objecttwo));
 			}
 			
-			
-		}}
+				}
 		
 		return results.toArray(new TwoDataObjects[0]);
 	}
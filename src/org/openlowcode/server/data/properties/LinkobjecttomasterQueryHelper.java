@@ -11,6 +11,7 @@
 package org.openlowcode.server.data.properties;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import org.openlowcode.server.data.DataObject;
 import org.openlowcode.server.data.DataObjectDefinition;
@@ -20,7 +21,6 @@ import org.openlowcode.server.data.TwoDataObjects;
 import org.openlowcode.server.data.properties.constraints.ConstraintOnLinkToMaster;
 import org.openlowcode.server.data.storage.AndQueryCondition;
 import org.openlowcode.server.data.storage.JoinQueryCondition;
-import org.openlowcode.server.data.storage.OrQueryCondition;
 import org.openlowcode.server.data.storage.QueryCondition;
 import org.openlowcode.server.data.storage.QueryFilter;
 import org.openlowcode.server.data.storage.QueryOperatorEqual;
@@ -40,7 +40,6 @@ import org.openlowcode.tools.misc.NamedList;
  */
 public class LinkobjecttomasterQueryHelper {
 
-	private static final int BATCH_QUERY_SIZE = 20;
 	private static final String BLANK_ID = "NEVERLAND";
 	private static LinkobjecttomasterQueryHelper singleton = new LinkobjecttomasterQueryHelper();
 
@@ -211,29 +210,16 @@ public class LinkobjecttomasterQueryHelper {
 		ArrayList<E> results = new ArrayList<E>();
 
 		// work by batches to ensure query is not too long
-		for (int i = 0; i < (leftid.length / BATCH_QUERY_SIZE) + 1; i++) {
+		List<List<String>> leftidbatches = HasidQueryHelper.getIdBatches(leftid);
+		for (int i = 0; i < leftidbatches.size(); i++) {
 			NamedList<TableAlias> aliaslist = new NamedList<TableAlias>();
 			TableAlias alias = parentobjectdefinition.getAlias("SINGLEOBJECT");
 			aliaslist.add(alias);
 			QueryCondition objectuniversalcondition = parentobjectdefinition
 					.getUniversalQueryCondition(propertydefinition, "SINGLEOBJECT");
-			OrQueryCondition uniqueidcondition = new OrQueryCondition();
-			int min = i * BATCH_QUERY_SIZE;
-			if (min < leftid.length) {
-				for (int j = min; j < min + BATCH_QUERY_SIZE; j++) {
-					QueryCondition thisuniqueidcondition = null;
-					if (j < leftid.length) {
-						thisuniqueidcondition = getLeftidQueryCondition(alias, leftid[j], parentobjectdefinition,
-								leftobjectdefinition, rightobjectdefinition);
-					} else {
-						// all queries will have batch size conditions. If not enough id, a blank id is
-						// used
-						thisuniqueidcondition = getLeftidQueryCondition(alias, null, parentobjectdefinition,
-								leftobjectdefinition, rightobjectdefinition);
-
-					}
-					uniqueidcondition.addCondition(thisuniqueidcondition);
-				}
+			QueryCondition uniqueidcondition = HasidQueryHelper.getIdBatchQueryCondition(
+					getLeftidQueryCondition(alias, null, parentobjectdefinition, leftobjectdefinition, rightobjectdefinition),
+					leftidbatches.get(i));
 
 				QueryCondition finalcondition = uniqueidcondition;
 				if (objectuniversalcondition != null) {
@@ -247,7 +233,6 @@ public class LinkobjecttomasterQueryHelper {
 					// put all results in a hasmap;
 					results.add(formattedanswer);
 				}
-			}
 		}
 
 		return results.toArray(parentobjectdefinition.generateArrayTemplate());
@@ -279,7 +264,8 @@ public class LinkobjecttomasterQueryHelper {
 		ArrayList<E> results = new ArrayList<E>();
 
 		// work by batches to ensure query is not too long
-		for (int i = 0; i < (rightmsid.length / BATCH_QUERY_SIZE) + 1; i++) {
+		List<List<String>> rightmsidbatches = HasidQueryHelper.getIdBatches(rightmsid);
+		for (int i = 0; i < rightmsidbatches.size(); i++) {
 			NamedList<TableAlias> aliaslist = new NamedList<TableAlias>();
 			TableAlias alias = parentobjectdefinition.getAlias("SINGLEOBJECT");
 			aliaslist.add(alias);
@@ -293,23 +279,9 @@ public class LinkobjecttomasterQueryHelper {
 				if (additionalcondition.getCondition() != null)
 					objectuniversalcondition = new AndQueryCondition(objectuniversalcondition,
 							additionalcondition.getCondition());
-			OrQueryCondition uniqueidcondition = new OrQueryCondition();
-			int min = i * BATCH_QUERY_SIZE;
-			if (min < rightmsid.length) {
-				for (int j = min; j < min + BATCH_QUERY_SIZE; j++) {
-					QueryCondition thisuniqueidcondition = null;
-					if (j < rightmsid.length) {
-						thisuniqueidcondition = getRightMasteridQueryCondition(alias, rightmsid[j], parentobjectdefinition,
-								leftobjectdefinition, rightobjectdefinition);
-					} else {
-						// all queries will have batch size conditions. If not enough id, a blank id is
-						// used
-						thisuniqueidcondition = getRightMasteridQueryCondition(alias, null, parentobjectdefinition,
-								leftobjectdefinition, rightobjectdefinition);
-
-					}
-					uniqueidcondition.addCondition(thisuniqueidcondition);
-				}
+			QueryCondition uniqueidcondition = HasidQueryHelper.getIdBatchQueryCondition(
+					getRightMasteridQueryCondition(alias, null, parentobjectdefinition, leftobjectdefinition, rightobjectdefinition),
+					rightmsidbatches.get(i));
 
 				QueryCondition finalcondition = uniqueidcondition;
 				if (objectuniversalcondition != null) {
@@ -323,7 +295,6 @@ public class LinkobjecttomasterQueryHelper {
 					// put all results in a hasmap;
 					results.add(formattedanswer);
 				}
-			}
 		}
 
 		return results.toArray(parentobjectdefinition.generateArrayTemplate());
@@ -766,30 +737,17 @@ public class LinkobjecttomasterQueryHelper {
 		ArrayList<TwoDataObjects<F, G>> results = new ArrayList<TwoDataObjects<F, G>>();
 
 		// work by batches to ensure query is not too long
-		for (int i = 0; i < (leftid.length / BATCH_QUERY_SIZE) + 1; i++) {
+		List<List<String>> leftidbatches = HasidQueryHelper.getIdBatches(leftid);
+		for (int i = 0; i < leftidbatches.size(); i++) {
 			NamedList<TableAlias> aliaslist = new NamedList<TableAlias>();
 			TableAlias linkalias = linkobjectdefinition.getAlias(LINKSANDBOTHOBJECTS_LINKOBJECTALIAS);
 			TableAlias rightobjectalias = rightobjectdefinition.getAlias(LINKSANDBOTHOBJECTS_RIGHTOBJECTALIAS);
 			aliaslist.add(linkalias);
 			aliaslist.add(rightobjectalias);
 
-			OrQueryCondition uniqueidcondition = new OrQueryCondition();
-			int min = i * BATCH_QUERY_SIZE;
-			if (min < leftid.length) {
-				for (int j = min; j < min + BATCH_QUERY_SIZE; j++) {
-					QueryCondition thisuniqueidcondition = null;
-					if (j < leftid.length) {
-						thisuniqueidcondition = getLeftidQueryCondition(linkalias, leftid[j], linkobjectdefinition,
-								leftobjectdefinition, rightobjectdefinition);
-					} else {
-						// all queries will have batch size conditions. If not enough id, a blank id is
-						// used
-						thisuniqueidcondition = getLeftidQueryCondition(linkalias, null, linkobjectdefinition,
-								leftobjectdefinition, rightobjectdefinition);
-
-					}
-					uniqueidcondition.addCondition(thisuniqueidcondition);
-				}
+			QueryCondition uniqueidcondition = HasidQueryHelper.getIdBatchQueryCondition(
+					getLeftidQueryCondition(linkalias, null, linkobjectdefinition, leftobjectdefinition, rightobjectdefinition),
+					leftidbatches.get(i));
 
 				AndQueryCondition joinquerycondition = new AndQueryCondition();
 				joinquerycondition.addCondition(uniqueidcondition);
@@ -826,7 +784,6 @@ public class LinkobjecttomasterQueryHelper {
 					G objecttwo = rightobjectdefinition.generateFromRow(answer, rightobjectalias);
 					results.add(new TwoDataObjects<F, G>(objectone, objecttwo));
 				}
-			}
 		}
 
 		return results.toArray(new TwoDataObjects[0]);
@@ -933,7 +890,8 @@ public class LinkobjecttomasterQueryHelper {
 		ArrayList<TwoDataObjects<E, F>> results = new ArrayList<TwoDataObjects<E, F>>();
 
 		// work by batches to ensure query is not too long
-		for (int i = 0; i < (rightid.length / BATCH_QUERY_SIZE) + 1; i++) {
+		List<List<String>> rightidbatches = HasidQueryHelper.getIdBatches(rightid);
+		for (int i = 0; i < rightidbatches.size(); i++) {
 
 			// generate aliases
 			TableAlias linkalias = linkobjectdefinition.getAlias(LINKSANDBOTHOBJECTS_LINKOBJECTALIAS);
@@ -943,23 +901,9 @@ public class LinkobjecttomasterQueryHelper {
 			aliaslist.add(leftobjectalias);
 
 			// condition on unique ids
-			OrQueryCondition uniqueidcondition = new OrQueryCondition();
-			int min = i * BATCH_QUERY_SIZE;
-			if (min < rightid.length) {
-				for (int j = min; j < min + BATCH_QUERY_SIZE; j++) {
-					QueryCondition thisuniqueidcondition = null;
-					if (j < rightid.length) {
-						thisuniqueidcondition = getRightMasteridQueryCondition(linkalias, rightid[j], linkobjectdefinition,
-								leftobjectdefinition, rightobjectdefinition);
-					} else {
-						// all queries will have batch size conditions. If not enough id, a blank id is
-						// used
-						thisuniqueidcondition = getLeftidQueryCondition(linkalias, null, linkobjectdefinition,
-								leftobjectdefinition, rightobjectdefinition);
-
-					}
-					uniqueidcondition.addCondition(thisuniqueidcondition);
-				}
+			QueryCondition uniqueidcondition = HasidQueryHelper.getIdBatchQueryCondition(
+					getRightMasteridQueryCondition(linkalias, null, linkobjectdefinition, leftobjectdefinition, rightobjectdefinition),
+					rightidbatches.get(i));
 
 				AndQueryCondition joinquerycondition = new AndQueryCondition();
 				joinquerycondition.addCondition(uniqueidcondition);
@@ -996,7 +940,6 @@ public class LinkobjecttomasterQueryHelper {
 					results.add(new TwoDataObjects<E, F>(objectone, objecttwo));
 				}
 
-			}
 		}
 
 		return results.toArray(new TwoDataObjects[0]);
@@ -0,0 +1,256 @@
+/********************************************************************************
+ * Copyright (c) 2020 [Open Lowcode SAS](https://openlowcode.com/)
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0 .
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ********************************************************************************/
+
+package org.openlowcode.server.data.properties;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntUnaryOperator;
+import java.util.logging.Logger;
+
+import org.openlowcode.module.system.data.sequence.ObjectidseedSequence;
+import org.openlowcode.server.data.storage.PersistenceGateway;
+import org.openlowcode.server.data.storage.PersistentStorage;
+
+/**
+ * Allocates the unique numbers used to build object ids. Each number is built
+ * from a seed taken from a sequence in the database, multiplied by
+ * {@link #IDS_PER_SEED}, plus an increment managed in memory. As seeds are
+ * unique in the database, numbers are unique even with several servers
+ * connected to the same database.<br>
+ * To allow fast creation of objects by many threads in parallel:
+ * <ul>
+ * <li>numbers are allocated in several stripes, each with its own seed, the
+ * stripe being chosen by the thread. Allocation in a stripe is lock-free</li>
+ * <li>seeds are prefetched by batch on a dedicated thread before they are
+ * needed, so that threads creating objects do not wait for the database, and
+ * the sequence (that commits its connection) is never called on the
+ * connection of an action</li>
+ * </ul>
+ * Numbers are not allocated in increasing order.
+ *
+ * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
+ *         SAS</a>
+ * @since 1.16
+ *
+ */
+public class ObjectIdAllocator {
+	private static Logger logger = Logger.getLogger(ObjectIdAllocator.class.getName());
+	/**
+	 * number of ids generated from a seed. This should not be changed, as
+	 * uniqueness with ids generated before depends on it
+	 */
+	public static final long IDS_PER_SEED = 1024;
+	/**
+	 * default number of seeds fetched in one batch
+	 */
+	public static final int DEFAULT_PREFETCH = 8;
+
+	private static volatile ObjectIdAllocator singleton;
+
+	private AtomicReferenceArray<SeedBlock> stripes;
+	private int stripemask;
+	private int prefetch;
+	private ConcurrentLinkedQueue<Long> prefetchedseeds;
+	private AtomicInteger prefetchedseedcount;
+	private Future<?> currentfetch;
+	private ExecutorService fetcher;
+	private IntUnaryOperator seedsource;
+	private AtomicLong seedsfetched = new AtomicLong(0);
+	private AtomicLong waits = new AtomicLong(0);
+
+	/**
+	 * creates an allocator taking its seeds from the object id seed sequence of
+	 * the database
+	 *
+	 * @param stripes  number of stripes, rounded to the next power of 2
+	 * @param prefetch number of seeds fetched in one batch
+	 */
+	private ObjectIdAllocator(int stripes, int prefetch) {
+		this(stripes, prefetch, ObjectIdAllocator::fetchSeeds);
+	}
+
+	/**
+	 * creates an allocator
+	 *
+	 * @param stripes    number of stripes, rounded to the next power of 2
+	 * @param prefetch   number of seeds fetched in one batch
+	 * @param seedsource reserves the given number of consecutive seeds, never
+	 *                   given before, and returns the first one
+	 */
+	ObjectIdAllocator(int stripes, int prefetch, IntUnaryOperator seedsource) {
+		if (stripes <= 0)
+			throw new RuntimeException("Stripe number for id allocation should be strictly positive, got " + stripes);
+		if (prefetch <= 0)
+			throw new RuntimeException(
+					"Prefetch number for id allocation should be strictly positive, got " + prefetch);
+		int stripenumber = 1;
+		while (stripenumber < stripes)
+			stripenumber = stripenumber * 2;
+		this.stripes = new AtomicReferenceArray<SeedBlock>(stripenumber);
+		this.stripemask = stripenumber - 1;
+		this.prefetch = prefetch;
+		this.seedsource = seedsource;
+		this.prefetchedseeds = new ConcurrentLinkedQueue<Long>();
+		this.prefetchedseedcount = new AtomicInteger(0);
+		this.fetcher = Executors.newSingleThreadExecutor((runnable) -> {
+			Thread thread = new Thread(runnable, "ObjectIdSeedFetcher");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * sets-up the allocator. This should be called at server startup, before any
+	 * object is created
+	 *
+	 * @param stripes  number of stripes, typically the number of processors
+	 * @param prefetch number of seeds fetched in one batch
+	 */
+	public static synchronized void configure(int stripes, int prefetch) {
+		if (singleton != null)
+			throw new RuntimeException("Object id allocator already initiated");
+		singleton = new ObjectIdAllocator(stripes, prefetch);
+		logger.info("Object id allocator initiated with " + singleton.stripes.length() + " stripes, prefetch "
+				+ prefetch + " seeds of " + IDS_PER_SEED + " ids");
+	}
+
+	/**
+	 * @return the allocator, created with default settings if not configured
+	 */
+	public static ObjectIdAllocator get() {
+		ObjectIdAllocator allocator = singleton;
+		if (allocator != null)
+			return allocator;
+		synchronized (ObjectIdAllocator.class) {
+			if (singleton == null)
+				singleton = new ObjectIdAllocator(Runtime.getRuntime().availableProcessors(), DEFAULT_PREFETCH);
+			return singleton;
+		}
+	}
+
+	/**
+	 * @return the next unique number
+	 */
+	public long getNextId() {
+		int stripeindex = (int) (Thread.currentThread().getId() & stripemask);
+		while (true) {
+			SeedBlock block = stripes.get(stripeindex);
+			if (block != null) {
+				long increment = block.next.getAndIncrement();
+				if (increment < IDS_PER_SEED)
+					return block.seed * IDS_PER_SEED + increment;
+			}
+			// block exhausted or not initiated, put a new seed in the stripe
+			long newseed = takeSeed();
+			if (!stripes.compareAndSet(stripeindex, block, new SeedBlock(newseed))) {
+				// another thread changed the block, the seed is kept for later use
+				prefetchedseeds.add(Long.valueOf(newseed));
+				prefetchedseedcount.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * takes a prefetched seed, waiting for the fetcher if none is available.
+	 * Launches a prefetch when the number of seeds left is low
+	 *
+	 * @return a seed not used before
+	 */
+	private long takeSeed() {
+		while (true) {
+			Long seed = prefetchedseeds.poll();
+			if (seed != null) {
+				int left = prefetchedseedcount.decrementAndGet();
+				if (left <= stripes.length())
+					launchFetch();
+				return seed.longValue();
+			}
+			waits.incrementAndGet();
+			try {
+				launchFetch().get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted while waiting for object id seeds");
+			} catch (ExecutionException e) {
+				throw new RuntimeException("Could not get object id seeds: " + e.getCause().getMessage(),
+						e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * launches a fetch of seeds on the fetcher thread if none is running. This is
+	 * called once per seed used, not once per id.
+	 *
+	 * @return the future of the fetch launched, or of the fetch already running
+	 */
+	private synchronized Future<?> launchFetch() {
+		if (currentfetch != null)
+			if (!currentfetch.isDone())
+				return currentfetch;
+		currentfetch = fetcher.submit(() -> {
+			int firstseed = seedsource.applyAsInt(prefetch);
+			for (int i = 0; i < prefetch; i++) {
+				prefetchedseeds.add(Long.valueOf(firstseed + i));
+				prefetchedseedcount.incrementAndGet();
+				seedsfetched.incrementAndGet();
+			}
+		});
+		return currentfetch;
+	}
+
+	/**
+	 * reserves seeds in the database. All seeds of the batch are reserved in one
+	 * access to the database, on the autonomous pool as actions waiting for
+	 * seeds may hold connections
+	 *
+	 * @param number number of seeds to reserve
+	 * @return the first seed reserved
+	 */
+	private static int fetchSeeds(int number) {
+		try {
+			PersistentStorage storage = PersistenceGateway.getAutonomousStorage();
+			int firstseed = storage.getNextValues(ObjectidseedSequence.get().getName(), number);
+			PersistenceGateway.checkinStorage(storage);
+			return firstseed;
+		} finally {
+			PersistenceGateway.releaseForThread();
+		}
+	}
+
+	/**
+	 * @return a one line summary of the allocator activity
+	 */
+	public String getStatistics() {
+		return "stripes=" + stripes.length() + ", seeds fetched=" + seedsfetched.get() + ", seeds available="
+				+ prefetchedseedcount.get() + ", waits for seeds=" + waits.get();
+	}
+
+	/**
+	 * a seed being used to allocate numbers in a stripe
+	 *
+	 */
+	private static class SeedBlock {
+		private final long seed;
+		private final AtomicLong next;
+
+		private SeedBlock(long seed) {
+			this.seed = seed;
+			this.next = new AtomicLong(0);
+		}
+	}
+}
@@ -15,9 +15,13 @@ import java.util.ArrayList;
 import org.openlowcode.tools.misc.NamedList;
 
 import org.openlowcode.server.data.DataObject;
+import org.openlowcode.server.data.DataObjectCursor;
 import org.openlowcode.server.data.DataObjectDefinition;
+import org.openlowcode.server.data.DataObjectPage;
 import org.openlowcode.server.data.QueryHelper;
 import org.openlowcode.server.data.storage.AndQueryCondition;
+import org.openlowcode.server.data.storage.PersistenceGateway;
+import org.openlowcode.server.data.storage.PersistentStorage;
 import org.openlowcode.server.data.storage.QueryCondition;
 import org.openlowcode.server.data.storage.QueryFilter;
 import org.openlowcode.server.data.storage.Row;
@@ -39,6 +43,12 @@ public class StoredobjectQueryHelper {
 	 * the alias for the main table for get all active query
 	 */
 	public static String maintablealiasforgetallactive = "U0";
+	/**
+	 * the default number of objects shown in a search result
+	 * 
+	 * @since 1.16
+	 */
+	public static final int SEARCH_PAGE_SIZE = 1000;
 
 	/**
 	 * @return the singleton query helper
@@ -109,6 +119,118 @@ public class StoredobjectQueryHelper {
 			QueryFilter condition,
 			DataObjectDefinition<E> definition,
 			StoredobjectDefinition<E> propertydefinition) {
+		SelectQuery query = getallactivequery(condition, definition, propertydefinition);
+		TableAlias mainobjectalias = query.getTable(0);
+		Row row = QueryHelper.getHelper().query(query);
+		ArrayList<E> returnlist = new ArrayList<E>();
+		while (row.next()) {
+			returnlist.add(definition.generateFromRow(row, mainobjectalias));
+		}
+		return returnlist.toArray(definition.generateArrayTemplate());
+	}
+
+	/**
+	 * gets a cursor on all active records. Objects are created one by one while
+	 * the cursor is read, and rows are brought from the database by batches, so
+	 * that a full table can be processed in constant memory. The storage of the
+	 * query is kept until the cursor is closed, so the cursor should be closed
+	 * after use, typically in a try-with-resources statement.
+	 * 
+	 * @param condition          condition to filter further all active records
+	 * @param definition         definition of the object
+	 * @param propertydefinition definition of the stored object property for the
+	 *                           object
+	 * @param fetchsize          number of rows brought from the database at each
+	 *                           batch
+	 * @return a cursor on the objects brought back by the query
+	 * @since 1.16
+	 */
+	public <E extends DataObject<E>> DataObjectCursor<E> getallactivecursor(
+			QueryFilter condition,
+			DataObjectDefinition<E> definition,
+			StoredobjectDefinition<E> propertydefinition,
+			int fetchsize) {
+		SelectQuery query = getallactivequery(condition, definition, propertydefinition);
+		query.setFetchSize(fetchsize);
+		// the storage is given back by the cursor, as the connection cannot run other
+		// statements while the result is streamed
+		PersistentStorage storage = PersistenceGateway.getReadStorage();
+		Row row;
+		try {
+			row = storage.selectOnDB(query);
+		} catch (RuntimeException e) {
+			PersistenceGateway.checkinStorage(storage);
+			throw e;
+		}
+		return new DataObjectCursor<E>(row, storage, query.getTable(0), definition);
+	}
+
+	/**
+	 * gets a page of active records, ordered by the database. Only the objects of
+	 * the page are read from the database, plus one object to know if there are
+	 * more objects after the page.
+	 * 
+	 * @param condition          condition to filter further all active records
+	 * @param definition         definition of the object
+	 * @param propertydefinition definition of the stored object property for the
+	 *                           object
+	 * @param orderby            fields of the object to order the result by. For
+	 *                           the next pages to be exact, the fields should be
+	 *                           unique together, typically by ending with the id
+	 * @param descending         true to order the result in descending order
+	 * @param pagesize           maximum number of objects in the page
+	 * @param afterkey           null for the first page, or the next page key of
+	 *                           the previous page
+	 * @return the page of objects, with the marker showing if there are more
+	 *         objects
+	 * @since 1.16
+	 */
+	public <E extends DataObject<E>> DataObjectPage<E> getactivepage(
+			QueryFilter condition,
+			DataObjectDefinition<E> definition,
+			StoredobjectDefinition<E> propertydefinition,
+			StoredFieldSchema<?>[] orderby,
+			boolean descending,
+			int pagesize,
+			Object[] afterkey) {
+		SelectQuery query = getallactivequery(condition, definition, propertydefinition);
+		TableAlias mainobjectalias = query.getTable(0);
+		for (int i = 0; i < orderby.length; i++)
+			query.addOrderBy(mainobjectalias, orderby[i], descending);
+		if (afterkey != null)
+			query.setKeysetStart(afterkey);
+		query.setPaging(pagesize + 1, 0);
+		Row row = QueryHelper.getHelper().query(query);
+		ArrayList<E> returnlist = new ArrayList<E>();
+		boolean more = false;
+		Object[] nextpagekey = null;
+		while (row.next()) {
+			if (returnlist.size() == pagesize) {
+				more = true;
+			} else {
+				returnlist.add(definition.generateFromRow(row, mainobjectalias));
+				nextpagekey = new Object[orderby.length];
+				for (int i = 0; i < orderby.length; i++)
+					nextpagekey[i] = row.getValue(orderby[i], mainobjectalias);
+			}
+		}
+		return new DataObjectPage<E>(returnlist.toArray(definition.generateArrayTemplate()), more, nextpagekey);
+	}
+
+	/**
+	 * builds the query for all active records
+	 * 
+	 * @param condition          condition to filter further all active records
+	 * @param definition         definition of the object
+	 * @param propertydefinition definition of the stored object property for the
+	 *                           object
+	 * @return the query, with the main object alias as first table
+	 * @since 1.16
+	 */
+	private <E extends DataObject<E>> SelectQuery getallactivequery(
+			QueryFilter condition,
+			DataObjectDefinition<E> definition,
+			StoredobjectDefinition<E> propertydefinition) {
 		NamedList<TableAlias> tablelist = new NamedList<TableAlias>();
 		if (definition == null)
 			throw new RuntimeException("definition is expected to be not null");
@@ -137,12 +259,7 @@ public class StoredobjectQueryHelper {
 
 		QueryCondition enhancedcondition = definition.extendquery(tablelist, mainobjectalias, finalcondition);
 
-		Row row = QueryHelper.getHelper().query(new SelectQuery(tablelist, enhancedcondition));
-		ArrayList<E> returnlist = new ArrayList<E>();
-		while (row.next()) {
-			returnlist.add(definition.generateFromRow(row, mainobjectalias));
-		}
-		return returnlist.toArray(definition.generateArrayTemplate());
+		return new SelectQuery(tablelist, enhancedcondition);
 	}
 
 }
@@ -15,7 +15,6 @@ import java.util.ArrayList;
 import java.util.logging.Logger;
 
 import org.openlowcode.tools.misc.NamedList;
-import org.openlowcode.module.system.data.sequence.ObjectidseedSequence;
 import org.openlowcode.server.data.DataObject;
 import org.openlowcode.server.data.DataObjectPayload;
 import org.openlowcode.server.data.DataObjectProperty;
@@ -49,29 +48,18 @@ public class Uniqueidentified<E extends DataObject<E>>
 	private Storedobject<E> storedobject;
 	private Hasid<E> hasid;
 
-	private static long currentseed = -1;
-	private static long currentincrement = -1;
-
-	private static final long MAX_INCREMENT = 1024;
-
 	/**
 	 * a central method to the server that will generate unique numbers. It will use
 	 * the result of a sequence in the database, to get the unique number base, and
 	 * will add a memory generated suffix between 1 and 1024. The method can support
 	 * several servers connecting in parallel to the same database for horizontal
-	 * stability
+	 * stability. Since 1.16, numbers are allocated without global lock by the
+	 * {@link ObjectIdAllocator}
 	 * 
 	 * @return the next unique id
 	 */
-	protected static synchronized long getNextId() {
-		// reinitiates new seed if never initiated or if increment for seed is over.
-		if ((currentseed == -1) || (currentincrement == MAX_INCREMENT)) {
-			currentseed = ObjectidseedSequence.get().getNextValue();
-			currentincrement = 0;
-		}
-		long returnvalue = currentseed * 1024 + currentincrement;
-		currentincrement++;
-		return returnvalue;
+	protected static long getNextId() {
+		return ObjectIdAllocator.get().getNextId();
 	}
 
 	/**
@@ -72,6 +72,14 @@ public class UpdatelogDefinition<E extends DataObject<E>>
 		this.addIndex(updateuseridindex);
 	}
 
+	/**
+	 * @return the field holding the last update time of the object
+	 * @since 1.16
+	 */
+	public TimestampStoredField getUpdatetime() {
+		return updatetime;
+	}
+
 	/**
 	 * If true, fields are forced to be shown in title
 	 */
@@ -11,13 +11,13 @@
 package org.openlowcode.server.data.properties;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import org.openlowcode.tools.misc.NamedList;
 import org.openlowcode.server.data.DataObject;
 import org.openlowcode.server.data.DataObjectDefinition;
 import org.openlowcode.server.data.QueryHelper;
 import org.openlowcode.server.data.storage.AndQueryCondition;
-import org.openlowcode.server.data.storage.OrQueryCondition;
 import org.openlowcode.server.data.storage.QueryCondition;
 import org.openlowcode.server.data.storage.QueryFilter;
 import org.openlowcode.server.data.storage.QueryOperatorEqual;
@@ -37,8 +37,6 @@ import org.openlowcode.server.data.storage.TableAlias;
 public class VersionedQueryHelper {
 	private static VersionedQueryHelper singleton = new VersionedQueryHelper();
 	public static String singleobjectalias = "SINGLEOBJECT";
-	private static final int BATCH_QUERY_SIZE = 20;
-	private static final String BLANK_ID = "NEVERLAND";
 
 	/**
 	 * gets a query condition filtering on master id (the common identifier to all
@@ -164,28 +162,18 @@ public class VersionedQueryHelper {
 		
 		ArrayList<E> results = new ArrayList<E>();;
 		// work by batches to ensure query is not too long
-		for (int i = 0; i < (masterid.length / BATCH_QUERY_SIZE) + 1; i++) {
+		List<List<String>> masteridbatches = HasidQueryHelper.getIdBatches(masterid);
+		for (int i = 0; i < masteridbatches.size(); i++) {
 			NamedList<TableAlias> aliaslist = new NamedList<TableAlias>();
 			TableAlias alias = definition.getAlias("SINGLEOBJECT");
 			aliaslist.add(alias);
 			QueryCondition objectuniversalcondition = definition.getUniversalQueryCondition(propertydefinition,
 					"SINGLEOBJECT");
-			OrQueryCondition uniqueidcondition = new OrQueryCondition();
-			int min = i * BATCH_QUERY_SIZE;
-			if (min < masterid.length) {
-			for (int j = min; j < min + BATCH_QUERY_SIZE; j++) {
-				QueryCondition thisuniqueidcondition = null;
-				if (j < masterid.length) {
-					thisuniqueidcondition = VersionedQueryHelper.getMasterIdQueryCondition(alias, masterid[i].getId(),definition);
-				} else {
-					// all queries will have batch size conditions. If not enough id, a blank id is
-					// used
-					thisuniqueidcondition = VersionedQueryHelper.getMasterIdQueryCondition(alias, BLANK_ID,definition);
-				}
-				uniqueidcondition.addCondition(thisuniqueidcondition);
-			}
-			
-			uniqueidcondition.addCondition(VersionedQueryHelper.getLatestVersionQueryCondition(alias, definition));
+			QueryCondition uniqueidcondition = new AndQueryCondition(
+					HasidQueryHelper.getIdBatchQueryCondition(
+							VersionedQueryHelper.getMasterIdQueryCondition(alias, null, definition),
+							masteridbatches.get(i)),
+					VersionedQueryHelper.getLatestVersionQueryCondition(alias, definition));
 
 			QueryCondition finalcondition = uniqueidcondition;
 			if (objectuniversalcondition != null) {
@@ -198,7 +186,6 @@ public class VersionedQueryHelper {
 				E formattedanswer = definition.generateFromRow(answer, alias);
 				results.add(formattedanswer);
 			}
-			}
 		}
 		
 		return results.toArray(definition.generateArrayTemplate());
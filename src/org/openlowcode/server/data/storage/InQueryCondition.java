@@ -0,0 +1,158 @@
+/********************************************************************************
+ * Copyright (c) 2020 [Open Lowcode SAS](https://openlowcode.com/)
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0 .
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ********************************************************************************/
+
+package org.openlowcode.server.data.storage;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * A query condition checking that a field is equal to one of a list of values
+ * (equivalent to the SQL IN statement). This is typically used to read several
+ * objects by id in one query.<br>
+ * To allow reuse of statements, the number of values sent to the database is
+ * rounded to the next bucket size (1, 2, 4, 8... up to {@link #MAX_VALUES}),
+ * the list being completed by repeating the last value. So only a few different
+ * queries are generated whatever the number of values. A list of values larger
+ * than {@link #MAX_VALUES} should be split in batches with
+ * {@link #getBatches(List)}, each batch using the same statement.
+ *
+ * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
+ *         SAS</a>
+ * @since 1.16
+ *
+ * @param <E> payload class of the field
+ */
+public class InQueryCondition<E extends Object>
+		extends
+		QueryCondition {
+	/**
+	 * maximum number of values in one condition
+	 */
+	public static final int MAX_VALUES = 256;
+	private TableAlias alias;
+	private StoredFieldSchema<E> field;
+	private ArrayList<E> values;
+	private int bucketsize;
+
+	/**
+	 * creates a condition checking the field is equal to one of the values
+	 *
+	 * @param alias  alias of the table
+	 * @param field  the field in the query condition
+	 * @param values list of values, between 1 and {@link #MAX_VALUES}, not null
+	 */
+	public InQueryCondition(TableAlias alias, StoredFieldSchema<E> field, List<E> values) {
+		this.alias = alias;
+		if (field == null)
+			throw new RuntimeException("Field for in query condition is null");
+		this.field = field;
+		if (values == null)
+			throw new RuntimeException("Values for in query condition are null for field = " + field.getName());
+		if (values.size() == 0)
+			throw new RuntimeException("No value for in query condition for field = " + field.getName());
+		if (values.size() > MAX_VALUES)
+			throw new RuntimeException("Too many values for in query condition for field = " + field.getName()
+					+ ", maximum = " + MAX_VALUES + ", actual = " + values.size());
+		for (int i = 0; i < values.size(); i++)
+			if (values.get(i) == null)
+				throw new RuntimeException(
+						"Null value at index " + i + " for in query condition for field = " + field.getName());
+		this.values = new ArrayList<E>(values);
+		this.bucketsize = 1;
+		while (bucketsize < values.size())
+			bucketsize = bucketsize * 2;
+		if (bucketsize > MAX_VALUES)
+			bucketsize = MAX_VALUES;
+	}
+
+	/**
+	 * splits a list of values in batches of at most {@link #MAX_VALUES} values,
+	 * removing null and duplicate values
+	 *
+	 * @param values a list of values
+	 * @return the batches of values, each to be used for one in query condition
+	 */
+	public static <E extends Object> List<List<E>> getBatches(List<E> values) {
+		LinkedHashSet<E> uniquevalues = new LinkedHashSet<E>();
+		for (int i = 0; i < values.size(); i++)
+			if (values.get(i) != null)
+				uniquevalues.add(values.get(i));
+		ArrayList<List<E>> batches = new ArrayList<List<E>>();
+		ArrayList<E> currentbatch = null;
+		for (E value : uniquevalues) {
+			if (currentbatch == null || currentbatch.size() == MAX_VALUES) {
+				currentbatch = new ArrayList<E>();
+				batches.add(currentbatch);
+			}
+			currentbatch.add(value);
+		}
+		return batches;
+	}
+
+	/**
+	 * @return alias of the table
+	 */
+	public TableAlias getAlias() {
+		return alias;
+	}
+
+	/**
+	 * @return the field in the query condition
+	 */
+	public StoredFieldSchema<E> getField() {
+		return field;
+	}
+
+	/**
+	 * @return the number of values sent to the database, being the number of
+	 *         values rounded to the next bucket size
+	 */
+	public int getBucketSize() {
+		return bucketsize;
+	}
+
+	/**
+	 * @return the number of distinct values of the condition, before rounding to
+	 *         the bucket size
+	 */
+	public int getValueNumber() {
+		return values.size();
+	}
+
+	/**
+	 * @param index an index between 0 (included) and the bucket size (excluded)
+	 * @return the value at the index, the last value being repeated after the end
+	 *         of the list
+	 */
+	public E getValue(int index) {
+		if (index < values.size())
+			return values.get(index);
+		return values.get(values.size() - 1);
+	}
+
+	@Override
+	public void accept(Visitor visitor) {
+		visitor.visit(this);
+	}
+
+	@Override
+	public boolean isSignificant(int circuitbreaker) {
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return "[INQUERYCONDITION:TABLE " + (alias != null ? alias.getTable() : "NOALIAS") + "/"
+				+ (alias != null ? alias.getName() : "NOALIAS") + ", FIELD " + field.getName() + " IN "
+				+ values.size() + " values (bucket " + bucketsize + ")]";
+	}
+}
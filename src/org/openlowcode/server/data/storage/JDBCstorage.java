@@ -12,6 +12,8 @@ package org.openlowcode.server.data.storage;
 
 import java.sql.Connection;
 
+import org.openlowcode.server.data.storage.jdbcpool.PreparedStatementCache;
+
 /**
  * a common interface to all JDBC storage connecion 
  * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
@@ -31,4 +33,40 @@ public interface JDBCstorage {
 	 * @param connection refresh the given connection
 	 */
 	public void refreshConnection(Connection connection);
+
+	/**
+	 * @param statementcache the cache of prepared statements of the current
+	 *                       connection, or null if statements are not cached
+	 * @since 1.16
+	 */
+	public void setStatementCache(PreparedStatementCache statementcache);
+
+	/**
+	 * @param readreplica true if the connection of the storage is on the read
+	 *                    replica of the database
+	 * @since 1.16
+	 */
+	public void setReadReplica(boolean readreplica);
+
+	/**
+	 * @return true if the connection of the storage is on the read replica of the
+	 *         database
+	 * @since 1.16
+	 */
+	public boolean isReadReplica();
+
+	/**
+	 * @param autonomous true if the connection of the storage is taken from the
+	 *                   pool reserved for writes committed independently of
+	 *                   actions
+	 * @since 1.16
+	 */
+	public void setAutonomous(boolean autonomous);
+
+	/**
+	 * @return true if the connection of the storage is taken from the pool
+	 *         reserved for writes committed independently of actions
+	 * @since 1.16
+	 */
+	public boolean isAutonomous();
 }
@@ -14,14 +14,43 @@ import org.openlowcode.tools.messages.SFile;
 
 
 /**
- * A stored field to store a large binary file
+ * A stored field to store a large binary file. The content is read from and
+ * written to the database as a stream. Content read larger than the spill
+ * threshold is stored in a temporary file on disk instead of memory.
  * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
  *         SAS</a>
  *
  */
 public class LargeBinaryStoredField extends StoredFieldSchema<SFile> {
+	/**
+	 * default size in bytes above which content read from the database is stored
+	 * on disk
+	 * @since 1.16
+	 */
+	public static final int DEFAULT_SPILL_THRESHOLD = 1024 * 1024;
+	private static int spillthreshold = DEFAULT_SPILL_THRESHOLD;
 	private int maxfilesize;
 	
+	/**
+	 * @return the size in bytes above which content read from the database is
+	 *         stored on disk
+	 * @since 1.16
+	 */
+	public static int getSpillThreshold() {
+		return spillthreshold;
+	}
+
+	/**
+	 * @param spillthreshold the size in bytes above which content read from the
+	 *                       database is stored on disk
+	 * @since 1.16
+	 */
+	public static void setSpillThreshold(int spillthreshold) {
+		if (spillthreshold < 0)
+			throw new RuntimeException("Spill threshold for binary content should be positive, got " + spillthreshold);
+		LargeBinaryStoredField.spillthreshold = spillthreshold;
+	}
+	
 	/**
 	 * the maximum file size, expressed in kilobytes, zero if the file size is unlimited
 	 * @return
@@ -11,10 +11,15 @@
 package org.openlowcode.server.data.storage;
 
 import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
 
 import org.openlowcode.server.data.storage.derbyjdbc.DerbyJDBCStorage;
 import org.openlowcode.server.data.storage.jdbcpool.ConnectionPool;
 import org.openlowcode.server.data.storage.mariajdbc.MariadDBJDBCStorage;
+import org.openlowcode.server.data.storage.standardjdbc.BaseJDBCStorage;
 
 
 /**
@@ -25,41 +30,482 @@ import org.openlowcode.server.data.storage.mariajdbc.MariadDBJDBCStorage;
  *
  */
 public class PersistenceGateway {
+	private static Logger logger = Logger.getLogger(PersistenceGateway.class.getName());
 	
 	public static final String DBTYPE_DERBY = "DERBY";
 	public static final String DBTYPE_MARIA10_2 = "MARIA10.2";
 	
 	private static ConnectionPool connectionpool;
+	private static ConnectionPool readconnectionpool;
+	private static ConnectionPool autonomousconnectionpool;
+	private static ThreadLocal<ReadRouting> readrouting = ThreadLocal.withInitial(() -> new ReadRouting());
+	private static ThreadLocal<UnitOfWork> unitofwork = new ThreadLocal<UnitOfWork>();
+	private static boolean unitofworkenabled = true;
+	private static int unitofworkmaxrows = UnitOfWork.DEFAULT_MAX_PENDING_ROWS;
+	private static ThreadLocal<BaseJDBCStorage> actiontransaction = new ThreadLocal<BaseJDBCStorage>();
+	private static ThreadLocal<ArrayList<Consumer<PersistentStorage>>> aftercommit = ThreadLocal
+			.withInitial(() -> new ArrayList<Consumer<PersistentStorage>>());
+	private static ThreadLocal<HashSet<String>> uncommittedtables = ThreadLocal
+			.withInitial(() -> new HashSet<String>());
+	private static ThreadLocal<ArrayList<Runnable>> afterrollback = ThreadLocal
+			.withInitial(() -> new ArrayList<Runnable>());
+	private static boolean transactionperaction = false;
 	/**
 	 * type of database. Needs to correspond to one of the constants in this class
 	 */
 	public static String dbtype;
+
+	/**
+	 * the status of the routing of reads to the read replica for a thread
+	 * 
+	 * @since 1.16
+	 */
+	private static class ReadRouting {
+		private boolean replicaallowed = false;
+		private boolean haswritten = false;
+	}
+
 	/**
 	 * releases the connection for the current thread.
 	 */
 	public static void releaseForThread() {
+		UnitOfWork currentunitofwork = unitofwork.get();
+		if (currentunitofwork != null) {
+			currentunitofwork.discard();
+			unitofwork.remove();
+		}
+		if (actiontransaction.get() != null)
+			closeActionTransaction(false);
 		connectionpool.freecurrentthreadconnections();
+		if (readconnectionpool != null)
+			readconnectionpool.freecurrentthreadconnections();
+		if (autonomousconnectionpool != null)
+			autonomousconnectionpool.freecurrentthreadconnections();
+		readrouting.remove();
+		aftercommit.remove();
+		uncommittedtables.remove();
+		afterrollback.remove();
 	}
 	
 	/**
-	 * gets a storage (wrapping the connection with all useful methods) for the current thread
+	 * gets a storage (wrapping the connection with all useful methods) for the
+	 * current thread. The storage is always on the primary database. If the
+	 * current thread is routing its reads to the read replica, it will from now
+	 * on read from the primary database, as the storage may be used to write.
+	 * Writes pending in the unit of work of the thread are flushed first, so
+	 * that they are performed before the writes done with the storage. If the
+	 * thread has an action transaction, the storage is on the connection of the
+	 * transaction.
+	 * 
 	 * @return a free storage
 	 */
 	public static PersistentStorage getStorage()  {
-		
-		
-		
-			try {
-				Connection connection = connectionpool.getConnectionWithRetry();
-				if (connection==null) throw new RuntimeException("could not get a connection in the alloted time");
-				if (dbtype.equals(DBTYPE_DERBY)) return new DerbyJDBCStorage(connection);
-				if (dbtype.equals(DBTYPE_MARIA10_2)) return new MariadDBJDBCStorage(connection);
-				throw new RuntimeException("DB Type not supported "+dbtype);
-			} catch (Exception e) {
-				throw new RuntimeException("Error in trying to establish SQL Connection : "+e.getMessage());
-			}
-		
-		
+		ReadRouting routing = readrouting.get();
+		if (routing.replicaallowed)
+			routing.haswritten = true;
+		flushUnitOfWork();
+		BaseJDBCStorage transactionstorage = actiontransaction.get();
+		if (transactionstorage != null)
+			return transactionstorage;
+		return getStorage(connectionpool);
+	}
+
+	/**
+	 * gets a storage on the primary database outside of the action transaction
+	 * of the thread if any. Writes done with this storage are committed
+	 * independently of the action. This is typically used for sequences, whose
+	 * values should never be given twice even if the action is rolled back. If
+	 * a pool is reserved for those writes, the storage is taken from it, so that
+	 * actions holding all connections of the main pool in their transaction can
+	 * still get sequence values.
+	 * 
+	 * @return a free storage
+	 * @since 1.16
+	 */
+	public static PersistentStorage getAutonomousStorage() {
+		if (autonomousconnectionpool != null)
+			return getStorage(autonomousconnectionpool);
+		return getStorage(connectionpool);
+	}
+
+	/**
+	 * gets a storage to perform a select. The storage is on the read replica if
+	 * one is configured, and the current thread is routing its reads to the read
+	 * replica and did not write on the primary database since. Else, the storage
+	 * is on the primary database. Writes pending in the unit of work of the
+	 * thread are flushed first, so that the select reads them.
+	 * 
+	 * @return a free storage
+	 * @since 1.16
+	 */
+	public static PersistentStorage getReadStorage() {
+		flushUnitOfWork();
+		if (isReadOnReplica())
+			return getStorage(readconnectionpool);
+		BaseJDBCStorage transactionstorage = actiontransaction.get();
+		if (transactionstorage != null)
+			return transactionstorage;
+		return getStorage(connectionpool);
+	}
+
+	/**
+	 * tells if the selects of the current thread are currently sent to the read
+	 * replica (see {@link #getReadStorage()}). As the replica may lag behind the
+	 * primary database, data read there should not be shared with other threads,
+	 * for example in a cache.
+	 * 
+	 * @return true if the next select of the thread will read the read replica
+	 * @since 1.16
+	 */
+	public static boolean isReadOnReplica() {
+		if (readconnectionpool == null)
+			return false;
+		ReadRouting routing = readrouting.get();
+		return (routing.replicaallowed && !routing.haswritten);
+	}
+
+	/**
+	 * gets a storage on a connection of the given pool
+	 * 
+	 * @param pool connection pool
+	 * @return a free storage
+	 */
+	private static PersistentStorage getStorage(ConnectionPool pool) {
+		try {
+			Connection connection = pool.getConnectionWithRetry();
+			if (connection==null) throw new RuntimeException("could not get a connection in the alloted time");
+			BaseJDBCStorage storage = null;
+			if (dbtype.equals(DBTYPE_DERBY)) storage = new DerbyJDBCStorage(connection);
+			if (dbtype.equals(DBTYPE_MARIA10_2)) storage = new MariadDBJDBCStorage(connection);
+			if (storage==null) throw new RuntimeException("DB Type not supported "+dbtype);
+			storage.setStatementCache(pool.getStatementCache(connection));
+			storage.setReadReplica(pool == readconnectionpool);
+			storage.setAutonomous(pool == autonomousconnectionpool);
+			return storage;
+		} catch (Exception e) {
+			throw new RuntimeException("Error in trying to establish SQL Connection : "+e.getMessage());
+		}
+	}
+
+	/**
+	 * starts routing the selects of the current thread to the read replica, if
+	 * one is configured. This is typically called at the start of an action
+	 * that mostly reads data (inline action, report). As soon as the thread
+	 * takes a storage that may write, the selects go back to the primary
+	 * database so that the action reads its own changes.
+	 * 
+	 * @since 1.16
+	 */
+	public static void startReadReplicaRouting() {
+		ReadRouting routing = readrouting.get();
+		routing.replicaallowed = true;
+		routing.haswritten = false;
+	}
+
+	/**
+	 * stops routing the selects of the current thread to the read replica. This
+	 * should be called at the end of the action that started the routing.
+	 * 
+	 * @since 1.16
+	 */
+	public static void stopReadReplicaRouting() {
+		readrouting.remove();
+	}
+
+	/**
+	 * configures the units of work of actions
+	 * 
+	 * @param enabled true if writes of actions should be collected in a unit of
+	 *                work, false to send each write immediately to the database
+	 * @param maxrows number of pending rows after which a unit of work is
+	 *                flushed
+	 * @since 1.16
+	 */
+	public static void setUnitOfWork(boolean enabled, int maxrows) {
+		if (maxrows <= 0)
+			throw new RuntimeException(
+					"Maximum pending rows for unit of work should be strictly positive, got " + maxrows);
+		unitofworkenabled = enabled;
+		unitofworkmaxrows = maxrows;
+	}
+
+	/**
+	 * starts a unit of work for the current thread, if units of work are enabled.
+	 * From now on, writes of objects by the thread are collected and sent to the
+	 * database as batches. This is typically called at the start of an action,
+	 * and should be followed by a call to {@link #endUnitOfWork(boolean)}.<br>
+	 * If the action has no action transaction, each flush of the unit of work is
+	 * committed separately: a flush triggered by a select or by the number of
+	 * pending rows commits part of the writes of the action even if it fails
+	 * later, and errors on writes are only raised at flush (see
+	 * {@link UnitOfWork}).
+	 * 
+	 * @since 1.16
+	 */
+	public static void startUnitOfWork() {
+		if (!unitofworkenabled)
+			return;
+		UnitOfWork currentunitofwork = unitofwork.get();
+		if (currentunitofwork != null)
+			currentunitofwork.discard();
+		unitofwork.set(new UnitOfWork(unitofworkmaxrows));
+	}
+
+	/**
+	 * ends the unit of work of the current thread if it exists
+	 * 
+	 * @param success true if the action was successful, and pending writes should
+	 *                be sent to the database, false if pending writes should be
+	 *                discarded
+	 * @since 1.16
+	 */
+	public static void endUnitOfWork(boolean success) {
+		UnitOfWork currentunitofwork = unitofwork.get();
+		if (currentunitofwork == null)
+			return;
+		try {
+			if (success)
+				flushUnitOfWork();
+			else
+				currentunitofwork.discard();
+		} finally {
+			unitofwork.remove();
+		}
+	}
+
+	/**
+	 * @return the unit of work of the current thread, or null if writes should be
+	 *         sent immediately to the database
+	 * @since 1.16
+	 */
+	public static UnitOfWork getUnitOfWork() {
+		return unitofwork.get();
+	}
+
+	/**
+	 * to be called after a write is added to the unit of work. Flushes the unit of
+	 * work if it holds too many rows
+	 * 
+	 * @since 1.16
+	 */
+	public static void afterUnitOfWorkWrite() {
+		ReadRouting routing = readrouting.get();
+		if (routing.replicaallowed)
+			routing.haswritten = true;
+		UnitOfWork currentunitofwork = unitofwork.get();
+		if (currentunitofwork != null)
+			if (currentunitofwork.isFull())
+				flushUnitOfWork();
+	}
+
+	/**
+	 * sends to the database all writes pending in the unit of work of the current
+	 * thread, in a single transaction. If the thread has an action transaction,
+	 * the writes are done in this transaction, and their actions after commit
+	 * are kept until the end of the action transaction
+	 * 
+	 * @since 1.16
+	 */
+	public static void flushUnitOfWork() {
+		UnitOfWork currentunitofwork = unitofwork.get();
+		if (currentunitofwork == null)
+			return;
+		if (!currentunitofwork.hasPendingWrites())
+			return;
+		BaseJDBCStorage transactionstorage = actiontransaction.get();
+		if (transactionstorage != null) {
+			aftercommit.get().addAll(currentunitofwork.flush(transactionstorage, true));
+			return;
+		}
+		PersistentStorage storage = getStorage(connectionpool);
+		try {
+			currentunitofwork.flush(storage, false);
+		} finally {
+			checkinStorage(storage);
+		}
+	}
+
+	/**
+	 * @param transactionperaction true if each action should be performed in a
+	 *                             single transaction, committed at the end of
+	 *                             the action
+	 * @since 1.16
+	 */
+	public static void setTransactionPerAction(boolean transactionperaction) {
+		PersistenceGateway.transactionperaction = transactionperaction;
+	}
+
+	/**
+	 * @return true if each action is performed in a single transaction
+	 * @since 1.16
+	 */
+	public static boolean isTransactionPerAction() {
+		return transactionperaction;
+	}
+
+	/**
+	 * starts a transaction for the action performed by the current thread, if
+	 * transaction per action is enabled. A connection is reserved for the thread
+	 * until the end of the action, and all writes and selects on the primary
+	 * database are done in a single transaction on this connection. This should
+	 * be followed by a call to {@link #endActionTransaction(boolean)}
+	 * 
+	 * @since 1.16
+	 */
+	public static void startActionTransaction() {
+		if (!transactionperaction)
+			return;
+		if (actiontransaction.get() != null)
+			closeActionTransaction(false);
+		BaseJDBCStorage storage = (BaseJDBCStorage) getStorage(connectionpool);
+		try {
+			storage.setAutoCommit(false);
+		} catch (RuntimeException e) {
+			checkinStorage(storage);
+			throw e;
+		}
+		actiontransaction.set(storage);
+	}
+
+	/**
+	 * ends the action performed by the current thread: the unit of work of the
+	 * thread is ended, then the action transaction if it exists is committed, or
+	 * rolled back if the action or the final write of the unit of work failed
+	 * 
+	 * @param success true if the action was successful
+	 * @since 1.16
+	 */
+	public static void endActionTransaction(boolean success) {
+		boolean commit = false;
+		try {
+			endUnitOfWork(success);
+			commit = success;
+		} finally {
+			if (actiontransaction.get() != null)
+				closeActionTransaction(commit);
+		}
+	}
+
+	/**
+	 * commits or rolls back the action transaction of the current thread, and
+	 * gives back its connection to the pool. After a commit, the actions to
+	 * perform after commit of the writes done in the transaction are performed.
+	 * After a rollback, they are dropped, and the actions to perform after
+	 * rollback are performed instead
+	 * 
+	 * @param commit true to commit, false to roll back
+	 */
+	private static void closeActionTransaction(boolean commit) {
+		BaseJDBCStorage storage = actiontransaction.get();
+		actiontransaction.remove();
+		ArrayList<Consumer<PersistentStorage>> actionsaftercommit = aftercommit.get();
+		aftercommit.remove();
+		ArrayList<Runnable> actionsafterrollback = afterrollback.get();
+		afterrollback.remove();
+		uncommittedtables.remove();
+		try {
+			if (commit)
+				storage.commitTransaction();
+			else
+				storage.rollbackTransaction();
+			storage.setAutoCommit(true);
+			if (commit)
+				UnitOfWork.performAfterCommit(storage, actionsaftercommit);
+			checkinStorage(storage);
+		} catch (RuntimeException e) {
+			// the connection may be broken, it is recreated before next use
+			connectionpool.checkinandreset(storage.getConnection());
+			storage.cleanup();
+			commit = false;
+			throw e;
+		} finally {
+			if (!commit)
+				for (int i = 0; i < actionsafterrollback.size(); i++)
+					try {
+						actionsafterrollback.get(i).run();
+					} catch (RuntimeException e) {
+						logger.warning("Error in action after rollback " + e.getClass().getName() + ": "
+								+ e.getMessage());
+					}
+		}
+	}
+
+	/**
+	 * @return true if the current thread has an action transaction, writes with
+	 *         a storage got from this class being then committed or rolled back
+	 *         at the end of the action
+	 * @since 1.16
+	 */
+	public static boolean hasActionTransaction() {
+		return (actiontransaction.get() != null);
+	}
+
+	/**
+	 * performs an action once a write done with the given storage is committed.
+	 * If the current thread has an action transaction, the action is performed
+	 * at the commit of the transaction, and dropped if the transaction is rolled
+	 * back. Else, the write being already committed, the action is performed
+	 * immediately
+	 * 
+	 * @param storage a storage got from this class and used for the write
+	 * @param action  action to perform with a storage on the primary database
+	 * @since 1.16
+	 */
+	public static void performAfterCommit(PersistentStorage storage, Consumer<PersistentStorage> action) {
+		if (actiontransaction.get() != null) {
+			aftercommit.get().add(action);
+			return;
+		}
+		ArrayList<Consumer<PersistentStorage>> actions = new ArrayList<Consumer<PersistentStorage>>();
+		actions.add(action);
+		UnitOfWork.performAfterCommit(storage, actions);
+	}
+
+	/**
+	 * records that the current thread writes in a table in its action
+	 * transaction. Until the end of the transaction, the thread should not use
+	 * caches shared with other threads for this table (see
+	 * {@link #hasUncommittedWrites(String)}), and the given action is performed
+	 * if the transaction is rolled back. This does nothing if the thread has no
+	 * action transaction, as writes are then committed before selects.
+	 * 
+	 * @param tablename     name of the table written
+	 * @param afterrollback action to perform if the transaction is rolled back,
+	 *                      typically dropping the objects written from a cache
+	 *                      (can be null)
+	 * @since 1.16
+	 */
+	public static void registerUncommittedWrite(String tablename, Runnable afterrollback) {
+		if (actiontransaction.get() == null)
+			return;
+		uncommittedtables.get().add(tablename);
+		if (afterrollback != null)
+			PersistenceGateway.afterrollback.get().add(afterrollback);
+	}
+
+	/**
+	 * @param tablename name of a table
+	 * @return true if the current thread wrote in the table in its action
+	 *         transaction, not yet committed. Values read by the thread on the
+	 *         table may then not be visible to other threads
+	 * @since 1.16
+	 */
+	public static boolean hasUncommittedWrites(String tablename) {
+		if (actiontransaction.get() == null)
+			return false;
+		return uncommittedtables.get().contains(tablename);
+	}
+
+	/**
+	 * @param storage a storage
+	 * @return the pool the connection of the storage belongs to
+	 */
+	private static ConnectionPool getPool(JDBCstorage storage) {
+		if (storage.isReadReplica())
+			return readconnectionpool;
+		if (storage.isAutonomous())
+			return autonomousconnectionpool;
+		return connectionpool;
 	}
 	
 	/**
@@ -73,10 +519,12 @@ public class PersistenceGateway {
 				JDBCstorage jdbcstorage = (JDBCstorage) storage;
 			
 			Connection connection = jdbcstorage.getConnection();
-			connectionpool.checkinandreset(connection);
+			ConnectionPool pool = getPool(jdbcstorage);
+			pool.checkinandreset(connection);
 			if (getconnectionback) {
-				Connection newconnection = connectionpool.getConnectionWithRetry();
+				Connection newconnection = pool.getConnectionWithRetry();
 				jdbcstorage.refreshConnection(newconnection);
+				jdbcstorage.setStatementCache(pool.getStatementCache(newconnection));
 			}
 			return;
 			} catch (Exception e) {
@@ -93,11 +541,13 @@ public class PersistenceGateway {
 	 */
 	public static void checkinStorage(PersistentStorage storage)  {
 		
-		
+		// the storage of the action transaction is given back at the end of the action
+		if (storage == actiontransaction.get())
+			return;
 		if (storage instanceof JDBCstorage) {
 			JDBCstorage jdbcstorage = (JDBCstorage) storage;
 			Connection connection = jdbcstorage.getConnection();
-			connectionpool.checkin(connection);
+			getPool(jdbcstorage).checkin(connection);
 			jdbcstorage.cleanup();	
 			return;
 		}
@@ -113,4 +563,31 @@ public class PersistenceGateway {
 		PersistenceGateway.connectionpool = connectionpool;
 		PersistenceGateway.dbtype = dbtype;
 	}
+
+	/**
+	 * sets a connection pool on a read-only replica of the database. Selects of
+	 * threads routing their reads to the read replica will use this pool.
+	 * 
+	 * @param readconnectionpool connection pool on the read replica, or null to
+	 *                           read only from the primary database
+	 * @since 1.16
+	 */
+	public static void setreadconnectionpool(ConnectionPool readconnectionpool) {
+		PersistenceGateway.readconnectionpool = readconnectionpool;
+	}
+
+	/**
+	 * sets a connection pool reserved for writes committed independently of
+	 * actions (see {@link #getAutonomousStorage()}). This avoids a deadlock when
+	 * each action keeps a connection of the main pool for its transaction, and
+	 * all connections are taken by actions waiting for a sequence value.
+	 * 
+	 * @param autonomousconnectionpool connection pool on the primary database, or
+	 *                                 null to take autonomous storages from the
+	 *                                 main pool
+	 * @since 1.16
+	 */
+	public static void setautonomousconnectionpool(ConnectionPool autonomousconnectionpool) {
+		PersistenceGateway.autonomousconnectionpool = autonomousconnectionpool;
+	}
 }
@@ -243,6 +243,18 @@ public interface PersistentStorage {
 	 */
 	public int getNextValue(String sequencename);
 
+	/**
+	 * reserves a block of consecutive values of the sequence in one access to the
+	 * database
+	 * 
+	 * @param sequencename name of the sequence
+	 * @param count        number of values to reserve (strictly positive)
+	 * @return the first value of the block, the block being all values from the
+	 *         first value (included) to first value + count (excluded)
+	 * @since 1.16
+	 */
+	public int getNextValues(String sequencename, int count);
+
 	/**
 	 * close all connections of the persistence layer
 	 */
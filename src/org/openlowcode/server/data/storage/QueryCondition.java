@@ -56,6 +56,12 @@ public abstract class QueryCondition {
 		 */
 		public void visit(QueryConditionNever never);
 
+		/**
+		 * @param inquerycondition
+		 * @since 1.16
+		 */
+		public <E extends Object> void visit(InQueryCondition<E> inquerycondition);
+
 	}
 
 	/**
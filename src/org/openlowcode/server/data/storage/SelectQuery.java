@@ -10,10 +10,17 @@
 
 package org.openlowcode.server.data.storage;
 
+import java.util.ArrayList;
+
 import org.openlowcode.tools.misc.NamedList;
 
 /**
- * A selection query to get several rows
+ * A selection query to get several rows. Since version 1.16, the query can
+ * specify an ordering of the rows, and get only a page of the result, either
+ * by offset (the n first rows are skipped), or by key (only rows after the
+ * last row of the previous page in the order of the query are returned). Paging
+ * by key is more efficient on large tables, as the database does not have to
+ * read and skip the rows of previous pages.
  * 
  * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
  *         SAS</a>
@@ -24,6 +31,10 @@ public class SelectQuery {
 	private NamedList<TableAlias> tables;
 	private QueryCondition qd;
 	private boolean distinctvalues;
+	private ArrayList<OrderBy> orderby;
+	private int limit = -1;
+	private int offset = 0;
+	private int fetchsize = 0;
 
 	/**
 	 * @param tables tables to put in query
@@ -44,6 +55,7 @@ public class SelectQuery {
 		this.tables = tables;
 		this.qd = qd;
 		this.distinctvalues = distinctvalues;
+		this.orderby = new ArrayList<OrderBy>();
 	}
 
 	/**
@@ -79,4 +91,209 @@ public class SelectQuery {
 	public boolean isDistinctValues() {
 		return this.distinctvalues;
 	}
+
+	/**
+	 * adds a field to the ordering of the query. Fields are used for ordering in
+	 * the order they are added.
+	 * 
+	 * @param alias      alias of the table holding the field
+	 * @param field      field to order by
+	 * @param descending true if rows should be sent back in descending order of
+	 *                   the field
+	 * @since 1.16
+	 */
+	public void addOrderBy(TableAlias alias, StoredFieldSchema<?> field, boolean descending) {
+		if (alias == null)
+			throw new RuntimeException("Alias for order by is null");
+		if (field == null)
+			throw new RuntimeException("Field for order by is null for alias " + alias.getName());
+		if (tables.lookupOnName(alias.getName()) == null)
+			throw new RuntimeException("Alias " + alias.getName() + " for order by field " + field.getName()
+					+ " is not part of the query");
+		orderby.add(new OrderBy(alias, field, descending));
+	}
+
+	/**
+	 * @return the number of fields in the ordering of the query
+	 * @since 1.16
+	 */
+	public int getOrderByNumber() {
+		return orderby.size();
+	}
+
+	/**
+	 * @param index a number between 0 (included) and getOrderByNumber (excluded)
+	 * @return the field for ordering at the given index
+	 * @since 1.16
+	 */
+	public OrderBy getOrderBy(int index) {
+		return orderby.get(index);
+	}
+
+	/**
+	 * limits the query to a page of the result. An ordering should be specified so
+	 * that pages are consistent between queries.
+	 * 
+	 * @param limit  maximum number of rows to send back (strictly positive)
+	 * @param offset number of rows to skip at the start of the result
+	 * @since 1.16
+	 */
+	public void setPaging(int limit, int offset) {
+		if (limit <= 0)
+			throw new RuntimeException("Limit for query should be strictly positive, got " + limit);
+		if (offset < 0)
+			throw new RuntimeException("Offset for query should be positive or zero, got " + offset);
+		this.limit = limit;
+		this.offset = offset;
+	}
+
+	/**
+	 * @return true if only a page of the result should be sent back
+	 * @since 1.16
+	 */
+	public boolean isPaged() {
+		return (limit > 0);
+	}
+
+	/**
+	 * @return the maximum number of rows to send back, or -1 if the query is not
+	 *         paged
+	 * @since 1.16
+	 */
+	public int getLimit() {
+		return limit;
+	}
+
+	/**
+	 * @return the number of rows to skip at the start of the result
+	 * @since 1.16
+	 */
+	public int getOffset() {
+		return offset;
+	}
+
+	/**
+	 * sets the query as streamed: rows are brought from the database by batches of
+	 * the given size while the result is read, instead of being all loaded at
+	 * execution. This should be used for queries reading a very large number of
+	 * rows, with the result processed row by row. The statement of a streamed
+	 * query is not kept in the statement cache, and is closed as soon as the
+	 * result is fully read or closed.
+	 * 
+	 * @param fetchsize number of rows brought from the database at each batch
+	 *                  (strictly positive)
+	 * @since 1.16
+	 */
+	public void setFetchSize(int fetchsize) {
+		if (fetchsize <= 0)
+			throw new RuntimeException("Fetch size for query should be strictly positive, got " + fetchsize);
+		this.fetchsize = fetchsize;
+	}
+
+	/**
+	 * @return true if the query is streamed
+	 * @since 1.16
+	 */
+	public boolean isStreamed() {
+		return (fetchsize > 0);
+	}
+
+	/**
+	 * @return the number of rows brought from the database at each batch for a
+	 *         streamed query, 0 else
+	 * @since 1.16
+	 */
+	public int getFetchSize() {
+		return fetchsize;
+	}
+
+	/**
+	 * restricts the query to rows strictly after the given key in the ordering of
+	 * the query. The key is typically the values of the order by fields for the
+	 * last row of the previous page. For paging to be exact, the fields of the
+	 * ordering should be unique together (typically, the ordering ends with the
+	 * id of the object), and should not be null.<br>
+	 * For an ordering (A,B), the condition added is (A after a) OR (A = a AND B
+	 * after b).
+	 * 
+	 * @param lastkey values of the order by fields for the last row of the
+	 *                previous page, in the order of the ordering
+	 * @since 1.16
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public void setKeysetStart(Object[] lastkey) {
+		if (lastkey == null)
+			throw new RuntimeException("Key for keyset paging is null");
+		if (lastkey.length != orderby.size())
+			throw new RuntimeException("Key for keyset paging has " + lastkey.length + " values, while ordering has "
+					+ orderby.size() + " fields");
+		if (lastkey.length == 0)
+			throw new RuntimeException("Keyset paging requires an ordering");
+		OrQueryCondition keysetcondition = new OrQueryCondition();
+		for (int i = 0; i < orderby.size(); i++) {
+			AndQueryCondition afterkey = new AndQueryCondition();
+			for (int j = 0; j <= i; j++) {
+				OrderBy thisorderby = orderby.get(j);
+				if (lastkey[j] == null)
+					throw new RuntimeException("Key value for keyset paging is null for field "
+							+ thisorderby.getField().getName());
+				QueryOperator operator;
+				if (j < i) {
+					operator = new QueryOperatorEqual();
+				} else {
+					operator = (thisorderby.isDescending() ? new QueryOperatorSmallerThan()
+							: new QueryOperatorGreaterThan());
+				}
+				afterkey.addCondition(new SimpleQueryCondition(thisorderby.getAlias(), thisorderby.getField(), operator,
+						lastkey[j]));
+			}
+			keysetcondition.addCondition(afterkey);
+		}
+		if (this.qd == null) {
+			this.qd = keysetcondition;
+		} else {
+			this.qd = new AndQueryCondition(this.qd, keysetcondition);
+		}
+	}
+
+	/**
+	 * a field used for ordering the rows of the query
+	 * 
+	 * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
+	 *         SAS</a>
+	 * @since 1.16
+	 *
+	 */
+	public static class OrderBy {
+		private TableAlias alias;
+		private StoredFieldSchema<?> field;
+		private boolean descending;
+
+		private OrderBy(TableAlias alias, StoredFieldSchema<?> field, boolean descending) {
+			this.alias = alias;
+			this.field = field;
+			this.descending = descending;
+		}
+
+		/**
+		 * @return the alias of the table holding the field
+		 */
+		public TableAlias getAlias() {
+			return alias;
+		}
+
+		/**
+		 * @return the field to order by
+		 */
+		public StoredFieldSchema<?> getField() {
+			return field;
+		}
+
+		/**
+		 * @return true if rows are ordered in descending order of the field
+		 */
+		public boolean isDescending() {
+			return descending;
+		}
+	}
 }
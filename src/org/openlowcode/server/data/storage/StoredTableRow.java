@@ -84,6 +84,14 @@ public class StoredTableRow {
 		return field.castToType(thisfield.getPayload());
 	}
 
+	/**
+	 * @return all the fields of the row, in the order of the table schema
+	 * @since 1.16
+	 */
+	public NamedList<StoredField> getAllStoredFields() {
+		return this.payloadbyName;
+	}
+
 	/**
 	 * get the table schema this row relates to
 	 * 
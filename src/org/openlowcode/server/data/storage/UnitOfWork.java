@@ -0,0 +1,361 @@
+/********************************************************************************
+ * Copyright (c) 2020 [Open Lowcode SAS](https://openlowcode.com/)
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0 .
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ********************************************************************************/
+
+package org.openlowcode.server.data.storage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import org.openlowcode.server.data.storage.standardjdbc.SQLQueryConditionGenerator;
+import org.openlowcode.tools.misc.NamedList;
+
+/**
+ * Collects the inserts, updates and deletes performed during an action, and
+ * writes them to the database as batches in a single transaction. Writes are
+ * grouped per table and type of operation, a batch being sent with the
+ * efficient array processing of {@link MultipleTableRow}.<br>
+ * Writes on the same table are performed in the order they were requested.
+ * Writes on different tables may be reordered, as the data model does not use
+ * foreign keys.<br>
+ * The unit of work is flushed by the {@link PersistenceGateway} before any
+ * other access to the database by the thread (select, direct write, sequence),
+ * so that the action always reads its own changes, when it holds too many rows,
+ * and at the end of the action. It is discarded if the action fails.<br>
+ * Each write may come with an action to perform once the write is committed
+ * (e.g. invalidating a cache). Those actions are performed after the commit of
+ * the unit of work, or handed over to the caller if the unit of work is written
+ * in a transaction managed by the caller. They are dropped if the writes are
+ * rolled back.<br>
+ * <b>Note:</b> if the action is not performed in a single transaction (see
+ * {@link PersistenceGateway#startActionTransaction()}), each flush is committed
+ * on its own. A flush triggered in the middle of the action by a select or by
+ * the number of pending rows commits part of the writes of the action, that are
+ * kept even if the action fails afterwards. Also, an error on a write (e.g. a
+ * constraint violation) is only raised when the unit of work is flushed, not
+ * by the call adding the write.
+ *
+ * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
+ *         SAS</a>
+ * @since 1.16
+ *
+ */
+public class UnitOfWork {
+	private static Logger logger = Logger.getLogger(UnitOfWork.class.getName());
+	/**
+	 * default number of rows kept in memory before the unit of work is flushed
+	 */
+	public static final int DEFAULT_MAX_PENDING_ROWS = 1000;
+
+	private static final int INSERT = 0;
+	private static final int UPDATE = 1;
+	private static final int DELETE = 2;
+
+	private static AtomicLong flushes = new AtomicLong(0);
+	private static AtomicLong batchesflushed = new AtomicLong(0);
+	private static AtomicLong rowsflushed = new AtomicLong(0);
+	private static AtomicLong discards = new AtomicLong(0);
+
+	private int maxpendingrows;
+	private ArrayList<PendingBatch> batches;
+	private HashMap<String, PendingBatch> lastbatchbytable;
+	private int pendingrows;
+
+	/**
+	 * creates an empty unit of work
+	 *
+	 * @param maxpendingrows number of rows after which the unit of work should be
+	 *                       flushed
+	 */
+	UnitOfWork(int maxpendingrows) {
+		if (maxpendingrows <= 0)
+			throw new RuntimeException("Maximum pending rows for unit of work should be strictly positive, got "
+					+ maxpendingrows);
+		this.maxpendingrows = maxpendingrows;
+		this.batches = new ArrayList<PendingBatch>();
+		this.lastbatchbytable = new HashMap<String, PendingBatch>();
+		this.pendingrows = 0;
+	}
+
+	/**
+	 * adds an insert to the unit of work
+	 *
+	 * @param row         the row to insert. It should not be modified after this
+	 *                    call
+	 * @param aftercommit an action to perform with the storage once the write is
+	 *                    committed (can be null)
+	 */
+	public void addInsert(StoredTableRow row, Consumer<PersistentStorage> aftercommit) {
+		PendingBatch batch = getBatch(row.getStoredTableSchema(), INSERT, null);
+		batch.addRow(row.getAllStoredFields(), null, aftercommit);
+		pendingrows++;
+	}
+
+	/**
+	 * adds an update to the unit of work
+	 *
+	 * @param row         the new values of the row. It should not be modified
+	 *                    after this call
+	 * @param condition   condition selecting the row to update
+	 * @param aftercommit an action to perform with the storage once the write is
+	 *                    committed (can be null)
+	 */
+	public void addUpdate(StoredTableRow row, QueryCondition condition, Consumer<PersistentStorage> aftercommit) {
+		PendingBatch batch = getBatch(row.getStoredTableSchema(), UPDATE, condition);
+		batch.addRow(row.getAllStoredFields(), condition, aftercommit);
+		pendingrows++;
+	}
+
+	/**
+	 * adds a delete to the unit of work
+	 *
+	 * @param schema      the table to delete the row from
+	 * @param condition   condition selecting the row to delete
+	 * @param aftercommit an action to perform with the storage once the write is
+	 *                    committed (can be null)
+	 */
+	public void addDelete(StoredTableSchema schema, QueryCondition condition, Consumer<PersistentStorage> aftercommit) {
+		PendingBatch batch = getBatch(schema, DELETE, condition);
+		batch.addRow(null, condition, aftercommit);
+		pendingrows++;
+	}
+
+	/**
+	 * gets the batch to add a row to. This is the last batch of the table if it is
+	 * for the same operation with the same shape of condition, else a new batch
+	 * added at the end of the unit of work, so that writes on a table are kept in
+	 * order
+	 *
+	 * @param schema    table of the row
+	 * @param operation type of operation (insert, update or delete)
+	 * @param condition condition of the update or delete, null for an insert
+	 * @return the batch to add the row to
+	 */
+	private PendingBatch getBatch(StoredTableSchema schema, int operation, QueryCondition condition) {
+		String conditionshape = null;
+		if (condition != null) {
+			StringBuffer conditionbuffer = new StringBuffer();
+			condition.accept(new SQLQueryConditionGenerator(conditionbuffer));
+			conditionshape = conditionbuffer.toString();
+		}
+		PendingBatch lastbatch = lastbatchbytable.get(schema.getName());
+		if (lastbatch != null)
+			if (lastbatch.operation == operation)
+				if (conditionshape == null ? lastbatch.conditionshape == null
+						: conditionshape.equals(lastbatch.conditionshape))
+					return lastbatch;
+		PendingBatch newbatch = new PendingBatch(schema, operation, conditionshape);
+		batches.add(newbatch);
+		lastbatchbytable.put(schema.getName(), newbatch);
+		return newbatch;
+	}
+
+	/**
+	 * @return true if the number of pending rows is above the maximum, and the
+	 *         unit of work should be flushed
+	 */
+	public boolean isFull() {
+		return pendingrows >= maxpendingrows;
+	}
+
+	/**
+	 * @return true if there are writes not yet sent to the database
+	 */
+	public boolean hasPendingWrites() {
+		return pendingrows > 0;
+	}
+
+	/**
+	 * writes all pending rows to the database in a single transaction, and
+	 * empties the unit of work. If an error occurs, the transaction is rolled
+	 * back, the pending rows and their actions after commit are discarded and an
+	 * exception is thrown
+	 *
+	 * @param storage          a storage on the primary database
+	 * @param outertransaction true if the storage is in a transaction managed by
+	 *                         the caller. Rows are then written in this
+	 *                         transaction, that is not committed nor rolled back
+	 * @return the actions to perform once the transaction of the caller is
+	 *         committed if outer transaction is true, else an empty list, the
+	 *         actions having been performed after the commit of the unit of
+	 *         work
+	 */
+	public ArrayList<Consumer<PersistentStorage>> flush(PersistentStorage storage, boolean outertransaction) {
+		ArrayList<Consumer<PersistentStorage>> aftercommits = new ArrayList<Consumer<PersistentStorage>>();
+		if (pendingrows == 0)
+			return aftercommits;
+		long start = System.currentTimeMillis();
+		int batchnumber = batches.size();
+		int rownumber = pendingrows;
+		ArrayList<PendingBatch> batchestowrite = batches;
+		discard(false);
+		for (int i = 0; i < batchestowrite.size(); i++)
+			aftercommits.addAll(batchestowrite.get(i).aftercommits);
+		if (outertransaction) {
+			try {
+				for (int i = 0; i < batchestowrite.size(); i++)
+					batchestowrite.get(i).write(storage);
+			} catch (RuntimeException e) {
+				discards.incrementAndGet();
+				throw e;
+			}
+			countFlush(batchnumber, rownumber, start);
+			return aftercommits;
+		}
+		storage.setAutoCommit(false);
+		try {
+			for (int i = 0; i < batchestowrite.size(); i++)
+				batchestowrite.get(i).write(storage);
+			storage.commitTransaction();
+		} catch (RuntimeException e) {
+			logger.warning("Error while writing unit of work of " + rownumber + " rows, rolling back: "
+					+ e.getMessage());
+			try {
+				storage.rollbackTransaction();
+			} catch (RuntimeException rollbackexception) {
+				logger.warning("Error during rollback of unit of work " + rollbackexception.getMessage());
+			}
+			discards.incrementAndGet();
+			throw e;
+		} finally {
+			storage.setAutoCommit(true);
+		}
+		countFlush(batchnumber, rownumber, start);
+		performAfterCommit(storage, aftercommits);
+		return new ArrayList<Consumer<PersistentStorage>>();
+	}
+
+	/**
+	 * performs the actions to do after the commit of writes. The writes being
+	 * already committed, an error in an action is logged and does not prevent
+	 * the other actions from being performed
+	 *
+	 * @param storage      a storage on the primary database, not in a
+	 *                     transaction
+	 * @param aftercommits actions to perform
+	 */
+	static void performAfterCommit(PersistentStorage storage, List<Consumer<PersistentStorage>> aftercommits) {
+		for (int i = 0; i < aftercommits.size(); i++)
+			try {
+				aftercommits.get(i).accept(storage);
+			} catch (RuntimeException e) {
+				logger.warning("Error in action after commit " + e.getClass().getName() + ": " + e.getMessage());
+			}
+	}
+
+	/**
+	 * records a successful flush in statistics
+	 *
+	 * @param batchnumber number of batches written
+	 * @param rownumber   number of rows written
+	 * @param start       start time of the flush
+	 */
+	private static void countFlush(int batchnumber, int rownumber, long start) {
+		flushes.incrementAndGet();
+		batchesflushed.addAndGet(batchnumber);
+		rowsflushed.addAndGet(rownumber);
+		logger.fine("Unit of work flushed " + rownumber + " rows in " + batchnumber + " batches in "
+				+ (System.currentTimeMillis() - start) + "ms");
+	}
+
+	/**
+	 * discards all pending rows without writing them to the database
+	 */
+	public void discard() {
+		discard(true);
+	}
+
+	/**
+	 * empties the unit of work
+	 *
+	 * @param count true if the discard should be counted in statistics
+	 */
+	private void discard(boolean count) {
+		if (count)
+			if (pendingrows > 0) {
+				discards.incrementAndGet();
+				logger.info("Discarded unit of work of " + pendingrows + " rows");
+			}
+		this.batches = new ArrayList<PendingBatch>();
+		this.lastbatchbytable = new HashMap<String, PendingBatch>();
+		this.pendingrows = 0;
+	}
+
+	/**
+	 * @return a one line summary of the activity of all units of work
+	 */
+	public static String getStatistics() {
+		return "flushes=" + flushes.get() + ", batches=" + batchesflushed.get() + ", rows=" + rowsflushed.get()
+				+ ", discarded=" + discards.get();
+	}
+
+	/**
+	 * a series of rows with the same operation on the same table, sent to the
+	 * database as a single batch
+	 *
+	 */
+	private static class PendingBatch {
+		private String tablename;
+		private int operation;
+		private String conditionshape;
+		private MultipleTableRow rows;
+		private int rowcount;
+		private ArrayList<Consumer<PersistentStorage>> aftercommits;
+
+		private PendingBatch(StoredTableSchema schema, int operation, String conditionshape) {
+			this.tablename = schema.getName();
+			this.operation = operation;
+			this.conditionshape = conditionshape;
+			this.rows = new MultipleTableRow(schema);
+			this.rowcount = 0;
+			this.aftercommits = new ArrayList<Consumer<PersistentStorage>>();
+		}
+
+		@SuppressWarnings("rawtypes")
+		private void addRow(
+				NamedList<StoredField> fields,
+				QueryCondition condition,
+				Consumer<PersistentStorage> aftercommit) {
+			if (rowcount > 0)
+				rows.setNextQuery();
+			if (fields != null)
+				rows.addAllStoredFieldToCurrentRow(fields);
+			if (condition != null)
+				rows.addQueryCondition(condition);
+			if (aftercommit != null)
+				aftercommits.add(aftercommit);
+			rowcount++;
+		}
+
+		/**
+		 * writes the batch. As the writes were requested earlier, the error is
+		 * completed with the table and operation that failed
+		 *
+		 * @param storage a storage on the primary database
+		 */
+		private void write(PersistentStorage storage) {
+			try {
+				if (operation == INSERT)
+					storage.MassiveInsertOnDB(rows);
+				if (operation == UPDATE)
+					storage.MassiveUpdateOnDB(rows);
+				if (operation == DELETE)
+					storage.MassiveDeleteOnDB(rows);
+			} catch (RuntimeException e) {
+				String operationname = (operation == INSERT ? "insert" : (operation == UPDATE ? "update" : "delete"));
+				throw new RuntimeException("Error in deferred " + operationname + " of " + rowcount
+						+ " rows on table " + tablename + ": " + e.getMessage(), e);
+			}
+		}
+	}
+}
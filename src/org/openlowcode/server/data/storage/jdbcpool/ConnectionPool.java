@@ -43,4 +43,18 @@ public interface ConnectionPool {
 	 * will free all connections for the current thread
 	 */
 	public void freecurrentthreadconnections();
+
+	/**
+	 * @param connection a connection of the pool
+	 * @return the cache of prepared statements of the connection, or null if
+	 *         statements are not cached
+	 * @since 1.16
+	 */
+	public PreparedStatementCache getStatementCache(Connection connection);
+
+	/**
+	 * @return a summary of the statistics of the pool for logs
+	 * @since 1.16
+	 */
+	public String getStatistics();
 }
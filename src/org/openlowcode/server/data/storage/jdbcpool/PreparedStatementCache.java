@@ -0,0 +1,184 @@
+/********************************************************************************
+ * Copyright (c) 2020 [Open Lowcode SAS](https://openlowcode.com/)
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0 .
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ********************************************************************************/
+
+package org.openlowcode.server.data.storage.jdbcpool;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * A cache of prepared statements for one connection of the pool, keyed by the
+ * SQL text. Most of the queries of an application are the same few hundred
+ * query shapes, and preparing them again for each execution is costly for the
+ * database driver.<br>
+ * A statement is borrowed for an execution, and released when the execution is
+ * finished (for a select, when the result set is closed). A statement borrowed
+ * is removed from the cache, so that a query executed again while the result of
+ * the previous execution is still being read gets its own statement. Only idle
+ * statements are kept, up to the maximum size, the least recently used being
+ * closed first.
+ *
+ * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
+ *         SAS</a>
+ * @since 1.16
+ *
+ */
+public class PreparedStatementCache {
+	private static Logger logger = Logger.getLogger(PreparedStatementCache.class.getName());
+	private Connection connection;
+	private int maxsize;
+	private LinkedHashMap<String, PreparedStatement> idlestatements;
+	private boolean invalidated = false;
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	/**
+	 * creates an empty cache for the connection
+	 *
+	 * @param connection the connection the statements are prepared on
+	 * @param maxsize    maximum number of idle statements kept
+	 */
+	public PreparedStatementCache(Connection connection, int maxsize) {
+		this.connection = connection;
+		this.maxsize = maxsize;
+		// access order, so that the first element is the least recently used
+		this.idlestatements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true);
+	}
+
+	/**
+	 * @return the connection the statements are prepared on
+	 */
+	public Connection getConnection() {
+		return connection;
+	}
+
+	/**
+	 * gets a statement for the query, from the cache if an idle statement exists,
+	 * or prepared on the connection else.
+	 *
+	 * @param stringquery the SQL text of the query
+	 * @return a statement without parameters set, to release after execution with
+	 *         {@link #releaseStatement(String, PreparedStatement)}
+	 * @throws SQLException if the statement cannot be prepared
+	 */
+	public PreparedStatement borrowStatement(String stringquery) throws SQLException {
+		synchronized (this) {
+			PreparedStatement statement = idlestatements.remove(stringquery);
+			if (statement != null) {
+				if (!statement.isClosed()) {
+					hits++;
+					return statement;
+				}
+			}
+			misses++;
+		}
+		return connection.prepareStatement(stringquery);
+	}
+
+	/**
+	 * gives back a statement after execution. The parameters of the statement are
+	 * cleared, and the statement is kept for next execution of the same query. If
+	 * an idle statement already exists for the query, or if the cache was
+	 * invalidated, the statement is closed.
+	 *
+	 * @param stringquery the SQL text of the query
+	 * @param statement   statement borrowed for the query
+	 * @throws SQLException if the statement cannot be cleared or closed
+	 */
+	public void releaseStatement(String stringquery, PreparedStatement statement) throws SQLException {
+		if (statement.isClosed())
+			return;
+		statement.clearParameters();
+		statement.clearBatch();
+		statement.clearWarnings();
+		PreparedStatement statementtoclose = null;
+		PreparedStatement evictedstatement = null;
+		synchronized (this) {
+			if ((invalidated) || (maxsize <= 0) || (idlestatements.containsKey(stringquery))) {
+				statementtoclose = statement;
+			} else {
+				idlestatements.put(stringquery, statement);
+				if (idlestatements.size() > maxsize) {
+					Iterator<Map.Entry<String, PreparedStatement>> eldest = idlestatements.entrySet().iterator();
+					evictedstatement = eldest.next().getValue();
+					eldest.remove();
+					evictions++;
+				}
+			}
+		}
+		if (statementtoclose != null)
+			statementtoclose.close();
+		if (evictedstatement != null)
+			evictedstatement.close();
+	}
+
+	/**
+	 * closes a statement that should not be used anymore, typically after an error
+	 * during execution
+	 *
+	 * @param statement statement borrowed
+	 */
+	public void discardStatement(PreparedStatement statement) {
+		try {
+			statement.close();
+		} catch (SQLException e) {
+			logger.warning("Error while closing discarded statement " + e.getMessage());
+		}
+	}
+
+	/**
+	 * closes all idle statements. Statements borrowed will be closed when
+	 * released. This is called when the connection is closed or reset.
+	 */
+	public void invalidate() {
+		PreparedStatement[] statementstoclose;
+		synchronized (this) {
+			invalidated = true;
+			statementstoclose = idlestatements.values().toArray(new PreparedStatement[0]);
+			idlestatements.clear();
+		}
+		for (int i = 0; i < statementstoclose.length; i++)
+			discardStatement(statementstoclose[i]);
+	}
+
+	/**
+	 * @return the number of executions that got a statement from the cache
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return the number of executions that had to prepare a statement
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return the number of statements closed because the cache was full
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * @return the number of idle statements currently in the cache
+	 */
+	public synchronized int getSize() {
+		return idlestatements.size();
+	}
+}
@@ -0,0 +1,667 @@
+/********************************************************************************
+ * Copyright (c) 2020 [Open Lowcode SAS](https://openlowcode.com/)
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0 .
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ********************************************************************************/
+
+package org.openlowcode.server.data.storage.jdbcpool;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * A connection pool where threads waiting for a connection are queued and
+ * parked, instead of polling the pool. The pool works without a global lock:
+ * <ul>
+ * <li>free connections are kept in an idle queue. The last connection given
+ * back is used first, so that the least used connections can time out on the
+ * database side without impact</li>
+ * <li>a thread that cannot get a connection is added to a queue of waiters and
+ * parked. When a connection is given back, it is handed directly to the first
+ * waiter, who is woken up</li>
+ * <li>as with the booking of {@link SimpleConnectionPool}, a thread arriving
+ * while other threads are waiting does not take a free connection before them:
+ * connections are given to waiters in their order of arrival</li>
+ * </ul>
+ * The pool keeps histograms of the time waited to get a connection and of the
+ * time connections are held, and logs a warning with the stack of the holding
+ * thread when a connection is held longer than the leak threshold.
+ *
+ * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
+ *         SAS</a>
+ * @since 1.16
+ *
+ */
+public class QueuedConnectionPool
+		implements
+		ConnectionPool {
+	private static Logger logger = Logger.getLogger(QueuedConnectionPool.class.getCanonicalName());
+	/**
+	 * default time to wait for a connection before giving up (50s in ms)
+	 */
+	public static final int DEFAULT_TIMEOUT = 50000;
+	/**
+	 * default time after which a connection held is reported as a potential leak
+	 * (60s in ms)
+	 */
+	public static final int DEFAULT_LEAK_THRESHOLD = 60000;
+	private static final long[] HISTOGRAM_LIMITS = new long[] { 1, 10, 100, 1000, 10000 };
+	private static final String[] HISTOGRAM_LABELS = new String[] { "<1ms", "<10ms", "<100ms", "<1s", "<10s",
+			">=10s" };
+
+	/**
+	 * a connection of the pool with its status
+	 *
+	 * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
+	 *         SAS</a>
+	 *
+	 */
+	private class PooledConnection {
+		private int index;
+		private volatile Connection connection;
+		private volatile PreparedStatementCache statementcache;
+		private AtomicReference<Thread> holder = new AtomicReference<Thread>();
+		private volatile long borrowtime;
+		private volatile boolean sick = false;
+		private volatile boolean leakreported = false;
+
+		/**
+		 * @param index      index of the connection in the pool, for logs
+		 * @param connection the JDBC connection
+		 */
+		private PooledConnection(int index, Connection connection) {
+			this.index = index;
+			this.connection = connection;
+			this.statementcache = new PreparedStatementCache(connection, statementcachesize);
+		}
+
+		/**
+		 * books the connection for a thread
+		 *
+		 * @param thread the thread using the connection
+		 */
+		private void book(Thread thread) {
+			this.borrowtime = System.currentTimeMillis();
+			this.leakreported = false;
+			this.holder.set(thread);
+		}
+
+		/**
+		 * recreates the JDBC connection if it was marked as sick after an SQL error
+		 *
+		 * @throws SQLException if the connection cannot be recreated
+		 */
+		private void cure() throws SQLException {
+			if (sick) {
+				logger.warning("Resetting connection " + index + " after SQL Exception ");
+				retireStatementCache(statementcache);
+				try {
+					this.connection.close();
+				} catch (SQLException e) {
+					logger.warning("  **** Error during closing of sick SQL Connection " + e.getSQLState() + "/"
+							+ e.getErrorCode() + "/" + e.getMessage());
+				}
+				this.connection = createConnection();
+				this.statementcache = new PreparedStatementCache(connection, statementcachesize);
+				this.sick = false;
+			}
+		}
+	}
+
+	/**
+	 * a thread waiting for a connection. The waiter is either still waiting,
+	 * assigned a connection by a thread giving back a connection, or cancelled
+	 * after a timeout.
+	 *
+	 * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
+	 *         SAS</a>
+	 *
+	 */
+	private static class Waiter {
+		private Thread thread;
+		private AtomicReference<Object> state = new AtomicReference<Object>();
+
+		private Waiter() {
+			this.thread = Thread.currentThread();
+		}
+
+		/**
+		 * @param connection a free connection
+		 * @return true if the waiter took the connection, false if it was cancelled
+		 *         or already assigned
+		 */
+		private boolean assign(PooledConnection connection) {
+			if (state.compareAndSet(null, connection)) {
+				connection.book(thread);
+				LockSupport.unpark(thread);
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * @return true if the waiter is cancelled, false if a connection was
+		 *         assigned to it in the meantime
+		 */
+		private boolean cancel() {
+			return state.compareAndSet(null, this);
+		}
+
+		/**
+		 * @return the connection assigned, or null if still waiting
+		 */
+		private PooledConnection getAssigned() {
+			Object current = state.get();
+			if (current instanceof PooledConnection)
+				return (PooledConnection) current;
+			return null;
+		}
+	}
+
+	/**
+	 * a histogram of durations by order of magnitude
+	 *
+	 * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
+	 *         SAS</a>
+	 *
+	 */
+	private static class TimeHistogram {
+		private AtomicLongArray buckets = new AtomicLongArray(HISTOGRAM_LABELS.length);
+		private AtomicLong total = new AtomicLong(0);
+		private AtomicLong max = new AtomicLong(0);
+
+		/**
+		 * @param duration a duration in ms
+		 */
+		private void record(long duration) {
+			int bucket = HISTOGRAM_LIMITS.length;
+			for (int i = 0; i < HISTOGRAM_LIMITS.length; i++)
+				if (duration < HISTOGRAM_LIMITS[i]) {
+					bucket = i;
+					break;
+				}
+			buckets.incrementAndGet(bucket);
+			total.addAndGet(duration);
+			long currentmax = max.get();
+			while (duration > currentmax) {
+				if (max.compareAndSet(currentmax, duration))
+					break;
+				currentmax = max.get();
+			}
+		}
+
+		private long[] getCounts() {
+			long[] counts = new long[buckets.length()];
+			for (int i = 0; i < counts.length; i++)
+				counts[i] = buckets.get(i);
+			return counts;
+		}
+
+		@Override
+		public String toString() {
+			StringBuffer result = new StringBuffer();
+			long count = 0;
+			for (int i = 0; i < buckets.length(); i++) {
+				long bucketcount = buckets.get(i);
+				count += bucketcount;
+				if (i > 0)
+					result.append(' ');
+				result.append(HISTOGRAM_LABELS[i]);
+				result.append(':');
+				result.append(bucketcount);
+			}
+			result.append(", avg=");
+			result.append(count > 0 ? (total.get() / count) + "ms" : "N/A");
+			result.append(", max=");
+			result.append(max.get());
+			result.append("ms");
+			return result.toString();
+		}
+	}
+
+	private String url;
+	private String user;
+	private String password;
+	private int maxnumber;
+	private int timeout;
+	private int leakthreshold;
+	private int statementcachesize;
+	private CopyOnWriteArrayList<PooledConnection> connections;
+	private AtomicInteger connectionnumber;
+	private ConcurrentLinkedDeque<PooledConnection> idleconnections;
+	private ConcurrentLinkedQueue<Waiter> waiters;
+	private AtomicInteger waiternumber;
+	private TimeHistogram borrowwait;
+	private TimeHistogram holdtime;
+	private AtomicLong timeouts;
+	private AtomicLong leakwarnings;
+	private AtomicLong lastleakcheck;
+	private long retiredstatementcachehits = 0;
+	private long retiredstatementcachemisses = 0;
+	private long retiredstatementcacheevictions = 0;
+
+	/**
+	 * Creates a queued connection pool for a JDBC database
+	 *
+	 * @param url                URL of the database
+	 * @param user               user to create the connection
+	 * @param password           password to create the connection
+	 * @param minnumber          minimum number of connections in the pool
+	 * @param maxnumber          maximum number of connections in the pool
+	 * @param statementcachesize maximum number of idle prepared statements kept
+	 *                           per connection (0 to not cache statements)
+	 * @param timeout            maximum time to wait for a connection in ms
+	 * @param leakthreshold      time in ms after which a connection held is
+	 *                           reported as a potential leak
+	 * @throws SQLException SQL Exception if any error is encountered
+	 */
+	public QueuedConnectionPool(
+			String url,
+			String user,
+			String password,
+			int minnumber,
+			int maxnumber,
+			int statementcachesize,
+			int timeout,
+			int leakthreshold) throws SQLException {
+		if (maxnumber < 1)
+			throw new RuntimeException("Maximum number of connections should be at least 1, got " + maxnumber);
+		this.url = url;
+		this.user = user;
+		this.password = password;
+		this.maxnumber = maxnumber;
+		this.statementcachesize = statementcachesize;
+		this.timeout = timeout;
+		this.leakthreshold = leakthreshold;
+		this.connections = new CopyOnWriteArrayList<PooledConnection>();
+		this.connectionnumber = new AtomicInteger(0);
+		this.idleconnections = new ConcurrentLinkedDeque<PooledConnection>();
+		this.waiters = new ConcurrentLinkedQueue<Waiter>();
+		this.waiternumber = new AtomicInteger(0);
+		this.borrowwait = new TimeHistogram();
+		this.holdtime = new TimeHistogram();
+		this.timeouts = new AtomicLong(0);
+		this.leakwarnings = new AtomicLong(0);
+		this.lastleakcheck = new AtomicLong(System.currentTimeMillis());
+		for (int i = 0; i < Math.min(minnumber, maxnumber); i++) {
+			connectionnumber.incrementAndGet();
+			PooledConnection pooledconnection = new PooledConnection(i, createConnection());
+			connections.add(pooledconnection);
+			idleconnections.offerLast(pooledconnection);
+			logger.info("initiated a connection with database url = " + url + ", index = " + i + ", minnumber = "
+					+ minnumber + ", maxnumber = " + maxnumber);
+		}
+	}
+
+	private Connection createConnection() throws SQLException {
+		Connection connection;
+		if (user == null) {
+			logger.info("trying to create connection without user for url = " + url);
+			connection = DriverManager.getConnection(url);
+		} else {
+			logger.info("trying to create connection with user = " + user + " for url = " + url);
+			connection = DriverManager.getConnection(url, user, password);
+		}
+		if (connection == null)
+			throw new SQLException("Null connection with user = " + user + " for url = " + url);
+		logger.info("connection succeeded URL = '" + url + "' ");
+		return connection;
+	}
+
+	@Override
+	public Connection getConnectionWithRetry() throws SQLException, InterruptedException {
+		long starttime = System.currentTimeMillis();
+		// leaks are checked at most every second, by the thread asking for a connection
+		long lastcheck = lastleakcheck.get();
+		if (starttime - lastcheck >= 1000)
+			if (lastleakcheck.compareAndSet(lastcheck, starttime))
+				checkLeaks();
+		PooledConnection pooledconnection = borrow();
+		if (pooledconnection == null) {
+			timeouts.incrementAndGet();
+			logger.warning("could not book connection for Thread " + Thread.currentThread().getId() + " after "
+					+ timeout + "ms " + getStatistics());
+			checkLeaks();
+			return null;
+		}
+		long waitingtime = System.currentTimeMillis() - starttime;
+		borrowwait.record(waitingtime);
+		try {
+			pooledconnection.cure();
+		} catch (SQLException e) {
+			// the connection could not be recreated, its place is freed for another try
+			pooledconnection.holder.set(null);
+			connections.remove(pooledconnection);
+			connectionnumber.decrementAndGet();
+			dispatch();
+			throw e;
+		}
+		logger.fine("Connection " + pooledconnection.index + " assigned to Thread " + Thread.currentThread().getId()
+				+ " after waiting time of " + waitingtime + "ms");
+		return pooledconnection.connection;
+	}
+
+	/**
+	 * gets a free connection, creates one if the pool is not full, or waits for
+	 * a connection to be given back
+	 *
+	 * @return the connection, or null if the timeout was reached
+	 * @throws SQLException         if a new connection could not be created
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	private PooledConnection borrow() throws SQLException, InterruptedException {
+		// a thread does not take a free connection before threads already waiting
+		if (waiternumber.get() == 0) {
+			PooledConnection pooledconnection = idleconnections.pollFirst();
+			if (pooledconnection != null) {
+				pooledconnection.book(Thread.currentThread());
+				return pooledconnection;
+			}
+		}
+		PooledConnection newconnection = createConnectionIfPossible();
+		if (newconnection != null)
+			return newconnection;
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+		Waiter waiter = new Waiter();
+		waiternumber.incrementAndGet();
+		waiters.offer(waiter);
+		try {
+			while (true) {
+				dispatch();
+				PooledConnection assigned = waiter.getAssigned();
+				if (assigned != null)
+					return assigned;
+				long remaining = deadline - System.nanoTime();
+				boolean interrupted = Thread.interrupted();
+				if (remaining <= 0 || interrupted) {
+					if (waiter.cancel()) {
+						waiters.remove(waiter);
+						if (interrupted)
+							throw new InterruptedException("Interrupted while waiting for a connection");
+						return null;
+					}
+					// a connection was assigned just before the cancellation
+					assigned = waiter.getAssigned();
+					if (interrupted) {
+						checkin(assigned);
+						throw new InterruptedException("Interrupted while waiting for a connection");
+					}
+					return assigned;
+				}
+				LockSupport.parkNanos(this, remaining);
+			}
+		} finally {
+			waiternumber.decrementAndGet();
+		}
+	}
+
+	/**
+	 * creates a new connection if the maximum number of connections is not
+	 * reached
+	 *
+	 * @return the new connection, booked for the current thread, or null if the
+	 *         pool is full
+	 * @throws SQLException if the connection could not be created
+	 */
+	private PooledConnection createConnectionIfPossible() throws SQLException {
+		while (true) {
+			int current = connectionnumber.get();
+			if (current >= maxnumber)
+				return null;
+			if (connectionnumber.compareAndSet(current, current + 1)) {
+				try {
+					PooledConnection pooledconnection = new PooledConnection(current, createConnection());
+					pooledconnection.book(Thread.currentThread());
+					connections.add(pooledconnection);
+					logger.info("initiated a connection with database url = " + url + ", index = " + current
+							+ " for Thread " + Thread.currentThread().getId());
+					return pooledconnection;
+				} catch (SQLException | RuntimeException e) {
+					connectionnumber.decrementAndGet();
+					throw e;
+				}
+			}
+		}
+	}
+
+	/**
+	 * hands free connections to waiting threads, in their order of arrival. This
+	 * is called by threads giving back a connection, and by waiting threads after
+	 * they are queued, so that a connection given back just before a thread is
+	 * queued is not forgotten.
+	 */
+	private void dispatch() {
+		while (!waiters.isEmpty()) {
+			PooledConnection pooledconnection = idleconnections.pollFirst();
+			if (pooledconnection == null)
+				return;
+			boolean assigned = false;
+			Waiter waiter = waiters.poll();
+			while (waiter != null) {
+				if (waiter.assign(pooledconnection)) {
+					assigned = true;
+					break;
+				}
+				waiter = waiters.poll();
+			}
+			// all waiters were cancelled, loop again in case a new one was queued
+			if (!assigned)
+				idleconnections.offerFirst(pooledconnection);
+		}
+	}
+
+	/**
+	 * finds the pooled connection for a JDBC connection
+	 *
+	 * @param connection a JDBC connection of the pool
+	 * @return the pooled connection, or null if not found
+	 */
+	private PooledConnection getPooledConnection(Connection connection) {
+		for (PooledConnection pooledconnection : connections)
+			if (pooledconnection.connection == connection)
+				return pooledconnection;
+		return null;
+	}
+
+	/**
+	 * gives back a connection to the pool
+	 *
+	 * @param pooledconnection the connection
+	 */
+	private void checkin(PooledConnection pooledconnection) {
+		Thread holder = pooledconnection.holder.get();
+		if (holder == null || !pooledconnection.holder.compareAndSet(holder, null)) {
+			logger.warning("Connection " + pooledconnection.index + " given back while not booked");
+			return;
+		}
+		long held = System.currentTimeMillis() - pooledconnection.borrowtime;
+		holdtime.record(held);
+		if (held >= leakthreshold)
+			logger.warning("Connection " + pooledconnection.index + " given back by thread " + holder.getId() + " ("
+					+ holder.getName() + ") after being held " + held + "ms");
+		logger.fine("releasing connection index = " + pooledconnection.index + " for booking thread "
+				+ holder.getId() + " after " + held + "ms");
+		idleconnections.offerFirst(pooledconnection);
+		dispatch();
+	}
+
+	@Override
+	public void checkin(Connection connection) {
+		PooledConnection pooledconnection = getPooledConnection(connection);
+		if (pooledconnection == null) {
+			logger.warning("Connection given back is not part of the pool");
+			return;
+		}
+		checkin(pooledconnection);
+	}
+
+	@Override
+	public void checkinandreset(Connection connection) {
+		PooledConnection pooledconnection = getPooledConnection(connection);
+		if (pooledconnection == null) {
+			logger.warning("Connection given back after SQL error is not part of the pool");
+			return;
+		}
+		logger.warning("releasing connection index = " + pooledconnection.index + " after SQL Error");
+		pooledconnection.sick = true;
+		checkin(pooledconnection);
+	}
+
+	@Override
+	public void freecurrentthreadconnections() {
+		Thread currentthread = Thread.currentThread();
+		for (PooledConnection pooledconnection : connections)
+			if (pooledconnection.holder.get() == currentthread) {
+				logger.info(" Free connection " + pooledconnection.index + " for thread id = " + currentthread.getId()
+						+ " as part of exception handling ");
+				checkin(pooledconnection);
+			}
+	}
+
+	/**
+	 * logs a warning for each connection held longer than the leak threshold,
+	 * with the current stack of the holding thread. A connection is reported only
+	 * once per booking.
+	 */
+	public void checkLeaks() {
+		long now = System.currentTimeMillis();
+		for (PooledConnection pooledconnection : connections) {
+			Thread holder = pooledconnection.holder.get();
+			if (holder != null && !pooledconnection.leakreported)
+				if (now - pooledconnection.borrowtime >= leakthreshold) {
+					pooledconnection.leakreported = true;
+					leakwarnings.incrementAndGet();
+					StringBuffer message = new StringBuffer();
+					message.append("Potential connection leak: connection " + pooledconnection.index
+							+ " held by thread " + holder.getId() + " (" + holder.getName() + ") for "
+							+ (now - pooledconnection.borrowtime) + "ms, current stack of thread:");
+					StackTraceElement[] stacktrace = holder.getStackTrace();
+					for (int i = 0; i < stacktrace.length; i++)
+						message.append("\n      " + stacktrace[i].toString());
+					logger.warning(message.toString());
+				}
+		}
+	}
+
+	@Override
+	public PreparedStatementCache getStatementCache(Connection connection) {
+		if (statementcachesize <= 0)
+			return null;
+		PooledConnection pooledconnection = getPooledConnection(connection);
+		if (pooledconnection == null)
+			return null;
+		return pooledconnection.statementcache;
+	}
+
+	/**
+	 * keeps the counters of the statement cache of a connection being reset, and
+	 * closes its statements
+	 *
+	 * @param statementcache the cache of the connection being reset
+	 */
+	private synchronized void retireStatementCache(PreparedStatementCache statementcache) {
+		statementcache.invalidate();
+		retiredstatementcachehits += statementcache.getHits();
+		retiredstatementcachemisses += statementcache.getMisses();
+		retiredstatementcacheevictions += statementcache.getEvictions();
+	}
+
+	/**
+	 * @return the number of connections currently open
+	 */
+	public int getConnectionNumber() {
+		return connectionnumber.get();
+	}
+
+	/**
+	 * @return the number of connections currently free
+	 */
+	public int getIdleConnectionNumber() {
+		return idleconnections.size();
+	}
+
+	/**
+	 * @return the number of threads currently waiting for a connection
+	 */
+	public int getWaiterNumber() {
+		return waiternumber.get();
+	}
+
+	/**
+	 * @return the number of connections given, by time waited, with the limits
+	 *         of {@link #getHistogramLabels()}
+	 */
+	public long[] getBorrowWaitHistogram() {
+		return borrowwait.getCounts();
+	}
+
+	/**
+	 * @return the number of connections given back, by time held, with the
+	 *         limits of {@link #getHistogramLabels()}
+	 */
+	public long[] getHoldTimeHistogram() {
+		return holdtime.getCounts();
+	}
+
+	/**
+	 * @return the labels of the buckets of the histograms
+	 */
+	public static String[] getHistogramLabels() {
+		return HISTOGRAM_LABELS.clone();
+	}
+
+	/**
+	 * @return the number of requests for a connection that timed out
+	 */
+	public long getTimeouts() {
+		return timeouts.get();
+	}
+
+	/**
+	 * @return the number of connections reported as potential leaks
+	 */
+	public long getLeakWarnings() {
+		return leakwarnings.get();
+	}
+
+	@Override
+	public String getStatistics() {
+		long hits;
+		long misses;
+		long evictions;
+		int cachesize = 0;
+		synchronized (this) {
+			hits = retiredstatementcachehits;
+			misses = retiredstatementcachemisses;
+			evictions = retiredstatementcacheevictions;
+		}
+		for (PooledConnection pooledconnection : connections) {
+			PreparedStatementCache statementcache = pooledconnection.statementcache;
+			hits += statementcache.getHits();
+			misses += statementcache.getMisses();
+			evictions += statementcache.getEvictions();
+			cachesize += statementcache.getSize();
+		}
+		return "[Connections=" + connectionnumber.get() + "/" + maxnumber + ", idle=" + idleconnections.size()
+				+ ", waiting threads=" + waiternumber.get() + ", timeouts=" + timeouts.get() + ", leak warnings="
+				+ leakwarnings.get() + ", wait (" + borrowwait + "), hold (" + holdtime + "), statement cache size="
+				+ cachesize + " (max " + statementcachesize + " per connection), hits=" + hits + ", misses="
+				+ misses + ", hit ratio=" + (hits + misses > 0 ? (100 * hits / (hits + misses)) + "%" : "N/A")
+				+ ", evictions=" + evictions + "]";
+	}
+}
@@ -32,6 +32,10 @@ public class SimpleConnectionPool implements ConnectionPool {
 	private Logger logger = Logger.getLogger(SimpleConnectionPool.class.getCanonicalName());
 	private static final int TIMEOUT = 50000; // 50s in ms
 	private static final int RETRYFREQUENCY = 3; // 10ms
+	/**
+	 * default maximum number of idle prepared statements kept per connection
+	 */
+	public static final int DEFAULT_STATEMENT_CACHE_SIZE = 256;
 
 	/**
 	 * the class representing the status of a connection
@@ -44,6 +48,7 @@ public class SimpleConnectionPool implements ConnectionPool {
 		public Connection connection;
 		public Thread bookingthread;
 		private boolean sick = false;
+		private PreparedStatementCache statementcache;
 
 		/**
 		 * @param connection
@@ -53,6 +58,7 @@ public class SimpleConnectionPool implements ConnectionPool {
 			super();
 			this.connection = connection;
 			this.bookingthread = bookingthread;
+			this.statementcache = new PreparedStatementCache(connection, statementcachesize);
 		}
 
 		/**
@@ -61,6 +67,7 @@ public class SimpleConnectionPool implements ConnectionPool {
 		public void cure() throws SQLException {
 			if (sick) {
 				logger.warning("Resetting connection after SQL Exception ");
+				retireStatementCache(statementcache);
 				try {
 
 					this.connection.close();
@@ -69,6 +76,7 @@ public class SimpleConnectionPool implements ConnectionPool {
 							+ e.getErrorCode() + "/" + e.getMessage());
 				}
 				this.connection = createConnection(url, user, password);
+				this.statementcache = new PreparedStatementCache(connection, statementcachesize);
 				this.sick = false;
 			}
 		}
@@ -82,6 +90,10 @@ public class SimpleConnectionPool implements ConnectionPool {
 	private String password;
 	private TreeSet<Booking> orderedbooking;
 	private ArrayList<ConnectionStatus> connections;
+	private int statementcachesize;
+	private long retiredstatementcachehits = 0;
+	private long retiredstatementcachemisses = 0;
+	private long retiredstatementcacheevictions = 0;
 
 	private Connection createConnection(String url, String user, String password) throws SQLException {
 		if (user == null) {
@@ -116,6 +128,30 @@ public class SimpleConnectionPool implements ConnectionPool {
 	 */
 	public SimpleConnectionPool(String url, String user, String password, int minnumber, int maxnumber)
 			throws SQLException {
+		this(url, user, password, minnumber, maxnumber, DEFAULT_STATEMENT_CACHE_SIZE);
+	}
+
+	/**
+	 * Creates a simple connection pool for a JDBC database
+	 * 
+	 * @param url                URL of the database
+	 * @param user               user to create the connection
+	 * @param password           password to create the connection
+	 * @param minnumber          minimum number of connections in the pool
+	 * @param maxnumber          maximum number of connections in the pool
+	 * @param statementcachesize maximum number of idle prepared statements kept
+	 *                           per connection (0 to not cache statements)
+	 * @throws SQLException SQL Exception if any error is encountered
+	 * @since 1.16
+	 */
+	public SimpleConnectionPool(
+			String url,
+			String user,
+			String password,
+			int minnumber,
+			int maxnumber,
+			int statementcachesize) throws SQLException {
+		this.statementcachesize = statementcachesize;
 		connections = new ArrayList<ConnectionStatus>();
 		orderedbooking = new TreeSet<Booking>();
 		this.minnumber = minnumber;
@@ -295,6 +331,90 @@ public class SimpleConnectionPool implements ConnectionPool {
 
 	}
 
+	@Override
+	public synchronized PreparedStatementCache getStatementCache(Connection connection) {
+		if (statementcachesize <= 0)
+			return null;
+		for (int i = 0; i < connections.size(); i++)
+			if (connections.get(i).connection == connection)
+				return connections.get(i).statementcache;
+		return null;
+	}
+
+	/**
+	 * keeps the counters of the statement cache of a connection being reset, and
+	 * closes its statements
+	 * 
+	 * @param statementcache the cache of the connection being reset
+	 */
+	private synchronized void retireStatementCache(PreparedStatementCache statementcache) {
+		statementcache.invalidate();
+		retiredstatementcachehits += statementcache.getHits();
+		retiredstatementcachemisses += statementcache.getMisses();
+		retiredstatementcacheevictions += statementcache.getEvictions();
+		logger.info("Statement cache invalidated for connection reset " + getStatistics());
+	}
+
+	/**
+	 * @return the number of executions that got a prepared statement from the
+	 *         cache since the pool was created
+	 * @since 1.16
+	 */
+	public synchronized long getStatementCacheHits() {
+		long hits = retiredstatementcachehits;
+		for (int i = 0; i < connections.size(); i++)
+			hits += connections.get(i).statementcache.getHits();
+		return hits;
+	}
+
+	/**
+	 * @return the number of executions that had to prepare a statement since the
+	 *         pool was created
+	 * @since 1.16
+	 */
+	public synchronized long getStatementCacheMisses() {
+		long misses = retiredstatementcachemisses;
+		for (int i = 0; i < connections.size(); i++)
+			misses += connections.get(i).statementcache.getMisses();
+		return misses;
+	}
+
+	/**
+	 * @return the number of prepared statements closed because the cache of their
+	 *         connection was full since the pool was created. A high number
+	 *         compared to misses means the cache is too small.
+	 * @since 1.16
+	 */
+	public synchronized long getStatementCacheEvictions() {
+		long evictions = retiredstatementcacheevictions;
+		for (int i = 0; i < connections.size(); i++)
+			evictions += connections.get(i).statementcache.getEvictions();
+		return evictions;
+	}
+
+	/**
+	 * @return the number of idle prepared statements currently cached for all
+	 *         connections
+	 * @since 1.16
+	 */
+	public synchronized int getStatementCacheSize() {
+		int size = 0;
+		for (int i = 0; i < connections.size(); i++)
+			size += connections.get(i).statementcache.getSize();
+		return size;
+	}
+
+	@Override
+	public synchronized String getStatistics() {
+		long hits = getStatementCacheHits();
+		long misses = getStatementCacheMisses();
+		return "[Connections=" + connections.size() + "/" + maxnumber + ", statement cache size="
+				+ getStatementCacheSize() + " (max " + statementcachesize + " per connection), hits=" + hits
+				+ ", misses=" + misses + ", hit ratio="
+				+ (hits + misses > 0 ? (100 * hits / (hits + misses)) + "%" : "N/A") + ", evictions="
+				+ getStatementCacheEvictions() + "]";
+	}
+
 	/**
 	 * A class to store a booking. A booking is made for a maximum of 2 time-out
 	 * cycles for a thread that could not get a connection. Every time a thread
@@ -11,6 +11,8 @@
 package org.openlowcode.server.data.storage.mariajdbc;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 
 import org.openlowcode.server.data.storage.standardjdbc.BaseJDBCStorage;
 
@@ -35,4 +37,20 @@ public class MariadDBJDBCStorage
 
 	}
 
+	/**
+	 * MariaDB before version 10.6 does not support the SQL:2008 paging syntax, the
+	 * LIMIT clause is used instead
+	 */
+	@Override
+	protected void appendPagingClause(StringBuffer query) {
+		query.append(" LIMIT ? OFFSET ? ");
+	}
+
+	@Override
+	protected void setPagingParameters(PreparedStatement ps, int nextcounter, int limit, int offset)
+			throws SQLException {
+		ps.setInt(nextcounter, limit);
+		ps.setInt(nextcounter + 1, offset);
+	}
+
 }
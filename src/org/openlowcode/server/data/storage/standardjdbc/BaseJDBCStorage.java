@@ -10,6 +10,8 @@
 
 package org.openlowcode.server.data.storage.standardjdbc;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
@@ -18,14 +20,13 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.function.Function;
 import java.util.logging.Logger;
 
-import javax.sql.rowset.serial.SerialBlob;
-
 import org.openlowcode.server.data.storage.DecimalStoredField;
 import org.openlowcode.server.data.storage.DeleteQuery;
 import org.openlowcode.server.data.storage.IntegerStoredField;
@@ -49,6 +50,7 @@ import org.openlowcode.server.data.storage.StoredFieldSchema.TestVisitor;
 import org.openlowcode.server.data.storage.StoredFieldSchema.Visitor;
 import org.openlowcode.server.data.storage.TableAlias.FieldSelectionAlias;
 import org.openlowcode.server.data.storage.derbyjdbc.DerbyJDBCStorage;
+import org.openlowcode.server.data.storage.jdbcpool.PreparedStatementCache;
 import org.openlowcode.tools.messages.SFile;
 
 /**
@@ -74,6 +76,9 @@ public abstract class BaseJDBCStorage
 
 	protected HashMap<String, HashMap<String, DatabaseColumnType>> existingfields;
 	protected Connection connection;
+	protected PreparedStatementCache statementcache;
+	private boolean readreplica = false;
+	private boolean autonomous = false;
 	private DatabaseMetaData metadata;
 	protected Function<StringBuffer, Visitor> fieldvisitorgenerator;
 	protected Function<DatabaseColumnType, TestVisitor<Integer>> fieldanalyzer;
@@ -96,6 +101,79 @@ public abstract class BaseJDBCStorage
 		this.fieldanalyzer = fieldanalyzer;
 	}
 
+	@Override
+	public void setStatementCache(PreparedStatementCache statementcache) {
+		this.statementcache = statementcache;
+	}
+
+	@Override
+	public void setReadReplica(boolean readreplica) {
+		this.readreplica = readreplica;
+	}
+
+	@Override
+	public boolean isReadReplica() {
+		return this.readreplica;
+	}
+
+	@Override
+	public void setAutonomous(boolean autonomous) {
+		this.autonomous = autonomous;
+	}
+
+	@Override
+	public boolean isAutonomous() {
+		return this.autonomous;
+	}
+
+	/**
+	 * @return the statement cache if it belongs to the current connection, null
+	 *         else
+	 * @since 1.16
+	 */
+	protected PreparedStatementCache getCurrentStatementCache() {
+		if (statementcache != null)
+			if (statementcache.getConnection() == connection)
+				return statementcache;
+		return null;
+	}
+
+	/**
+	 * prepares a statement for a query that is executed frequently. The statement
+	 * is taken from the statement cache of the connection if possible, and should
+	 * be given back with {@link #releaseCachedStatement(String, PreparedStatement)}
+	 * after execution.
+	 * 
+	 * @param stringquery the SQL text of the query
+	 * @return a statement without parameters set
+	 * @throws SQLException if the statement cannot be prepared
+	 * @since 1.16
+	 */
+	protected PreparedStatement prepareCachedStatement(String stringquery) throws SQLException {
+		PreparedStatementCache currentcache = getCurrentStatementCache();
+		if (currentcache != null)
+			return currentcache.borrowStatement(stringquery);
+		return connection.prepareStatement(stringquery);
+	}
+
+	/**
+	 * gives back to the statement cache a statement after execution, or closes it
+	 * if statements are not cached
+	 * 
+	 * @param stringquery the SQL text of the query
+	 * @param ps          the statement
+	 * @throws SQLException if the statement cannot be cleared or closed
+	 * @since 1.16
+	 */
+	protected void releaseCachedStatement(String stringquery, PreparedStatement ps) throws SQLException {
+		PreparedStatementCache currentcache = getCurrentStatementCache();
+		if (currentcache != null) {
+			currentcache.releaseStatement(stringquery, ps);
+		} else {
+			ps.close();
+		}
+	}
+
 	/**
 	 * Processes an error
 	 * 
@@ -150,6 +228,8 @@ public abstract class BaseJDBCStorage
 		// back
 		protected boolean forceautocommitifrollaback = false;
 		protected boolean forceautocommitiferror;
+		private ArrayList<InputStream> openstreams = new ArrayList<InputStream>();
+		private ArrayList<PreparedStatement> borrowedstatements = new ArrayList<PreparedStatement>();
 
 		/**
 		 * creates a new sql execution
@@ -186,21 +266,131 @@ public abstract class BaseJDBCStorage
 		public String getStringQuery() {
 			return stringquery;
 		}
+
+		/**
+		 * binds a binary file to a parameter of the statement as a stream, so that
+		 * the content is not copied in memory. The stream is closed after the
+		 * execution
+		 * 
+		 * @param ps    the prepared statement
+		 * @param index index of the parameter
+		 * @param file  the file (may be null or empty)
+		 * @throws SQLException if the parameter cannot be set
+		 * @since 1.16
+		 */
+		protected void setBinaryParameter(PreparedStatement ps, int index, SFile file) throws SQLException {
+			if (file == null || file.isEmpty()) {
+				LOGGER.fine("JDBC Prepared Statement set File " + index + " empty");
+				ps.setNull(index, java.sql.Types.BLOB);
+				return;
+			}
+			LOGGER.fine("JDBC Prepared Statement set File " + index + " length=" + file.getLength() + ", on disk="
+					+ file.isOnDisk());
+			InputStream stream = file.getStream();
+			openstreams.add(stream);
+			ps.setBinaryStream(index, stream, file.getLength());
+		}
+
+		/**
+		 * closes the streams bound to the statement
+		 * 
+		 * @since 1.16
+		 */
+		private void closeStreams() {
+			for (int i = 0; i < openstreams.size(); i++)
+				try {
+					openstreams.get(i).close();
+				} catch (IOException e) {
+					LOGGER.warning("[PERSISTENCE] Could not close binary stream " + e.getMessage());
+				}
+			openstreams.clear();
+		}
+
+		/**
+		 * prepares a statement from the statement cache of the connection (see
+		 * {@link BaseJDBCStorage#prepareCachedStatement(String)}). The statement is
+		 * closed if the execution fails before it is released, so that it is not
+		 * leaked nor given back to the cache in an unknown state. If the execution
+		 * succeeds, a statement not released belongs to the result (for example a
+		 * {@link JDBCRow}).
+		 * 
+		 * @param stringquery the SQL text of the query
+		 * @return a statement without parameters set
+		 * @throws SQLException if the statement cannot be prepared
+		 * @since 1.16
+		 */
+		protected PreparedStatement prepareCachedStatement(String stringquery) throws SQLException {
+			PreparedStatement ps = BaseJDBCStorage.this.prepareCachedStatement(stringquery);
+			borrowedstatements.add(ps);
+			return ps;
+		}
+
+		/**
+		 * gives back a statement prepared by {@link #prepareCachedStatement(String)}
+		 * after a successful execution
+		 * 
+		 * @param stringquery the SQL text of the query
+		 * @param ps          the statement
+		 * @throws SQLException if the statement cannot be cleared or closed
+		 * @since 1.16
+		 */
+		protected void releaseCachedStatement(String stringquery, PreparedStatement ps) throws SQLException {
+			borrowedstatements.remove(ps);
+			BaseJDBCStorage.this.releaseCachedStatement(stringquery, ps);
+		}
+
+		/**
+		 * ends the tracking of statements borrowed during an execution
+		 * 
+		 * @param success true if the execution was successful, false if statements
+		 *                not yet released should be closed
+		 * @since 1.16
+		 */
+		private void endStatements(boolean success) {
+			if (!success)
+				for (int i = 0; i < borrowedstatements.size(); i++)
+					try {
+						borrowedstatements.get(i).close();
+					} catch (SQLException e) {
+						LOGGER.warning("[PERSISTENCE] Could not close statement after error " + e.getMessage());
+					}
+			borrowedstatements.clear();
+		}
 	}
 
 	/**
+	 * executes the query, retrying on a new connection in case of error. If the
+	 * query is executed in a transaction opened by the caller (auto-commit is
+	 * off), the query is not retried, as the new connection would not have the
+	 * previous writes of the transaction. The caller is then responsible for the
+	 * rollback.
+	 * 
 	 * @param execution the sql execution
 	 * @return the data if the query returns any data
 	 */
 	public <E extends Object> E executeWithRelaunch(SQLExecution<E> execution) {
 		SQLException lastsqlexception = null;
+		boolean intransaction = false;
+		try {
+			intransaction = !connection.getAutoCommit();
+		} catch (SQLException e) {
+			LOGGER.warning("[PERSISTENCE] Could not get auto-commit status of connection " + e);
+		}
 		for (int i = 0; i < MAX_SQLERROR_RETRY; i++) {
 			if (i != 0)
 				LOGGER.warning(
 						"[PERSISTENCE] Retrying after SQL error, index = " + i + " query = " + execution.stringquery);
 			try {
 				long beforequery = new Date().getTime();
-				E returnvalue = execution.executes();
+				E returnvalue;
+				boolean executed = false;
+				try {
+					returnvalue = execution.executes();
+					executed = true;
+				} finally {
+					execution.closeStreams();
+					execution.endStatements(executed);
+				}
 				long afterquery = new Date().getTime();
 				long duration = afterquery - beforequery;
 				String performancelog = "[PERSISTENCE] query executed in " + duration + "ms, query = "
@@ -220,6 +410,8 @@ public abstract class BaseJDBCStorage
 					LOGGER.warning("[PERSISTENCE] -    " + e.getStackTrace()[st]);
 				}
 				lastsqlexception = e;
+				if (intransaction)
+					throw new RuntimeException("Database sqlerror in transaction, not retried " + e);
 				if (execution.forceautocommitiferror == true) {
 					try {
 						connection.setAutoCommit(true);
@@ -266,8 +458,50 @@ public abstract class BaseJDBCStorage
 
 	@Override
 	public Row selectOnDB(SelectQuery sq) {
+		SQLQueryShape shape = new SQLQueryShape(sq);
+		SQLSelectTemplate template = shape.getTemplate((query) -> generateSelectQuery(query), sq);
+		String stringquery = template.getSQL();
+		return this.executeWithRelaunch(new SQLExecution<JDBCRow>(stringquery) {
+
+			@Override
+			public JDBCRow executes() throws SQLException {
+				if (sq.isStreamed()) {
+					// statement is not shared with cache as fetch size is specific
+					PreparedStatement ps = connection.prepareStatement(stringquery, ResultSet.TYPE_FORWARD_ONLY,
+							ResultSet.CONCUR_READ_ONLY);
+					ps.setFetchSize(sq.getFetchSize());
+					shape.fillParameters(ps, 1);
+					if (sq.isPaged())
+						setPagingParameters(ps, shape.getParameterNumber() + 1, sq.getLimit(), sq.getOffset());
+					ResultSet rs = ps.executeQuery();
+					JDBCRow row = new JDBCRow(ps, rs, stringquery, null, template);
+					row.setStreamed();
+					return row;
+				}
+				PreparedStatement ps = prepareCachedStatement(stringquery);
+				shape.fillParameters(ps, 1);
+				if (sq.isPaged())
+					setPagingParameters(ps, shape.getParameterNumber() + 1, sq.getLimit(), sq.getOffset());
+				ResultSet rs = ps.executeQuery();
+				return new JDBCRow(ps, rs, stringquery, getCurrentStatementCache(), template);
+			}
+
+		});
 
+	}
+
+	/**
+	 * generates the SQL for a select query, and the index of each column in the
+	 * result. The SQL only depends on the shape of the query (see
+	 * {@link SQLQueryShape}), not on the values of the conditions.
+	 * 
+	 * @param sq the select query
+	 * @return the SQL for the query with its column plan
+	 * @since 1.16
+	 */
+	protected SQLSelectTemplate generateSelectQuery(SelectQuery sq) {
 		StringBuffer query = new StringBuffer();
+		ArrayList<String> columnlabels = new ArrayList<String>();
 		query.append(" SELECT ");
 		if (sq.isDistinctValues()) query.append(" DISTINCT ");
 		// build selectclause
@@ -286,6 +520,7 @@ public abstract class BaseJDBCStorage
 					query.append(thisalias.getName());
 					query.append('_');
 					query.append(thisfield.getName());
+					columnlabels.add(thisalias.getName() + "_" + thisfield.getName());
 				}
 			} else {// only selected fied
 				for (int j = 0; j < thisalias.getFieldSelection().length; j++) {
@@ -301,6 +536,7 @@ public abstract class BaseJDBCStorage
 					query.append(thisfield.getField().getName());
 					query.append(" AS ");
 					query.append(thisfield.getAlias());
+					columnlabels.add(thisfield.getAlias());
 				}
 			}
 
@@ -323,24 +559,50 @@ public abstract class BaseJDBCStorage
 				SQLQueryConditionGenerator generator = new SQLQueryConditionGenerator(query);
 				condition.accept(generator);
 			}
+		for (int i = 0; i < sq.getOrderByNumber(); i++) {
+			SelectQuery.OrderBy orderby = sq.getOrderBy(i);
+			query.append(i == 0 ? " ORDER BY " : " , ");
+			query.append(orderby.getAlias().getName());
+			query.append('.');
+			query.append(orderby.getField().getName());
+			if (orderby.isDescending())
+				query.append(" DESC ");
+		}
+		if (sq.isPaged())
+			appendPagingClause(query);
 		// end of query init
+		return new SQLSelectTemplate(query.toString(), columnlabels.toArray(new String[0]));
+	}
 
-		String stringquery = query.toString();
-		return this.executeWithRelaunch(new SQLExecution<JDBCRow>(stringquery) {
-
-			@Override
-			public JDBCRow executes() throws SQLException {
-				PreparedStatement ps = connection.prepareStatement(stringquery);
-				if (condition != null) {
-					SQLQueryPSFiller filler = new SQLQueryPSFiller(ps, 1);
-					condition.accept(filler);
-				}
-				ResultSet rs = ps.executeQuery();
-				return new JDBCRow(ps, rs, stringquery);
-			}
-
-		});
+	/**
+	 * appends to a select query the clause limiting the result to a page. The
+	 * limit and offset are set as parameters of the prepared statement by
+	 * {@link #setPagingParameters(PreparedStatement, int, int, int)}, so that the
+	 * SQL is the same for all pages. The default implementation uses the SQL:2008
+	 * syntax supported by Derby.
+	 * 
+	 * @param query the query being built, after the ORDER BY clause
+	 * @since 1.16
+	 */
+	protected void appendPagingClause(StringBuffer query) {
+		query.append(" OFFSET ? ROWS FETCH NEXT ? ROWS ONLY ");
+	}
 
+	/**
+	 * sets the parameters of the paging clause added by
+	 * {@link #appendPagingClause(StringBuffer)}
+	 * 
+	 * @param ps          prepared statement
+	 * @param nextcounter index of the first parameter of the paging clause
+	 * @param limit       maximum number of rows to send back
+	 * @param offset      number of rows to skip
+	 * @throws SQLException if parameters cannot be set
+	 * @since 1.16
+	 */
+	protected void setPagingParameters(PreparedStatement ps, int nextcounter, int limit, int offset)
+			throws SQLException {
+		ps.setInt(nextcounter, offset);
+		ps.setInt(nextcounter + 1, limit);
 	}
 
 	@Override
@@ -376,7 +638,7 @@ public abstract class BaseJDBCStorage
 				boolean autocommit = connection.getAutoCommit();
 				if (autocommit)
 					connection.setAutoCommit(false);
-				PreparedStatement ps = connection.prepareStatement(stringquery);
+				PreparedStatement ps = prepareCachedStatement(stringquery);
 				for (int rowindex = 0; rowindex < multiplerow.getPayloadSize(); rowindex++) {
 
 					for (int i = 0; i < tableschema.getStoredFieldNumber(); i++) {
@@ -426,12 +688,7 @@ public abstract class BaseJDBCStorage
 						if (thisfieldschema instanceof LargeBinaryStoredField) {
 							LargeBinaryStoredField castedfieldschema = (LargeBinaryStoredField) thisfieldschema;
 							SFile thisfile = (SFile) multiplerow.getPayload(rowindex, castedfieldschema);
-							LOGGER.fine("JDBC Prepared Statement set File " + (i + 1) + " empty=" + thisfile.isEmpty());
-
-							if (thisfile.isEmpty())
-								ps.setNull(i + 1, java.sql.Types.BLOB);
-							if (!thisfile.isEmpty())
-								ps.setBlob(i + 1, new SerialBlob(thisfile.getContent()));
+							setBinaryParameter(ps, i + 1, thisfile);
 							treated = true;
 						}
 
@@ -443,7 +700,7 @@ public abstract class BaseJDBCStorage
 					ps.addBatch();
 				}
 				ps.executeBatch();
-				ps.close();
+				releaseCachedStatement(stringquery, ps);
 				connection.setAutoCommit(autocommit);
 				return null;
 			}
@@ -468,7 +725,7 @@ public abstract class BaseJDBCStorage
 				boolean autocommit = connection.getAutoCommit();
 				if (autocommit)
 					connection.setAutoCommit(false);
-				PreparedStatement ps = connection.prepareStatement(stringquery);
+				PreparedStatement ps = prepareCachedStatement(stringquery);
 				// ------------ builds variable -----------------
 
 				for (int rowindex = 0; rowindex < rowstodelete.getPayloadSize(); rowindex++) {
@@ -479,7 +736,7 @@ public abstract class BaseJDBCStorage
 					ps.addBatch();
 				}
 				ps.executeBatch();
-				ps.close();
+				releaseCachedStatement(stringquery, ps);
 				connection.setAutoCommit(autocommit);
 				return null;
 			}
@@ -514,7 +771,7 @@ public abstract class BaseJDBCStorage
 				boolean autocommit = connection.getAutoCommit();
 				if (autocommit)
 					connection.setAutoCommit(false);
-				PreparedStatement ps = connection.prepareStatement(stringquery);
+				PreparedStatement ps = prepareCachedStatement(stringquery);
 				// ------------ builds variable -----------------
 
 				for (int rowindex = 0; rowindex < multiplerow.getPayloadSize(); rowindex++) {
@@ -555,6 +812,12 @@ public abstract class BaseJDBCStorage
 								ps.setNull(i + 1, java.sql.Types.INTEGER);
 							treated = true;
 						}
+						if (thisfieldschema instanceof LargeBinaryStoredField) {
+							LargeBinaryStoredField castedfieldschema = (LargeBinaryStoredField) thisfieldschema;
+							SFile thisfile = (SFile) multiplerow.getPayload(rowindex, castedfieldschema);
+							setBinaryParameter(ps, i + 1, thisfile);
+							treated = true;
+						}
 
 						if (!treated)
 							throw new RuntimeException(String.format("object type not supported for %s.%s (%s)",
@@ -567,7 +830,7 @@ public abstract class BaseJDBCStorage
 					ps.addBatch();
 				}
 				ps.executeBatch();
-				ps.close();
+				releaseCachedStatement(stringquery, ps);
 				connection.setAutoCommit(autocommit);
 				return null;
 			}
@@ -602,7 +865,7 @@ public abstract class BaseJDBCStorage
 
 			@Override
 			public Object executes() throws SQLException {
-				PreparedStatement ps = connection.prepareStatement(stringquery);
+				PreparedStatement ps = prepareCachedStatement(stringquery);
 				for (int i = 0; i < tableschema.getStoredFieldNumber(); i++) {
 					StoredFieldSchema thisfieldschema = tableschema.getStoredField(i);
 
@@ -650,12 +913,7 @@ public abstract class BaseJDBCStorage
 					if (thisfieldschema instanceof LargeBinaryStoredField) {
 						LargeBinaryStoredField castedfieldschema = (LargeBinaryStoredField) thisfieldschema;
 						SFile thisfile = (SFile) row.getPayload(castedfieldschema);
-						LOGGER.fine("JDBC Prepared Statement set File " + (i + 1) + " empty=" + thisfile.isEmpty());
-
-						if (thisfile.isEmpty())
-							ps.setNull(i + 1, java.sql.Types.BLOB);
-						if (!thisfile.isEmpty())
-							ps.setBlob(i + 1, new SerialBlob(thisfile.getContent()));
+						setBinaryParameter(ps, i + 1, thisfile);
 						treated = true;
 					}
 
@@ -665,7 +923,7 @@ public abstract class BaseJDBCStorage
 
 				}
 				ps.execute();
-				ps.close();
+				releaseCachedStatement(stringquery, ps);
 				return null;
 			}
 		});
@@ -695,7 +953,7 @@ public abstract class BaseJDBCStorage
 
 			@Override
 			public Object executes() throws SQLException {
-				PreparedStatement ps = connection.prepareStatement(stringquery);
+				PreparedStatement ps = prepareCachedStatement(stringquery);
 				// ------------ builds variable -----------------
 
 				// -- first update fields
@@ -740,6 +998,12 @@ public abstract class BaseJDBCStorage
 						LOGGER.info("JDBC preparedstatement update setInteger " + (i + 1) + "," + thisinteger);
 						treated = true;
 					}
+					if (thisfieldschema instanceof LargeBinaryStoredField) {
+						LargeBinaryStoredField castedfieldschema = (LargeBinaryStoredField) thisfieldschema;
+						SFile thisfile = (SFile) uq.getRow().getPayload(castedfieldschema);
+						setBinaryParameter(ps, i + 1, thisfile);
+						treated = true;
+					}
 
 					if (!treated)
 						throw new RuntimeException(String.format("object type not supported for %s.%s (%s)",
@@ -751,7 +1015,7 @@ public abstract class BaseJDBCStorage
 				uq.getCondition().accept(filler);
 
 				ps.execute();
-				ps.close();
+				releaseCachedStatement(stringquery, ps);
 				return null;
 			}
 
@@ -1074,14 +1338,14 @@ public abstract class BaseJDBCStorage
 
 			@Override
 			public Object executes() throws SQLException {
-				PreparedStatement ps = connection.prepareStatement(stringquery);
+				PreparedStatement ps = prepareCachedStatement(stringquery);
 				SQLQueryPSFiller filler = new SQLQueryPSFiller(ps, 1);
 				for (int i=0;i<limitedfieldsupdatequery.getUpdatedFieldsNumber();i++) {
 					limitedfieldsupdatequery.getFieldUpdateAt(i).accept(filler);
 				}
 				limitedfieldsupdatequery.getCondition().accept(filler);
 				ps.execute();
-				ps.close();
+				releaseCachedStatement(stringquery, ps);
 				return null;
 			}
 
@@ -1104,7 +1368,7 @@ public abstract class BaseJDBCStorage
 
 			@Override
 			public Object executes() throws SQLException {
-				PreparedStatement ps = connection.prepareStatement(stringquery);
+				PreparedStatement ps = prepareCachedStatement(stringquery);
 				// ------------ builds variable -----------------
 
 				// -- then condition to select correct line
@@ -1112,7 +1376,7 @@ public abstract class BaseJDBCStorage
 				dq.getCondition().accept(filler);
 
 				ps.execute();
-				ps.close();
+				releaseCachedStatement(stringquery, ps);
 				return null;
 			}
 
@@ -1123,6 +1387,7 @@ public abstract class BaseJDBCStorage
 	public void cleanup() {
 
 		connection = null;
+		statementcache = null;
 	}
 
 	@Override
@@ -1242,7 +1507,15 @@ public abstract class BaseJDBCStorage
 
 	@Override
 	public int getNextValue(String sequencename) {
+		return getNextValues(sequencename, 1);
+	}
 
+	@Override
+	public int getNextValues(String sequencename, int count) {
+		if (count <= 0)
+			throw new RuntimeException(
+					"Number of values to reserve should be strictly positive for sequence " + sequencename + ", got "
+							+ count);
 		StringBuffer buffer = new StringBuffer();
 		buffer.append("SELECT SEQVALUE FROM GSEQUENCE WHERE SEQNAME = '");
 		buffer.append(sequencename.toUpperCase());
@@ -1263,24 +1536,28 @@ public abstract class BaseJDBCStorage
 
 				if (autocommit)
 					connection.setAutoCommit(false);
-				PreparedStatement ps = connection.prepareStatement(stringquery);
+				PreparedStatement ps = prepareCachedStatement(stringquery);
 				ResultSet rs = ps.executeQuery();
 				if (rs.next()) {
 					int value = rs.getInt(1);
 					rs.close();
-					StringBuffer update = new StringBuffer("UPDATE GSEQUENCE SET SEQVALUE = ");
-					update.append(value + 1);
+					releaseCachedStatement(stringquery, ps);
+					StringBuffer update = new StringBuffer("UPDATE GSEQUENCE SET SEQVALUE = SEQVALUE + ");
+					update.append(count);
 					update.append(" WHERE SEQNAME = '");
 					update.append(sequencename.toUpperCase());
 					update.append("'");
-					PreparedStatement updateps = connection.prepareStatement(update.toString());
+					String updatequery = update.toString();
+					PreparedStatement updateps = prepareCachedStatement(updatequery);
 					updateps.execute();
-					updateps.close();
+					releaseCachedStatement(updatequery, updateps);
 					connection.commit();
 					connection.setAutoCommit(autocommit);
 					return value;
 
 				}
+				rs.close();
+				releaseCachedStatement(stringquery, ps);
 				return null;
 			}
 
@@ -10,14 +10,16 @@
 
 package org.openlowcode.server.data.storage.standardjdbc;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
-import java.sql.Blob;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.logging.Logger;
 
 import org.openlowcode.server.data.storage.DecimalStoredField;
@@ -30,6 +32,7 @@ import org.openlowcode.server.data.storage.StoredFieldSchema;
 import org.openlowcode.server.data.storage.StringStoredField;
 import org.openlowcode.server.data.storage.TableAlias;
 import org.openlowcode.server.data.storage.TimestampStoredField;
+import org.openlowcode.server.data.storage.jdbcpool.PreparedStatementCache;
 import org.openlowcode.tools.messages.SFile;
 
 /**
@@ -45,10 +48,16 @@ public class JDBCRow implements Row {
 	private static Logger logger = Logger.getLogger(JDBCRow.class.getName());
 	private ResultSet rs;
 	private PreparedStatement ps;
-	private ResultSetMetaData rsmetadata;
 	private String columnlist = null;
 	private long readcolumns;
 	private String stringquery;
+	private PreparedStatementCache statementcache;
+	private boolean closed = false;
+	private SQLSelectTemplate template;
+	private boolean streamed = false;
+	private IdentityHashMap<TableAlias, IdentityHashMap<FieldSchema<?>, ColumnReader>> readers;
+	private TableAlias lastalias;
+	private IdentityHashMap<FieldSchema<?>, ColumnReader> lastaliasreaders;
 
 	/**
 	 * creates a JDBC Row
@@ -57,10 +66,50 @@ public class JDBCRow implements Row {
 	 * @param stringquery the query for further reference (error handling)
 	 */
 	public JDBCRow(PreparedStatement ps, ResultSet rs, String stringquery) {
+		this(ps, rs, stringquery, null);
+	}
+
+	/**
+	 * creates a JDBC Row on a statement borrowed from a statement cache. The
+	 * statement is given back to the cache when the row is closed
+	 * 
+	 * @param ps             prepared statement
+	 * @param rs             resultset
+	 * @param stringquery    the query for further reference (error handling)
+	 * @param statementcache the cache the statement was borrowed from, or null if
+	 *                       the statement should be closed with the row
+	 * @since 1.16
+	 */
+	public JDBCRow(PreparedStatement ps, ResultSet rs, String stringquery, PreparedStatementCache statementcache) {
+		this(ps, rs, stringquery, statementcache, null);
+	}
+
+	/**
+	 * creates a JDBC Row reading columns by index following the column plan of
+	 * the query
+	 * 
+	 * @param ps             prepared statement
+	 * @param rs             resultset
+	 * @param stringquery    the query for further reference (error handling)
+	 * @param statementcache the cache the statement was borrowed from, or null if
+	 *                       the statement should be closed with the row
+	 * @param template       the template of the query holding the column plan, or
+	 *                       null if columns are found by label
+	 * @since 1.16
+	 */
+	public JDBCRow(
+			PreparedStatement ps,
+			ResultSet rs,
+			String stringquery,
+			PreparedStatementCache statementcache,
+			SQLSelectTemplate template) {
 		this.ps = ps;
 		this.rs = rs;
 		this.readcolumns = 0;
 		this.stringquery = stringquery;
+		this.statementcache = statementcache;
+		this.template = template;
+		this.readers = new IdentityHashMap<TableAlias, IdentityHashMap<FieldSchema<?>, ColumnReader>>();
 	}
 
 	@Override
@@ -70,119 +119,221 @@ public class JDBCRow implements Row {
 		if (objectalias == null)
 			throw new RuntimeException("ObjectAlias is null");
 		try {
-			if (this.rsmetadata == null) {
-				this.rsmetadata = rs.getMetaData();
-				columnlist = "[";
-				for (int i = 1; i <= this.rsmetadata.getColumnCount(); i++) {
-					if (i > 1)
-						columnlist += "; ";
-					columnlist += this.rsmetadata.getTableName(i) + ":" + this.rsmetadata.getColumnName(i) + ":"
-							+ this.rsmetadata.getColumnTypeName(i);
-				}
-				columnlist += "]";
-			}
-			String fieldname = objectalias.getName() + "_" + fd.getName();
-			if (fd instanceof StringStoredField) {
-				String result = rs.getString(fieldname);
-				logger.finest("processing string stored field " + fieldname + ": " + result);
-				return fd.castToType(result);
-			}
-			if (fd instanceof TimestampStoredField) {
-				Timestamp result = rs.getTimestamp(fieldname);
-				logger.finest("processing timestamp stored field " + fieldname + ": " + result);
-				return fd.castToType(result);
-			}
+			return (E) getReader(fd, objectalias).read(rs);
+		} catch (SQLException e) {
 
-			if (fd instanceof DecimalStoredField) {
-				BigDecimal result = rs.getBigDecimal(fieldname);
-				logger.finest("processing bigdecimal stored field " + fieldname + ": " + result);
-				return fd.castToType(result);
-			}
-			if (fd instanceof IntegerStoredField) {
-				int result = rs.getInt(fieldname);
-				logger.finest("processing timestamp stored field " + fieldname + ": " + result);
-				return fd.castToType(new Integer(result));
+			String exceptionline = "";
+			for (int i = 0; i < e.getStackTrace().length; i++) {
+
+				String thisline = e.getStackTrace()[i].toString();
+				if (thisline.indexOf("org.openlowcode.server.data") != -1) {
+					exceptionline = thisline;
+					break;
+				}
 			}
-			if (fd instanceof LargeBinaryStoredField) {
-				Blob blob = rs.getBlob(fieldname);
-				if (blob != null) {
-					byte bytes[] = blob.getBytes(1, (int) (blob.length()));
-					logger.finest("processing largebinary stored field " + fieldname + " size = " + bytes.length + "b");
+			throw new RuntimeException("SQL Exception " + e.getMessage() + " at " + exceptionline
+					+ ", drop table field list " + getColumnList() + "\\			---> Query = " + this.stringquery);
+		}
+	}
 
-					return fd.castToType(new SFile("TEMPORARY", bytes));
-				} else {
-					return fd.castToType(new SFile());
+	/**
+	 * @return the list of columns of the result set for error messages
+	 */
+	private String getColumnList() {
+		if (this.columnlist == null) {
+			try {
+				ResultSetMetaData rsmetadata = rs.getMetaData();
+				String newcolumnlist = "[";
+				for (int i = 1; i <= rsmetadata.getColumnCount(); i++) {
+					if (i > 1)
+						newcolumnlist += "; ";
+					newcolumnlist += rsmetadata.getTableName(i) + ":" + rsmetadata.getColumnName(i) + ":"
+							+ rsmetadata.getColumnTypeName(i);
 				}
+				newcolumnlist += "]";
+				this.columnlist = newcolumnlist;
+			} catch (SQLException e) {
+				return "[column list not available: " + e.getMessage() + "]";
 			}
+		}
+		return this.columnlist;
+	}
 
-			if (fd instanceof ExternalFieldSchemaTemplate) {
-				logger.finest("processing external field");
+	/**
+	 * gets the reader for the field of the alias. Readers are created at the first
+	 * access, and then reused for all rows of the result.
+	 * 
+	 * @param fd          field schema
+	 * @param objectalias alias of the table
+	 * @return the reader of the field
+	 * @throws SQLException if the column cannot be found in the result
+	 */
+	private ColumnReader getReader(FieldSchema<?> fd, TableAlias objectalias) throws SQLException {
+		IdentityHashMap<FieldSchema<?>, ColumnReader> aliasreaders = lastaliasreaders;
+		if (objectalias != lastalias) {
+			aliasreaders = readers.get(objectalias);
+			if (aliasreaders == null) {
+				aliasreaders = new IdentityHashMap<FieldSchema<?>, ColumnReader>();
+				readers.put(objectalias, aliasreaders);
+			}
+			lastalias = objectalias;
+			lastaliasreaders = aliasreaders;
+		}
+		ColumnReader reader = aliasreaders.get(fd);
+		if (reader == null) {
+			reader = createReader(fd, objectalias);
+			aliasreaders.put(fd, reader);
+		}
+		return reader;
+	}
 
-				ExternalFieldSchemaTemplate externalfieldschema = (ExternalFieldSchemaTemplate) fd;
+	/**
+	 * @param columnlabel label of the column in the query
+	 * @return the index of the column, from the column plan of the query if it
+	 *         exists, or as found by the driver
+	 * @throws SQLException if the column does not exist in the result
+	 */
+	private int getColumnIndex(String columnlabel) throws SQLException {
+		if (template != null) {
+			int index = template.getColumnIndex(columnlabel);
+			if (index > 0)
+				return index;
+		}
+		return rs.findColumn(columnlabel);
+	}
 
-				ArrayList<StoredFieldSchema<E>> externalfieldschemalist = externalfieldschema.getExternalTableField();
-				if (externalfieldschemalist.size() == 0)
-					throw new RuntimeException(
-							"no field defined in external field schema " + externalfieldschema.getName());
-				if (externalfieldschemalist.size() == 1) {
+	/**
+	 * creates a reader for the field of the alias, reading the column by index
+	 * with the method corresponding to the type of field
+	 * 
+	 * @param fd          field schema
+	 * @param objectalias alias of the table
+	 * @return the reader of the field
+	 * @throws SQLException if the column cannot be found in the result
+	 */
+	private ColumnReader createReader(FieldSchema fd, TableAlias objectalias) throws SQLException {
+		String fieldname = objectalias.getName() + "_" + fd.getName();
+		logger.finest("creating reader for field " + fieldname + " of type " + fd.getClass().getName());
+		if (fd instanceof StringStoredField) {
+			int index = getColumnIndex(fieldname);
+			return (resultset) -> fd.castToType(resultset.getString(index));
+		}
+		if (fd instanceof TimestampStoredField) {
+			int index = getColumnIndex(fieldname);
+			return (resultset) -> fd.castToType(resultset.getTimestamp(index));
+		}
+		if (fd instanceof DecimalStoredField) {
+			int index = getColumnIndex(fieldname);
+			return (resultset) -> fd.castToType(resultset.getBigDecimal(index));
+		}
+		if (fd instanceof IntegerStoredField) {
+			int index = getColumnIndex(fieldname);
+			return (resultset) -> fd.castToType(new Integer(resultset.getInt(index)));
+		}
+		if (fd instanceof LargeBinaryStoredField) {
+			int index = getColumnIndex(fieldname);
+			return (resultset) -> {
+				// content is streamed, and spilled to disk if large
+				try (InputStream stream = resultset.getBinaryStream(index)) {
+					if (stream != null) {
+						SFile file = SFile.readFromStream("TEMPORARY", stream,
+								LargeBinaryStoredField.getSpillThreshold());
+						logger.finest("processing largebinary stored field " + fieldname + " size = "
+								+ file.getLength() + "b, on disk = " + file.isOnDisk());
+						return fd.castToType(file);
+					} else {
+						return fd.castToType(new SFile());
+					}
+				} catch (IOException e) {
+					throw new SQLException("Could not read binary content of field " + fieldname + ": "
+							+ e.getMessage(), e);
+				}
+			};
+		}
 
-					StoredFieldSchema<E> referencedfield = externalfieldschemalist.get(0);
-					String name = objectalias.getName() + externalfieldschema.getName() + "_0";
+		if (fd instanceof ExternalFieldSchemaTemplate) {
+			ExternalFieldSchemaTemplate externalfieldschema = (ExternalFieldSchemaTemplate) fd;
 
-					if (referencedfield instanceof StringStoredField) {
-						StringStoredField referencedstringfield = (StringStoredField) referencedfield;
-						logger.finest("processed field = " + referencedstringfield.getName() + " from field "
-								+ externalfieldschema.getName());
-						return (E) referencedstringfield.castToType(rs.getString(name));
+			ArrayList<StoredFieldSchema> externalfieldschemalist = externalfieldschema.getExternalTableField();
+			if (externalfieldschemalist.size() == 0)
+				throw new RuntimeException(
+						"no field defined in external field schema " + externalfieldschema.getName());
+			if (externalfieldschemalist.size() == 1) {
 
-					}
-					if (referencedfield instanceof TimestampStoredField) {
+				StoredFieldSchema referencedfield = externalfieldschemalist.get(0);
+				int index = getColumnIndex(objectalias.getName() + externalfieldschema.getName() + "_0");
 
-						return referencedfield.castToType(rs.getTimestamp(name));
-					}
-					if (referencedfield instanceof DecimalStoredField) {
-						return referencedfield.castToType(rs.getBigDecimal(name));
-					}
+				if (referencedfield instanceof StringStoredField) {
+					logger.finest("processed field = " + referencedfield.getName() + " from field "
+							+ externalfieldschema.getName());
+					return (resultset) -> referencedfield.castToType(resultset.getString(index));
+				}
+				if (referencedfield instanceof TimestampStoredField) {
+					return (resultset) -> referencedfield.castToType(resultset.getTimestamp(index));
 				}
-				if (externalfieldschemalist.size() > 1) {
+				if (referencedfield instanceof DecimalStoredField) {
+					return (resultset) -> referencedfield.castToType(resultset.getBigDecimal(index));
+				}
+			}
+			if (externalfieldschemalist.size() > 1) {
+				int[] indexes = new int[externalfieldschemalist.size()];
+				for (int i = 0; i < indexes.length; i++)
+					indexes[i] = getColumnIndex(objectalias.getName() + externalfieldschema.getName() + "_" + i);
+				return (resultset) -> {
 					String compactstring = "";
-					for (int i = 0; i < externalfieldschemalist.size(); i++) {
-						String name = objectalias.getName() + externalfieldschema.getName() + "_" + i;
+					for (int i = 0; i < indexes.length; i++) {
 						if (i > 1)
 							compactstring += " ";
-						compactstring += rs.getString(name);
+						compactstring += resultset.getString(indexes[i]);
 						if (i == 0)
 							compactstring += " (";
 					}
 					compactstring += ")";
 					// crappy code but E is string (see a pattern here ?)
-					return (E) (compactstring);
-
-				}
-
+					return compactstring;
+				};
 			}
-		} catch (SQLException e) {
 
-			String exceptionline = "";
-			for (int i = 0; i < e.getStackTrace().length; i++) {
-
-				String thisline = e.getStackTrace()[i].toString();
-				if (thisline.indexOf("org.openlowcode.server.data") != -1) {
-					exceptionline = thisline;
-					break;
-				}
-			}
-			throw new RuntimeException("SQL Exception " + e.getMessage() + " at " + exceptionline
-					+ ", drop table field list " + this.columnlist + "\\			---> Query = " + this.stringquery);
 		}
 		throw new RuntimeException(" type of attribute not supported yet " + fd.getClass().getCanonicalName());
 	}
 
+	/**
+	 * reads the value of a field in the current row of the result set
+	 * 
+	 * @since 1.16
+	 */
+	@FunctionalInterface
+	private interface ColumnReader {
+		/**
+		 * @param resultset the result set, positioned on the current row
+		 * @return the value of the field
+		 * @throws SQLException if the value cannot be read
+		 */
+		public Object read(ResultSet resultset) throws SQLException;
+	}
+
+	/**
+	 * declares the row as the result of a streamed query. A very large number of
+	 * lines is then expected, and the progress of the read is only logged at
+	 * fine level.
+	 * 
+	 * @since 1.16
+	 */
+	public void setStreamed() {
+		this.streamed = true;
+	}
+
 	@Override
 	public boolean next() {
 		try {
 			this.readcolumns++;
-			if (readcolumns % 2000 == 0) {
+			if (streamed) {
+				if (readcolumns % 100000 == 0)
+					logger.fine(" --- streamed query read ongoing : lines " + readcolumns + " for query "
+							+ (this.stringquery.length() > 50 ? this.stringquery.substring(0, 50) + "..."
+									: this.stringquery));
+			} else if (readcolumns % 2000 == 0) {
 				if (readcolumns % 10000 == 0) {
 					logger.warning(" --- query read ongoing : lines " + readcolumns + " for query "
 							+ (this.stringquery.length() > 150 ? this.stringquery.substring(0, 150) + "..."
@@ -207,9 +358,31 @@ public class JDBCRow implements Row {
 
 	@Override
 	public void close() {
+		close(true);
+	}
+
+	/**
+	 * closes the result set, and gives back the statement to the cache or closes
+	 * it
+	 * 
+	 * @param releasetocache true if the statement can be given back to the cache,
+	 *                       false if it should be closed
+	 * @since 1.16
+	 */
+	private void close(boolean releasetocache) {
+		// the statement should be given back only once to the cache
+		synchronized (this) {
+			if (closed)
+				return;
+			closed = true;
+		}
 		try {
 			rs.close();
-			ps.close();
+			if ((releasetocache) && (statementcache != null)) {
+				statementcache.releaseStatement(stringquery, ps);
+			} else {
+				ps.close();
+			}
 		} catch (SQLException e) {
 			throw new RuntimeException(String.format("Error in closing connection %s", e.getMessage()));
 		}
@@ -219,8 +392,9 @@ public class JDBCRow implements Row {
 	@Override
 	protected void finalize() throws Throwable {
 		// this ensures resultset and preparesstatement are closed when row is garbage
-		// collected
-		close();
+		// collected. The statement is not given back to the cache, as the finalizer
+		// thread may run while the connection is used by another thread
+		close(false);
 	}
 
 }
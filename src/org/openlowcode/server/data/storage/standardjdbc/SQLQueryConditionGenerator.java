@@ -11,6 +11,7 @@
 package org.openlowcode.server.data.storage.standardjdbc;
 
 import org.openlowcode.server.data.storage.AndQueryCondition;
+import org.openlowcode.server.data.storage.InQueryCondition;
 import org.openlowcode.server.data.storage.JoinQueryCondition;
 import org.openlowcode.server.data.storage.OrQueryCondition;
 import org.openlowcode.server.data.storage.QueryCondition;
@@ -73,6 +74,23 @@ public class SQLQueryConditionGenerator implements QueryCondition.Visitor {
 
 	}
 
+	@Override
+	public <E extends Object> void visit(InQueryCondition<E> inquerycondition) {
+		querybuffer.append(' ');
+		if (inquerycondition.getAlias() != null) {
+			querybuffer.append(inquerycondition.getAlias().getName());
+			querybuffer.append('.');
+		}
+		querybuffer.append(inquerycondition.getField().getName());
+		querybuffer.append(" IN ( ");
+		for (int i = 0; i < inquerycondition.getBucketSize(); i++) {
+			if (i > 0)
+				querybuffer.append(',');
+			querybuffer.append('?');
+		}
+		querybuffer.append(" ) ");
+	}
+
 	/**
 	 * generates a SQLOperator
 	 * 
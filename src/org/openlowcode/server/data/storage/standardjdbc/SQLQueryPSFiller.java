@@ -17,6 +17,7 @@ import java.util.Date;
 import java.util.logging.Logger;
 
 import org.openlowcode.server.data.storage.AndQueryCondition;
+import org.openlowcode.server.data.storage.InQueryCondition;
 import org.openlowcode.server.data.storage.JoinQueryCondition;
 import org.openlowcode.server.data.storage.OrQueryCondition;
 import org.openlowcode.server.data.storage.QueryCondition;
@@ -55,74 +56,7 @@ public class SQLQueryPSFiller implements QueryCondition.Visitor {
 	public <E extends Object> void visit(SimpleQueryCondition<E> simplequerycondition) {
 		try {
 			if (simplequerycondition.getPayload() != null) {
-				boolean found = false;
-				if (simplequerycondition.getPayload() instanceof String) {
-					String payload = (String) simplequerycondition.getPayload();
-					ps.setString(counter, payload);
-					LOGGER.info("JDBC preparedstatement setString " + counter + "," + payload);
-					counter++;
-					found = true;
-
-				}
-
-				if (simplequerycondition.getPayload() instanceof Choice) {
-					Choice payload = (Choice) simplequerycondition.getPayload();
-					ps.setString(counter, payload.getStorageCode());
-					LOGGER.info("JDBC preparedstatement setString " + counter + "," + payload.getStorageCode());
-					counter++;
-					found = true;
-
-				}
-
-				if (simplequerycondition.getPayload() instanceof TimePeriod) {
-					TimePeriod payload = (TimePeriod) simplequerycondition.getPayload();
-					ps.setString(counter, payload.encode());
-					LOGGER.info(
-							"JDBC prepared statement setString for TimerPeriod " + counter + "," + payload.encode());
-					counter++;
-					found = true;
-				}
-
-				if (simplequerycondition.getPayload() instanceof Date) {
-					Date payload = (Date) simplequerycondition.getPayload();
-
-					ps.setTimestamp(counter, new Timestamp(payload.getTime()));
-					LOGGER.info("JDBC preparedstatement setDate " + counter + "," + payload);
-					counter++;
-					found = true;
-
-				}
-				if (simplequerycondition.getPayload() instanceof ObjectIdInterface) {
-					ObjectIdInterface id = (ObjectIdInterface) simplequerycondition.getPayload();
-					ps.setString(counter, id.getId());
-					LOGGER.info("JDBC preparedstatement setDataObjectId " + counter + "," + id);
-					counter++;
-					found = true;
-
-				}
-
-				if (simplequerycondition.getPayload() instanceof SFile) {
-					SFile binarycontent = (SFile) simplequerycondition.getPayload();
-					if (binarycontent.isEmpty()) {
-						ps.setNull(counter, java.sql.Types.BLOB);
-						LOGGER.info("JDBC preparedstatement set binary " + counter + ", NULL");
-					} else {
-						ps.setBlob(counter, binarycontent.getStream(), binarycontent.getLength());
-						LOGGER.info("JDBC preparedstatement set binary " + counter + ", contentlength = "
-								+ binarycontent.getLength());
-
-					}
-					counter++;
-					found = true;
-				}
-				if (simplequerycondition.getPayload() instanceof Integer) {
-					Integer integercontent = (Integer) simplequerycondition.getPayload();
-					ps.setInt(counter, integercontent.intValue());
-					LOGGER.info("JDBC preparedstatement setInteger" + counter + "," + integercontent);
-
-					counter++;
-					found = true;
-				}
+				boolean found = setParameter(simplequerycondition.getPayload(), true);
 				if (!found)
 					throw new RuntimeException("class not managed for simple query condition " + simplequerycondition
 							+ ", " + simplequerycondition.getPayload());
@@ -136,6 +70,106 @@ public class SQLQueryPSFiller implements QueryCondition.Visitor {
 		}
 	}
 
+	@Override
+	public <E extends Object> void visit(InQueryCondition<E> inquerycondition) {
+		try {
+			LOGGER.info("JDBC preparedstatement set " + inquerycondition.getBucketSize() + " values from " + counter
+					+ " for " + inquerycondition);
+			for (int i = 0; i < inquerycondition.getBucketSize(); i++) {
+				boolean found = setParameter(inquerycondition.getValue(i), false);
+				if (!found)
+					throw new RuntimeException("class not managed for in query condition " + inquerycondition + ", "
+							+ inquerycondition.getValue(i));
+			}
+		} catch (SQLException e) {
+			throw new RuntimeException(String.format(
+					"Persistence issue for in query condition " + inquerycondition + " original message = %s",
+					e.getMessage()));
+		}
+	}
+
+	/**
+	 * sets the next parameter of the prepared statement
+	 * 
+	 * @param payload a payload, not null
+	 * @param log     true if the value of the parameter should be logged
+	 * @return true if the class of the payload is managed, false else
+	 * @throws SQLException if the parameter cannot be set
+	 * @since 1.16
+	 */
+	private boolean setParameter(Object payload, boolean log) throws SQLException {
+		if (payload instanceof String) {
+			String stringpayload = (String) payload;
+			ps.setString(counter, stringpayload);
+			if (log)
+				LOGGER.info("JDBC preparedstatement setString " + counter + "," + stringpayload);
+			counter++;
+			return true;
+		}
+
+		if (payload instanceof Choice) {
+			Choice choicepayload = (Choice) payload;
+			ps.setString(counter, choicepayload.getStorageCode());
+			if (log)
+				LOGGER.info("JDBC preparedstatement setString " + counter + "," + choicepayload.getStorageCode());
+			counter++;
+			return true;
+		}
+
+		if (payload instanceof TimePeriod) {
+			TimePeriod periodpayload = (TimePeriod) payload;
+			ps.setString(counter, periodpayload.encode());
+			if (log)
+				LOGGER.info("JDBC prepared statement setString for TimerPeriod " + counter + ","
+						+ periodpayload.encode());
+			counter++;
+			return true;
+		}
+
+		if (payload instanceof Date) {
+			Date datepayload = (Date) payload;
+			ps.setTimestamp(counter, new Timestamp(datepayload.getTime()));
+			if (log)
+				LOGGER.info("JDBC preparedstatement setDate " + counter + "," + datepayload);
+			counter++;
+			return true;
+		}
+		if (payload instanceof ObjectIdInterface) {
+			ObjectIdInterface id = (ObjectIdInterface) payload;
+			ps.setString(counter, id.getId());
+			if (log)
+				LOGGER.info("JDBC preparedstatement setDataObjectId " + counter + "," + id);
+			counter++;
+			return true;
+		}
+
+		if (payload instanceof SFile) {
+			SFile binarycontent = (SFile) payload;
+			if (binarycontent.isEmpty()) {
+				ps.setNull(counter, java.sql.Types.BLOB);
+				if (log)
+					LOGGER.info("JDBC preparedstatement set binary " + counter + ", NULL");
+			} else {
+				ps.setBlob(counter, binarycontent.getStream(), binarycontent.getLength());
+				if (log)
+					LOGGER.info("JDBC preparedstatement set binary " + counter + ", contentlength = "
+							+ binarycontent.getLength());
+
+			}
+			counter++;
+			return true;
+		}
+		if (payload instanceof Integer) {
+			Integer integercontent = (Integer) payload;
+			ps.setInt(counter, integercontent.intValue());
+			if (log)
+				LOGGER.info("JDBC preparedstatement setInteger" + counter + "," + integercontent);
+			counter++;
+			return true;
+		}
+		return false;
+	}
+
 	@Override
 	public <E> void visit(JoinQueryCondition<E> joinquerycondition) {
 		// do nothing
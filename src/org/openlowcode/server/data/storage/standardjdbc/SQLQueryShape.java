@@ -0,0 +1,276 @@
+/********************************************************************************
+ * Copyright (c) 2020 [Open Lowcode SAS](https://openlowcode.com/)
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0 .
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ********************************************************************************/
+
+package org.openlowcode.server.data.storage.standardjdbc;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.openlowcode.server.data.storage.AndQueryCondition;
+import org.openlowcode.server.data.storage.InQueryCondition;
+import org.openlowcode.server.data.storage.JoinQueryCondition;
+import org.openlowcode.server.data.storage.OrQueryCondition;
+import org.openlowcode.server.data.storage.QueryCondition;
+import org.openlowcode.server.data.storage.QueryConditionAlways;
+import org.openlowcode.server.data.storage.QueryConditionNever;
+import org.openlowcode.server.data.storage.SelectQuery;
+import org.openlowcode.server.data.storage.SimpleQueryCondition;
+import org.openlowcode.server.data.storage.TableAlias;
+import org.openlowcode.server.data.storage.TableAlias.FieldSelectionAlias;
+
+/**
+ * The shape of a select query: the structure of the query without the values
+ * of the conditions. Queries with the same shape generate exactly the same SQL,
+ * only the parameters of the prepared statement change. The shape provides:
+ * <ul>
+ * <li>a fingerprint, used as a key for a cache of the SQL generated and its
+ * column plan (see {@link SQLSelectTemplate})</li>
+ * <li>the binding plan, as the list of conditions holding a parameter, in the
+ * order of the parameters in the SQL</li>
+ * </ul>
+ * The fingerprint is much shorter to build than the SQL, as the fields of a
+ * table are represented by the table name and the number of fields.
+ *
+ * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
+ *         SAS</a>
+ * @since 1.16
+ *
+ */
+@SuppressWarnings("rawtypes")
+public class SQLQueryShape implements QueryCondition.Visitor {
+	private static final int MAX_TEMPLATES = 2000;
+	private static final Map<String, SQLSelectTemplate> templates = new LinkedHashMap<String, SQLSelectTemplate>(256,
+			0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, SQLSelectTemplate> eldest) {
+			return size() > MAX_TEMPLATES;
+		}
+	};
+	private static AtomicLong templatehits = new AtomicLong(0);
+	private static AtomicLong templatemisses = new AtomicLong(0);
+
+	private StringBuilder fingerprint;
+	private ArrayList<QueryCondition> parameters;
+	private int parameternumber;
+
+	/**
+	 * computes the shape of a select query
+	 *
+	 * @param selectquery the select query
+	 */
+	public SQLQueryShape(SelectQuery selectquery) {
+		this.fingerprint = new StringBuilder();
+		this.parameters = new ArrayList<QueryCondition>();
+		this.parameternumber = 0;
+		fingerprint.append(selectquery.isDistinctValues() ? "SD" : "S");
+		for (int i = 0; i < selectquery.getTableNumber(); i++) {
+			TableAlias thisalias = selectquery.getTable(i);
+			fingerprint.append('|');
+			fingerprint.append(thisalias.getName());
+			fingerprint.append('=');
+			fingerprint.append(thisalias.getTable().getName());
+			if (thisalias.queryAllFields()) {
+				fingerprint.append('#');
+				fingerprint.append(thisalias.getTable().getStoredFieldNumber());
+			} else {
+				FieldSelectionAlias[] fieldselection = thisalias.getFieldSelection();
+				for (int j = 0; j < fieldselection.length; j++) {
+					fingerprint.append(j == 0 ? '[' : ',');
+					if (fieldselection[j].getField() != null)
+						fingerprint.append(fieldselection[j].getField().getName());
+					fingerprint.append('>');
+					fingerprint.append(fieldselection[j].getAlias());
+				}
+				fingerprint.append(']');
+			}
+		}
+		QueryCondition condition = selectquery.getQueryCondition();
+		if (condition != null)
+			if (condition.isSignificant(0)) {
+				fingerprint.append("|W");
+				condition.accept(this);
+			}
+		for (int i = 0; i < selectquery.getOrderByNumber(); i++) {
+			SelectQuery.OrderBy orderby = selectquery.getOrderBy(i);
+			fingerprint.append(i == 0 ? "|O " : ",");
+			fingerprint.append(orderby.getAlias().getName());
+			fingerprint.append('.');
+			fingerprint.append(orderby.getField().getName());
+			if (orderby.isDescending())
+				fingerprint.append(" D");
+		}
+		if (selectquery.isPaged())
+			fingerprint.append("|P");
+	}
+
+	/**
+	 * @return the fingerprint of the shape. Two queries with the same fingerprint
+	 *         generate the same SQL
+	 */
+	public String getFingerprint() {
+		return fingerprint.toString();
+	}
+
+	/**
+	 * @return the number of parameters of the query
+	 */
+	public int getParameterNumber() {
+		return parameternumber;
+	}
+
+	/**
+	 * sets the parameters of the query on the prepared statement, following the
+	 * binding plan of the shape. This is equivalent to visiting the condition of
+	 * the query with a {@link SQLQueryPSFiller}.
+	 *
+	 * @param ps          prepared statement
+	 * @param nextcounter index of the first parameter to set
+	 */
+	public void fillParameters(PreparedStatement ps, int nextcounter) {
+		SQLQueryPSFiller filler = new SQLQueryPSFiller(ps, nextcounter);
+		for (int i = 0; i < parameters.size(); i++)
+			parameters.get(i).accept(filler);
+	}
+
+	/**
+	 * gets the SQL template for this shape from the cache, or generates it and
+	 * keeps it in cache for next queries with the same shape.
+	 *
+	 * @param generator function generating the SQL template for the query
+	 * @param query     the query of this shape
+	 * @return the SQL template for the query
+	 */
+	public SQLSelectTemplate getTemplate(Function<SelectQuery, SQLSelectTemplate> generator, SelectQuery query) {
+		String key = getFingerprint();
+		SQLSelectTemplate template;
+		synchronized (templates) {
+			template = templates.get(key);
+		}
+		if (template != null) {
+			templatehits.incrementAndGet();
+			return template;
+		}
+		templatemisses.incrementAndGet();
+		template = generator.apply(query);
+		synchronized (templates) {
+			templates.put(key, template);
+		}
+		return template;
+	}
+
+	/**
+	 * @return the number of select queries that reused cached SQL since server
+	 *         start
+	 */
+	public static long getTemplateHits() {
+		return templatehits.get();
+	}
+
+	/**
+	 * @return the number of select queries for which SQL was generated since
+	 *         server start
+	 */
+	public static long getTemplateMisses() {
+		return templatemisses.get();
+	}
+
+	@Override
+	public <E> void visit(SimpleQueryCondition<E> simplequerycondition) {
+		fingerprint.append(' ');
+		if (simplequerycondition.getAlias() != null) {
+			fingerprint.append(simplequerycondition.getAlias().getName());
+			fingerprint.append('.');
+		}
+		fingerprint.append(simplequerycondition.getField().getName());
+		fingerprint.append(' ');
+		fingerprint.append(simplequerycondition.getOperator().getClass().getName());
+		if (simplequerycondition.getPayload() == null) {
+			fingerprint.append(" N");
+		} else {
+			fingerprint.append(" ?");
+			parameters.add(simplequerycondition);
+			parameternumber++;
+		}
+	}
+
+	@Override
+	public <E extends Object> void visit(InQueryCondition<E> inquerycondition) {
+		fingerprint.append(' ');
+		if (inquerycondition.getAlias() != null) {
+			fingerprint.append(inquerycondition.getAlias().getName());
+			fingerprint.append('.');
+		}
+		fingerprint.append(inquerycondition.getField().getName());
+		fingerprint.append(" IN#");
+		fingerprint.append(inquerycondition.getBucketSize());
+		parameters.add(inquerycondition);
+		parameternumber += inquerycondition.getBucketSize();
+	}
+
+	@Override
+	public <E> void visit(JoinQueryCondition<E> joinquerycondition) {
+		fingerprint.append(" J ");
+		fingerprint.append(joinquerycondition.getMaintable().getName());
+		fingerprint.append('.');
+		fingerprint.append(joinquerycondition.getMaintablefield().getName());
+		fingerprint.append(' ');
+		fingerprint.append(joinquerycondition.getJoinqueryoperator().getClass().getName());
+		fingerprint.append(' ');
+		fingerprint.append(joinquerycondition.getSidetable().getName());
+		fingerprint.append('.');
+		fingerprint.append(joinquerycondition.getSidetablefield().getName());
+	}
+
+	@Override
+	public void visit(AndQueryCondition andquerycondition) {
+		visitChildren(andquerycondition.returnAllConditions(), '&');
+	}
+
+	@Override
+	public void visit(OrQueryCondition orQueryCondition) {
+		visitChildren(orQueryCondition.returnAllConditions(), '|');
+	}
+
+	/**
+	 * visits the conditions of an AND or OR condition
+	 *
+	 * @param conditions the conditions (some may be null)
+	 * @param separator  separator between conditions in the fingerprint
+	 */
+	private void visitChildren(QueryCondition[] conditions, char separator) {
+		fingerprint.append(" (");
+		boolean first = true;
+		for (int i = 0; i < conditions.length; i++) {
+			if (conditions[i] != null) {
+				if (!first)
+					fingerprint.append(separator);
+				conditions[i].accept(this);
+				first = false;
+			}
+		}
+		fingerprint.append(" )");
+	}
+
+	@Override
+	public void visit(QueryConditionAlways always) {
+		fingerprint.append(" A");
+	}
+
+	@Override
+	public void visit(QueryConditionNever never) {
+		fingerprint.append(" X");
+	}
+}
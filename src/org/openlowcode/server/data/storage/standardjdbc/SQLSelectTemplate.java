@@ -0,0 +1,66 @@
+/********************************************************************************
+ * Copyright (c) 2020 [Open Lowcode SAS](https://openlowcode.com/)
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0 .
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ********************************************************************************/
+
+package org.openlowcode.server.data.storage.standardjdbc;
+
+import java.util.HashMap;
+
+/**
+ * The SQL generated for a select query shape (see {@link SQLQueryShape}),
+ * together with the column plan: the index of each column in the result set,
+ * by column label. The column plan allows the rows of the result to be read by
+ * column index, without the driver having to look up column names.
+ *
+ * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
+ *         SAS</a>
+ * @since 1.16
+ *
+ */
+public class SQLSelectTemplate {
+	private String sql;
+	private HashMap<String, Integer> columnindexes;
+
+	/**
+	 * creates a template
+	 *
+	 * @param sql           the SQL of the select query
+	 * @param columnlabels the labels of the columns in the select clause, in order
+	 */
+	public SQLSelectTemplate(String sql, String[] columnlabels) {
+		this.sql = sql;
+		this.columnindexes = new HashMap<String, Integer>();
+		for (int i = 0; i < columnlabels.length; i++) {
+			String label = columnlabels[i].toUpperCase();
+			// as in JDBC, the first column with a label is used
+			if (!columnindexes.containsKey(label))
+				columnindexes.put(label, new Integer(i + 1));
+		}
+	}
+
+	/**
+	 * @return the SQL of the select query
+	 */
+	public String getSQL() {
+		return sql;
+	}
+
+	/**
+	 * @param columnlabel label of a column in the select clause (case
+	 *                    insensitive)
+	 * @return the index of the column in the result set (starting with 1), or -1
+	 *         if the column is not in the select clause
+	 */
+	public int getColumnIndex(String columnlabel) {
+		Integer index = columnindexes.get(columnlabel.toUpperCase());
+		if (index == null)
+			return -1;
+		return index.intValue();
+	}
+}
@@ -0,0 +1,78 @@
+/********************************************************************************
+ * Copyright (c) 2020 [Open Lowcode SAS](https://openlowcode.com/)
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0 .
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ********************************************************************************/
+
+package org.openlowcode.server.runtime;
+
+/**
+ * Specifies the interface for the engine running the connections accepted by
+ * the connection listener. The engine decides on which thread the connection
+ * and its requests are treated.
+ * 
+ * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
+ *         SAS</a>
+ * @since 1.16
+ */
+public interface ConnectionEngine {
+	/**
+	 * value for the configuration key CONNECTION.ENGINE for the thread per
+	 * connection engine (default)
+	 */
+	public final static String ENGINE_THREAD = "THREAD";
+	/**
+	 * value for the configuration key CONNECTION.ENGINE for the executor engine
+	 */
+	public final static String ENGINE_EXECUTOR = "EXECUTOR";
+
+	/**
+	 * launches the treatment of the connection. This method should return
+	 * immediately.
+	 * 
+	 * @param connection the connection to treat
+	 */
+	public void launch(ServerConnection connection);
+
+	/**
+	 * launches a task on behalf of a connection, typically a request received on
+	 * a multiplexed channel. This method should return immediately. The caller is
+	 * responsible for limiting the number of tasks launched per connection.
+	 * 
+	 * @param task the task to run
+	 * @param name name of the task, used for the thread if relevant
+	 */
+	public void execute(Runnable task, String name);
+
+	/**
+	 * stops the engine. Connections currently running are not interrupted.
+	 */
+	public void shutdown();
+
+	/**
+	 * @return a description of the engine for logs
+	 */
+	public String getDescription();
+
+	/**
+	 * creates the connection engine as specified in the server configuration
+	 * 
+	 * @param enginetype type of engine (either ENGINE_THREAD or ENGINE_EXECUTOR),
+	 *                   or null for the default engine
+	 * @return the connection engine
+	 */
+	public static ConnectionEngine get(String enginetype) {
+		if (enginetype == null)
+			return new ThreadConnectionEngine();
+		if (enginetype.equals(ENGINE_THREAD))
+			return new ThreadConnectionEngine();
+		if (enginetype.equals(ENGINE_EXECUTOR))
+			return new ExecutorConnectionEngine();
+		throw new RuntimeException("Connection engine not supported " + enginetype + ", valid values are "
+				+ ENGINE_THREAD + ", " + ENGINE_EXECUTOR);
+	}
+}
@@ -34,6 +34,7 @@ public class ConnectionListener extends Thread {
 	private boolean messageaudit;
 	private String deadlockobject;
 	private boolean active = true;
+	private ConnectionEngine engine;
 	Logger logger = Logger.getLogger("");
 
 	/**
@@ -47,7 +48,26 @@ public class ConnectionListener extends Thread {
 	 *                     already running on the same port
 	 */
 	public ConnectionListener(int port, OLcServer parent, boolean messageaudit) throws IOException {
+		this(port, parent, messageaudit, new ThreadConnectionEngine());
+	}
+
+	/**
+	 * Creates a connection listening to the given port, and running connections
+	 * on the specified engine
+	 * 
+	 * @param port         port
+	 * @param parent       parent server
+	 * @param messageaudit true if messages are audited
+	 * @param engine       engine running the connections accepted
+	 * @throws IOException if any problem is encountered setting up the server
+	 *                     socket. Typically, this may be because a server is
+	 *                     already running on the same port
+	 * @since 1.16
+	 */
+	public ConnectionListener(int port, OLcServer parent, boolean messageaudit, ConnectionEngine engine)
+			throws IOException {
 		this.deadlockobject = "DEADLOCK";
+		this.engine = engine;
 		this.port = port;
 		this.messageaudit = messageaudit;
 		logger.info("initiating listener to listen on port " + port);
@@ -56,7 +76,8 @@ public class ConnectionListener extends Thread {
 		connectionrecordbythreadid = new HashMap<String, ServerConnection>();
 		active = true;
 		this.start();
-		logger.info("port " + this.port + " listening initialized. Starts listening in the background");
+		logger.info("port " + this.port + " listening initialized with " + engine.getDescription()
+				+ ". Starts listening in the background");
 
 	}
 
@@ -69,13 +90,14 @@ public class ConnectionListener extends Thread {
 				synchronized (deadlockobject) {
 					if (active) {
 						ServerConnection connection = new ServerConnection(thissocket, parent, messageaudit);
-						connection.start();
-						long threadid = connection.getId();
-						connectionrecordbythreadid.put("" + connection.getId(), connection);
+						long connectionid = connection.getConnectionId();
+						connectionrecordbythreadid.put("" + connectionid, connection);
+						engine.launch(connection);
 						logger.info("starting clientconnection from address " + thissocket.getInetAddress()
-								+ ", treated on thread = " + threadid);
+								+ ", treated as connection = " + connectionid);
 					} else {
 						thissocket.close();
+						engine.shutdown();
 						logger.info("Although received a connection, was requested from server to stop");
 						break;
 					}
@@ -106,8 +128,8 @@ public class ConnectionListener extends Thread {
 				Entry<String, ServerConnection> set = iterator.next();
 				ServerConnection connection = set.getValue();
 				// clean old dead connections;
-				if (!connection.isAlive()) {
-					connectionrecordbythreadid.remove(set.getKey());
+				if (connection.isFinished()) {
+					iterator.remove();
 
 				} else {
 					connection.setInactive();
@@ -137,8 +159,8 @@ public class ConnectionListener extends Thread {
 					Entry<String, ServerConnection> set = iterator.next();
 					ServerConnection connection = set.getValue();
 					// clean old dead connections;
-					if (!connection.isAlive()) {
-						connectionrecordbythreadid.remove(set.getKey());
+					if (connection.isFinished()) {
+						iterator.remove();
 					}
 				}
 				if (connectionrecordbythreadid.size() == 1) {
@@ -160,13 +182,13 @@ public class ConnectionListener extends Thread {
 	}
 
 	/**
-	 * removes the thread from the catalog of threads maintained in this class after
-	 * the treatment is finished
+	 * removes the connection from the catalog of connections maintained in this
+	 * class after the treatment is finished
 	 * 
-	 * @param id id of the tream
+	 * @param id id of the connection
 	 */
 	public void reportThreadFinished(long id) {
-		logger.severe("Thread is finished " + id);
+		logger.severe("Connection is finished " + id);
 		synchronized (deadlockobject) {
 			connectionrecordbythreadid.remove("" + id);
 		}
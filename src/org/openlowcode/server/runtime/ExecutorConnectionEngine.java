@@ -0,0 +1,104 @@
+/********************************************************************************
+ * Copyright (c) 2020 [Open Lowcode SAS](https://openlowcode.com/)
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0 .
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ********************************************************************************/
+
+package org.openlowcode.server.runtime;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * A connection engine running connections on an executor. If the java runtime
+ * supports virtual threads (java 21 and above), each connection is run on a
+ * virtual thread, meaning a connection waiting for the client does not hold a
+ * platform thread and its stack. On older runtimes, connections run on a cached
+ * pool of daemon threads that are reused between connections.<br>
+ * Note: as all the connection state is held in the {@link RequestContext}, the
+ * connection does not depend on the thread it is running on.
+ * 
+ * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
+ *         SAS</a>
+ * @since 1.16
+ */
+public class ExecutorConnectionEngine implements ConnectionEngine {
+	private static Logger logger = Logger.getLogger(ExecutorConnectionEngine.class.getName());
+	private ExecutorService executor;
+	private boolean virtualthreads;
+
+	/**
+	 * creates an executor connection engine, using virtual threads if available
+	 */
+	public ExecutorConnectionEngine() {
+		this.executor = getVirtualThreadExecutor();
+		if (this.executor != null) {
+			this.virtualthreads = true;
+		} else {
+			this.virtualthreads = false;
+			AtomicInteger threadcounter = new AtomicInteger(0);
+			ThreadFactory threadfactory = new ThreadFactory() {
+
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "OLcConnectionPool-" + threadcounter.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+
+			};
+			this.executor = Executors.newCachedThreadPool(threadfactory);
+		}
+		logger.info("Initiated " + getDescription());
+	}
+
+	/**
+	 * the framework is compiled for java 8, so the virtual thread executor is
+	 * looked-up by reflection. This is an agreed exception to the no-reflection
+	 * rule of the project
+	 * 
+	 * @return the virtual thread executor if the runtime supports it, null else
+	 */
+	private static ExecutorService getVirtualThreadExecutor() {
+		try {
+			Method virtualthreadexecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) virtualthreadexecutor.invoke(null);
+		} catch (NoSuchMethodException e) {
+			logger.info("Virtual threads not supported by java runtime, using a thread pool");
+			return null;
+		} catch (Exception e) {
+			logger.warning("Could not initiate virtual threads executor, using a thread pool " + e.getClass().getName()
+					+ " - " + e.getMessage());
+			return null;
+		}
+	}
+
+	@Override
+	public void launch(ServerConnection connection) {
+		executor.execute(connection);
+	}
+
+	@Override
+	public void execute(Runnable task, String name) {
+		executor.execute(task);
+	}
+
+	@Override
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	@Override
+	public String getDescription() {
+		return "Executor connection engine (" + (virtualthreads ? "virtual threads" : "thread pool") + ")";
+	}
+
+}
@@ -36,14 +36,19 @@ import org.openlowcode.OLcVersion;
 import org.openlowcode.module.system.Systemmodule;
 import org.openlowcode.module.system.data.Appuser;
 import org.openlowcode.module.system.data.Authority;
+import org.openlowcode.server.data.ChangeJournal;
 import org.openlowcode.server.data.DataObject;
 import org.openlowcode.server.data.formula.TriggerToExecute;
 import org.openlowcode.server.data.properties.AdminIdDefaultValueGenerator;
 import org.openlowcode.server.data.properties.DataObjectId;
+import org.openlowcode.server.data.properties.ObjectIdAllocator;
 import org.openlowcode.server.data.properties.UniqueidentifiedInterface;
+import org.openlowcode.server.data.storage.LargeBinaryStoredField;
 import org.openlowcode.server.data.storage.PersistenceGateway;
 import org.openlowcode.server.data.storage.PersistentStorage;
+import org.openlowcode.server.data.storage.UnitOfWork;
 import org.openlowcode.server.data.storage.jdbcpool.ConnectionPool;
+import org.openlowcode.server.data.storage.jdbcpool.QueuedConnectionPool;
 import org.openlowcode.server.data.storage.jdbcpool.SimpleConnectionPool;
 import org.openlowcode.server.runtime.email.MailDaemon;
 import org.openlowcode.server.security.OTPSecurity;
@@ -66,6 +71,13 @@ public class OLcServer {
 
 	public final static String DBTYPE_DERBY = "DERBY";
 	public final static String DBTYPE_MARIA10_2 = "MARIA10.2";
+	/**
+	 * default number of requests of a multiplexed connection executed at the same
+	 * time
+	 * 
+	 * @since 1.16
+	 */
+	public final static int DEFAULT_MAX_MULTIPLEXED_REQUESTS = 8;
 	private ConnectionPool connectionpool;
 	private SecurityManager securitymanager;
 	private OLcServerLogFilter consolelogfilter;
@@ -76,6 +88,13 @@ public class OLcServer {
 	private static OLcServer serversingleton;
 	private InetAddress localhost;
 	private ConnectionListener connectionlisterner;
+	private RequestExecutor requestexecutor;
+	private ConnectionEngine connectionengine;
+	private int maxmultiplexedrequests = DEFAULT_MAX_MULTIPLEXED_REQUESTS;
+	private boolean binarycodecallowed = true;
+	private boolean framedchannelallowed = true;
+	private boolean multiplexingallowed = true;
+	private boolean compressiondictionaryallowed = true;
 	private String alternativeonewayencryptionkey=null;
 	
 	public String getAlternativeOneWayEncryptionKey() {
@@ -100,6 +119,80 @@ public class OLcServer {
 		return connectionpool;
 	}
 
+	/**
+	 * gets the request executor performing admission control on requests
+	 * 
+	 * @return the request executor of the server
+	 * @since 1.16
+	 */
+	public RequestExecutor getRequestExecutor() {
+		return requestexecutor;
+	}
+
+	/**
+	 * gets the engine running connections, and the requests received on
+	 * multiplexed connections
+	 * 
+	 * @return the connection engine of the server
+	 * @since 1.16
+	 */
+	public ConnectionEngine getConnectionEngine() {
+		return connectionengine;
+	}
+
+	/**
+	 * @return the maximum number of requests of a multiplexed connection executed
+	 *         at the same time (option CONNECTION.MAXMULTIPLEXEDREQUESTS, 8 by
+	 *         default). Further requests of the connection are rejected as
+	 *         overload.
+	 * @since 1.16
+	 */
+	public int getMaxMultiplexedRequests() {
+		return maxmultiplexedrequests;
+	}
+
+	/**
+	 * @return true if the server offers the binary message codec to clients during
+	 *         the security handshake (option CONNECTION.BINARYCODEC, true by
+	 *         default)
+	 * @since 1.16
+	 */
+	public boolean isBinaryCodecAllowed() {
+		return binarycodecallowed;
+	}
+
+	/**
+	 * @return true if the server offers to clients during the security handshake
+	 *         to send encrypted messages as frames directly on the socket instead
+	 *         of inside a text envelope (option CONNECTION.FRAMEDCHANNEL, true by
+	 *         default)
+	 * @since 1.16
+	 */
+	public boolean isFramedChannelAllowed() {
+		return framedchannelallowed;
+	}
+
+	/**
+	 * @return true if the server offers to clients during the security handshake
+	 *         to send several requests at the same time on the connection (option
+	 *         CONNECTION.MULTIPLEXING, true by default). This is only offered if
+	 *         the framed channel is allowed.
+	 * @since 1.16
+	 */
+	public boolean isMultiplexingAllowed() {
+		return framedchannelallowed && multiplexingallowed;
+	}
+
+	/**
+	 * @return true if the server offers to clients during the security handshake
+	 *         to compress encrypted messages with a preset dictionary of the
+	 *         message vocabulary (option CONNECTION.DICTIONARY, true by default)
+	 * @since 1.16
+	 */
+	public boolean isCompressionDictionaryAllowed() {
+		return compressiondictionaryallowed;
+	}
+
 	/**
 	 * gets the number of modules registered on the server
 	 * 
@@ -218,12 +311,80 @@ public class OLcServer {
 				jdbcpassword = serverconfig.getCompulsoryValue("JDBC.PASSWORD");
 				maxconnection = serverconfig.getCompulsoryIntegerValue("JDBC.MAXCONNECTIONS");
 			}
-			connectionpool = new SimpleConnectionPool(jdbcurl, jdbcuser, jdbcpassword, minconnection, maxconnection);
+			int statementcachesize = serverconfig.getOptionalIntegerValue("JDBC.STATEMENTCACHE",
+					SimpleConnectionPool.DEFAULT_STATEMENT_CACHE_SIZE);
+			String pooltype = serverconfig.getOptionalValue("JDBC.POOL");
+			if ("SIMPLE".equals(pooltype)) {
+				connectionpool = new SimpleConnectionPool(jdbcurl, jdbcuser, jdbcpassword, minconnection,
+						maxconnection, statementcachesize);
+			} else {
+				int pooltimeout = serverconfig.getOptionalIntegerValue("JDBC.POOLTIMEOUT",
+						QueuedConnectionPool.DEFAULT_TIMEOUT);
+				int leakthreshold = serverconfig.getOptionalIntegerValue("JDBC.LEAKTHRESHOLD",
+						QueuedConnectionPool.DEFAULT_LEAK_THRESHOLD);
+				connectionpool = new QueuedConnectionPool(jdbcurl, jdbcuser, jdbcpassword, minconnection,
+						maxconnection, statementcachesize, pooltimeout, leakthreshold);
+			}
 			// connection pool and persistence gateway seem to be inconsistent / redundant
 			PersistenceGateway.setconnectionpool(dbtype, connectionpool);
+			String jdbcreadurl = serverconfig.getOptionalValue("JDBC.READURL");
+			if (jdbcreadurl != null)
+				if (hasadvanceddatabase) {
+					String jdbcreaduser = serverconfig.getOptionalValue("JDBC.READUSER");
+					String jdbcreadpassword = serverconfig.getOptionalValue("JDBC.READPASSWORD");
+					if (jdbcreaduser == null) {
+						jdbcreaduser = jdbcuser;
+						jdbcreadpassword = jdbcpassword;
+					}
+					int maxreadconnection = serverconfig.getOptionalIntegerValue("JDBC.READMAXCONNECTIONS",
+							maxconnection);
+					ConnectionPool readconnectionpool = new QueuedConnectionPool(jdbcreadurl, jdbcreaduser,
+							jdbcreadpassword, minconnection, maxreadconnection, statementcachesize,
+							serverconfig.getOptionalIntegerValue("JDBC.POOLTIMEOUT",
+									QueuedConnectionPool.DEFAULT_TIMEOUT),
+							serverconfig.getOptionalIntegerValue("JDBC.LEAKTHRESHOLD",
+									QueuedConnectionPool.DEFAULT_LEAK_THRESHOLD));
+					PersistenceGateway.setreadconnectionpool(readconnectionpool);
+					mainlogger.info("Selects of searches, reports and inline actions can be sent to read replica "
+							+ jdbcreadurl);
+				} else {
+					mainlogger.warning("Read replica " + jdbcreadurl + " ignored as database type " + dbtype
+							+ " does not support it");
+				}
 			PersistentStorage storage = PersistenceGateway.getStorage();
 			storage.technicalInit();
 			PersistenceGateway.checkinStorage(storage);
+			ObjectIdAllocator.configure(
+					serverconfig.getOptionalIntegerValue("IDALLOCATOR.STRIPES",
+							Runtime.getRuntime().availableProcessors()),
+					serverconfig.getOptionalIntegerValue("IDALLOCATOR.PREFETCH", ObjectIdAllocator.DEFAULT_PREFETCH));
+			PersistenceGateway.setUnitOfWork(serverconfig.getOptionalBooleanValue("UNITOFWORK.ENABLED", true),
+					serverconfig.getOptionalIntegerValue("UNITOFWORK.MAXROWS", UnitOfWork.DEFAULT_MAX_PENDING_ROWS));
+			boolean transactionperaction = serverconfig.getOptionalBooleanValue("TRANSACTION.PERACTION", false);
+			PersistenceGateway.setTransactionPerAction(transactionperaction);
+			if (transactionperaction) {
+				// actions keep a connection until they end, sequences and id seeds use
+				// their own connections so that they can always be reserved
+				int maxautonomousconnection = serverconfig.getOptionalIntegerValue("JDBC.AUTONOMOUSMAXCONNECTIONS",
+						2);
+				ConnectionPool autonomousconnectionpool;
+				if ("SIMPLE".equals(pooltype)) {
+					autonomousconnectionpool = new SimpleConnectionPool(jdbcurl, jdbcuser, jdbcpassword, 1,
+							maxautonomousconnection, statementcachesize);
+				} else {
+					autonomousconnectionpool = new QueuedConnectionPool(jdbcurl, jdbcuser, jdbcpassword, 1,
+							maxautonomousconnection, statementcachesize,
+							serverconfig.getOptionalIntegerValue("JDBC.POOLTIMEOUT",
+									QueuedConnectionPool.DEFAULT_TIMEOUT),
+							serverconfig.getOptionalIntegerValue("JDBC.LEAKTHRESHOLD",
+									QueuedConnectionPool.DEFAULT_LEAK_THRESHOLD));
+				}
+				PersistenceGateway.setautonomousconnectionpool(autonomousconnectionpool);
+				mainlogger.info("Each action is performed in a single transaction, sequences use a separate pool of "
+						+ maxautonomousconnection + " connections");
+			}
+			LargeBinaryStoredField.setSpillThreshold(serverconfig.getOptionalIntegerValue("JDBC.BLOBSPILLTHRESHOLD",
+					LargeBinaryStoredField.DEFAULT_SPILL_THRESHOLD));
 			mainlogger.info(serverstartuptimer.logTimer(" STARTUP STEP 2: JDBC connection pool"));
 
 			// ------------------------------- INITIATE PAGE DIRECTORY --------------------
@@ -272,6 +433,19 @@ public class OLcServer {
 			// ------------------------------- UPDATE DATA MODEL ------------------------
 			processModules(systemmoduleendindex, serverstartuptimer);
 
+			// ------------------------------- INITIATE CHANGE JOURNAL ------------------
+			// needed when several servers share the database with caches enabled
+			if (serverconfig.getOptionalBooleanValue("CLUSTER.JOURNAL", false)) {
+				ChangeJournal.initiate(localhost.getHostName() + ":" + port + ":"
+						+ Long.toHexString(System.currentTimeMillis()),
+						serverconfig.getOptionalIntegerValue("CLUSTER.POLLINTERVAL",
+								ChangeJournal.DEFAULT_POLL_INTERVAL),
+						serverconfig.getOptionalIntegerValue("CLUSTER.OVERLAP", ChangeJournal.DEFAULT_OVERLAP),
+						serverconfig.getOptionalIntegerValue("CLUSTER.RETENTION", ChangeJournal.DEFAULT_RETENTION));
+				ServerSecurityBuffer.registerChangeListener();
+				mainlogger.info(serverstartuptimer.logTimer(" STARTUP STEP 5B: change journal initiated"));
+			}
+
 			// ------------------------------- INITIATE SECURITY ------------------------
 			String ldapconnectionstring = serverconfig.getOptionalValue("LDAP.CONNECTION");
 			String ldapuser = null;
@@ -308,7 +482,18 @@ public class OLcServer {
 
 			boolean messageaudit = serverconfig.getOptionalBooleanValue("MESSAGE.AUDIT", false);
 
-			connectionlisterner = new ConnectionListener(port, this, messageaudit);
+			requestexecutor = RequestExecutor.get(serverconfig);
+			binarycodecallowed = serverconfig.getOptionalBooleanValue("CONNECTION.BINARYCODEC", true);
+			framedchannelallowed = serverconfig.getOptionalBooleanValue("CONNECTION.FRAMEDCHANNEL", true);
+			multiplexingallowed = serverconfig.getOptionalBooleanValue("CONNECTION.MULTIPLEXING", true);
+			compressiondictionaryallowed = serverconfig.getOptionalBooleanValue("CONNECTION.DICTIONARY", true);
+			maxmultiplexedrequests = serverconfig.getOptionalIntegerValue("CONNECTION.MAXMULTIPLEXEDREQUESTS",
+					DEFAULT_MAX_MULTIPLEXED_REQUESTS);
+			if (maxmultiplexedrequests <= 0)
+				throw new RuntimeException(
+						"CONNECTION.MAXMULTIPLEXEDREQUESTS should be strictly positive, got " + maxmultiplexedrequests);
+			connectionengine = ConnectionEngine.get(serverconfig.getOptionalValue("CONNECTION.ENGINE"));
+			connectionlisterner = new ConnectionListener(port, this, messageaudit, connectionengine);
 			mainlogger.severe(serverstartuptimer.logTimer(" STARTUP STEP 7: all port listeners initiated"));
 			String smtpurl = serverconfig.getOptionalValue("SMTP.URL");
 			if (smtpurl != null) {
@@ -557,6 +742,8 @@ public class OLcServer {
 		connectionhandler.setLevel(Level.FINEST);
 		connectionhandler.setFormatter(new FileFormatter(false));
 		connectionlogger.addHandler(connectionhandler);
+		Logger queuedconnectionlogger = Logger.getLogger(QueuedConnectionPool.class.getCanonicalName());
+		queuedconnectionlogger.addHandler(connectionhandler);
 	}
 
 	/**
@@ -573,9 +760,7 @@ public class OLcServer {
 	 * different data for each thread)
 	 */
 	public void resetTriggersList() {
-		currentriggerexecution.set(new Integer(-1));
-		triggerstoexecute.set(new ArrayList<TriggerToExecute<?>>());
-		triggersobjectbuffer.set(new HashMap<String, UniqueidentifiedInterface<?>>());
+		getRequestContext().resetTriggersList();
 	}
 
 	/**
@@ -588,7 +773,7 @@ public class OLcServer {
 	@SuppressWarnings("unchecked")
 	public <E extends DataObject<E> & UniqueidentifiedInterface<E>> E getObjectInTriggerUpdateBuffer(
 			DataObjectId<E> id) {
-		UniqueidentifiedInterface<?> object = triggersobjectbuffer.get().get(id.getObjectId());
+		UniqueidentifiedInterface<?> object = getRequestContext().getTriggersObjectBuffer().get(id.getObjectId());
 		if (object == null)
 			return null;
 		return (E) (object);
@@ -601,7 +786,7 @@ public class OLcServer {
 	 */
 	public void setObjectInTriggerUpdateBuffer(UniqueidentifiedInterface<?> object) {
 		mainlogger.fine(" -+-+- Add object in trigger object buffer " + object.getId());
-		triggersobjectbuffer.get().put(object.getId().getObjectId(), object);
+		getRequestContext().getTriggersObjectBuffer().put(object.getId().getObjectId(), object);
 	}
 
 	/**
@@ -629,9 +814,10 @@ public class OLcServer {
 		// will look at all triggers after the one under execution, and only add the
 		// object if not already present
 		// if object already present, replaces by the newer version
-		int executionindex = currentriggerexecution.get();
+		RequestContext context = getRequestContext();
+		int executionindex = context.getCurrentTriggerExecution();
 		boolean objecttriggeralreadypresent = false;
-		ArrayList<TriggerToExecute<?>> currenttriggers = triggerstoexecute.get();
+		ArrayList<TriggerToExecute<?>> currenttriggers = context.getTriggersToExecute();
 		mainlogger.fine(" getting triggers from currentriggers list = " + currenttriggers.toString() + " for Thread "
 				+ Thread.currentThread().getId());
 
@@ -698,7 +884,8 @@ public class OLcServer {
 	 * 
 	 */
 	public void executeTriggerList() {
-		ArrayList<TriggerToExecute<?>> triggerforthread = triggerstoexecute.get();
+		RequestContext context = getRequestContext();
+		ArrayList<TriggerToExecute<?>> triggerforthread = context.getTriggersToExecute();
 		int index = 0;
 		if (triggerforthread != null)
 			while (index < triggerforthread.size()) {
@@ -717,7 +904,7 @@ public class OLcServer {
 				}
 				index++;
 			}
-		HashMap<String, UniqueidentifiedInterface<?>> buffer = triggersobjectbuffer.get();
+		HashMap<String, UniqueidentifiedInterface<?>> buffer = context.getTriggersObjectBuffer();
 		mainlogger.info(" ----------- ** ** -- updating objects in the trigger buffer, buffer size =  "
 				+ (buffer != null ? buffer.size() : "empty"));
 		if (buffer != null) {
@@ -734,7 +921,7 @@ public class OLcServer {
 		index = 0;
 		if (triggerforthread != null)
 			while (index < triggerforthread.size()) {
-				currentriggerexecution.set(new Integer(index));
+				context.setCurrentTriggerExecution(new Integer(index));
 				if (index > 1024)
 					throw new RuntimeException("Breaker: more than 1024 external threads for an action");
 				TriggerToExecute<?> thistrigger = triggerforthread.get(index);
@@ -753,17 +940,45 @@ public class OLcServer {
 
 	}
 
-	private ThreadLocal<String> connectionip = new ThreadLocal<String>();
-	private ThreadLocal<String> connectioncid = new ThreadLocal<String>();
-	private ThreadLocal<AESCommunicator> aescommunicator = new ThreadLocal<AESCommunicator>();
-	private ThreadLocal<Boolean> otpauthorization = new ThreadLocal<Boolean>();
-	private ThreadLocal<DataObjectId<Appuser>> connectionuserid = new ThreadLocal<DataObjectId<Appuser>>();
-	private ThreadLocal<Integer> currentriggerexecution = new ThreadLocal<Integer>();
-	private ThreadLocal<Long> sequenceperthread = new ThreadLocal<Long>();
-	private ThreadLocal<
-			ArrayList<TriggerToExecute<?>>> triggerstoexecute = new ThreadLocal<ArrayList<TriggerToExecute<?>>>();
-	private ThreadLocal<HashMap<String, UniqueidentifiedInterface<?>>> triggersobjectbuffer = new ThreadLocal<
-			HashMap<String, UniqueidentifiedInterface<?>>>();
+	private ThreadLocal<RequestContext> requestcontext = new ThreadLocal<RequestContext>();
+
+	/**
+	 * binds the request context to the calling thread. All the methods of the
+	 * server referring to the current connection (ip, client id, user, triggers...)
+	 * will use this context until it is unbound.
+	 * 
+	 * @param context the request context to bind to the calling thread
+	 * @since 1.16
+	 */
+	public void bindRequestContext(RequestContext context) {
+		requestcontext.set(context);
+	}
+
+	/**
+	 * unbinds the request context from the calling thread
+	 * 
+	 * @since 1.16
+	 */
+	public void unbindRequestContext() {
+		requestcontext.remove();
+	}
+
+	/**
+	 * gets the request context bound to the calling thread. If no context is
+	 * bound, typically for a background thread of the server, a blank context is
+	 * created and bound to the thread
+	 * 
+	 * @return the request context for the calling thread
+	 * @since 1.16
+	 */
+	public RequestContext getRequestContext() {
+		RequestContext context = requestcontext.get();
+		if (context == null) {
+			context = new RequestContext();
+			requestcontext.set(context);
+		}
+		return context;
+	}
 
 	/**
 	 * gets a transient sequence for the given thread
@@ -771,12 +986,7 @@ public class OLcServer {
 	 * @return the transient sequence
 	 */
 	public long getNextSequence() {
-		Long lastsequence = sequenceperthread.get();
-		if (lastsequence == null)
-			lastsequence = new Long(0);
-		Long nextsequence = new Long(lastsequence.intValue() + 1);
-		sequenceperthread.set(nextsequence);
-		return nextsequence.longValue();
+		return getRequestContext().getNextSequence();
 	}
 
 	/**
@@ -785,7 +995,7 @@ public class OLcServer {
 	 * @param ip ip calling for the thread
 	 */
 	public void setIpForConnection(String ip) {
-		connectionip.set(ip);
+		getRequestContext().setIp(ip);
 	}
 
 	/**
@@ -794,14 +1004,14 @@ public class OLcServer {
 	 * @return
 	 */
 	public String getIpForConnection() {
-		return connectionip.get();
+		return getRequestContext().getIp();
 	}
 
 	/**
 	 * removes the reference to the ip address of the client
 	 */
 	public void removeIpConnectionReference() {
-		connectionip.remove();
+		getRequestContext().setIp(null);
 	}
 
 	/**
@@ -811,28 +1021,24 @@ public class OLcServer {
 	 * @since 1.10
 	 */
 	public void setAESCommunicator(AESCommunicator communicator) {
-		this.aescommunicator.set(communicator);
+		getRequestContext().setAESCommunicator(communicator);
 	}
 
-
-
 	/**
 	 * @return the aes cipher for encryption for the current connection
 	 * @since 1.10
 	 */
 	public AESCommunicator getAESCommunicator() {
-		return this.aescommunicator.get();
+		return getRequestContext().getAESCommunicator();
 	}
 
-
-
 	/**
 	 * sets the user if for the connection for the calling thread
 	 * 
 	 * @param appuserid userid for the calling thread
 	 */
 	public void setUserIdForConnection(DataObjectId<Appuser> appuserid) {
-		connectionuserid.set(appuserid);
+		getRequestContext().setUserId(appuserid);
 	}
 
 	/**
@@ -842,7 +1048,7 @@ public class OLcServer {
 	 *         transaction
 	 */
 	public DataObjectId<Appuser> getUserIdForConnection() {
-		return connectionuserid.get();
+		return getRequestContext().getUserId();
 	}
 
 	/**
@@ -851,7 +1057,7 @@ public class OLcServer {
 	 * @param cid client id
 	 */
 	public void setCidForConnection(String cid) {
-		connectioncid.set(cid);
+		getRequestContext().setCid(cid);
 	}
 
 	/**
@@ -861,7 +1067,7 @@ public class OLcServer {
 	 * @since 1.10
 	 */
 	public Boolean getOTPForConnection() {
-		return this.otpauthorization.get();
+		return getRequestContext().getOTPAuthorization();
 	}
 
 	/**
@@ -870,14 +1076,14 @@ public class OLcServer {
 	 * @since 1.10
 	 */
 	public void setOTPForConnection() {
-		this.otpauthorization.set(Boolean.TRUE);
+		getRequestContext().setOTPAuthorization();
 	}
 
 	/**
 	 * @return gets the client id for the connection for the calling thread
 	 */
 	public String getCidForConnection() {
-		return connectioncid.get();
+		return getRequestContext().getCid();
 	}
 
 	/**
@@ -885,7 +1091,7 @@ public class OLcServer {
 	 * thread
 	 */
 	public void removeCidConnectionReference() {
-		connectioncid.remove();
+		getRequestContext().setCid(null);
 	}
 
 	/**
@@ -0,0 +1,148 @@
+/********************************************************************************
+ * Copyright (c) 2020 [Open Lowcode SAS](https://openlowcode.com/)
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0 .
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ********************************************************************************/
+
+package org.openlowcode.server.runtime;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openlowcode.server.graphic.SPage;
+import org.openlowcode.server.graphic.SPageData;
+import org.openlowcode.server.security.SecurityBuffer;
+import org.openlowcode.tools.messages.MessageBufferedWriter;
+import org.openlowcode.tools.messages.MessageElement;
+import org.openlowcode.tools.messages.MessageEnd;
+import org.openlowcode.tools.messages.MessageEndStructure;
+import org.openlowcode.tools.messages.MessageStart;
+import org.openlowcode.tools.messages.MessageStartStructure;
+import org.openlowcode.tools.messages.MessageWriter;
+
+/**
+ * The skeleton of a page is the description of the widgets of the page,
+ * without the page data. It is kept by the client in its page buffer, and the
+ * server only sends it if the client does not have it yet.<br>
+ * The skeleton is rendered only once per page sent: the serialized form is
+ * used to compute the hash and size compared with the client buffer, and the
+ * elements recorded during rendering are replayed to the client if the client
+ * does not have the skeleton. The skeleton cannot be shared between requests
+ * as widgets may be hidden depending on the page data and the security of the
+ * user.
+ *
+ * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
+ *         SAS</a>
+ * @since 1.16
+ *
+ */
+public class PageSkeleton {
+	private String serialized;
+	private List<MessageElement> elements;
+
+	private PageSkeleton(String serialized, List<MessageElement> elements) {
+		this.serialized = serialized;
+		this.elements = elements;
+	}
+
+	/**
+	 * renders the skeleton of the page
+	 *
+	 * @param page   page to render
+	 * @param data   data of the page (used to decide if widgets are hidden)
+	 * @param buffer security buffer
+	 * @return the skeleton of the page
+	 * @throws IOException if any issue is encountered during rendering
+	 */
+	public static PageSkeleton render(SPage page, SPageData data, SecurityBuffer buffer) throws IOException {
+		StringWriter skeletonstringbuffer = new StringWriter();
+		RecordingWriter recordingwriter = new RecordingWriter(new BufferedWriter(skeletonstringbuffer));
+		recordingwriter.startNewMessage();
+		page.getFinalContent().WriteToCDL(recordingwriter, data, buffer);
+		page.resetPath();
+		recordingwriter.endMessage();
+		return new PageSkeleton(skeletonstringbuffer.toString(), recordingwriter.getRecordedElements());
+	}
+
+	/**
+	 * @return the hash code of the serialized skeleton, as computed by the client
+	 *         on its buffer
+	 */
+	public int getContentHashcode() {
+		return serialized.hashCode();
+	}
+
+	/**
+	 * @return the size of the serialized skeleton
+	 */
+	public int getSize() {
+		return serialized.length();
+	}
+
+	/**
+	 * @return the skeleton serialized as text
+	 */
+	public String getSerialized() {
+		return serialized;
+	}
+
+	/**
+	 * @param bufferspec specification of a page in the client buffer
+	 * @return true if the page in the client buffer is this skeleton
+	 */
+	public boolean matches(PageBufferSpec bufferspec) {
+		if (bufferspec.getContentHashcode() != getContentHashcode())
+			return false;
+		if (bufferspec.getSize() != getSize())
+			return false;
+		return true;
+	}
+
+	/**
+	 * writes the skeleton to the client, without rendering the page again
+	 *
+	 * @param writer writer to the client
+	 * @throws IOException if any communication issue is encountered
+	 */
+	public void writeTo(MessageWriter writer) throws IOException {
+		for (int i = 0; i < elements.size(); i++)
+			writer.replayMessageElement(elements.get(i));
+	}
+
+	/**
+	 * a text writer keeping the elements written in the message
+	 *
+	 */
+	private static class RecordingWriter extends MessageBufferedWriter {
+		private ArrayList<MessageElement> recordedelements;
+		private ArrayList<String> openstructures;
+
+		private RecordingWriter(BufferedWriter writer) {
+			super(writer, false);
+			recordedelements = new ArrayList<MessageElement>();
+			openstructures = new ArrayList<String>();
+		}
+
+		@Override
+		public void sendMessageElement(MessageElement messageelement) throws IOException {
+			if (messageelement instanceof MessageStartStructure)
+				openstructures.add(((MessageStartStructure) messageelement).getStructurename());
+			if (messageelement instanceof MessageEndStructure)
+				((MessageEndStructure) messageelement).setName(openstructures.remove(openstructures.size() - 1));
+			if ((!(messageelement instanceof MessageStart)) && (!(messageelement instanceof MessageEnd)))
+				recordedelements.add(messageelement);
+			super.sendMessageElement(messageelement);
+		}
+
+		private List<MessageElement> getRecordedElements() {
+			return recordedelements;
+		}
+	}
+}
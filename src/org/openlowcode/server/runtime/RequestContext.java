@@ -0,0 +1,240 @@
+/********************************************************************************
+ * Copyright (c) 2020 [Open Lowcode SAS](https://openlowcode.com/)
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0 .
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ********************************************************************************/
+
+package org.openlowcode.server.runtime;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openlowcode.module.system.data.Appuser;
+import org.openlowcode.server.data.formula.TriggerToExecute;
+import org.openlowcode.server.data.properties.DataObjectId;
+import org.openlowcode.server.data.properties.UniqueidentifiedInterface;
+import org.openlowcode.tools.enc.AESCommunicator;
+
+/**
+ * The explicit context of a request treated by the server. It holds the data of
+ * the connection (client ip, client id, encryption, user and OTP status) and
+ * the data of the current request (list of triggers to execute and buffer of
+ * objects updated by triggers).<br>
+ * The context is owned by the connection, and is bound to the thread that is
+ * currently executing the request through
+ * {@link OLcServer#bindRequestContext(RequestContext)}. This way, a request
+ * does not need to be executed on a thread dedicated to the connection.<br>
+ * When several requests of the same connection are executed at the same time,
+ * each request gets its own context created from the connection context: the
+ * connection data is shared, but each request has its own triggers.
+ *
+ * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
+ *         SAS</a>
+ * @since 1.16
+ */
+public class RequestContext {
+	private static AtomicLong contextidgenerator = new AtomicLong(0);
+	private long contextid;
+	private RequestContext connectioncontext;
+	private volatile String ip;
+	private volatile String cid;
+	private volatile AESCommunicator aescommunicator;
+	private volatile Boolean otpauthorization;
+	private volatile DataObjectId<Appuser> userid;
+	private long sequence;
+	private Integer currenttriggerexecution;
+	private ArrayList<TriggerToExecute<?>> triggerstoexecute;
+	private HashMap<String, UniqueidentifiedInterface<?>> triggersobjectbuffer;
+
+	/**
+	 * creates a blank request context, typically for a background thread of the
+	 * server
+	 */
+	public RequestContext() {
+		this.contextid = contextidgenerator.incrementAndGet();
+		this.sequence = 0;
+	}
+
+	/**
+	 * creates a request context for a client connection
+	 *
+	 * @param ip ip of the client computer
+	 */
+	public RequestContext(String ip) {
+		this();
+		this.ip = ip;
+	}
+
+	/**
+	 * creates a context for one request, sharing the connection data (client ip,
+	 * client id, encryption, user and OTP status) with the connection context
+	 *
+	 * @param connectioncontext context of the connection
+	 * @since 1.16
+	 */
+	public RequestContext(RequestContext connectioncontext) {
+		this();
+		this.connectioncontext = connectioncontext;
+	}
+
+	/**
+	 * @return a unique id for the context in this server instance
+	 */
+	public long getContextId() {
+		return this.contextid;
+	}
+
+	/**
+	 * @return the ip of the client connecting
+	 */
+	public String getIp() {
+		if (connectioncontext != null)
+			return connectioncontext.getIp();
+		return ip;
+	}
+
+	/**
+	 * @param ip the ip of the client connecting
+	 */
+	public void setIp(String ip) {
+		if (connectioncontext != null) {
+			connectioncontext.setIp(ip);
+			return;
+		}
+		this.ip = ip;
+	}
+
+	/**
+	 * @return the client id
+	 */
+	public String getCid() {
+		if (connectioncontext != null)
+			return connectioncontext.getCid();
+		return cid;
+	}
+
+	/**
+	 * @param cid the client id
+	 */
+	public void setCid(String cid) {
+		if (connectioncontext != null) {
+			connectioncontext.setCid(cid);
+			return;
+		}
+		this.cid = cid;
+	}
+
+	/**
+	 * @return the AES communicator for the connection
+	 */
+	public AESCommunicator getAESCommunicator() {
+		if (connectioncontext != null)
+			return connectioncontext.getAESCommunicator();
+		return aescommunicator;
+	}
+
+	/**
+	 * @param aescommunicator the AES communicator for the connection
+	 */
+	public void setAESCommunicator(AESCommunicator aescommunicator) {
+		if (connectioncontext != null) {
+			connectioncontext.setAESCommunicator(aescommunicator);
+			return;
+		}
+		this.aescommunicator = aescommunicator;
+	}
+
+	/**
+	 * @return a true Boolean if OTP has been confirmed for this connection, null
+	 *         else
+	 */
+	public Boolean getOTPAuthorization() {
+		if (connectioncontext != null)
+			return connectioncontext.getOTPAuthorization();
+		return otpauthorization;
+	}
+
+	/**
+	 * sets the OTP as confirmed for the connection
+	 */
+	public void setOTPAuthorization() {
+		if (connectioncontext != null) {
+			connectioncontext.setOTPAuthorization();
+			return;
+		}
+		this.otpauthorization = Boolean.TRUE;
+	}
+
+	/**
+	 * @return the user id last registered for the connection
+	 */
+	public DataObjectId<Appuser> getUserId() {
+		if (connectioncontext != null)
+			return connectioncontext.getUserId();
+		return userid;
+	}
+
+	/**
+	 * @param userid the user id for the connection
+	 */
+	public void setUserId(DataObjectId<Appuser> userid) {
+		if (connectioncontext != null) {
+			connectioncontext.setUserId(userid);
+			return;
+		}
+		this.userid = userid;
+	}
+
+	/**
+	 * @return the next transient sequence for the context
+	 */
+	public long getNextSequence() {
+		sequence++;
+		return sequence;
+	}
+
+	/**
+	 * resets the list of triggers at the start of a new request
+	 */
+	public void resetTriggersList() {
+		currenttriggerexecution = new Integer(-1);
+		triggerstoexecute = new ArrayList<TriggerToExecute<?>>();
+		triggersobjectbuffer = new HashMap<String, UniqueidentifiedInterface<?>>();
+	}
+
+	/**
+	 * @return the index of the trigger being executed, or null if trigger list was
+	 *         never initialized
+	 */
+	public Integer getCurrentTriggerExecution() {
+		return currenttriggerexecution;
+	}
+
+	/**
+	 * @param currenttriggerexecution index of the trigger currently executed
+	 */
+	public void setCurrentTriggerExecution(Integer currenttriggerexecution) {
+		this.currenttriggerexecution = currenttriggerexecution;
+	}
+
+	/**
+	 * @return the list of triggers to execute for the request (may be null)
+	 */
+	public ArrayList<TriggerToExecute<?>> getTriggersToExecute() {
+		return triggerstoexecute;
+	}
+
+	/**
+	 * @return the buffer of objects updated by triggers for the request (may be
+	 *         null)
+	 */
+	public HashMap<String, UniqueidentifiedInterface<?>> getTriggersObjectBuffer() {
+		return triggersobjectbuffer;
+	}
+
+}
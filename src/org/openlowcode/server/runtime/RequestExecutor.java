@@ -0,0 +1,392 @@
+/********************************************************************************
+ * Copyright (c) 2020 [Open Lowcode SAS](https://openlowcode.com/)
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0 .
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ********************************************************************************/
+
+package org.openlowcode.server.runtime;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * The request executor performs admission control on the requests received by
+ * the connections. It ensures that at most a configured number of requests are
+ * executed at the same time on the server, and optionally per module or per
+ * action. Requests over the limit wait in a fair (first-in first-out) queue. If
+ * the queue is full, or if the request waited more than the queue time-out, the
+ * request is rejected, so that overload degrades predictably instead of piling
+ * up on the database connection pool.<br>
+ * Once admitted, the request is executed on the thread of the connection, so
+ * that database connections booked for the thread stay consistent. The
+ * following keys of the server configuration file are used:
+ * <ul>
+ * <li>REQUEST.MAXCONCURRENT: maximum number of requests executed at the same
+ * time (0 for no limit, default)</li>
+ * <li>REQUEST.MAXQUEUE: maximum number of requests waiting (0 for no limit,
+ * default)</li>
+ * <li>REQUEST.QUEUETIMEOUT: maximum waiting time in ms (default 50000)</li>
+ * <li>REQUEST.MODULELIMITS: limits per module, with format
+ * MODULE1:LIMIT1;MODULE2:LIMIT2</li>
+ * <li>REQUEST.ACTIONLIMITS: limits per action, with format
+ * MODULE1.ACTION1:LIMIT1;MODULE2.ACTION2:LIMIT2</li>
+ * </ul>
+ *
+ * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
+ *         SAS</a>
+ * @since 1.16
+ */
+public class RequestExecutor {
+	private static Logger logger = Logger.getLogger(RequestExecutor.class.getName());
+	private static final int DEFAULT_QUEUETIMEOUT = 50000;
+	private static final int ACQUIRED_IMMEDIATELY = 0;
+	private static final int ACQUIRED_AFTER_WAIT = 1;
+	private static final int NOT_ACQUIRED = 2;
+	private int maxconcurrent;
+	private int maxqueue;
+	private long queuetimeout;
+	private Semaphore globalpermits;
+	private HashMap<String, Semaphore> modulepermits;
+	private HashMap<String, Semaphore> actionpermits;
+	private AtomicInteger queuedepth;
+	private AtomicInteger maxqueuedepth;
+	private AtomicInteger running;
+	private AtomicLong executed;
+	private AtomicLong queued;
+	private AtomicLong rejectedqueuefull;
+	private AtomicLong rejectedtimeout;
+	private AtomicLong totalwaittime;
+	private AtomicLong maxwaittime;
+
+	/**
+	 * A request to execute once admitted
+	 *
+	 * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
+	 *         SAS</a>
+	 * @since 1.16
+	 */
+	@FunctionalInterface
+	public interface RequestTask {
+		/**
+		 * executes the request
+		 *
+		 * @throws IOException if any communication error is encountered sending back
+		 *                     the result to the client
+		 */
+		public void execute() throws IOException;
+	}
+
+	/**
+	 * creates a request executor with no limit
+	 */
+	public RequestExecutor() {
+		this(0, 0, DEFAULT_QUEUETIMEOUT, null, null);
+	}
+
+	/**
+	 * creates a request executor
+	 *
+	 * @param maxconcurrent maximum number of requests executed in parallel on the
+	 *                      server (0 for no limit)
+	 * @param maxqueue      maximum number of requests waiting to be executed (0
+	 *                      for no limit)
+	 * @param queuetimeout  maximum time waiting in queue in ms
+	 * @param modulelimits  limit per module, with the format MODULE:LIMIT separated
+	 *                      by ';' (may be null)
+	 * @param actionlimits  limit per action, with the format MODULE.ACTION:LIMIT
+	 *                      separated by ';' (may be null)
+	 */
+	public RequestExecutor(int maxconcurrent, int maxqueue, long queuetimeout, String modulelimits,
+			String actionlimits) {
+		this.maxconcurrent = maxconcurrent;
+		this.maxqueue = maxqueue;
+		this.queuetimeout = queuetimeout;
+		if (maxconcurrent > 0)
+			this.globalpermits = new Semaphore(maxconcurrent, true);
+		this.modulepermits = parseLimits(modulelimits, "REQUEST.MODULELIMITS");
+		this.actionpermits = parseLimits(actionlimits, "REQUEST.ACTIONLIMITS");
+		this.queuedepth = new AtomicInteger(0);
+		this.maxqueuedepth = new AtomicInteger(0);
+		this.running = new AtomicInteger(0);
+		this.executed = new AtomicLong(0);
+		this.queued = new AtomicLong(0);
+		this.rejectedqueuefull = new AtomicLong(0);
+		this.rejectedtimeout = new AtomicLong(0);
+		this.totalwaittime = new AtomicLong(0);
+		this.maxwaittime = new AtomicLong(0);
+		logger.info("Initiated request executor with max concurrent = " + maxconcurrent + ", max queue = "
+				+ maxqueue + ", queue timeout = " + queuetimeout + "ms, module limits = " + modulepermits.size()
+				+ ", action limits = " + actionpermits.size());
+	}
+
+	/**
+	 * creates a request executor from the server configuration
+	 *
+	 * @param serverconfig server configuration
+	 * @return the request executor
+	 */
+	public static RequestExecutor get(OLcServerConfig serverconfig) {
+		return new RequestExecutor(serverconfig.getOptionalIntegerValue("REQUEST.MAXCONCURRENT", 0),
+				serverconfig.getOptionalIntegerValue("REQUEST.MAXQUEUE", 0),
+				serverconfig.getOptionalIntegerValue("REQUEST.QUEUETIMEOUT", DEFAULT_QUEUETIMEOUT),
+				serverconfig.getOptionalValue("REQUEST.MODULELIMITS"),
+				serverconfig.getOptionalValue("REQUEST.ACTIONLIMITS"));
+	}
+
+	private static HashMap<String, Semaphore> parseLimits(String limits, String key) {
+		HashMap<String, Semaphore> permits = new HashMap<String, Semaphore>();
+		if (limits == null)
+			return permits;
+		String[] elements = limits.split(";");
+		for (int i = 0; i < elements.length; i++) {
+			String element = elements[i].trim();
+			if (element.length() == 0)
+				continue;
+			int columnindex = element.lastIndexOf(':');
+			if (columnindex <= 0)
+				throw new RuntimeException("Invalid syntax for " + key + " element '" + element
+						+ "', expecting NAME:LIMIT");
+			String name = element.substring(0, columnindex).trim().toUpperCase();
+			int limit = Integer.decode(element.substring(columnindex + 1).trim()).intValue();
+			if (limit <= 0)
+				throw new RuntimeException("Limit should be strictly positive for " + key + " element " + element);
+			permits.put(name, new Semaphore(limit, true));
+		}
+		return permits;
+	}
+
+	/**
+	 * executes the request if it can be admitted
+	 *
+	 * @param module name of the module of the action
+	 * @param action name of the action
+	 * @param task   the request to execute
+	 * @return true if the request was executed, false if it was rejected because
+	 *         the server is overloaded
+	 * @throws IOException if any communication error is encountered
+	 */
+	public boolean execute(String module, String action, RequestTask task) throws IOException {
+		// limit names are stored in upper case when parsed from the configuration
+		Semaphore actionpermit = actionpermits.get((module + "." + action).toUpperCase());
+		Semaphore modulepermit = modulepermits.get(module.toUpperCase());
+		if ((globalpermits == null) && (actionpermit == null) && (modulepermit == null)) {
+			runTask(task);
+			return true;
+		}
+		int currentqueuedepth = queuedepth.incrementAndGet();
+		if ((maxqueue > 0) && (currentqueuedepth > maxqueue)) {
+			queuedepth.decrementAndGet();
+			rejectedqueuefull.incrementAndGet();
+			logger.warning("Rejected request " + module + "." + action + " as queue is full. " + getStatistics());
+			return false;
+		}
+		updateMax(maxqueuedepth, currentqueuedepth);
+		long waitstart = System.currentTimeMillis();
+		boolean actionacquired = false;
+		boolean moduleacquired = false;
+		boolean globalacquired = false;
+		boolean waited = false;
+		try {
+			try {
+				int actionstatus = acquire(actionpermit, waitstart);
+				actionacquired = (actionstatus != NOT_ACQUIRED);
+				waited = (actionstatus != ACQUIRED_IMMEDIATELY);
+				if (actionacquired) {
+					int modulestatus = acquire(modulepermit, waitstart);
+					moduleacquired = (modulestatus != NOT_ACQUIRED);
+					waited = waited || (modulestatus != ACQUIRED_IMMEDIATELY);
+				}
+				if (moduleacquired) {
+					int globalstatus = acquire(globalpermits, waitstart);
+					globalacquired = (globalstatus != NOT_ACQUIRED);
+					waited = waited || (globalstatus != ACQUIRED_IMMEDIATELY);
+				}
+			} catch (InterruptedException e) {
+				logger.warning("Interrupted while waiting for execution of request " + module + "." + action);
+				Thread.currentThread().interrupt();
+				waited = true;
+			} finally {
+				queuedepth.decrementAndGet();
+			}
+			long waittime = System.currentTimeMillis() - waitstart;
+			if (waited) {
+				queued.incrementAndGet();
+				totalwaittime.addAndGet(waittime);
+			}
+			updateMax(maxwaittime, waittime);
+			if (!globalacquired) {
+				rejectedtimeout.incrementAndGet();
+				logger.warning("Rejected request " + module + "." + action + " after waiting " + waittime + "ms. "
+						+ getStatistics());
+				return false;
+			}
+			if (waited)
+				logger.info("Request " + module + "." + action + " admitted after waiting " + waittime + "ms");
+			runTask(task);
+			return true;
+		} finally {
+			if ((globalacquired) && (globalpermits != null))
+				globalpermits.release();
+			if ((moduleacquired) && (modulepermit != null))
+				modulepermit.release();
+			if ((actionacquired) && (actionpermit != null))
+				actionpermit.release();
+		}
+	}
+
+	/**
+	 * checks, before a thread is given to a new request, that the request would
+	 * not be rejected anyway because the queue is full. A refusal is counted as a
+	 * rejection in statistics
+	 *
+	 * @return true if the request can be launched, false if the server is
+	 *         overloaded
+	 */
+	public boolean canAcceptRequest() {
+		if ((maxqueue > 0) && (queuedepth.get() >= maxqueue)) {
+			rejectedqueuefull.incrementAndGet();
+			return false;
+		}
+		return true;
+	}
+
+	private void runTask(RequestTask task) throws IOException {
+		running.incrementAndGet();
+		try {
+			task.execute();
+		} finally {
+			running.decrementAndGet();
+			executed.incrementAndGet();
+		}
+	}
+
+	/**
+	 * acquires a permit, waiting at most until the end of the queue time-out.
+	 * The permit is first requested without waiting, so that only requests that
+	 * could not get a permit immediately are counted as queued
+	 *
+	 * @param permit    the permit to acquire (may be null if no limit)
+	 * @param waitstart time the request started waiting for admission
+	 * @return ACQUIRED_IMMEDIATELY, ACQUIRED_AFTER_WAIT or NOT_ACQUIRED
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	private int acquire(Semaphore permit, long waitstart) throws InterruptedException {
+		if (permit == null)
+			return ACQUIRED_IMMEDIATELY;
+		// a zero time-out keeps the fair ordering, contrary to tryAcquire()
+		if (permit.tryAcquire(0, TimeUnit.MILLISECONDS))
+			return ACQUIRED_IMMEDIATELY;
+		long remainingtime = queuetimeout - (System.currentTimeMillis() - waitstart);
+		if (remainingtime < 0)
+			remainingtime = 0;
+		if (permit.tryAcquire(remainingtime, TimeUnit.MILLISECONDS))
+			return ACQUIRED_AFTER_WAIT;
+		return NOT_ACQUIRED;
+	}
+
+	private static void updateMax(AtomicInteger max, int value) {
+		int currentmax = max.get();
+		while (value > currentmax) {
+			if (max.compareAndSet(currentmax, value))
+				return;
+			currentmax = max.get();
+		}
+	}
+
+	private static void updateMax(AtomicLong max, long value) {
+		long currentmax = max.get();
+		while (value > currentmax) {
+			if (max.compareAndSet(currentmax, value))
+				return;
+			currentmax = max.get();
+		}
+	}
+
+	/**
+	 * @return the maximum number of requests executed in parallel (0 if no limit)
+	 */
+	public int getMaxConcurrent() {
+		return maxconcurrent;
+	}
+
+	/**
+	 * @return the number of requests currently waiting for execution
+	 */
+	public int getQueueDepth() {
+		return queuedepth.get();
+	}
+
+	/**
+	 * @return the maximum number of requests waiting at the same time since server
+	 *         start
+	 */
+	public int getMaxQueueDepth() {
+		return maxqueuedepth.get();
+	}
+
+	/**
+	 * @return the number of requests currently executing
+	 */
+	public int getRunning() {
+		return running.get();
+	}
+
+	/**
+	 * @return the number of requests executed since server start
+	 */
+	public long getExecuted() {
+		return executed.get();
+	}
+
+	/**
+	 * @return the number of requests rejected because the queue was full
+	 */
+	public long getRejectedQueueFull() {
+		return rejectedqueuefull.get();
+	}
+
+	/**
+	 * @return the number of requests rejected because they waited more than the
+	 *         queue time-out
+	 */
+	public long getRejectedTimeout() {
+		return rejectedtimeout.get();
+	}
+
+	/**
+	 * @return the average waiting time in ms of requests that had to wait, as only
+	 *         the waiting time of those requests is accumulated
+	 */
+	public long getAverageWaitTime() {
+		long queuedrequests = queued.get();
+		if (queuedrequests == 0)
+			return 0;
+		return totalwaittime.get() / queuedrequests;
+	}
+
+	/**
+	 * @return the maximum waiting time in ms of a request since server start
+	 */
+	public long getMaxWaitTime() {
+		return maxwaittime.get();
+	}
+
+	/**
+	 * @return a summary of the statistics of the request executor for logs
+	 */
+	public String getStatistics() {
+		return "[Requests running=" + getRunning() + ", queue depth=" + getQueueDepth() + ", max queue depth="
+				+ getMaxQueueDepth() + ", executed=" + getExecuted() + ", queued=" + queued.get()
+				+ ", avg wait=" + getAverageWaitTime() + "ms, max wait=" + getMaxWaitTime() + "ms, rejected queue full="
+				+ getRejectedQueueFull() + ", rejected timeout=" + getRejectedTimeout() + "]";
+	}
+}
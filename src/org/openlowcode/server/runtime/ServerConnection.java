@@ -12,6 +12,7 @@ package org.openlowcode.server.runtime;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -19,11 +20,15 @@ import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.math.BigDecimal;
 import java.net.Socket;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 import java.util.logging.Logger;
 
@@ -31,8 +36,15 @@ import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
 
 import org.openlowcode.tools.enc.AESCommunicator;
+import org.openlowcode.tools.enc.CompressionDictionary;
+import org.openlowcode.tools.enc.EncryptedChannel;
+import org.openlowcode.tools.enc.MultiplexedChannel;
+import org.openlowcode.tools.enc.MultiplexedChannel.IncomingMessageHandler;
+import org.openlowcode.tools.messages.BinaryTransferStore;
 import org.openlowcode.tools.messages.MessageBufferedWriter;
+import org.openlowcode.tools.messages.MessageCodec;
 import org.openlowcode.tools.messages.MessageElement;
+import org.openlowcode.tools.messages.MessageReader;
 import org.openlowcode.tools.messages.MessageSimpleReader;
 import org.openlowcode.tools.messages.MessageStartStructure;
 import org.openlowcode.tools.messages.MessageStringField;
@@ -77,21 +89,30 @@ import org.openlowcode.server.security.ServerSecurityBuffer;
  *
  */
 public class ServerConnection
-		extends
-		Thread {
+		implements
+		Runnable {
 	private static Logger logger = Logger.getLogger(ServerConnection.class.getName());
+	private static AtomicLong connectionidgenerator = new AtomicLong(0);
+	private long connectionid;
+	private RequestContext context;
+	private volatile boolean finished = false;
 	private Socket socket;
 	private String ip; // ip of the computer connecting
 	private OLcServer server;
 	private long starttime;
 	private boolean messageaudit;
 	// true until there is a message received from server that Thread should stop
-	private boolean alive = true;
+	private volatile boolean alive = true;
 	private int messagefound = 0;
 	private Exception exceptionduringmessagestart = null;
+	// true while the connection task is blocked reading the next request on a
+	// framed or multiplexed channel, guarded by inputlock
+	private boolean waitingforrequest = false;
+	private Object inputlock = new Object();
 	private static final int MESSAGESTART_WAITING = 0;
 	private static final int MESSAGESTART_FOUND = 1;
 	private static final int MESSAGESTART_ERROR = 2;
+	private static final long MULTIPLEXED_REQUEST_END_TIMEOUT = 60000;
 	private final static String CLIENT_JAR = "OLcClient.jar";
 	/**
 	 * Creates a server connection
@@ -105,6 +126,24 @@ public class ServerConnection
 		this.ip = socket.getInetAddress().toString();
 		this.server = server;
 		this.messageaudit = messageaudit;
+		this.connectionid = connectionidgenerator.incrementAndGet();
+		this.context = new RequestContext(ip);
+	}
+
+	/**
+	 * @return a unique id of the connection on this server
+	 * @since 1.16
+	 */
+	public long getConnectionId() {
+		return this.connectionid;
+	}
+
+	/**
+	 * @return true if the treatment of the connection is finished
+	 * @since 1.16
+	 */
+	public boolean isFinished() {
+		return this.finished;
 	}
 
 	/**
@@ -315,7 +354,12 @@ public class ServerConnection
 
 	/**
 	 * this method will send the RSA public key to the client, and the client will
-	 * then send the AES key to be used for further exchange
+	 * then send the AES key to be used for further exchange. The codecs supported
+	 * by the server are offered in the file name of the public key, and the client
+	 * declares the codec it chose in the file name of the AES key. A client not
+	 * declaring any codec will use the text codec. The framed and multiplexed
+	 * channels are offered the same way, and if the client declares one, an
+	 * acknowledgement is sent before switching to the channel.
 	 * 
 	 * @param reader message reader to the client
 	 * @param writer message writer to the client
@@ -326,19 +370,49 @@ public class ServerConnection
 		writer.startNewMessage();
 		writer.startStructure("RSAKEY");
 		byte[] rsapublickey = OLcServer.getServer().getSecuritymanager().getMainRSAPublicKey();
-		writer.addLongBinaryField("PUBLICKEY", new SFile("PUBLICKEY", rsapublickey));
+		String publickeylabel = MessageCodec.offerCodecs("PUBLICKEY", server.isBinaryCodecAllowed());
+		if (server.isFramedChannelAllowed())
+			publickeylabel = EncryptedChannel.offerChannels(publickeylabel, server.isMultiplexingAllowed());
+		if (server.isCompressionDictionaryAllowed())
+			publickeylabel = CompressionDictionary.offerDictionaries(publickeylabel);
+		writer.addLongBinaryField("PUBLICKEY", new SFile(publickeylabel, rsapublickey));
 		writer.endStructure("RSAKEY");
 		writer.endMessage();
 
 		reader.returnNextMessageStart();
 		reader.returnNextStartStructure("SESAESKEY");
-		byte[] encryptedaeskey = reader.returnNextLargeBinary("AESKEY").getContent();
+		SFile encryptedaeskeyfile = reader.returnNextLargeBinary("AESKEY");
+		byte[] encryptedaeskey = encryptedaeskeyfile.getContent();
+		MessageCodec codec = MessageCodec.getDeclaredCodec(encryptedaeskeyfile.getFileName());
+		if ((codec.isBinary()) && (!server.isBinaryCodecAllowed()))
+			throw new RuntimeException("Client " + ip + " declared codec " + codec + " that was not offered");
 		byte[] decryptedaeskey = OLcServer.getServer().getSecuritymanager().decodeWithRSAPrivateKey(encryptedaeskey);
 		SecretKey aeskey = new SecretKeySpec(decryptedaeskey, 0, decryptedaeskey.length, "AES");
-		OLcServer.getServer().setAESCommunicator(new AESCommunicator(aeskey,writer.getMessageAudit()));
+		AESCommunicator aescommunicator = new AESCommunicator(aeskey, writer.getMessageAudit());
+		aescommunicator.setCodec(codec);
+		CompressionDictionary dictionary = CompressionDictionary
+				.chooseDictionary(encryptedaeskeyfile.getFileName());
+		if ((dictionary != null) && (!server.isCompressionDictionaryAllowed()))
+			throw new RuntimeException("Client " + ip + " declared dictionary " + dictionary + " that was not offered");
+		aescommunicator.setDictionary(dictionary);
+		OLcServer.getServer().setAESCommunicator(aescommunicator);
 		reader.returnNextEndStructure("SESAESKEY");
 		reader.returnNextEndMessage();
-		logger.info("    ---- successfull security handshacke with client --- ");
+		String channel = EncryptedChannel.chooseChannel(encryptedaeskeyfile.getFileName());
+		if (channel != null) {
+			if ((!server.isFramedChannelAllowed()) || ((EncryptedChannel.CHANNEL_MULTIPLEXED.equals(channel))
+					&& (!server.isMultiplexingAllowed())))
+				throw new RuntimeException("Client " + ip + " declared channel " + channel + " that was not offered");
+			writer.startNewMessage();
+			writer.startStructure("CHANNELOK");
+			writer.endStructure("CHANNELOK");
+			writer.endMessage();
+			writer.flushMessage();
+			aescommunicator.setChannel(channel);
+		}
+		logger.info("    ---- successfull security handshacke with client, codec = " + codec + ", channel = "
+				+ (channel != null ? channel : "ENVELOPE") + ", dictionary = "
+				+ (dictionary != null ? dictionary : "NONE") + " --- ");
 	}
 
 	/**
@@ -350,7 +424,7 @@ public class ServerConnection
 	 * @throws IOException if any issue is encountered sending the action to the
 	 *                     client
 	 */
-	public void processCLink(String address, MessageBufferedWriter writer) throws IOException {
+	public void processCLink(String address, MessageWriter writer) throws IOException {
 		logger.info("received CLINK request for " + address);
 		CLink parsedlinkinfo = new CLink(address);
 		ActionExecution action = null;
@@ -385,7 +459,27 @@ public class ServerConnection
 
 	}
 
-	private boolean requestdecodedquery(String majorquery, MessageBufferedWriter writer, MessageSimpleReader reader)
+	/**
+	 * treats a decoded query. Large binaries read for the query may be spilled
+	 * to disk, the files are deleted once the answer has been written.
+	 * 
+	 * @param majorquery type of query
+	 * @param writer     message writer to the client
+	 * @param reader     message reader from the client
+	 * @return true if the query was treated
+	 * @throws OLcRemoteException if the client sends an error
+	 * @throws IOException        if any communication issue is encountered
+	 */
+	private boolean requestdecodedquery(String majorquery, MessageWriter writer, MessageReader reader)
+			throws OLcRemoteException, IOException {
+		try {
+			return treatdecodedquery(majorquery, writer, reader);
+		} finally {
+			BinaryTransferStore.get().releaseSpillFilesForThread();
+		}
+	}
+
+	private boolean treatdecodedquery(String majorquery, MessageWriter writer, MessageReader reader)
 			throws OLcRemoteException, IOException {
 
 		if (majorquery.compareTo("REQUEST") == 0) {
@@ -543,34 +637,61 @@ public class ServerConnection
 						SecurityBuffer buffer = new SecurityBuffer();
 						ActionAuthorization thisactionauthorization = isAuthorized(action, actiondata, buffer);
 						if (thisactionauthorization.getAuthorization() != ActionAuthorization.NOT_AUTHORIZED) {
-							long requeststart = System.currentTimeMillis();
-							logger.info("executing inline action " + modulename + "." + actionname);
-							try {
-								logAction(action);
-								OLcServer.getServer().resetTriggersList(); // reset remote trigger list for
-																			// thread
-								SPageData inlineanswer;
-								if (thisactionauthorization.getAuthorization() == ActionAuthorization.AUTHORIZED) {
-									inlineanswer = action.executeInlineAction(actiondata);
-								} else {
-									// potentially authorized, action is executed with a data filter for the
-									// main query
-									inlineanswer = action.executeInlineAction(actiondata,
-											thisactionauthorization.getAdditionalconditiongenerator());
+							boolean admitted = server.getRequestExecutor().execute(modulename, actionname, () -> {
+								long requeststart = System.currentTimeMillis();
+								logger.info("executing inline action " + modulename + "." + actionname);
+								try {
+									logAction(action);
+									OLcServer.getServer().resetTriggersList(); // reset remote trigger list for
+																				// thread
+									SPageData inlineanswer;
+									// inline actions mostly read data, selects may go to the read replica
+									PersistenceGateway.startReadReplicaRouting();
+									// writes of the action are sent to the database as batches, in a
+									// single transaction if configured
+									PersistenceGateway.startActionTransaction();
+									PersistenceGateway.startUnitOfWork();
+									boolean success = false;
+									try {
+										if (thisactionauthorization
+												.getAuthorization() == ActionAuthorization.AUTHORIZED) {
+											inlineanswer = action.executeInlineAction(actiondata);
+										} else {
+											// potentially authorized, action is executed with a data filter for the
+											// main query
+											inlineanswer = action.executeInlineAction(actiondata,
+													thisactionauthorization.getAdditionalconditiongenerator());
+										}
+										// remote triggers are part of the action only if it has a
+										// transaction
+										if (PersistenceGateway.isTransactionPerAction())
+											OLcServer.getServer().executeTriggerList(); // execute remote trigger list
+																						// for thread
+										success = true;
+									} finally {
+										try {
+											PersistenceGateway.endActionTransaction(success);
+										} finally {
+											PersistenceGateway.stopReadReplicaRouting();
+										}
+									}
+									if (!PersistenceGateway.isTransactionPerAction())
+										OLcServer.getServer().executeTriggerList(); // execute remote trigger list
+																					// for thread
+									long requestend = System.currentTimeMillis();
+									logger.info("executed inline action " + modulename + "." + actionname
+											+ ", execution time = " + (requestend - requeststart) + "ms");
+
+									this.sendInlineData(inlineanswer, writer);
+									logger.info("sent inlinedata from page " + action.getName() + "to to ip = " + ip
+											+ ", for session of user " + userid.getId());
+								} catch (Throwable t) {
+									treatThrowable(t, actionname, userid, writer);
 								}
-								OLcServer.getServer().executeTriggerList(); // execute remote trigger list
-																			// for thread
-								long requestend = System.currentTimeMillis();
-								logger.info("executed inline action " + modulename + "." + actionname
-										+ ", execution time = " + (requestend - requeststart) + "ms");
-								
-								this.sendInlineData(inlineanswer, writer);
-								logger.info("sent inlinedata from page " + action.getName() + "to to ip = " + ip
-										+ ", for session of user " + userid.getId());
-							} catch (Throwable t) {
-								treatThrowable(t, actionname, userid, writer);
-							}
-							
+							});
+							if (!admitted)
+								sendOverloadError(modulename, actionname, writer);
+
 						} else {
 							writer.sendMessageError(9999, "Not Authorized for the action " + action.getName());
 
@@ -599,14 +720,56 @@ public class ServerConnection
 			reader.returnNextEndStructure("REQUEST");
 			return true;
 		}
+		if (majorquery.compareTo("TRANSFERSTATUS") == 0) {
+			sendTransferStatus(writer, reader);
+			return true;
+		}
 		logger.severe("Invalid message in encrypted request, type = "+majorquery);
 		return false;
 	}
 
+	/**
+	 * answers the number of bytes received for chunked transfers of large
+	 * binaries. This is requested by the client after a dropped connection, so
+	 * that it can resume the transfers from the last chunk received.
+	 * 
+	 * @param writer message writer to the client
+	 * @param reader message reader from the client
+	 * @throws OLcRemoteException if the client sends an error
+	 * @throws IOException        if any communication issue is encountered
+	 * @since 1.16
+	 */
+	private void sendTransferStatus(MessageWriter writer, MessageReader reader)
+			throws OLcRemoteException, IOException {
+		ArrayList<String> transferids = new ArrayList<String>();
+		reader.startStructureArray("TRANSFER");
+		while (reader.structureArrayHasNextElement("TRANSFER")) {
+			transferids.add(reader.returnNextStringField("ID"));
+			reader.returnNextEndStructure("TRANSFER");
+		}
+		reader.returnNextEndStructure("TRANSFERSTATUS");
+		BinaryTransferStore transferstore = BinaryTransferStore.get();
+		writer.startNewMessage();
+		writer.startStructure("TRANSFERSTATUS");
+		writer.startStructure("TRANSFERS");
+		for (int i = 0; i < transferids.size(); i++) {
+			String transferid = transferids.get(i);
+			long received = transferstore.getReceivedLength(transferid);
+			logger.info("client " + ip + " requested status of transfer " + transferid + ", received = " + received);
+			writer.startStructure("TRANSFER");
+			writer.addStringField("ID", transferid);
+			writer.addDecimalField("RECEIVED", new BigDecimal(received));
+			writer.endStructure("TRANSFER");
+		}
+		writer.endStructure("TRANSFERS");
+		writer.endStructure("TRANSFERSTATUS");
+		writer.endMessage();
+	}
+
 	@Override
 	public void run() {
 		try {
-			server.setIpForConnection(ip);
+			server.bindRequestContext(context);
 
 			starttime = System.currentTimeMillis();
 			InputStreamReader inputstreamreader = new InputStreamReader(socket.getInputStream(),
@@ -615,14 +778,26 @@ public class ServerConnection
 			OutputStreamWriter outputstreamwriter = new OutputStreamWriter(socket.getOutputStream(),
 					Charset.forName("UTF-8"));
 			MessageBufferedWriter writer = new MessageBufferedWriter(new BufferedWriter(outputstreamwriter),
-					messageaudit);
+					messageaudit, true);
 			logger.info("Received new connection from " + ip);
 			logger.info("audit of connection encoding : inbound " + inputstreamreader.getEncoding() + ", outbound = "
 					+ outputstreamwriter.getEncoding());
 
 			performSecurityHandshake(reader, writer);
+			AESCommunicator connectionaescommunicator = OLcServer.getServer().getAESCommunicator();
+			boolean textenvelope = true;
+			if (connectionaescommunicator.isFramedChannel()) {
+				textenvelope = false;
+				runFramedChannel(new EncryptedChannel(connectionaescommunicator, socket.getInputStream(),
+						socket.getOutputStream()));
+			}
+			if (connectionaescommunicator.isMultiplexedChannel()) {
+				textenvelope = false;
+				runMultiplexedChannel(new MultiplexedChannel(connectionaescommunicator, socket.getInputStream(),
+						socket.getOutputStream()));
+			}
 
-			labelloop: while ((socket.isConnected()) && (!socket.isClosed())) {
+			labelloop: while ((textenvelope) && (socket.isConnected()) && (!socket.isClosed())) {
 				// read one CML message
 				try {
 
@@ -650,7 +825,7 @@ public class ServerConnection
 					}
 
 					if (!alive) {
-						logger.severe("Shutdown thread " + this.getId() + " as got request from server");
+						logger.severe("Shutdown connection " + this.connectionid + " as got request from server");
 						break labelloop;
 					}
 
@@ -668,34 +843,27 @@ public class ServerConnection
 					String majorquery = reader.returnNextStartStructure();
 					if (majorquery.equals("ENCMES")) {
 						byte[] encryptedmessage = reader.returnNextLargeBinary("ENCMES").getContent();
-						String decryptedmessage = OLcServer.getServer().getAESCommunicator()
-								.decryptandunzip(encryptedmessage);
-						MessageSimpleReader specificmessagereader = new MessageSimpleReader(
-								new StringReader(decryptedmessage));
-						specificmessagereader.setAESCommunicator(OLcServer.getServer().getAESCommunicator());
-						StringWriter writertoencrypt = new StringWriter();
-						MessageBufferedWriter specificmessagewriter = new MessageBufferedWriter(
-								new BufferedWriter(writertoencrypt), false);
-						specificmessagewriter.setAESCommunicator(OLcServer.getServer().getAESCommunicator());
+						AESCommunicator aescommunicator = OLcServer.getServer().getAESCommunicator();
+						MessageReader specificmessagereader = aescommunicator.decryptandgetreader(encryptedmessage);
+						// the response is compressed and encrypted while it is written
+						ByteArrayOutputStream encryptedresponse = new ByteArrayOutputStream();
+						MessageWriter specificmessagewriter = aescommunicator.getEncryptingWriter(encryptedresponse);
 						specificmessagereader.returnNextMessageStart();
 						String majorqueryinsideencryption = specificmessagereader.returnNextStartStructure();
 						majorquerytreated = requestdecodedquery(majorqueryinsideencryption, specificmessagewriter,
 								specificmessagereader);
 						specificmessagereader.returnNextEndMessage();
+						specificmessagewriter.flushMessage();
+						specificmessagewriter.close();
 						if (majorquerytreated) {
-							specificmessagewriter.flushMessage();
-							byte[] encryptedresponse = OLcServer.getServer().getAESCommunicator()
-									.zipandencrypt(writertoencrypt.toString());
-
 							writer.startNewMessage();
 							writer.startStructure("ENCRES");
-							writer.addLongBinaryField("RESMES", new SFile("PLD", encryptedresponse));
+							writer.addLongBinaryField("RESMES", new SFile("PLD", encryptedresponse.toByteArray()));
 							writer.endStructure("ENCRES");
 							writer.endMessage();
 
 						}
 						reader.returnNextEndStructure("ENCMES");
-						specificmessagewriter.close();
 						specificmessagereader.close();
 					}
 
@@ -805,8 +973,229 @@ public class ServerConnection
 			for (int i = 0; i < e.getStackTrace().length; i++)
 				logger.severe(" at " + e.getStackTrace()[i].toString());
 
+		} finally {
+			// also reached on errors, so that the thread is never counted as running
+			server.unbindRequestContext();
+			finished = true;
+			OLcServer.getServer().reportThreadFinished(this.connectionid);
+		}
+	}
+
+	/**
+	 * listens to the client on a framed encrypted channel. Each request is read
+	 * and each response is written directly on the socket, without the text
+	 * envelope. Only encrypted queries are supported on this channel.
+	 * 
+	 * @param channel the encrypted channel agreed with the client
+	 * @throws Exception if any communication issue is encountered
+	 * @since 1.16
+	 */
+	private void runFramedChannel(EncryptedChannel channel) throws Exception {
+		labelloop: while ((socket.isConnected()) && (!socket.isClosed())) {
+			try {
+				// the request is read on the connection task, shutdown closes the
+				// input of the socket to stop the wait
+				if (!startWaitingForRequest()) {
+					logger.severe("Shutdown connection " + this.connectionid + " as got request from server");
+					break labelloop;
+				}
+				MessageReader requestreader;
+				try {
+					requestreader = channel.nextMessage();
+					requestreader.returnNextMessageStart();
+				} catch (Exception e) {
+					if (!alive) {
+						logger.severe("Shutdown connection " + this.connectionid + " as got request from server");
+					} else {
+						logger.warning("Found exception " + e + " on framed channel, closing ");
+						for (int i = 0; i < e.getStackTrace().length; i++)
+							logger.warning("   " + e.getStackTrace()[i]);
+					}
+					break labelloop;
+				} finally {
+					stopWaitingForRequest();
+				}
+				MessageWriter responsewriter = channel.startMessage();
+				String majorquery = requestreader.returnNextStartStructure();
+				boolean majorquerytreated = requestdecodedquery(majorquery, responsewriter, requestreader);
+				if (!majorquerytreated) {
+					throw new RuntimeException(
+							String.format("The majorquery type is invalid on framed channel :" + majorquery, ip));
+				}
+				requestreader.returnNextEndMessage();
+				channel.finishMessage();
+			} catch (Throwable t) {
+				if (t instanceof IOException) {
+					long endtime = System.currentTimeMillis();
+					long connectiontime = (endtime - starttime) / 1000;
+					logger.fine("normal client disconnection between messages, total connected time = "
+							+ connectiontime + "s");
+				} else {
+					logger.severe("Exception " + t.getMessage());
+					for (int i = 0; i < t.getStackTrace().length; i++) {
+						logger.severe(t.getStackTrace()[i].toString());
+					}
+					MessageWriter errorwriter = channel.getOpenWriter();
+					if (errorwriter == null)
+						errorwriter = channel.startMessage();
+					treatThrowable(t, "SYSTEM", null, errorwriter);
+					channel.finishMessage();
+				}
+				boolean isrecoverableerror = false;
+				if (t instanceof OLcRemoteException) {
+					OLcRemoteException exception = (OLcRemoteException) t;
+					if (exception.getRemoteErrorCode() == 1)
+						isrecoverableerror = true;
+				}
+				if (!isrecoverableerror)
+					socket.close();
+			}
+		}
+	}
+
+	/**
+	 * listens to the client on a multiplexed encrypted channel. Each request
+	 * received is executed as a task of the connection engine, so that several
+	 * requests of the client can be executed at the same time, and answered in
+	 * any order. At most the number of requests configured on the server are
+	 * executed at the same time for the connection, and a request is refused
+	 * before getting a thread if the queue of the request executor is full.
+	 * Admission control of actions is then performed by the request executor as
+	 * for other channels.<br>
+	 * The connection is only finished once all its requests are finished.
+	 * 
+	 * @param channel the multiplexed channel agreed with the client
+	 * @throws Exception if any communication issue is encountered
+	 * @since 1.16
+	 */
+	private void runMultiplexedChannel(MultiplexedChannel channel) throws Exception {
+		int maxrequests = server.getMaxMultiplexedRequests();
+		Semaphore requestslots = new Semaphore(maxrequests);
+		IncomingMessageHandler handler = (requestid, requestreader) -> {
+			if (!requestslots.tryAcquire()) {
+				rejectMultiplexedRequest(channel, requestid, requestreader,
+						"more than " + maxrequests + " requests running for the connection");
+				return;
+			}
+			boolean launched = false;
+			try {
+				if (server.getRequestExecutor().canAcceptRequest()) {
+					server.getConnectionEngine().execute(() -> {
+						try {
+							treatMultiplexedRequest(channel, requestid, requestreader);
+						} finally {
+							requestslots.release();
+						}
+					}, "OLcRequest-" + connectionid + "-" + requestid);
+					launched = true;
+				}
+			} catch (RuntimeException e) {
+				logger.warning("Could not launch request " + requestid + " for connection " + connectionid + ": "
+						+ e.getMessage());
+			}
+			if (!launched) {
+				requestslots.release();
+				rejectMultiplexedRequest(channel, requestid, requestreader, "request executor queue is full");
+			}
+		};
+		// frames are dispatched on the connection task until the end of the
+		// connection, shutdown closes the input of the socket to stop the reception
+		if (startWaitingForRequest()) {
+			try {
+				channel.receive(handler);
+			} finally {
+				stopWaitingForRequest();
+			}
+		}
+		if (!alive)
+			logger.severe("Shutdown connection " + this.connectionid + " as got request from server");
+		long connectiontime = (System.currentTimeMillis() - starttime) / 1000;
+		logger.fine("end of multiplexed channel, total connected time = " + connectiontime + "s");
+		socket.close();
+		// requests still running are waited for, so that they are accounted for
+		// until the connection is reported finished
+		if (!requestslots.tryAcquire(maxrequests, MULTIPLEXED_REQUEST_END_TIMEOUT, TimeUnit.MILLISECONDS))
+			logger.warning("Connection " + connectionid + " finished with " + (maxrequests
+					- requestslots.availablePermits()) + " requests still running");
+	}
+
+	/**
+	 * answers a request of a multiplexed channel with an overload error without
+	 * executing it. This is performed on the thread dispatching frames, so that
+	 * no thread is created for the request
+	 * 
+	 * @param channel       multiplexed channel
+	 * @param requestid     id of the request
+	 * @param requestreader reader on the request, that is discarded
+	 * @param reason        reason of the rejection for logs
+	 */
+	private void rejectMultiplexedRequest(
+			MultiplexedChannel channel,
+			int requestid,
+			MessageReader requestreader,
+			String reason) {
+		logger.warning("Request " + requestid + " from ip = " + ip + " on connection " + connectionid
+				+ " rejected as server is overloaded: " + reason);
+		try {
+			requestreader.close();
+			MessageWriter writer = channel.startMessage(requestid);
+			writer.sendMessageError(9999, "Server is overloaded, request could not be executed. Please try again later.");
+			channel.finishMessage(writer);
+		} catch (Exception e) {
+			logger.warning("Could not send overload error for request " + requestid + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * treats a request received on a multiplexed channel, with its own request
+	 * context sharing the connection data
+	 * 
+	 * @param channel       multiplexed channel
+	 * @param requestid     id of the request
+	 * @param requestreader reader on the request
+	 */
+	private void treatMultiplexedRequest(MultiplexedChannel channel, int requestid, MessageReader requestreader) {
+		server.bindRequestContext(new RequestContext(context));
+		MessageWriter responsewriter = null;
+		try {
+			responsewriter = channel.startMessage(requestid);
+			requestreader.returnNextMessageStart();
+			String majorquery = requestreader.returnNextStartStructure();
+			boolean majorquerytreated = requestdecodedquery(majorquery, responsewriter, requestreader);
+			if (!majorquerytreated) {
+				throw new RuntimeException(
+						String.format("The majorquery type is invalid on multiplexed channel :" + majorquery, ip));
+			}
+			requestreader.returnNextEndMessage();
+			channel.finishMessage(responsewriter);
+		} catch (Throwable t) {
+			if (t instanceof IOException) {
+				logger.warning("Communication error on request " + requestid + " for connection " + connectionid
+						+ ": " + t.getMessage());
+			} else {
+				logger.severe("Exception " + t.getMessage());
+				for (int i = 0; i < t.getStackTrace().length; i++) {
+					logger.severe(t.getStackTrace()[i].toString());
+				}
+			}
+			try {
+				if (responsewriter != null) {
+					treatThrowable(t, "SYSTEM", null, responsewriter);
+					channel.finishMessage(responsewriter);
+				}
+			} catch (IOException e) {
+				logger.warning("Could not send error for request " + requestid + ": " + e.getMessage());
+			}
+		} finally {
+			try {
+				requestreader.close();
+			} catch (IOException e) {
+				logger.fine("Could not close reader for request " + requestid + ": " + e.getMessage());
+			}
+			// the thread of the request ends, so connections it may still hold are released
+			PersistenceGateway.releaseForThread();
+			server.unbindRequestContext();
 		}
-		OLcServer.getServer().reportThreadFinished(this.getId());
 	}
 
 	/**
@@ -818,7 +1207,7 @@ public class ServerConnection
 	 * @param writer     writer to provide output
 	 * @throws IOException if any communication issue is encountered
 	 */
-	public void setLoginWithContextAction(ActionExecution action, SActionData actiondata, MessageBufferedWriter writer)
+	public void setLoginWithContextAction(ActionExecution action, SActionData actiondata, MessageWriter writer)
 			throws IOException {
 		try {
 
@@ -864,7 +1253,7 @@ public class ServerConnection
 			Throwable e,
 			String actionname,
 			DataObjectId<Appuser> userid,
-			MessageBufferedWriter writer) throws IOException {
+			MessageWriter writer) throws IOException {
 		// send error message instead of sending page. Else, it is the same
 		// note: no possibility now to send error properly if exception while sending
 		// page, need clean mechanism like buffer that flushes
@@ -892,7 +1281,7 @@ public class ServerConnection
 			DataObjectId<Appuser> userid,
 			ActionExecution action,
 			SActionData actiondata,
-			MessageBufferedWriter writer) throws IOException {
+			MessageWriter writer) throws IOException {
 		executeAction(userid, action, actiondata, writer, null);
 	}
 
@@ -900,7 +1289,38 @@ public class ServerConnection
 			DataObjectId<Appuser> userid,
 			ActionExecution action,
 			SActionData actiondata,
-			MessageBufferedWriter writer,
+			MessageWriter writer,
+			ArrayList<PageBufferSpec> clientpagesinbuffer) throws IOException {
+		String modulename = (action.getParent() != null ? action.getParent().getName() : "");
+		boolean admitted = server.getRequestExecutor().execute(modulename, action.getName(),
+				() -> executeAdmittedAction(userid, action, actiondata, writer, clientpagesinbuffer));
+		if (!admitted)
+			sendOverloadError(modulename, action.getName(), writer);
+	}
+
+	/**
+	 * sends an error to the client when the request could not be admitted by the
+	 * request executor
+	 * 
+	 * @param modulename name of the module of the action
+	 * @param actionname name of the action
+	 * @param writer     writer to the client
+	 * @throws IOException if any communication issue is encountered
+	 */
+	private void sendOverloadError(String modulename, String actionname, MessageWriter writer)
+			throws IOException {
+		logger.warning("Request " + modulename + "." + actionname + " from ip = " + ip
+				+ " rejected as server is overloaded");
+		writer.sendMessageError(9999, "Server is overloaded, action " + actionname
+				+ " could not be executed. Please try again later.");
+		writer.flushMessage();
+	}
+
+	private void executeAdmittedAction(
+			DataObjectId<Appuser> userid,
+			ActionExecution action,
+			SActionData actiondata,
+			MessageWriter writer,
 			ArrayList<PageBufferSpec> clientpagesinbuffer) throws IOException {
 		String actionname = action.getName();
 		SecurityBuffer buffer = new SecurityBuffer();
@@ -908,17 +1328,33 @@ public class ServerConnection
 		if (thisactionauthorization.getAuthorization() != ActionAuthorization.NOT_AUTHORIZED) {
 			if (action.getParentModule().IsRestriction()) {
 				ActionExecution enterotp = OLcServer.getServer().getModuleByName("SYSTEMMODULE").getAction("ENTEROTP");
-				executeAction(userid,enterotp,new SActionData(),writer,clientpagesinbuffer);
+				executeAdmittedAction(userid,enterotp,new SActionData(),writer,clientpagesinbuffer);
 			} else
 				try { // this is too precisely located. Should catch exception wider
 					logAction(action);
 					OLcServer.getServer().resetTriggersList(); // reset remote server list for thread;
 					SPage answerpage;
-					if (thisactionauthorization.getAuthorization() == ActionAuthorization.AUTHORIZED) {
-						answerpage = action.executeActionFromGUI(actiondata);
-					} else {
-						answerpage = action.executeActionFromGUI(actiondata,
-								thisactionauthorization.getAdditionalconditiongenerator());
+					if (action.isReadReplicaAllowed())
+						PersistenceGateway.startReadReplicaRouting();
+					// writes of the action are sent to the database as batches, in a single
+					// transaction if configured
+					PersistenceGateway.startActionTransaction();
+					PersistenceGateway.startUnitOfWork();
+					boolean success = false;
+					try {
+						if (thisactionauthorization.getAuthorization() == ActionAuthorization.AUTHORIZED) {
+							answerpage = action.executeActionFromGUI(actiondata);
+						} else {
+							answerpage = action.executeActionFromGUI(actiondata,
+									thisactionauthorization.getAdditionalconditiongenerator());
+						}
+						success = true;
+					} finally {
+						try {
+							PersistenceGateway.endActionTransaction(success);
+						} finally {
+							PersistenceGateway.stopReadReplicaRouting();
+						}
 					}
 					if (answerpage == null)
 						throw new RuntimeException("Action " + action.getName() + " / " + action.getClass().getName()
@@ -937,7 +1373,7 @@ public class ServerConnection
 		}
 	}
 
-	private void sendInlineData(SPageData inlineanswer, MessageBufferedWriter writer) throws IOException {
+	private void sendInlineData(SPageData inlineanswer, MessageWriter writer) throws IOException {
 		if (inlineanswer == null)
 			logger.severe("page was not found");
 		writer.startNewMessage();
@@ -1032,30 +1468,26 @@ public class ServerConnection
 
 		writer.startStructure("CONTENT");
 		SPageData data = page.getAllFinalPageAttributes();
-		String pageblank = null;
+		PageSkeleton skeleton = null;
 		PageBufferSpec validbufferspec = null;
 		if (clientpagesinbuffer != null) {
-			StringWriter pageblankstringbuffer = new StringWriter();
-			MessageWriter pageblankwriter = new MessageBufferedWriter(new BufferedWriter(pageblankstringbuffer), false);
-			pageblankwriter.startNewMessage();
-			page.getFinalContent().WriteToCDL(pageblankwriter, data, buffer);
-			page.resetPath();
-			pageblankwriter.endMessage();
-			pageblank = pageblankstringbuffer.toString();
-			logger.fine("---- wrote page blank length=" + pageblank.length() + ", hashcode = " + pageblank.hashCode());
-			logger.fine(StringExtremityPrinter.printextremity(pageblank, 15));
+			// page is rendered only once, and replayed if the client does not have it
+			skeleton = PageSkeleton.render(page, data, buffer);
+			logger.fine("---- wrote page blank length=" + skeleton.getSize() + ", hashcode = "
+					+ skeleton.getContentHashcode());
+			logger.fine(StringExtremityPrinter.printextremity(skeleton.getSerialized(), 15));
 			logger.fine("--------------------------------------------");
 
 			for (int i = 0; i < clientpagesinbuffer.size(); i++) {
 				PageBufferSpec thispagebuffer = clientpagesinbuffer.get(i);
-				if ((thispagebuffer.getContentHashcode() == pageblank.hashCode())
-						&& (thispagebuffer.getSize() == pageblank.length())) {
+				if (skeleton.matches(thispagebuffer)) {
 					validbufferspec = thispagebuffer;
-					logger.fine(
-							"    ** found match for page hash=" + pageblank.hashCode() + ",size=" + pageblank.length());
+					logger.fine("    ** found match for page hash=" + skeleton.getContentHashcode() + ",size="
+							+ skeleton.getSize());
 				} else {
-					logger.fine("    ** no match, size = " + thispagebuffer.getSize() + " - " + pageblank.length()
-							+ ", hashcode  = " + thispagebuffer.getContentHashcode() + " - " + pageblank.hashCode());
+					logger.fine("    ** no match, size = " + thispagebuffer.getSize() + " - " + skeleton.getSize()
+							+ ", hashcode  = " + thispagebuffer.getContentHashcode() + " - "
+							+ skeleton.getContentHashcode());
 				}
 			}
 		}
@@ -1067,8 +1499,11 @@ public class ServerConnection
 			writer.addIntegerField("SIZ", validbufferspec.getSize());
 
 		} else {
-
-			page.getFinalContent().WriteToCDL(writer, data, buffer);
+			if (skeleton != null) {
+				skeleton.writeTo(writer);
+			} else {
+				page.getFinalContent().WriteToCDL(writer, data, buffer);
+			}
 		}
 		writer.endStructure("CONTENT");
 		data.writeToCML(writer);
@@ -1243,7 +1678,44 @@ public class ServerConnection
 	 * accepted from clients
 	 */
 	public void setInactive() {
-		this.alive = false;
+		synchronized (inputlock) {
+			this.alive = false;
+			// a connection waiting for a request on a framed or multiplexed channel is
+			// stopped by closing the input, answers being sent are not impacted
+			if (waitingforrequest)
+				try {
+					socket.shutdownInput();
+				} catch (IOException e) {
+					logger.warning("Could not close input of connection " + connectionid + ": " + e.getMessage());
+				}
+		}
+	}
+
+	/**
+	 * records that the connection task starts waiting for a request on a framed
+	 * or multiplexed channel
+	 * 
+	 * @return false if the connection is inactive and should not wait
+	 * @since 1.16
+	 */
+	private boolean startWaitingForRequest() {
+		synchronized (inputlock) {
+			if (!alive)
+				return false;
+			waitingforrequest = true;
+			return true;
+		}
+	}
+
+	/**
+	 * records that the connection task stopped waiting for a request
+	 * 
+	 * @since 1.16
+	 */
+	private void stopWaitingForRequest() {
+		synchronized (inputlock) {
+			waitingforrequest = false;
+		}
 	}
 
 	/**
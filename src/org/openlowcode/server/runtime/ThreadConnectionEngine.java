@@ -0,0 +1,45 @@
+/********************************************************************************
+ * Copyright (c) 2020 [Open Lowcode SAS](https://openlowcode.com/)
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0 .
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ********************************************************************************/
+
+package org.openlowcode.server.runtime;
+
+/**
+ * The historical connection engine: a new platform thread is started for each
+ * connection, and is kept for the whole duration of the connection
+ * 
+ * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
+ *         SAS</a>
+ * @since 1.16
+ */
+public class ThreadConnectionEngine implements ConnectionEngine {
+
+	@Override
+	public void launch(ServerConnection connection) {
+		Thread thread = new Thread(connection, "OLcConnection-" + connection.getConnectionId());
+		thread.start();
+	}
+
+	@Override
+	public void execute(Runnable task, String name) {
+		Thread thread = new Thread(task, name);
+		thread.start();
+	}
+
+	@Override
+	public void shutdown() {
+		// nothing to do, threads stop when the connection is closed
+	}
+
+	@Override
+	public String getDescription() {
+		return "Thread per connection engine";
+	}
+
+}
@@ -20,6 +20,7 @@ import org.openlowcode.module.system.data.Groupmemberlink;
 import org.openlowcode.module.system.data.Groupswithauthority;
 import org.openlowcode.module.system.data.Systemattribute;
 import org.openlowcode.module.system.data.Usergroup;
+import org.openlowcode.server.data.ChangeJournal;
 import org.openlowcode.server.data.ThreeDataObjects;
 import org.openlowcode.server.data.properties.DataObjectId;
 
@@ -46,6 +47,24 @@ public class ServerSecurityBuffer {
 		return uniqueinstance;
 	}
 	private static ServerSecurityBuffer uniqueinstance;
+
+	/**
+	 * refreshes the buffer when another server sharing the database changes
+	 * users, groups, authorities, domains or system attributes. To be called
+	 * once the change journal is active.
+	 * 
+	 * @since 1.16
+	 */
+	public static void registerChangeListener() {
+		Runnable refresh = () -> getUniqueInstance().refreshData();
+		ChangeJournal.addListener(Appuser.getDefinition().getTableschema().getName(), refresh);
+		ChangeJournal.addListener(Usergroup.getDefinition().getTableschema().getName(), refresh);
+		ChangeJournal.addListener(Groupmemberlink.getDefinition().getTableschema().getName(), refresh);
+		ChangeJournal.addListener(Authority.getDefinition().getTableschema().getName(), refresh);
+		ChangeJournal.addListener(Groupswithauthority.getDefinition().getTableschema().getName(), refresh);
+		ChangeJournal.addListener(Domain.getDefinition().getTableschema().getName(), refresh);
+		ChangeJournal.addListener(Systemattribute.getDefinition().getTableschema().getName(), refresh);
+	}
 	
 	
 	
@@ -11,19 +11,31 @@
 package org.openlowcode.tools.enc;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.security.KeyFactory;
 import java.security.PublicKey;
 import java.security.spec.X509EncodedKeySpec;
 import java.util.logging.Logger;
+import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
 
 import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.CipherOutputStream;
 import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
 
 import org.openlowcode.tools.messages.MessageBufferedWriter;
+import org.openlowcode.tools.messages.MessageCodec;
+import org.openlowcode.tools.messages.MessageReader;
 import org.openlowcode.tools.messages.MessageSimpleReader;
+import org.openlowcode.tools.messages.MessageWriter;
 import org.openlowcode.tools.messages.SFile;
 
 /**
@@ -35,13 +47,16 @@ import org.openlowcode.tools.messages.SFile;
  */
 public class AESCommunicator {
 	private static Logger logger = Logger.getLogger(AESCommunicator.class.getName());
-	@SuppressWarnings("unused")
+	private static final int STREAM_BUFFER_SIZE = 8192;
 	private SecretKey secretkey;
 	private Cipher encryptaescipher;
 	private Cipher decryptaescipher;
 	private Deflater deflater;
 	private Inflater inflater;
 	private boolean messageaudit=false;
+	private MessageCodec codec = MessageCodec.TEXT;
+	private String channel = null;
+	private CompressionDictionary dictionary = null;
 	/**
 	 * @param secretkey
 	 * @throws Exception
@@ -68,15 +83,41 @@ public class AESCommunicator {
 	 * @throws Exception
 	 */
 	public byte[] zipandencrypt(String message) throws Exception {
+		if (this.messageaudit) {
+			logger.info("--------------------------- FULL MESSAGE AUDIT (before encryption)-----------------------");
+			logger.info(message);
+			logger.info("--------------------------- FULL MESSAGE AUDIT END (after encryption) -------------------");
+		}
+		if (message==null) return null;
+		return zipandencryptbinary(message.getBytes("UTF-8"));
+	}
+
+	/**
+	 * compresses and encrypts a binary payload
+	 * 
+	 * @param messagebinary the payload (typically a message encoded with the codec
+	 *                      of the connection)
+	 * @return the compressed and encrypted payload
+	 * @throws Exception if any exception is encountered
+	 * @since 1.16
+	 */
+	public byte[] zipandencrypt(byte[] messagebinary) throws Exception {
+		if (this.messageaudit) {
+			logger.info("--------------------------- FULL MESSAGE AUDIT (before encryption)-----------------------");
+			if ((messagebinary != null) && (!codec.isBinary()))
+				logger.info(new String(messagebinary, "UTF-8"));
+			if ((messagebinary != null) && (codec.isBinary()))
+				logger.info("binary message of " + messagebinary.length + " bytes");
+			logger.info("--------------------------- FULL MESSAGE AUDIT END (after encryption) -------------------");
+		}
+		return zipandencryptbinary(messagebinary);
+	}
+
+	private byte[] zipandencryptbinary(byte[] messagebinary) {
 		try {
-			if (this.messageaudit) {
-				logger.info("--------------------------- FULL MESSAGE AUDIT (before encryption)-----------------------");
-				logger.info(message);
-				logger.info("--------------------------- FULL MESSAGE AUDIT END (after encryption) -------------------");
-			}
-			if (message==null) return null;
-			byte[] messagebinary = message.getBytes("UTF-8");
+			if (messagebinary==null) return null;
 			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			resetDeflater(deflater);
 			deflater.setInput(messagebinary);
 			deflater.finish();
 			byte[] buffer = new byte[4000];
@@ -101,27 +142,358 @@ public class AESCommunicator {
 	 * @throws Exception
 	 */
 	public String decryptandunzip(byte[] encryptedmessage) throws Exception {
+		if (encryptedmessage==null) return null;
+		return new String(decryptandunziptobytes(encryptedmessage),"UTF-8");
+	}
+
+	/**
+	 * decrypts and uncompresses a binary payload
+	 * 
+	 * @param encryptedmessage the encrypted and compressed payload
+	 * @return the original payload
+	 * @throws Exception if any exception is encountered
+	 * @since 1.16
+	 */
+	public byte[] decryptandunziptobytes(byte[] encryptedmessage) throws Exception {
 		try {
 			if (encryptedmessage==null) return null;
 			byte[] decryptedzipcontent = decryptaescipher.doFinal(encryptedmessage);
+			inflater.reset();
 			inflater.setInput(decryptedzipcontent);
 			ByteArrayOutputStream baos = new ByteArrayOutputStream();
 			byte[] buffer = new byte[4000];
 			while (!inflater.finished()) {
 				int chars = inflater.inflate(buffer);
+				if ((chars == 0) && (inflater.needsDictionary()))
+					setInflaterDictionary(inflater);
+				if ((chars == 0) && (inflater.needsInput()))
+					throw new RuntimeException("Compressed content is truncated");
 				baos.write(buffer, 0, chars);
 			}
 			inflater.reset();
-			return baos.toString("UTF-8");
+			return baos.toByteArray();
 		} catch (Exception e) {
 			logger.severe(" Exception in  DecryptAndUnzip " + e.getClass().getName() + " - " + e.getMessage());
 			for (int i = 0; i < e.getStackTrace().length; i++)
 				logger.severe("     * " + e.getStackTrace()[i]);
-			deflater.reset();
+			inflater.reset();
 			throw new RuntimeException("Error in DecryptAndUnzip " + e.getMessage());
 		}
 	}
 
+	/**
+	 * @return the codec used for messages inside the encrypted envelope
+	 * @since 1.16
+	 */
+	public MessageCodec getCodec() {
+		return codec;
+	}
+
+	/**
+	 * @param codec the codec agreed during handshake for messages inside the
+	 *              encrypted envelope
+	 * @since 1.16
+	 */
+	public void setCodec(MessageCodec codec) {
+		this.codec = codec;
+	}
+
+	/**
+	 * encodes a message with the codec of the connection, then compresses and
+	 * encrypts it
+	 * 
+	 * @param messagewriter function writing the message
+	 * @return the encrypted payload
+	 * @throws Exception if any exception is encountered
+	 * @since 1.16
+	 */
+	public byte[] encodeandencrypt(MessageToEncrypt messagewriter) throws Exception {
+		ByteArrayOutputStream encryptedpayload = new ByteArrayOutputStream();
+		MessageWriter writer = getEncryptingWriter(encryptedpayload);
+		messagewriter.write(writer);
+		writer.flushMessage();
+		writer.close();
+		return encryptedpayload.toByteArray();
+	}
+
+	/**
+	 * creates a writer encoding the message with the codec of the connection, and
+	 * compressing and encrypting it on the fly into the destination stream. The
+	 * message is never held in full in memory. The writer has to be closed for the
+	 * encrypted content to be complete.<br>
+	 * Only one encrypting writer should be used at the same time for a
+	 * communicator.
+	 * 
+	 * @param destination stream receiving the encrypted content
+	 * @return a message writer
+	 * @throws Exception if any exception is encountered
+	 * @since 1.16
+	 */
+	public MessageWriter getEncryptingWriter(OutputStream destination) throws Exception {
+		// state is reset at start in case a previous writer was not closed properly
+		resetDeflater(deflater);
+		encryptaescipher.init(Cipher.ENCRYPT_MODE, secretkey);
+		OutputStream encryptingstream = new DictionaryDeflaterOutputStream(
+				new CipherOutputStream(destination, encryptaescipher), deflater, false);
+		MessageWriter writer = codec.createWriter(encryptingstream, messageaudit);
+		writer.setAESCommunicator(this);
+		return writer;
+	}
+
+	/**
+	 * decrypts and uncompresses a payload, and provides a reader with the codec of
+	 * the connection
+	 * 
+	 * @param encryptedmessage the encrypted payload
+	 * @return a reader on the decrypted message
+	 * @throws Exception if any exception is encountered
+	 * @since 1.16
+	 */
+	public MessageReader decryptandgetreader(byte[] encryptedmessage) throws Exception {
+		MessageReader reader = codec.createReader(decryptandunziptobytes(encryptedmessage));
+		reader.setAESCommunicator(this);
+		return reader;
+	}
+
+	/**
+	 * creates a reader decrypting and uncompressing on the fly the content of the
+	 * source stream, and decoding the message with the codec of the connection.
+	 * <br>
+	 * Only one decrypting reader should be used at the same time for a
+	 * communicator.
+	 * 
+	 * @param source stream holding the encrypted content
+	 * @return a reader on the decrypted message
+	 * @throws Exception if any exception is encountered
+	 * @since 1.16
+	 */
+	public MessageReader getDecryptingReader(InputStream source) throws Exception {
+		inflater.reset();
+		decryptaescipher.init(Cipher.DECRYPT_MODE, secretkey);
+		InputStream decryptingstream = new DictionaryInflaterInputStream(
+				new CipherInputStream(source, decryptaescipher), inflater, false);
+		MessageReader reader = codec.createReader(decryptingstream);
+		reader.setAESCommunicator(this);
+		return reader;
+	}
+
+	/**
+	 * creates a writer similar to {@link #getEncryptingWriter(OutputStream)}, but
+	 * with compression and encryption objects specific to this writer, so that
+	 * several messages can be written at the same time. Those objects are
+	 * released when the writer is closed.
+	 * 
+	 * @param destination stream receiving the encrypted content
+	 * @return a message writer
+	 * @throws Exception if any exception is encountered
+	 * @since 1.16
+	 */
+	public MessageWriter getIndependentEncryptingWriter(OutputStream destination) throws Exception {
+		Cipher messagecipher = Cipher.getInstance("AES");
+		messagecipher.init(Cipher.ENCRYPT_MODE, secretkey);
+		Deflater messagedeflater = new Deflater();
+		resetDeflater(messagedeflater);
+		OutputStream encryptingstream = new DictionaryDeflaterOutputStream(
+				new CipherOutputStream(destination, messagecipher), messagedeflater, true);
+		MessageWriter writer = codec.createWriter(encryptingstream, messageaudit);
+		writer.setAESCommunicator(this);
+		return writer;
+	}
+
+	/**
+	 * creates a reader similar to {@link #getDecryptingReader(InputStream)}, but
+	 * with decompression and decryption objects specific to this reader, so that
+	 * several messages can be read at the same time. Those objects are released
+	 * when the reader is closed.
+	 * 
+	 * @param source stream holding the encrypted content
+	 * @return a reader on the decrypted message
+	 * @throws Exception if any exception is encountered
+	 * @since 1.16
+	 */
+	public MessageReader getIndependentDecryptingReader(InputStream source) throws Exception {
+		Cipher messagecipher = Cipher.getInstance("AES");
+		messagecipher.init(Cipher.DECRYPT_MODE, secretkey);
+		InputStream decryptingstream = new DictionaryInflaterInputStream(new CipherInputStream(source, messagecipher),
+				new Inflater(), true);
+		MessageReader reader = codec.createReader(decryptingstream);
+		reader.setAESCommunicator(this);
+		return reader;
+	}
+
+	/**
+	 * @return true if encrypted messages are sent as frames directly on the socket
+	 *         (see {@link EncryptedChannel})
+	 * @since 1.16
+	 */
+	public boolean isFramedChannel() {
+		return EncryptedChannel.CHANNEL_FRAMED.equals(channel);
+	}
+
+	/**
+	 * @return true if encrypted messages are sent as frames with a request id
+	 *         directly on the socket (see {@link MultiplexedChannel})
+	 * @since 1.16
+	 */
+	public boolean isMultiplexedChannel() {
+		return EncryptedChannel.CHANNEL_MULTIPLEXED.equals(channel);
+	}
+
+	/**
+	 * @param channel the channel agreed during the handshake (see
+	 *                {@link EncryptedChannel}), or null if encrypted messages are
+	 *                sent in the text envelope
+	 * @since 1.16
+	 */
+	public void setChannel(String channel) {
+		this.channel = channel;
+	}
+
+	/**
+	 * @return the preset dictionary used for compression, or null if compression
+	 *         is performed without dictionary
+	 * @since 1.16
+	 */
+	public CompressionDictionary getDictionary() {
+		return dictionary;
+	}
+
+	/**
+	 * @param dictionary the preset dictionary agreed during the handshake, or null
+	 *                   if compression is performed without dictionary
+	 * @since 1.16
+	 */
+	public void setDictionary(CompressionDictionary dictionary) {
+		this.dictionary = dictionary;
+	}
+
+	/**
+	 * resets the deflater for a new message, and primes it with the dictionary if
+	 * one was agreed
+	 * 
+	 * @param deflater the deflater to reset
+	 */
+	private void resetDeflater(Deflater deflater) {
+		deflater.reset();
+		if (dictionary != null)
+			deflater.setDictionary(dictionary.getContent());
+	}
+
+	/**
+	 * sets the dictionary on an inflater that requires it. The inflater only
+	 * requires a dictionary if the other party compressed the message with one.
+	 * 
+	 * @param inflater inflater requiring a dictionary
+	 */
+	private void setInflaterDictionary(Inflater inflater) {
+		if (dictionary == null)
+			throw new RuntimeException("Compressed content requires a dictionary, but none was agreed");
+		inflater.setDictionary(dictionary.getContent());
+	}
+
+	/**
+	 * a deflater stream that can release its deflater when closed
+	 */
+	private static class DictionaryDeflaterOutputStream extends DeflaterOutputStream {
+		private boolean ownsdeflater;
+
+		/**
+		 * @param out          destination stream
+		 * @param deflater     deflater, already reset and primed with the dictionary
+		 * @param ownsdeflater true if the deflater is specific to this stream and
+		 *                     should be released when the stream is closed
+		 */
+		private DictionaryDeflaterOutputStream(OutputStream out, Deflater deflater, boolean ownsdeflater) {
+			super(out, deflater, STREAM_BUFFER_SIZE);
+			this.ownsdeflater = ownsdeflater;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				if (ownsdeflater)
+					def.end();
+			}
+		}
+	}
+
+	/**
+	 * an inflater stream setting the dictionary agreed when the compressed content
+	 * requires it. The standard stream considers the content as finished in this
+	 * case.
+	 */
+	private class DictionaryInflaterInputStream extends InflaterInputStream {
+		private boolean ownsinflater;
+		private boolean closed = false;
+
+		/**
+		 * @param in           source stream
+		 * @param inflater     inflater, already reset
+		 * @param ownsinflater true if the inflater is specific to this stream and
+		 *                     should be released when the stream is closed
+		 */
+		private DictionaryInflaterInputStream(InputStream in, Inflater inflater, boolean ownsinflater) {
+			super(in, inflater, STREAM_BUFFER_SIZE);
+			this.ownsinflater = ownsinflater;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (closed)
+				throw new IOException("Stream closed");
+			if ((off < 0) || (len < 0) || (len > b.length - off))
+				throw new IndexOutOfBoundsException();
+			if (len == 0)
+				return 0;
+			try {
+				while (true) {
+					int read = inf.inflate(b, off, len);
+					if (read > 0)
+						return read;
+					if (inf.finished())
+						return -1;
+					if (inf.needsDictionary()) {
+						setInflaterDictionary(inf);
+					} else if (inf.needsInput()) {
+						fill();
+					}
+				}
+			} catch (DataFormatException e) {
+				String message = e.getMessage();
+				throw new ZipException(message != null ? message : "Invalid compressed content");
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (closed)
+				return;
+			closed = true;
+			try {
+				super.close();
+			} finally {
+				if (ownsinflater)
+					inf.end();
+			}
+		}
+	}
+
+	/**
+	 * writes a message to be encrypted
+	 * 
+	 * @since 1.16
+	 */
+	@FunctionalInterface
+	public interface MessageToEncrypt {
+		/**
+		 * @param writer writer to use to write the message
+		 * @throws IOException if any issue is encountered writing
+		 */
+		void write(MessageWriter writer) throws IOException;
+	}
+
 	public static void main(String args[]) {
 		try {
 			KeyGenerator keyGen = KeyGenerator.getInstance("AES");
@@ -151,7 +523,9 @@ public class AESCommunicator {
 
 	/**
 	 * perform an handshake with the server to get and send back to the server an
-	 * AES Key
+	 * AES Key. The codec for messages inside the encrypted envelope is chosen
+	 * among the codecs offered by the server (text if none is offered). The
+	 * encrypted messages will use the text envelope.
 	 * 
 	 * @param reader message reader connected with the server
 	 * @param writer message writer connected with the server
@@ -161,10 +535,44 @@ public class AESCommunicator {
 	 */
 	public static AESCommunicator performServerHandshake(MessageSimpleReader reader, MessageBufferedWriter writer)
 			throws Exception {
+		return performServerHandshake(reader, writer, false);
+	}
+
+	/**
+	 * perform an handshake with the server to get and send back to the server an
+	 * AES Key. The codec for messages inside the encrypted envelope is chosen
+	 * among the codecs offered by the server (text if none is offered).<br>
+	 * If a direct channel is requested and the server offers one, the client
+	 * declares the preferred channel offered by the server, and waits for the
+	 * acknowledgement of the server. After this method returns, encrypted messages
+	 * should then be exchanged through an {@link EncryptedChannel} or a
+	 * {@link MultiplexedChannel} on the raw socket streams.
+	 * If the server offers compression dictionaries, the client declares the
+	 * first one it supports (see {@link CompressionDictionary}).
+	 * 
+	 * @param reader        message reader connected with the server
+	 * @param writer        message writer connected with the server
+	 * @param directchannel true to use a framed or multiplexed channel if the
+	 *                      server offers it
+	 * @return the AES communicator allowing encryption for communication with the
+	 *         server
+	 * @throws Exception if any communication error is encountered
+	 * @since 1.16
+	 */
+	public static AESCommunicator performServerHandshake(
+			MessageSimpleReader reader,
+			MessageBufferedWriter writer,
+			boolean directchannel) throws Exception {
 		
 		reader.returnNextMessageStart();
 		reader.returnNextStartStructure("RSAKEY");
-		byte[] rsapublickey = reader.returnNextLargeBinary("PUBLICKEY").getContent();
+		SFile rsapublickeyfile = reader.returnNextLargeBinary("PUBLICKEY");
+		byte[] rsapublickey = rsapublickeyfile.getContent();
+		MessageCodec codec = MessageCodec.chooseCodec(rsapublickeyfile.getFileName());
+		String channel = null;
+		if (directchannel)
+			channel = EncryptedChannel.chooseChannel(rsapublickeyfile.getFileName());
+		CompressionDictionary dictionary = CompressionDictionary.chooseDictionary(rsapublickeyfile.getFileName());
 		reader.returnNextEndStructure("RSAKEY");
 		reader.returnNextEndMessage();
 
@@ -183,11 +591,28 @@ public class AESCommunicator {
 		Cipher encryptrsacipher = Cipher.getInstance("RSA");
 		encryptrsacipher.init(Cipher.ENCRYPT_MODE, rsapublickeyasobject);
 		byte[] aeskeyencoded = encryptrsacipher.doFinal(aeskey);
+		String aeskeylabel = codec.declare("Aeskey");
+		if (channel != null)
+			aeskeylabel = MessageCodec.addHandshakeOption(aeskeylabel, EncryptedChannel.CHANNEL_KEY, channel);
+		aeskeylabel = CompressionDictionary.declare(aeskeylabel, dictionary);
 		writer.startNewMessage();
 		writer.startStructure("SESAESKEY");
-		writer.addLongBinaryField("AESKEY", new SFile("Aeskey", aeskeyencoded));
+		writer.addLongBinaryField("AESKEY", new SFile(aeskeylabel, aeskeyencoded));
 		writer.endStructure("SESAESKEY");
 		writer.endMessage();
+		aescommunicator.setCodec(codec);
+		aescommunicator.setDictionary(dictionary);
+		if (channel != null) {
+			// the server acknowledges before switching, so that no framed content is
+			// read by the text reader
+			reader.returnNextMessageStart();
+			reader.returnNextStartStructure("CHANNELOK");
+			reader.returnNextEndStructure("CHANNELOK");
+			reader.returnNextEndMessage();
+			aescommunicator.setChannel(channel);
+		}
+		logger.info("Agreed codec with server: " + codec + ", channel = " + (channel != null ? channel : "ENVELOPE")
+				+ ", dictionary = " + (dictionary != null ? dictionary : "NONE"));
 		return aescommunicator;
 	}
 }
@@ -0,0 +1,169 @@
+/********************************************************************************
+ * Copyright (c) 2020 [Open Lowcode SAS](https://openlowcode.com/)
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0 .
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ********************************************************************************/
+
+package org.openlowcode.tools.enc;
+
+import java.nio.charset.StandardCharsets;
+import java.util.StringTokenizer;
+
+import org.openlowcode.tools.messages.MessageCodec;
+
+/**
+ * A preset dictionary for the compression of encrypted messages. Most messages
+ * are small, and are made mostly of the same structure and field names. When
+ * compression is primed with a dictionary holding those names, their first
+ * occurrence in a message is already compressed, which significantly reduces
+ * the size of small messages such as inline actions.<br>
+ * The content of a dictionary is part of the protocol: both parties have to use
+ * exactly the same bytes. A dictionary is therefore identified by a version,
+ * and is only used when both parties agreed on its version during the security
+ * handshake. The content of a published version should never be modified. If
+ * the vocabulary of messages evolves, a new version should be added, and
+ * offered first.
+ *
+ * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
+ *         SAS</a>
+ * @since 1.16
+ *
+ */
+public class CompressionDictionary {
+	/**
+	 * the key of the dictionary in handshake options
+	 */
+	public static final String DICTIONARY_KEY = "DICTIONARY";
+
+	/**
+	 * first version of the dictionary of CML messages. Terms are sorted from the
+	 * least to the most frequent, as terms at the end of the dictionary are the
+	 * cheapest to reference.
+	 */
+	public static final CompressionDictionary CML1 = new CompressionDictionary("CML1",
+			new String[] { "ACHART", "GANNTC", "SCURVE", "FIXSPLIT", "TABPANE", "COMPONENTBAND", "MNUBAR", "OBJTRA",
+					"OBJSTO", "OBJIDS", "OBJARF", "OBJARR", "OBJBND", "OBJDIS", "PAGETEXT", "POPUPBTN", "ACTIONBUTTON",
+					"TEXTST", "FLDSRC", "CLB", "CTF", "DAT", "DCF", "FLC", "GRD", "IMC", "IMD", "MCF", "SPR", "TPF",
+					"TRE", "TSF", "WDP", "TXF", "INF", "TRANSFERS", "TRANSFER", "TXTSUGS", "TXTSUG", "VLDS", "VLD",
+					"VALELTS", "VALELT", "MENUS", "MENU", "MENACTS", "MENACT", "MNUITM", "ITMS", "ITM", "CDNBLKS",
+					"CDNBLK", "CHDS", "CHD", "ATVS", "ATV", "FLDSPECS", "FLDSPEC", "INFFLDS", "INFFLD", "MOREATTRS",
+					"MOREATTR", "RELFLD", "DATAREF", "OUTPUTDATAS", "OUTPUTDATA", "INLOUTPUT", "INLINEDATA",
+					"INLINEACTIONDATA", "PAGEDATAS", "PAGEDATA", "PAGBUFS", "PAGBUF", "PPAGE", "DISPLAYPAGE", "CONTEXT",
+					"CCLS", "CCL", "CTRS", "CTR", "OVWLBLS", "OVWLBL", "DELT", "ELTS", "ELT", "FLDS", "FLD", "FIELDS",
+					"FIELD", "ATTRIBUTES", "ATTRIBUTE", "ACTIONDATAS", "ACTIONDATA", "INLUPD", "INLACT", "ATTRS",
+					"ATTR", "CONTENT", "RQSATRS", "RQSATR", "ENCRES", "ENCMES", "ACTION", "INLINEACTION" },
+			new String[] { "MXL", "CMP", "DFC", "TLT", "STC", "DIV", "DIR", "ROLLOVERTIP", "YAXISVALUE",
+					"YAXISCATEGORY", "XAXIS", "TABNAME", "FORCEPOPUPCLOSE", "HBTBAR", "MENLBL", "TBNSIZ", "FRZ", "EXU",
+					"EXC", "DFA", "CPT", "CID", "CDS", "ATP", "HSD", "HLK", "HED", "HDM", "HAD", "HAC", "ISR", "ISGD",
+					"ISG", "ISCELLACT", "IDF", "PSL", "RESMES", "SPT", "UNSWARSTP", "UNSWARMES", "UNSWARCON",
+					"UNSDATWAR", "TME", "SIZ", "SCL", "OBI", "LABEL", "HSH", "HID", "FTS", "FFU", "DUM", "DSV", "CLF",
+					"VAL", "UID", "PTH", "HLP", "HCF", "UPDNOT", "TTL", "STV", "STP", "IND", "HPL", "ECR", "INL", "TWL",
+					"CPS", "SBN", "PDT", "DFV", "ID", "MODULE", "BSP", "SIT", "ROY", "EXR", "DFN", "TYP", "HPR", "PLD",
+					"LBL", "NAME", "NAM" });
+
+	private static final CompressionDictionary[] SUPPORTEDDICTIONARIES = new CompressionDictionary[] { CML1 };
+
+	private String version;
+	private byte[] content;
+
+	/**
+	 * creates a dictionary from the vocabulary of messages. Terms are written the
+	 * way they appear in text messages, which also matches the names in binary
+	 * messages.
+	 *
+	 * @param version    unique version of the dictionary
+	 * @param structures names of structures, from the least to the most frequent
+	 * @param fields     names of fields, from the least to the most frequent
+	 */
+	private CompressionDictionary(String version, String[] structures, String[] fields) {
+		this.version = version;
+		StringBuffer dictionary = new StringBuffer();
+		for (int i = 0; i < structures.length; i++) {
+			dictionary.append('[');
+			dictionary.append(structures[i]);
+			dictionary.append(':');
+		}
+		for (int i = 0; i < fields.length; i++) {
+			dictionary.append(',');
+			dictionary.append(fields[i]);
+			dictionary.append("=\"");
+		}
+		dictionary.append("=T,=F,=\"\",=N]\n}\n{\n[");
+		this.content = dictionary.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return the unique version of the dictionary
+	 */
+	public String getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return the content of the dictionary to set on the deflater or inflater
+	 */
+	byte[] getContent() {
+		return content;
+	}
+
+	@Override
+	public String toString() {
+		return version;
+	}
+
+	/**
+	 * adds to a label sent during handshake the dictionaries supported, by order
+	 * of preference
+	 *
+	 * @param label original label
+	 * @return the label with the dictionaries offered
+	 */
+	public static String offerDictionaries(String label) {
+		StringBuffer offer = new StringBuffer();
+		for (int i = 0; i < SUPPORTEDDICTIONARIES.length; i++) {
+			if (i > 0)
+				offer.append(',');
+			offer.append(SUPPORTEDDICTIONARIES[i].version);
+		}
+		return MessageCodec.addHandshakeOption(label, DICTIONARY_KEY, offer.toString());
+	}
+
+	/**
+	 * chooses a dictionary among the ones offered by the other party, or declared
+	 * by the other party
+	 *
+	 * @param label label as received from the other party (may be null)
+	 * @return the first dictionary supported, or null if no dictionary is
+	 *         supported (compression is then performed without dictionary)
+	 */
+	public static CompressionDictionary chooseDictionary(String label) {
+		String offer = MessageCodec.getHandshakeOption(label, DICTIONARY_KEY);
+		if (offer == null)
+			return null;
+		StringTokenizer offertokens = new StringTokenizer(offer, ",");
+		while (offertokens.hasMoreTokens()) {
+			String version = offertokens.nextToken().trim();
+			for (int i = 0; i < SUPPORTEDDICTIONARIES.length; i++)
+				if (SUPPORTEDDICTIONARIES[i].version.equals(version))
+					return SUPPORTEDDICTIONARIES[i];
+		}
+		return null;
+	}
+
+	/**
+	 * declares in a label sent during handshake the dictionary chosen
+	 *
+	 * @param label      original label
+	 * @param dictionary dictionary chosen (may be null)
+	 * @return the label with the dictionary declared if not null
+	 */
+	public static String declare(String label, CompressionDictionary dictionary) {
+		if (dictionary == null)
+			return label;
+		return MessageCodec.addHandshakeOption(label, DICTIONARY_KEY, dictionary.version);
+	}
+}
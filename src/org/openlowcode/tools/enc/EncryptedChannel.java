@@ -0,0 +1,338 @@
+/********************************************************************************
+ * Copyright (c) 2020 [Open Lowcode SAS](https://openlowcode.com/)
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0 .
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ********************************************************************************/
+
+package org.openlowcode.tools.enc;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.StringTokenizer;
+
+import org.openlowcode.tools.messages.MessageCodec;
+import org.openlowcode.tools.messages.MessageReader;
+import org.openlowcode.tools.messages.MessageWriter;
+
+/**
+ * An encrypted channel sends messages compressed and encrypted directly on the
+ * socket, without the base64 text envelope (ENCMES / ENCRES) used by default.
+ * Each message is sent as a sequence of frames:
+ * <ul>
+ * <li>a frame is a 4 bytes length followed by the encrypted bytes</li>
+ * <li>a frame of length 0 ends the message</li>
+ * </ul>
+ * Messages are compressed, encrypted and framed while they are written, and
+ * decrypted and uncompressed while they are read, so a message is never held in
+ * full in memory. The channel is only used when both parties agreed on it
+ * during the security handshake.
+ *
+ * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
+ *         SAS</a>
+ * @since 1.16
+ *
+ */
+public class EncryptedChannel {
+	/**
+	 * the name of the framed channel in handshake options
+	 */
+	public static final String CHANNEL_FRAMED = "FRAMED";
+	/**
+	 * the name of the multiplexed channel (see {@link MultiplexedChannel}) in
+	 * handshake options
+	 */
+	public static final String CHANNEL_MULTIPLEXED = "MULTIPLEXED";
+	/**
+	 * the key of the channel in handshake options
+	 */
+	public static final String CHANNEL_KEY = "CHANNEL";
+	private static final int FRAME_SIZE = 32768;
+
+	private AESCommunicator aescommunicator;
+	private DataInputStream socketin;
+	private DataOutputStream socketout;
+	private FrameOutputStream currentframeout;
+	private MessageWriter currentwriter;
+	private FrameInputStream currentframein;
+	private byte[] framebuffer;
+
+	/**
+	 * creates an encrypted channel on the socket streams. The streams should be
+	 * positioned exactly after the end of the security handshake
+	 *
+	 * @param aescommunicator communicator holding the key and codec agreed during
+	 *                        handshake
+	 * @param socketin        raw input stream of the socket
+	 * @param socketout       raw output stream of the socket
+	 */
+	public EncryptedChannel(AESCommunicator aescommunicator, InputStream socketin, OutputStream socketout) {
+		this.aescommunicator = aescommunicator;
+		this.socketin = new DataInputStream(socketin);
+		this.socketout = new DataOutputStream(socketout);
+		this.framebuffer = new byte[FRAME_SIZE];
+	}
+
+	/**
+	 * adds to a label sent during handshake the channels supported, by order of
+	 * preference
+	 *
+	 * @param label            original label
+	 * @param allowmultiplexed true if the multiplexed channel is offered
+	 * @return the label with the channels offered
+	 * @since 1.16
+	 */
+	public static String offerChannels(String label, boolean allowmultiplexed) {
+		String channels = (allowmultiplexed ? CHANNEL_MULTIPLEXED + "," + CHANNEL_FRAMED : CHANNEL_FRAMED);
+		return MessageCodec.addHandshakeOption(label, CHANNEL_KEY, channels);
+	}
+
+	/**
+	 * chooses a channel among the ones offered by the other party, or declared by
+	 * the other party
+	 *
+	 * @param label label as received from the other party (may be null)
+	 * @return the first channel supported, or null if no channel supported (the
+	 *         text envelope is then used)
+	 * @since 1.16
+	 */
+	public static String chooseChannel(String label) {
+		String offer = MessageCodec.getHandshakeOption(label, CHANNEL_KEY);
+		if (offer == null)
+			return null;
+		StringTokenizer offertokens = new StringTokenizer(offer, ",");
+		while (offertokens.hasMoreTokens()) {
+			String channel = offertokens.nextToken().trim();
+			if (CHANNEL_MULTIPLEXED.equals(channel))
+				return CHANNEL_MULTIPLEXED;
+			if (CHANNEL_FRAMED.equals(channel))
+				return CHANNEL_FRAMED;
+		}
+		return null;
+	}
+
+	/**
+	 * starts a new message to send to the other party. If the previous message
+	 * sent was not finished, it is finished first.
+	 *
+	 * @return a writer compressing and encrypting the message on the fly
+	 * @throws Exception if any communication issue is encountered
+	 */
+	public MessageWriter startMessage() throws Exception {
+		finishMessage();
+		currentframeout = new FrameOutputStream();
+		currentwriter = aescommunicator.getEncryptingWriter(currentframeout);
+		return currentwriter;
+	}
+
+	/**
+	 * @return the writer of the message currently being sent, or null if there is
+	 *         none
+	 */
+	public MessageWriter getOpenWriter() {
+		return currentwriter;
+	}
+
+	/**
+	 * finishes the message currently being sent: the remaining content is
+	 * encrypted, and the end of message frame is sent. Does nothing if there is no
+	 * message being sent
+	 *
+	 * @throws IOException if any communication issue is encountered
+	 */
+	public void finishMessage() throws IOException {
+		if (currentwriter == null)
+			return;
+		MessageWriter writertoclose = currentwriter;
+		currentwriter = null;
+		writertoclose.flushMessage();
+		writertoclose.close();
+		currentframeout.finish();
+		currentframeout = null;
+	}
+
+	/**
+	 * waits for the next message of the other party. The rest of the previous
+	 * message received, if any, is discarded.
+	 *
+	 * @return a reader decrypting and uncompressing the message on the fly
+	 * @throws Exception if any communication issue is encountered
+	 */
+	public MessageReader nextMessage() throws Exception {
+		if (currentframein != null)
+			currentframein.drain();
+		currentframein = new FrameInputStream();
+		return aescommunicator.getDecryptingReader(currentframein);
+	}
+
+	/**
+	 * reads the length of the next frame. Line feeds and carriage returns sent at
+	 * the end of the last text message of the handshake are skipped: this is not
+	 * ambiguous as frames are never longer than 32KB, so the first byte of a frame
+	 * length is always 0.
+	 *
+	 * @return the length of the next frame
+	 * @throws IOException if any communication issue is encountered
+	 */
+	private int readFrameLength() throws IOException {
+		int firstbyte = socketin.read();
+		while ((firstbyte == '\n') || (firstbyte == '\r'))
+			firstbyte = socketin.read();
+		if (firstbyte == -1)
+			throw new EOFException("Connection closed by other party while waiting for frame");
+		int length = (firstbyte << 24) | (socketin.readUnsignedByte() << 16) | (socketin.readUnsignedByte() << 8)
+				| socketin.readUnsignedByte();
+		if ((length < 0) || (length > FRAME_SIZE))
+			throw new IOException("Invalid frame length received " + length);
+		return length;
+	}
+
+	/**
+	 * a stream cutting the encrypted message in frames. Closing this stream does
+	 * not close the socket
+	 *
+	 */
+	private class FrameOutputStream extends OutputStream {
+		private int framelength = 0;
+		private boolean finished = false;
+
+		@Override
+		public void write(int b) throws IOException {
+			if (framelength == framebuffer.length)
+				sendFrame();
+			framebuffer[framelength] = (byte) b;
+			framelength++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				if (framelength == framebuffer.length)
+					sendFrame();
+				int tocopy = Math.min(len, framebuffer.length - framelength);
+				System.arraycopy(b, off, framebuffer, framelength, tocopy);
+				framelength += tocopy;
+				off += tocopy;
+				len -= tocopy;
+			}
+		}
+
+		private void sendFrame() throws IOException {
+			if (finished)
+				throw new IOException("Message is already finished");
+			if (framelength == 0)
+				return;
+			socketout.writeInt(framelength);
+			socketout.write(framebuffer, 0, framelength);
+			framelength = 0;
+		}
+
+		/**
+		 * sends the last frame and the end of message
+		 *
+		 * @throws IOException if any communication issue is encountered
+		 */
+		private void finish() throws IOException {
+			if (finished)
+				return;
+			sendFrame();
+			socketout.writeInt(0);
+			socketout.flush();
+			finished = true;
+		}
+
+		@Override
+		public void flush() throws IOException {
+			// frames are only sent when full or at end of message
+		}
+
+		@Override
+		public void close() throws IOException {
+			finish();
+		}
+	}
+
+	/**
+	 * a stream reading the frames of one message. The stream ends at the end of
+	 * message frame. Closing this stream discards the rest of the message but does
+	 * not close the socket.
+	 *
+	 */
+	private class FrameInputStream extends InputStream {
+		private int remaininginframe = 0;
+		private boolean ended = false;
+
+		/**
+		 * @return true if there is still content available in the message
+		 * @throws IOException if any communication issue is encountered
+		 */
+		private boolean prepareFrame() throws IOException {
+			while ((remaininginframe == 0) && (!ended)) {
+				remaininginframe = readFrameLength();
+				if (remaininginframe == 0)
+					ended = true;
+			}
+			return !ended;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (!prepareFrame())
+				return -1;
+			int result = socketin.read();
+			if (result == -1)
+				throw new EOFException("Connection closed by other party in the middle of a frame");
+			remaininginframe--;
+			return result;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0)
+				return 0;
+			if (!prepareFrame())
+				return -1;
+			int read = socketin.read(b, off, Math.min(len, remaininginframe));
+			if (read == -1)
+				throw new EOFException("Connection closed by other party in the middle of a frame");
+			remaininginframe -= read;
+			return read;
+		}
+
+		@Override
+		public int available() throws IOException {
+			if (ended)
+				return 0;
+			return Math.min(remaininginframe, socketin.available());
+		}
+
+		/**
+		 * reads and discards the rest of the message
+		 *
+		 * @throws IOException if any communication issue is encountered
+		 */
+		private void drain() throws IOException {
+			while (prepareFrame()) {
+				int skipped = socketin.skipBytes(remaininginframe);
+				if (skipped == 0) {
+					if (socketin.read() == -1)
+						throw new EOFException("Connection closed by other party in the middle of a frame");
+					skipped = 1;
+				}
+				remaininginframe -= skipped;
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			drain();
+		}
+	}
+}
@@ -0,0 +1,447 @@
+/********************************************************************************
+ * Copyright (c) 2020 [Open Lowcode SAS](https://openlowcode.com/)
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0 .
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ********************************************************************************/
+
+package org.openlowcode.tools.enc;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.openlowcode.tools.enc.AESCommunicator.MessageToEncrypt;
+import org.openlowcode.tools.messages.MessageReader;
+import org.openlowcode.tools.messages.MessageWriter;
+
+/**
+ * A multiplexed channel allows several messages to be exchanged at the same
+ * time on the same socket. It works as the {@link EncryptedChannel}, but each
+ * frame also carries the id of the request it belongs to:
+ * <ul>
+ * <li>a frame is a 4 bytes request id, a 4 bytes length, and the encrypted
+ * bytes</li>
+ * <li>a frame of length 0 ends the message for the request</li>
+ * </ul>
+ * The client allocates a new request id for each request, and the server
+ * answers with the same id, possibly in a different order from the requests.
+ * Each message is compressed and encrypted independently, so that messages can
+ * be written and read by different threads at the same time.<br>
+ * Frames received are dispatched by a dedicated thread to the reader of the
+ * message they belong to. At most {@link #MAX_PENDING_FRAMES} frames are kept
+ * in memory for a message not yet read: the dispatching thread then waits for
+ * the reader, and stops reading the socket, so that the other party is slowed
+ * down by the flow control of the network connection. A message whose reader
+ * does not progress during {@link #PENDING_FRAME_TIMEOUT} ms is abandoned, so
+ * that other messages of the channel can be received.
+ *
+ * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
+ *         SAS</a>
+ * @since 1.16
+ *
+ */
+public class MultiplexedChannel {
+	private static Logger logger = Logger.getLogger(MultiplexedChannel.class.getName());
+	private static final int FRAME_SIZE = 32768;
+	private static final byte[] END_OF_MESSAGE = new byte[0];
+	/**
+	 * maximum number of frames received and not yet read for a message
+	 */
+	public static final int MAX_PENDING_FRAMES = 64;
+	/**
+	 * maximum time in ms the dispatching thread waits for the reader of a message
+	 * to make room for a new frame
+	 */
+	public static final long PENDING_FRAME_TIMEOUT = 60000;
+
+	private AESCommunicator aescommunicator;
+	private DataInputStream socketin;
+	private DataOutputStream socketout;
+	private AtomicInteger requestidgenerator;
+	private ConcurrentHashMap<Integer, FrameInputStream> receivingmessages;
+	private volatile boolean receiving = false;
+	private volatile IOException receivingerror = null;
+
+	/**
+	 * handles a new message sent by the other party
+	 *
+	 */
+	@FunctionalInterface
+	public interface IncomingMessageHandler {
+		/**
+		 * handles a new message. This method is called by the thread dispatching
+		 * frames, so it should not read the message itself, but delegate it to
+		 * another thread
+		 *
+		 * @param requestid id of the request
+		 * @param reader    reader on the message
+		 */
+		public void handle(int requestid, MessageReader reader);
+	}
+
+	/**
+	 * creates a multiplexed channel on the socket streams. The streams should be
+	 * positioned exactly after the end of the security handshake
+	 *
+	 * @param aescommunicator communicator holding the key and codec agreed during
+	 *                        handshake
+	 * @param socketin        raw input stream of the socket
+	 * @param socketout       raw output stream of the socket
+	 */
+	public MultiplexedChannel(AESCommunicator aescommunicator, InputStream socketin, OutputStream socketout) {
+		this.aescommunicator = aescommunicator;
+		this.socketin = new DataInputStream(socketin);
+		this.socketout = new DataOutputStream(socketout);
+		this.requestidgenerator = new AtomicInteger(0);
+		this.receivingmessages = new ConcurrentHashMap<Integer, FrameInputStream>();
+	}
+
+	/**
+	 * starts the thread dispatching frames received to the readers of the
+	 * messages.
+	 *
+	 * @param handler handler for new messages sent by the other party. If null,
+	 *                only answers to requests sent through
+	 *                {@link #sendRequest(MessageToEncrypt)} are accepted
+	 */
+	public void startReceiving(IncomingMessageHandler handler) {
+		receiving = true;
+		Thread dispatcher = new Thread() {
+
+			@Override
+			public void run() {
+				dispatch(handler);
+			}
+
+		};
+		dispatcher.setDaemon(true);
+		dispatcher.start();
+	}
+
+	/**
+	 * dispatches frames received to the readers of the messages on the current
+	 * thread, until the end of the stream or an error. This is typically used by
+	 * a party that has nothing else to do on its thread while the channel is
+	 * open. Closing the input stream from another thread stops the reception.
+	 *
+	 * @param handler handler for new messages sent by the other party. If null,
+	 *                only answers to requests sent through
+	 *                {@link #sendRequest(MessageToEncrypt)} are accepted
+	 * @since 1.16
+	 */
+	public void receive(IncomingMessageHandler handler) {
+		receiving = true;
+		dispatch(handler);
+	}
+
+	/**
+	 * reads frames and dispatches them to the readers of the messages until the
+	 * end of the stream or an error. All messages being received are then failed.
+	 *
+	 * @param handler handler for new messages sent by the other party
+	 */
+	private void dispatch(IncomingMessageHandler handler) {
+		try {
+			while (true) {
+				int requestid = socketin.readInt();
+				int length = socketin.readInt();
+				if ((length < 0) || (length > FRAME_SIZE))
+					throw new IOException("Invalid frame length received " + length);
+				byte[] frame = END_OF_MESSAGE;
+				if (length > 0) {
+					frame = new byte[length];
+					socketin.readFully(frame);
+				}
+				Integer requestkey = new Integer(requestid);
+				FrameInputStream message = receivingmessages.get(requestkey);
+				if (message == null) {
+					if (handler == null) {
+						logger.warning("Discarding frame for unknown request " + requestid);
+						continue;
+					}
+					message = new FrameInputStream(requestkey);
+					receivingmessages.put(requestkey, message);
+					handler.handle(requestid, aescommunicator.getIndependentDecryptingReader(message));
+				}
+				if (length == 0)
+					receivingmessages.remove(requestkey);
+				message.addFrame(frame);
+			}
+		} catch (Exception e) {
+			IOException error = (e instanceof IOException ? (IOException) e
+					: new IOException("Error while receiving frames " + e.getMessage(), e));
+			if (!(e instanceof EOFException))
+				logger.warning("Multiplexed channel stops receiving: " + e.getMessage());
+			receivingerror = error;
+			receiving = false;
+			Iterator<FrameInputStream> pendingmessages = receivingmessages.values().iterator();
+			while (pendingmessages.hasNext())
+				pendingmessages.next().fail(error);
+			receivingmessages.clear();
+		}
+	}
+
+	/**
+	 * @return true if the channel is still receiving frames
+	 */
+	public boolean isReceiving() {
+		return receiving;
+	}
+
+	/**
+	 * sends a request to the other party under a new request id, and provides the
+	 * reader on the answer. Several requests can be sent at the same time by
+	 * different threads.
+	 *
+	 * @param request function writing the message
+	 * @return the reader on the answer. The first element will be available as
+	 *         soon as the other party starts answering
+	 * @throws Exception if any issue is encountered while sending the request
+	 */
+	public MessageReader sendRequest(MessageToEncrypt request) throws Exception {
+		if (!receiving) {
+			if (receivingerror != null)
+				throw receivingerror;
+			throw new IOException("Multiplexed channel is not receiving");
+		}
+		Integer requestkey = new Integer(requestidgenerator.incrementAndGet());
+		FrameInputStream answer = new FrameInputStream(requestkey);
+		receivingmessages.put(requestkey, answer);
+		MessageReader answerreader = aescommunicator.getIndependentDecryptingReader(answer);
+		MessageWriter writer = startMessage(requestkey.intValue());
+		try {
+			request.write(writer);
+		} catch (IOException | RuntimeException e) {
+			receivingmessages.remove(requestkey);
+			if (writer.isActive())
+				writer.sendMessageError(1, "Error during sending of client data");
+			finishMessage(writer);
+			throw e;
+		}
+		finishMessage(writer);
+		return answerreader;
+	}
+
+	/**
+	 * starts a message for the given request id
+	 *
+	 * @param requestid id of the request
+	 * @return a writer compressing and encrypting the message on the fly
+	 * @throws Exception if any issue is encountered
+	 */
+	public MessageWriter startMessage(int requestid) throws Exception {
+		return aescommunicator.getIndependentEncryptingWriter(new FrameOutputStream(requestid));
+	}
+
+	/**
+	 * finishes a message: the remaining content is encrypted, and the end of
+	 * message frame is sent
+	 *
+	 * @param writer writer created by {@link #startMessage(int)}
+	 * @throws IOException if any communication issue is encountered
+	 */
+	public void finishMessage(MessageWriter writer) throws IOException {
+		writer.flushMessage();
+		writer.close();
+	}
+
+	/**
+	 * sends a frame. Frames of different messages can be interleaved, but a frame
+	 * is always sent in full
+	 *
+	 * @param requestid id of the request
+	 * @param frame     buffer holding the frame
+	 * @param length    length of the frame (0 for end of message)
+	 * @throws IOException if any communication issue is encountered
+	 */
+	private void sendFrame(int requestid, byte[] frame, int length) throws IOException {
+		synchronized (socketout) {
+			socketout.writeInt(requestid);
+			socketout.writeInt(length);
+			if (length > 0)
+				socketout.write(frame, 0, length);
+			if (length == 0)
+				socketout.flush();
+		}
+	}
+
+	/**
+	 * a stream cutting one message in frames for a request
+	 *
+	 */
+	private class FrameOutputStream extends OutputStream {
+		private int requestid;
+		private byte[] framebuffer;
+		private int framelength = 0;
+		private boolean finished = false;
+
+		private FrameOutputStream(int requestid) {
+			this.requestid = requestid;
+			this.framebuffer = new byte[FRAME_SIZE];
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (framelength == framebuffer.length)
+				sendPendingFrame();
+			framebuffer[framelength] = (byte) b;
+			framelength++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				if (framelength == framebuffer.length)
+					sendPendingFrame();
+				int tocopy = Math.min(len, framebuffer.length - framelength);
+				System.arraycopy(b, off, framebuffer, framelength, tocopy);
+				framelength += tocopy;
+				off += tocopy;
+				len -= tocopy;
+			}
+		}
+
+		private void sendPendingFrame() throws IOException {
+			if (finished)
+				throw new IOException("Message is already finished for request " + requestid);
+			if (framelength == 0)
+				return;
+			sendFrame(requestid, framebuffer, framelength);
+			framelength = 0;
+		}
+
+		@Override
+		public void flush() throws IOException {
+			// frames are only sent when full or at end of message
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (finished)
+				return;
+			sendPendingFrame();
+			sendFrame(requestid, null, 0);
+			finished = true;
+		}
+	}
+
+	/**
+	 * a stream reading the frames received for one message
+	 *
+	 */
+	private class FrameInputStream extends InputStream {
+		private Integer requestkey;
+		private ArrayBlockingQueue<byte[]> frames;
+		private byte[] currentframe = null;
+		private int indexinframe = 0;
+		private boolean ended = false;
+		private volatile boolean discarded = false;
+		private volatile IOException error = null;
+
+		private FrameInputStream(Integer requestkey) {
+			this.requestkey = requestkey;
+			this.frames = new ArrayBlockingQueue<byte[]>(MAX_PENDING_FRAMES);
+		}
+
+		/**
+		 * adds a frame received, waiting if too many frames are not yet read. If the
+		 * reader does not make room in time, the message is abandoned
+		 * 
+		 * @param frame the frame received
+		 * @throws InterruptedException if the dispatching thread is interrupted
+		 */
+		private void addFrame(byte[] frame) throws InterruptedException {
+			if (discarded)
+				return;
+			if (!frames.offer(frame, PENDING_FRAME_TIMEOUT, TimeUnit.MILLISECONDS)) {
+				logger.warning("Abandoning message for request " + requestkey + " as its reader did not progress for "
+						+ PENDING_FRAME_TIMEOUT + "ms");
+				discarded = true;
+				fail(new IOException("Message for request " + requestkey + " not read in time"));
+			}
+		}
+
+		private void fail(IOException error) {
+			this.error = error;
+			// the content not yet read is lost anyway, room is made for the end marker
+			while (!frames.offer(END_OF_MESSAGE))
+				frames.poll();
+		}
+
+		/**
+		 * @return true if there is still content available in the message
+		 * @throws IOException if the channel was interrupted
+		 */
+		private boolean prepareFrame() throws IOException {
+			while ((!ended) && ((currentframe == null) || (indexinframe == currentframe.length))) {
+				try {
+					currentframe = frames.take();
+				} catch (InterruptedException e) {
+					throw new IOException("Interrupted while waiting for message of request " + requestkey);
+				}
+				indexinframe = 0;
+				if (currentframe.length == 0) {
+					if (error != null)
+						throw new IOException("Channel interrupted while receiving request " + requestkey, error);
+					ended = true;
+				}
+			}
+			return !ended;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (!prepareFrame())
+				return -1;
+			int result = currentframe[indexinframe] & 0xFF;
+			indexinframe++;
+			return result;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0)
+				return 0;
+			if (!prepareFrame())
+				return -1;
+			int tocopy = Math.min(len, currentframe.length - indexinframe);
+			System.arraycopy(currentframe, indexinframe, b, off, tocopy);
+			indexinframe += tocopy;
+			return tocopy;
+		}
+
+		@Override
+		public int available() throws IOException {
+			if ((ended) || (currentframe == null))
+				return 0;
+			return currentframe.length - indexinframe;
+		}
+
+		/**
+		 * the rest of the message is discarded. The stream stays registered until the
+		 * end of message frame is received, so that the frames still to come are not
+		 * taken for a new message.
+		 */
+		@Override
+		public void close() throws IOException {
+			if (!ended) {
+				ended = true;
+				discarded = true;
+				frames.clear();
+			}
+		}
+	}
+}
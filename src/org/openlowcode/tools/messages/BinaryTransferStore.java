@@ -0,0 +1,347 @@
+/********************************************************************************
+ * Copyright (c) 2020 [Open Lowcode SAS](https://openlowcode.com/)
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0 .
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ********************************************************************************/
+package org.openlowcode.tools.messages;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * The store of large binaries received through chunked transfers. Content
+ * received is written to disk chunk by chunk, so that a large file is never
+ * held in memory by the party receiving it. The store keeps track of the number
+ * of bytes received for each transfer, so that a transfer interrupted by a
+ * dropped connection can be resumed from the last chunk received.<br>
+ * Files of the store are deleted after a retention time. An SFile received
+ * through a chunked transfer should be processed (typically persisted in the
+ * database or copied) within this time.<br>
+ * The store also holds spill files, for content read from another source that
+ * is too large to be kept in memory. Those are deleted when the thread that
+ * created them releases them, typically at the end of the request, and their
+ * total size is limited.
+ *
+ * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
+ *         SAS</a>
+ * @since 1.16
+ *
+ */
+public class BinaryTransferStore {
+	private static Logger logger = Logger.getLogger(BinaryTransferStore.class.getName());
+	private static final long RETENTION_MS = 24 * 3600 * 1000;
+	private static final long PURGE_INTERVAL_MS = 60 * 1000;
+	private static final String TRANSFER_ID_CHARACTERS = "0123456789abcdefABCDEF-";
+	private static final long DEFAULT_MAX_SPILL_LENGTH = 4L * 1024 * 1024 * 1024;
+	private static BinaryTransferStore singleton;
+
+	private File directory;
+	private HashMap<String, TransferSpool> spools;
+	private long lastpurge = 0;
+	private int filecounter = 0;
+	private HashMap<File, Long> spillfiles;
+	private long spilllength = 0;
+	private long maxspilllength = DEFAULT_MAX_SPILL_LENGTH;
+	private ThreadLocal<ArrayList<File>> threadspillfiles = new ThreadLocal<ArrayList<File>>();
+
+	/**
+	 * @return the store of the JVM, in the temporary directory
+	 */
+	public static synchronized BinaryTransferStore get() {
+		if (singleton == null)
+			singleton = new BinaryTransferStore(new File(System.getProperty("java.io.tmpdir"), "olctransfer"));
+		return singleton;
+	}
+
+	private BinaryTransferStore(File directory) {
+		this.directory = directory;
+		if (!directory.isDirectory())
+			if (!directory.mkdirs())
+				throw new RuntimeException(
+						"Could not create directory for binary transfers " + directory.getAbsolutePath());
+		this.spools = new HashMap<String, TransferSpool>();
+		this.spillfiles = new HashMap<File, Long>();
+		logger.info("Binary transfer store in directory " + directory.getAbsolutePath());
+	}
+
+	/**
+	 * checks the transfer id only has expected characters, as it is used in file
+	 * names
+	 *
+	 * @param transferid id of the transfer as received from the other party
+	 */
+	private static void checkTransferId(String transferid) {
+		if (transferid == null)
+			throw new RuntimeException("Transfer id cannot be null");
+		if ((transferid.length() == 0) || (transferid.length() > 64))
+			throw new RuntimeException("Transfer id has invalid length " + transferid.length());
+		for (int i = 0; i < transferid.length(); i++)
+			if (TRANSFER_ID_CHARACTERS.indexOf(transferid.charAt(i)) == -1)
+				throw new RuntimeException("Invalid character in transfer id '" + transferid + "' at index " + i);
+	}
+
+	/**
+	 * @param transferid id of the transfer
+	 * @return the number of bytes received and checked for this transfer (0 if the
+	 *         transfer is not known)
+	 */
+	public synchronized long getReceivedLength(String transferid) {
+		checkTransferId(transferid);
+		TransferSpool spool = spools.get(transferid);
+		if (spool == null)
+			return 0;
+		if (!spool.file.exists())
+			return 0;
+		return spool.received;
+	}
+
+	/**
+	 * opens the spool for a transfer starting at the given offset. If the offset
+	 * is 0, a new file is started. Else, the transfer is resumed, and the content
+	 * already received after the offset is discarded.
+	 *
+	 * @param transferid id of the transfer
+	 * @param offset     offset from which the content will be sent
+	 * @param length     total length of the file
+	 * @return the spool to write the chunks received to
+	 * @throws IOException if the file cannot be created
+	 */
+	synchronized TransferSpool openSpool(String transferid, long offset, long length) throws IOException {
+		checkTransferId(transferid);
+		purge();
+		TransferSpool spool = spools.get(transferid);
+		if (spool != null)
+			if (spool.open)
+				throw new RuntimeException("Transfer " + transferid + " is already being received");
+		if (offset > 0) {
+			if (spool == null)
+				throw new RuntimeException(
+						"Cannot resume transfer " + transferid + " at offset " + offset + ", transfer is not known");
+			if (spool.length != length)
+				throw new RuntimeException("Cannot resume transfer " + transferid + ", length " + length
+						+ " does not match original length " + spool.length);
+			if (offset > spool.received)
+				throw new RuntimeException("Cannot resume transfer " + transferid + " at offset " + offset
+						+ ", only " + spool.received + " bytes received");
+			// a complete file may already be used, so it is kept as is
+			if ((spool.complete) && (offset != spool.received))
+				throw new RuntimeException("Cannot resume complete transfer " + transferid + " at offset " + offset);
+		} else {
+			filecounter++;
+			spool = new TransferSpool(new File(directory, transferid + "-" + filecounter + ".part"), length);
+			spools.put(transferid, spool);
+		}
+		spool.open(offset);
+		return spool;
+	}
+
+	/**
+	 * creates a new file in the store to hold content read from another source
+	 * that is too large to be kept in memory (e.g. a binary read from the
+	 * database). The file is deleted when the current thread calls
+	 * {@link #releaseSpillFilesForThread()}, or at the latest after the retention
+	 * time.
+	 *
+	 * @return a file that does not exist yet
+	 * @since 1.16
+	 */
+	public synchronized File newSpillFile() {
+		purge();
+		filecounter++;
+		File spillfile = new File(directory, "spill-" + UUID.randomUUID().toString() + "-" + filecounter + ".bin");
+		spillfiles.put(spillfile, new Long(0));
+		ArrayList<File> filesforthread = threadspillfiles.get();
+		if (filesforthread == null) {
+			filesforthread = new ArrayList<File>();
+			threadspillfiles.set(filesforthread);
+		}
+		filesforthread.add(spillfile);
+		return spillfile;
+	}
+
+	/**
+	 * reserves space in the store before writing content to a spill file
+	 *
+	 * @param spillfile a file created by {@link #newSpillFile()}
+	 * @param length    number of bytes about to be written to the file
+	 * @throws IOException if the total size of spill files would exceed the
+	 *                     maximum
+	 * @since 1.16
+	 */
+	synchronized void reserveSpillLength(File spillfile, long length) throws IOException {
+		Long filelength = spillfiles.get(spillfile);
+		if (filelength == null)
+			throw new RuntimeException("File " + spillfile.getAbsolutePath() + " is not a spill file of the store");
+		if (spilllength + length > maxspilllength)
+			throw new IOException("Binary transfer store is full, " + spilllength + " bytes of spill files for maximum "
+					+ maxspilllength + ", cannot write " + length + " more bytes");
+		spillfiles.put(spillfile, new Long(filelength.longValue() + length));
+		spilllength += length;
+	}
+
+	/**
+	 * deletes a spill file and frees the space it uses in the store
+	 *
+	 * @param spillfile a file created by {@link #newSpillFile()}
+	 * @since 1.16
+	 */
+	synchronized void deleteSpillFile(File spillfile) {
+		Long filelength = spillfiles.remove(spillfile);
+		if (filelength != null)
+			spilllength -= filelength.longValue();
+		if (spillfile.exists())
+			if (!spillfile.delete())
+				logger.warning("Could not delete spill file " + spillfile.getAbsolutePath());
+	}
+
+	/**
+	 * deletes the spill files created by the current thread. This should be
+	 * called once the content read is not used anymore, typically after the
+	 * answer to a request has been sent.
+	 *
+	 * @since 1.16
+	 */
+	public void releaseSpillFilesForThread() {
+		ArrayList<File> filesforthread = threadspillfiles.get();
+		if (filesforthread == null)
+			return;
+		threadspillfiles.remove();
+		for (int i = 0; i < filesforthread.size(); i++)
+			deleteSpillFile(filesforthread.get(i));
+	}
+
+	/**
+	 * @return the total size in bytes of the spill files currently in the store
+	 * @since 1.16
+	 */
+	public synchronized long getSpillLength() {
+		return spilllength;
+	}
+
+	/**
+	 * @param maxspilllength the maximum total size in bytes of spill files in the
+	 *                       store (default is 4GB)
+	 * @since 1.16
+	 */
+	public synchronized void setMaxSpillLength(long maxspilllength) {
+		this.maxspilllength = maxspilllength;
+	}
+
+	/**
+	 * deletes the files and forgets the transfers older than the retention time.
+	 * Files are deleted even if they are not known, as they may be left by a
+	 * previous execution.
+	 */
+	private void purge() {
+		long now = System.currentTimeMillis();
+		if (now - lastpurge < PURGE_INTERVAL_MS)
+			return;
+		lastpurge = now;
+		Iterator<TransferSpool> spooliterator = spools.values().iterator();
+		while (spooliterator.hasNext()) {
+			TransferSpool spool = spooliterator.next();
+			if ((!spool.open) && (now - spool.lastactivity > RETENTION_MS))
+				spooliterator.remove();
+		}
+		File[] files = directory.listFiles();
+		if (files != null)
+			for (int i = 0; i < files.length; i++)
+				if (now - files[i].lastModified() > RETENTION_MS) {
+					Long spillfilelength = spillfiles.remove(files[i]);
+					if (spillfilelength != null)
+						spilllength -= spillfilelength.longValue();
+					if (!files[i].delete())
+						logger.warning("Could not delete expired transfer file " + files[i].getAbsolutePath());
+				}
+	}
+
+	/**
+	 * the file receiving the content of one transfer
+	 *
+	 */
+	static class TransferSpool {
+		private File file;
+		private long length;
+		private long received = 0;
+		private boolean complete = false;
+		private boolean open = false;
+		private long lastactivity;
+		private RandomAccessFile output;
+
+		private TransferSpool(File file, long length) {
+			this.file = file;
+			this.length = length;
+			this.lastactivity = System.currentTimeMillis();
+		}
+
+		private void open(long offset) throws IOException {
+			if (!complete) {
+				output = new RandomAccessFile(file, "rw");
+				output.setLength(offset);
+				output.seek(offset);
+				received = offset;
+			}
+			open = true;
+			lastactivity = System.currentTimeMillis();
+		}
+
+		/**
+		 * appends a chunk that has been checked
+		 *
+		 * @param chunk  buffer holding the chunk
+		 * @param length length of the chunk
+		 * @throws IOException if the chunk cannot be written to disk
+		 */
+		void append(byte[] chunk, int length) throws IOException {
+			if (received + length > this.length)
+				throw new RuntimeException(
+						"Transfer overflow, received " + (received + length) + " bytes for file of " + this.length);
+			output.write(chunk, 0, length);
+			received += length;
+			lastactivity = System.currentTimeMillis();
+		}
+
+		/**
+		 * ends the reception of the content
+		 *
+		 * @param filename name of the file
+		 * @return the file received, stored on disk
+		 * @throws IOException if the file cannot be closed
+		 */
+		SFile complete(String filename) throws IOException {
+			if (received != length)
+				throw new RuntimeException("Transfer incomplete, received " + received + " bytes for file of " + length);
+			complete = true;
+			release();
+			return new SFile(filename, file, length);
+		}
+
+		/**
+		 * releases the spool, typically after the connection was interrupted. The
+		 * transfer can then be resumed from the bytes received.
+		 *
+		 * @throws IOException if the file cannot be closed
+		 */
+		void release() throws IOException {
+			synchronized (BinaryTransferStore.get()) {
+				open = false;
+				lastactivity = System.currentTimeMillis();
+			}
+			if (output != null) {
+				RandomAccessFile outputtoclose = output;
+				output = null;
+				outputtoclose.close();
+			}
+		}
+	}
+}
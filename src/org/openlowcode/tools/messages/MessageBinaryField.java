@@ -23,8 +23,7 @@ import java.util.Base64;
  */
 public class MessageBinaryField extends MessageField<MessageFieldTypeBinary> {
 	private static Base64.Encoder base64encoder = Base64.getEncoder();
-	private byte[] payload;
-	private String filename;
+	private SFile file;
 
 	public MessageBinaryField(String fieldname) {
 		super(fieldname);
@@ -39,34 +38,40 @@ public class MessageBinaryField extends MessageField<MessageFieldTypeBinary> {
 	 */
 	public MessageBinaryField(String fieldname, SFile payloadfile) {
 		super(fieldname);
-
-		payload = payloadfile.getContent();
-		this.filename = payloadfile.getFileName();
+		this.file = payloadfile;
 	}
 
 	public MessageBinaryField(String attributename, byte[] binary, String filename) {
 		super(attributename);
-		this.payload = binary;
-		this.filename = filename;
+		this.file = new SFile(filename, binary);
 	}
 
 	@Override
 	public String serializepayload(String contextstring) {
-		if (payload == null) {
+		if (file == null) {
+			return "B0:";
+		}
+		if (file.isEmpty()) {
 			return "B0:";
 		}
-		if (payload.length == 0) {
+		if (file.getLength() == 0) {
 			return "B0:";
 		}
-		String base64payload = base64encoder.encodeToString(payload);
+		String base64payload = base64encoder.encodeToString(file.getContent());
 
-		String filenameencoded = MessageStringField.serializeStringPayload(filename, null);
+		String filenameencoded = MessageStringField.serializeStringPayload(file.getFileName(), null);
 		return "B" + base64payload.length() + ":" + filenameencoded + ":" + base64payload;
 
 	}
 
+	/**
+	 * @return the file transported. The content may be stored on disk if the file
+	 *         was received through a chunked transfer
+	 */
 	public SFile getFieldContent() {
-		return new SFile(filename, payload);
+		if (file == null)
+			return new SFile(null, null);
+		return file;
 	}
 
 }
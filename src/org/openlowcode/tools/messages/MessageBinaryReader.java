@@ -0,0 +1,369 @@
+/********************************************************************************
+ * Copyright (c) 2020 [Open Lowcode SAS](https://openlowcode.com/)
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0 .
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ********************************************************************************/
+package org.openlowcode.tools.messages;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.zip.CRC32;
+
+/**
+ * A reader for messages encoded by the {@link MessageBinaryWriter}. All
+ * consistency controls are performed by the MessageReader abstract class, in
+ * the same way as for text messages.
+ *
+ * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
+ *         SAS</a>
+ * @since 1.16
+ *
+ */
+public class MessageBinaryReader extends MessageReader {
+	private static final String MESSAGE_START_TEXT = "{\n";
+	private static final String MESSAGE_END_TEXT = "\n}\n";
+	private InputStream in;
+	private ArrayList<String> names;
+	private Calendar calendar;
+	private long bytecounter = 0;
+	private boolean recording = false;
+	private ArrayList<MessageElement> recordedelements;
+	private byte[] chunk;
+
+	/**
+	 * creates a binary message reader that will throw an OLcRemoteException when
+	 * receiving an error
+	 *
+	 * @param in the input stream to read from. It will be buffered by the reader.
+	 */
+	public MessageBinaryReader(InputStream in) {
+		this(in, true);
+	}
+
+	/**
+	 * creates a binary message reader
+	 *
+	 * @param in         the input stream to read from. It will be buffered by the
+	 *                   reader.
+	 * @param throwerror true if the reader will throw an error when encountering a
+	 *                   MessageError element
+	 */
+	public MessageBinaryReader(InputStream in, boolean throwerror) {
+		super(throwerror);
+		this.in = new BufferedInputStream(in);
+		this.names = new ArrayList<String>();
+		this.calendar = Calendar.getInstance();
+	}
+
+	@Override
+	protected MessageElement parseNextElement() throws OLcRemoteException, IOException {
+		MessageElement element = parseElement();
+		if (recording)
+			recordedelements.add(element);
+		return element;
+	}
+
+	private MessageElement parseElement() throws IOException {
+		int tag = readByte();
+		switch (tag) {
+		case MessageBinaryWriter.TAG_MESSAGE_START:
+			names.clear();
+			bytecounter = 1;
+			return new MessageStart();
+		case MessageBinaryWriter.TAG_MESSAGE_END:
+			return new MessageEnd();
+		case MessageBinaryWriter.TAG_STRUCTURE_START:
+			return new MessageStartStructure(readName());
+		case MessageBinaryWriter.TAG_STRUCTURE_END:
+			return new MessageEndStructure();
+		case MessageBinaryWriter.TAG_STRING: {
+			String name = readName();
+			return new MessageStringField(name, readString());
+		}
+		case MessageBinaryWriter.TAG_INTEGER: {
+			String name = readName();
+			return MessageIntegerField.getCSPMessageIntegerField(name, unzigzag(readVarLong()));
+		}
+		case MessageBinaryWriter.TAG_BOOLEAN_TRUE:
+			return new MessageBooleanField(readName(), true);
+		case MessageBinaryWriter.TAG_BOOLEAN_FALSE:
+			return new MessageBooleanField(readName(), false);
+		case MessageBinaryWriter.TAG_DECIMAL: {
+			String name = readName();
+			return new MessageDecimalField(name, readDecimal());
+		}
+		case MessageBinaryWriter.TAG_DATE: {
+			String name = readName();
+			return new MessageDateField(name, readDate());
+		}
+		case MessageBinaryWriter.TAG_BINARY: {
+			String name = readName();
+			long size = readVarLong();
+			if (size == 0)
+				return new MessageBinaryField(name);
+			String filename = readString();
+			byte[] payload = new byte[(int) (size - 1)];
+			readFully(payload);
+			return new MessageBinaryField(name, payload, filename);
+		}
+		case MessageBinaryWriter.TAG_BINARY_CHUNKED: {
+			String name = readName();
+			return new MessageBinaryField(name, readChunkedTransfer());
+		}
+		case MessageBinaryWriter.TAG_ERROR: {
+			int errorcode = unzigzag(readVarLong());
+			return new MessageError(errorcode, readString());
+		}
+		case MessageBinaryWriter.TAG_ARRAY_START: {
+			String arrayname = readName();
+			int fieldnumber = (int) readVarLong();
+			ArrayList<MessageFieldSpec> fieldspecs = new ArrayList<MessageFieldSpec>();
+			for (int i = 0; i < fieldnumber; i++) {
+				String fieldname = readName();
+				fieldspecs.add(new MessageFieldSpec(fieldname, readName()));
+			}
+			return new MessageArrayStart(arrayname, fieldspecs);
+		}
+		case MessageBinaryWriter.TAG_ARRAY_LINE: {
+			int objectnumber = (int) readVarLong();
+			Object[] payload = new Object[objectnumber];
+			for (int i = 0; i < objectnumber; i++)
+				payload[i] = readArrayValue(i);
+			return new MessageArrayLine(payload);
+		}
+		case MessageBinaryWriter.TAG_ARRAY_END:
+			return new MessageArrayEnd();
+		default:
+			throw new RuntimeException(String.format("invalid binary element tag %d at path %s at %s", tag,
+					this.getCurrentElementPath(), this.returnBufferTrace()));
+		}
+	}
+
+	/**
+	 * reads a chunked transfer written by
+	 * {@link MessageBinaryWriter}. Chunks are checked and written to disk as they
+	 * are received. If the connection is interrupted, the chunks received stay in
+	 * the {@link BinaryTransferStore} so that the transfer can be resumed.
+	 *
+	 * @return the file received, stored on disk
+	 * @throws IOException if any communication issue is encountered
+	 */
+	private SFile readChunkedTransfer() throws IOException {
+		String filename = readString();
+		String transferid = readString();
+		long length = readVarLong();
+		long offset = readVarLong();
+		BinaryTransferStore.TransferSpool spool = BinaryTransferStore.get().openSpool(transferid, offset, length);
+		try {
+			if (chunk == null)
+				chunk = new byte[MessageBinaryWriter.CHUNK_SIZE];
+			CRC32 checksum = new CRC32();
+			while (true) {
+				long chunklength = readVarLong();
+				if (chunklength == 0)
+					break;
+				if (chunklength > MessageBinaryWriter.CHUNK_SIZE)
+					throw new RuntimeException(String.format("invalid chunk length %d for transfer %s at %s",
+							chunklength, transferid, this.returnBufferTrace()));
+				int expectedchecksum = readInt();
+				readFully(chunk, (int) chunklength);
+				checksum.reset();
+				checksum.update(chunk, 0, (int) chunklength);
+				if ((int) checksum.getValue() != expectedchecksum)
+					throw new RuntimeException(String.format("invalid checksum for chunk of transfer %s at path %s",
+							transferid, this.getCurrentElementPath()));
+				spool.append(chunk, (int) chunklength);
+			}
+			return spool.complete(filename);
+		} finally {
+			spool.release();
+		}
+	}
+
+	private int readInt() throws IOException {
+		return (readByte() << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+	}
+
+	private Object readArrayValue(int column) throws IOException {
+		int type = readByte();
+		switch (type) {
+		case MessageBinaryWriter.VALUE_NULL:
+			return null;
+		case MessageBinaryWriter.VALUE_STRING:
+			return readString();
+		case MessageBinaryWriter.VALUE_INTEGER:
+			return new Integer(unzigzag(readVarLong()));
+		case MessageBinaryWriter.VALUE_DECIMAL:
+			return readDecimal();
+		case MessageBinaryWriter.VALUE_BOOLEAN_TRUE:
+			return Boolean.TRUE;
+		case MessageBinaryWriter.VALUE_BOOLEAN_FALSE:
+			return Boolean.FALSE;
+		case MessageBinaryWriter.VALUE_DATE:
+			return readDate();
+		default:
+			throw new RuntimeException(String.format("invalid value type %d for payload column %d at path %s at %s",
+					type, column, this.getCurrentElementPath(), this.returnBufferTrace()));
+		}
+	}
+
+	private String readName() throws IOException {
+		long index = readVarLong();
+		if (index > 0) {
+			if (index > names.size())
+				throw new RuntimeException(String.format("invalid name index %d, only %d names declared at %s", index,
+						names.size(), this.returnBufferTrace()));
+			return names.get((int) (index - 1));
+		}
+		String name = readString();
+		names.add(name);
+		return name;
+	}
+
+	private String readString() throws IOException {
+		long length = readVarLong();
+		if (length == 0)
+			return null;
+		byte[] bytes = new byte[(int) (length - 1)];
+		readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private BigDecimal readDecimal() throws IOException {
+		long length = readVarLong();
+		if (length == 0)
+			return null;
+		byte[] unscaled = new byte[(int) (length - 1)];
+		readFully(unscaled);
+		int scale = unzigzag(readVarLong());
+		return new BigDecimal(new BigInteger(unscaled), scale);
+	}
+
+	private Date readDate() throws IOException {
+		long value = readVarLong();
+		if (value == 0)
+			return null;
+		value--;
+		int second = (int) (value % 100);
+		value = value / 100;
+		int minute = (int) (value % 100);
+		value = value / 100;
+		int hour = (int) (value % 100);
+		value = value / 100;
+		int day = (int) (value % 100);
+		value = value / 100;
+		int month = (int) (value % 100);
+		int year = (int) (value / 100);
+		calendar.clear();
+		calendar.set(year, month - 1, day, hour, minute, second);
+		return calendar.getTime();
+	}
+
+	private static int unzigzag(long value) {
+		return (int) ((value >>> 1) ^ -(value & 1));
+	}
+
+	private long readVarLong() throws IOException {
+		long value = 0;
+		int shift = 0;
+		while (shift < 64) {
+			int thisbyte = readByte();
+			value |= (long) (thisbyte & 0x7F) << shift;
+			if ((thisbyte & 0x80) == 0)
+				return value;
+			shift += 7;
+		}
+		throw new RuntimeException("variable length integer is too long at " + this.returnBufferTrace());
+	}
+
+	private int readByte() throws IOException {
+		int thisbyte = in.read();
+		if (thisbyte == -1)
+			throw new EOFException("end of stream reached while parsing binary message at path "
+					+ this.getCurrentElementPath());
+		bytecounter++;
+		return thisbyte;
+	}
+
+	private void readFully(byte[] buffer) throws IOException {
+		readFully(buffer, buffer.length);
+	}
+
+	private void readFully(byte[] buffer, int length) throws IOException {
+		int read = 0;
+		while (read < length) {
+			int thisread = in.read(buffer, read, length - read);
+			if (thisread == -1)
+				throw new EOFException("end of stream reached while reading " + length
+						+ " bytes of binary content at path " + this.getCurrentElementPath());
+			read += thisread;
+		}
+		bytecounter += length;
+	}
+
+	/**
+	 * Closes the underlying input stream
+	 *
+	 * @throws IOException if any communication issue is encountered
+	 */
+	@Override
+	public void close() throws IOException {
+		this.in.close();
+	}
+
+	/**
+	 * @return the number of bytes received since last start message
+	 */
+	@Override
+	public long charcountsinceStartMessage() {
+		return bytecounter;
+	}
+
+	@Override
+	public void startrecord() {
+		this.recording = true;
+		this.recordedelements = new ArrayList<MessageElement>();
+	}
+
+	/**
+	 * stops recording, and returns the elements received since start of recording
+	 * in the text format, exactly as they would have been recorded by the
+	 * MessageSimpleReader. This allows the recording (typically page description
+	 * kept in the client page buffer) to be independent from the codec used.
+	 */
+	@Override
+	public String endrecord() {
+		if (!this.recording)
+			return null;
+		this.recording = false;
+		try {
+			StringWriter recordedtext = new StringWriter();
+			MessageBufferedWriter textwriter = new MessageBufferedWriter(new BufferedWriter(recordedtext), false);
+			textwriter.startNewMessage();
+			for (int i = 0; i < recordedelements.size(); i++)
+				textwriter.replayMessageElement(recordedelements.get(i));
+			textwriter.endMessage();
+			String message = recordedtext.toString();
+			recordedelements = null;
+			if ((!message.startsWith(MESSAGE_START_TEXT)) || (!message.endsWith(MESSAGE_END_TEXT)))
+				throw new RuntimeException("Unexpected format of recorded message");
+			return message.substring(MESSAGE_START_TEXT.length(), message.length() - MESSAGE_END_TEXT.length());
+		} catch (IOException e) {
+			throw new RuntimeException("Error while converting recorded binary message to text " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,408 @@
+/********************************************************************************
+ * Copyright (c) 2020 [Open Lowcode SAS](https://openlowcode.com/)
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0 .
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ********************************************************************************/
+package org.openlowcode.tools.messages;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+
+/**
+ * A compact binary implementation of the OLc Message writer. It sends exactly
+ * the same sequence of message elements as the text writer, but with the
+ * following encoding:
+ * <ul>
+ * <li>each element starts with a one byte tag</li>
+ * <li>structure and field names are interned: a name is sent in full the first
+ * time it is used in a message, and then only as an index</li>
+ * <li>integers and lengths are sent as variable length integers</li>
+ * <li>strings are sent as length-prefixed UTF-8</li>
+ * <li>binary fields are sent as raw bytes, without base64 encoding</li>
+ * <li>large binary fields are sent as a chunked transfer: the file is sent in
+ * chunks of 64KB, each with a CRC32 checksum, so that neither party holds the
+ * file in memory, and an interrupted transfer can be resumed from the last
+ * chunk received (see {@link BinaryTransferStore})</li>
+ * </ul>
+ * This writer should only be used when the other party has declared it
+ * supports the binary codec (see {@link MessageCodec}).
+ *
+ * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
+ *         SAS</a>
+ * @since 1.16
+ *
+ */
+public class MessageBinaryWriter extends MessageWriter {
+	static final int TAG_MESSAGE_START = 0x01;
+	static final int TAG_MESSAGE_END = 0x02;
+	static final int TAG_STRUCTURE_START = 0x03;
+	static final int TAG_STRUCTURE_END = 0x04;
+	static final int TAG_STRING = 0x05;
+	static final int TAG_INTEGER = 0x06;
+	static final int TAG_BOOLEAN_TRUE = 0x07;
+	static final int TAG_BOOLEAN_FALSE = 0x08;
+	static final int TAG_DECIMAL = 0x09;
+	static final int TAG_DATE = 0x0A;
+	static final int TAG_BINARY = 0x0B;
+	static final int TAG_ERROR = 0x0C;
+	static final int TAG_ARRAY_START = 0x0D;
+	static final int TAG_ARRAY_LINE = 0x0E;
+	static final int TAG_ARRAY_END = 0x0F;
+	static final int TAG_BINARY_CHUNKED = 0x10;
+
+	static final int CHUNK_SIZE = 65536;
+
+	static final int VALUE_NULL = 0x00;
+	static final int VALUE_STRING = 0x01;
+	static final int VALUE_INTEGER = 0x02;
+	static final int VALUE_DECIMAL = 0x03;
+	static final int VALUE_BOOLEAN_TRUE = 0x04;
+	static final int VALUE_BOOLEAN_FALSE = 0x05;
+	static final int VALUE_DATE = 0x06;
+
+	private OutputStream out;
+	private HashMap<String, Integer> names;
+	private Calendar calendar;
+
+	/**
+	 * Creates a new binary message writer
+	 *
+	 * @param out the output stream to write to. It will be buffered by the writer.
+	 */
+	public MessageBinaryWriter(OutputStream out) {
+		super();
+		this.out = new BufferedOutputStream(out);
+		this.names = new HashMap<String, Integer>();
+		this.calendar = Calendar.getInstance();
+	}
+
+	@Override
+	public void checkConnection() throws IOException {
+
+	}
+
+	@Override
+	public void sendMessageElement(MessageElement messageelement) throws IOException {
+		if (messageelement instanceof MessageStart) {
+			names.clear();
+			out.write(TAG_MESSAGE_START);
+			return;
+		}
+		if (messageelement instanceof MessageEnd) {
+			out.write(TAG_MESSAGE_END);
+			out.flush();
+			return;
+		}
+		if (messageelement instanceof MessageStartStructure) {
+			out.write(TAG_STRUCTURE_START);
+			writeName(((MessageStartStructure) messageelement).getStructurename());
+			return;
+		}
+		if (messageelement instanceof MessageEndStructure) {
+			out.write(TAG_STRUCTURE_END);
+			return;
+		}
+		if (messageelement instanceof MessageStringField) {
+			MessageStringField stringfield = (MessageStringField) messageelement;
+			out.write(TAG_STRING);
+			writeName(stringfield.getFieldName());
+			writeString(stringfield.getFieldcontent());
+			return;
+		}
+		if (messageelement instanceof MessageIntegerField) {
+			MessageIntegerField integerfield = (MessageIntegerField) messageelement;
+			out.write(TAG_INTEGER);
+			writeName(integerfield.getFieldName());
+			writeVarLong(zigzag(integerfield.getFieldContent()));
+			return;
+		}
+		if (messageelement instanceof MessageBooleanField) {
+			MessageBooleanField booleanfield = (MessageBooleanField) messageelement;
+			out.write(booleanfield.getFieldContent() ? TAG_BOOLEAN_TRUE : TAG_BOOLEAN_FALSE);
+			writeName(booleanfield.getFieldName());
+			return;
+		}
+		if (messageelement instanceof MessageDecimalField) {
+			MessageDecimalField decimalfield = (MessageDecimalField) messageelement;
+			out.write(TAG_DECIMAL);
+			writeName(decimalfield.getFieldName());
+			writeDecimal(decimalfield.getFieldcontent());
+			return;
+		}
+		if (messageelement instanceof MessageDateField) {
+			MessageDateField datefield = (MessageDateField) messageelement;
+			out.write(TAG_DATE);
+			writeName(datefield.getFieldName());
+			writeDate(datefield.getFieldcontent());
+			return;
+		}
+		if (messageelement instanceof MessageBinaryField) {
+			MessageBinaryField binaryfield = (MessageBinaryField) messageelement;
+			SFile content = binaryfield.getFieldContent();
+			if ((content.isOnDisk()) || (content.getLength() > CHUNK_SIZE)) {
+				out.write(TAG_BINARY_CHUNKED);
+				writeName(binaryfield.getFieldName());
+				writeChunkedTransfer(content);
+				return;
+			}
+			out.write(TAG_BINARY);
+			writeName(binaryfield.getFieldName());
+			if (content.isEmpty() || content.getLength() == 0) {
+				writeVarLong(0);
+			} else {
+				writeVarLong(content.getContent().length + 1);
+				writeString(content.getFileName());
+				out.write(content.getContent());
+			}
+			return;
+		}
+		if (messageelement instanceof MessageError) {
+			MessageError error = (MessageError) messageelement;
+			out.write(TAG_ERROR);
+			writeVarLong(zigzag(error.getErrorcode()));
+			writeString(error.getErrormessage());
+			out.flush();
+			return;
+		}
+		if (messageelement instanceof MessageArrayStart) {
+			MessageArrayStart arraystart = (MessageArrayStart) messageelement;
+			out.write(TAG_ARRAY_START);
+			writeName(arraystart.getArrayName());
+			writeVarLong(arraystart.getFieldSpecNr());
+			for (int i = 0; i < arraystart.getFieldSpecNr(); i++) {
+				MessageFieldSpec spec = arraystart.getFieldSpecAt(i);
+				writeName(spec.getName());
+				writeName(spec.getType().getMessageFieldAcronym());
+			}
+			return;
+		}
+		if (messageelement instanceof MessageArrayLine) {
+			MessageArrayLine arrayline = (MessageArrayLine) messageelement;
+			out.write(TAG_ARRAY_LINE);
+			writeVarLong(arrayline.getObjectNumber());
+			for (int i = 0; i < arrayline.getObjectNumber(); i++)
+				writeArrayValue(arrayline.getPayloadAt(i));
+			return;
+		}
+		if (messageelement instanceof MessageArrayEnd) {
+			out.write(TAG_ARRAY_END);
+			return;
+		}
+		throw new RuntimeException("Message element " + messageelement.getClass().getName()
+				+ " not supported by binary writer at path " + this.currentpath());
+	}
+
+	private void writeArrayValue(Object object) throws IOException {
+		if (object == null) {
+			out.write(VALUE_NULL);
+			return;
+		}
+		if (object instanceof String) {
+			out.write(VALUE_STRING);
+			writeString((String) object);
+			return;
+		}
+		if (object instanceof Integer) {
+			out.write(VALUE_INTEGER);
+			writeVarLong(zigzag(((Integer) object).intValue()));
+			return;
+		}
+		if (object instanceof BigDecimal) {
+			out.write(VALUE_DECIMAL);
+			writeDecimal((BigDecimal) object);
+			return;
+		}
+		if (object instanceof Boolean) {
+			out.write(((Boolean) object).booleanValue() ? VALUE_BOOLEAN_TRUE : VALUE_BOOLEAN_FALSE);
+			return;
+		}
+		if (object instanceof Date) {
+			out.write(VALUE_DATE);
+			writeDate((Date) object);
+			return;
+		}
+		throw new RuntimeException("Object " + object.getClass() + " not supported in binary compact array");
+	}
+
+	/**
+	 * writes a file as a chunked transfer: file name, transfer id, total length and
+	 * offset of the first chunk, and then the chunks, each as a length, a CRC32
+	 * checksum and the content. A chunk of length 0 ends the transfer. If the
+	 * transfer was interrupted previously, it is resumed from the offset provided
+	 * by {@link #setTransferResumeOffsets(java.util.Map)}
+	 *
+	 * @param content the file to send
+	 * @throws IOException if any communication issue is encountered
+	 */
+	private void writeChunkedTransfer(SFile content) throws IOException {
+		String transferid = content.getTransferId();
+		long offset = getTransferResumeOffset(transferid);
+		if ((offset < 0) || (offset > content.getLength()))
+			offset = 0;
+		registerChunkedTransfer(transferid);
+		writeString(content.getFileName());
+		writeString(transferid);
+		writeVarLong(content.getLength());
+		writeVarLong(offset);
+		byte[] chunk = new byte[CHUNK_SIZE];
+		CRC32 checksum = new CRC32();
+		InputStream contentstream = content.getStream();
+		try {
+			long skipped = 0;
+			while (skipped < offset) {
+				long thisskip = contentstream.skip(offset - skipped);
+				if (thisskip <= 0)
+					throw new IOException("Could not skip to offset " + offset + " of file " + content.getFileName());
+				skipped += thisskip;
+			}
+			while (true) {
+				int chunklength = 0;
+				while (chunklength < CHUNK_SIZE) {
+					int read = contentstream.read(chunk, chunklength, CHUNK_SIZE - chunklength);
+					if (read == -1)
+						break;
+					chunklength += read;
+				}
+				if (chunklength == 0)
+					break;
+				checksum.reset();
+				checksum.update(chunk, 0, chunklength);
+				writeVarLong(chunklength);
+				writeInt((int) checksum.getValue());
+				out.write(chunk, 0, chunklength);
+			}
+		} finally {
+			contentstream.close();
+		}
+		writeVarLong(0);
+	}
+
+	private void writeInt(int value) throws IOException {
+		out.write((value >>> 24) & 0xFF);
+		out.write((value >>> 16) & 0xFF);
+		out.write((value >>> 8) & 0xFF);
+		out.write(value & 0xFF);
+	}
+
+	/**
+	 * writes a name. The first time a name is used in a message, it is written in
+	 * full, and then only its index is written
+	 *
+	 * @param name name of structure or field
+	 * @throws IOException if any communication issue is encountered
+	 */
+	private void writeName(String name) throws IOException {
+		Integer index = names.get(name);
+		if (index != null) {
+			writeVarLong(index.intValue() + 1);
+			return;
+		}
+		names.put(name, new Integer(names.size()));
+		writeVarLong(0);
+		writeString(name);
+	}
+
+	/**
+	 * writes a string as length (plus one) followed by UTF-8 bytes. A null string
+	 * is written as length 0
+	 *
+	 * @param string the string to write (may be null)
+	 * @throws IOException if any communication issue is encountered
+	 */
+	private void writeString(String string) throws IOException {
+		if (string == null) {
+			writeVarLong(0);
+			return;
+		}
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		writeVarLong(bytes.length + 1);
+		out.write(bytes);
+	}
+
+	/**
+	 * writes a decimal as scale and unscaled value. A null decimal is written as a
+	 * single zero byte
+	 *
+	 * @param decimal the decimal (may be null)
+	 * @throws IOException if any communication issue is encountered
+	 */
+	private void writeDecimal(BigDecimal decimal) throws IOException {
+		if (decimal == null) {
+			writeVarLong(0);
+			return;
+		}
+		byte[] unscaled = decimal.unscaledValue().toByteArray();
+		writeVarLong(unscaled.length + 1);
+		out.write(unscaled);
+		writeVarLong(zigzag(decimal.scale()));
+	}
+
+	/**
+	 * writes a date as a number yyyyMMddHHmmss in the local time zone (plus one),
+	 * with the same semantics as the text format (precision of the second, local
+	 * wall-time). A null date is written as 0
+	 *
+	 * @param date the date (may be null)
+	 * @throws IOException if any communication issue is encountered
+	 */
+	private void writeDate(Date date) throws IOException {
+		if (date == null) {
+			writeVarLong(0);
+			return;
+		}
+		calendar.setTime(date);
+		long value = calendar.get(Calendar.YEAR);
+		value = value * 100 + calendar.get(Calendar.MONTH) + 1;
+		value = value * 100 + calendar.get(Calendar.DAY_OF_MONTH);
+		value = value * 100 + calendar.get(Calendar.HOUR_OF_DAY);
+		value = value * 100 + calendar.get(Calendar.MINUTE);
+		value = value * 100 + calendar.get(Calendar.SECOND);
+		writeVarLong(value + 1);
+	}
+
+	private static long zigzag(int value) {
+		return ((long) value << 1) ^ ((long) value >> 63);
+	}
+
+	/**
+	 * writes a positive long with 7 bits per byte, the highest bit signalling
+	 * there is a following byte
+	 *
+	 * @param value a positive long
+	 * @throws IOException if any communication issue is encountered
+	 */
+	private void writeVarLong(long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	@Override
+	public void flushMessage() throws IOException {
+		out.flush();
+	}
+
+	/**
+	 * closes the underlying stream
+	 *
+	 * @throws IOException if any communication issue is encountered
+	 */
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+}
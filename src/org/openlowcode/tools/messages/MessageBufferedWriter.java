@@ -20,6 +20,11 @@ import java.util.logging.Logger;
  *
  */
 public class MessageBufferedWriter extends MessageWriter {
+	/**
+	 * in streaming mode, size of the buffer in characters after which the message
+	 * content is sent to the underlying writer
+	 */
+	public static final int STREAMING_CHUNK_SIZE = 8192;
 	private BufferedWriter writer;
 	private StringBuffer messagebuffer;
 	private static Logger logger = Logger.getLogger(MessageBufferedWriter.class.getName());
@@ -30,6 +35,7 @@ public class MessageBufferedWriter extends MessageWriter {
 	private String closestructurebuffer;
 	private int closestructurestacklength;
 	private boolean messageaudit;
+	private boolean streaming;
 
 	public boolean getMessageAudit() {
 		return this.messageaudit;
@@ -62,7 +68,7 @@ public class MessageBufferedWriter extends MessageWriter {
 				// position to close stack is there is something
 				if (closestructurebuffer != null) {
 					// writer.write(closestructurebuffer);
-					messagebuffer.append(closestructurebuffer);
+					appendToMessage(closestructurebuffer);
 					closestructurestacklength = 0;
 					closestructurebuffer = null;
 				}
@@ -78,7 +84,7 @@ public class MessageBufferedWriter extends MessageWriter {
 				if (element == null)
 					element = messageelement.serialize(this.getCurrentPadding(), this.isIsfirstelementinstructure());
 				// writer.write(element);
-				messagebuffer.append(element);
+				appendToMessage(element);
 			}
 			if (messageelement instanceof MessageStartStructure)
 				samelinestructureclose = true;
@@ -91,7 +97,7 @@ public class MessageBufferedWriter extends MessageWriter {
 					logger.info(message);
 					logger.info("--------------------------- FULL MESSAGE AUDIT END -------------------");
 				}
-				messagebuffer = new StringBuffer();
+				resetMessageBuffer();
 			}
 			if (messageelement instanceof MessageError) {
 				String message = messagebuffer.toString();
@@ -102,12 +108,66 @@ public class MessageBufferedWriter extends MessageWriter {
 					logger.info(message);
 					logger.info("--------------------------- FULL MESSAGE AUDIT END #ERROR# -------------------");
 				}
-				messagebuffer = new StringBuffer();
+				resetMessageBuffer();
 			}
 		
 
 	}
 
+	/**
+	 * adds a serialized element to the message. In streaming mode, the content is
+	 * sent to the underlying writer as soon as the buffer reaches the chunk size,
+	 * and big elements are sent directly without being copied in the buffer
+	 * 
+	 * @param element serialized element
+	 * @throws IOException if any communication issue is encountered
+	 */
+	private void appendToMessage(String element) throws IOException {
+		if (!streaming) {
+			messagebuffer.append(element);
+			return;
+		}
+		if (element.length() >= STREAMING_CHUNK_SIZE) {
+			sendMessageBuffer();
+			writer.write(element);
+			if (messageaudit)
+				logger.info(element);
+			return;
+		}
+		messagebuffer.append(element);
+		if (messagebuffer.length() >= STREAMING_CHUNK_SIZE)
+			sendMessageBuffer();
+	}
+
+	/**
+	 * sends the current content of the buffer to the underlying writer (streaming
+	 * mode only)
+	 * 
+	 * @throws IOException if any communication issue is encountered
+	 */
+	private void sendMessageBuffer() throws IOException {
+		if (messagebuffer.length() == 0)
+			return;
+		String chunk = messagebuffer.toString();
+		writer.write(chunk);
+		if (messageaudit)
+			logger.info(chunk);
+		messagebuffer.setLength(0);
+	}
+
+	/**
+	 * prepares the buffer for next message. In streaming mode, the buffer is
+	 * reused, else, a new buffer is created so that memory used by a big message is
+	 * released
+	 */
+	private void resetMessageBuffer() {
+		if (streaming) {
+			messagebuffer.setLength(0);
+		} else {
+			messagebuffer = new StringBuffer();
+		}
+	}
+
 	/**
 	 * Creates a new MessageBufferedWriter
 	 * 
@@ -117,11 +177,30 @@ public class MessageBufferedWriter extends MessageWriter {
 	 *                     and should not be used in most production environments
 	 */
 	public MessageBufferedWriter(BufferedWriter writer, boolean messageaudit) {
+		this(writer, messageaudit, false);
+	}
+
+	/**
+	 * Creates a new MessageBufferedWriter
+	 * 
+	 * @param writer       the buffered writer ot use
+	 * @param messageaudit true if messages should be put in logs after being sent.
+	 *                     This has significant impact on performance and log size,
+	 *                     and should not be used in most production environments.
+	 *                     In streaming mode, the message is logged by chunks
+	 * @param streaming    if true, the message is sent to the underlying writer
+	 *                     by chunks of {@link #STREAMING_CHUNK_SIZE} characters
+	 *                     while it is being written. If false, the full message is
+	 *                     kept in memory and sent when complete
+	 * @since 1.16
+	 */
+	public MessageBufferedWriter(BufferedWriter writer, boolean messageaudit, boolean streaming) {
 		super();
 		this.writer = writer;
 
 		this.messageaudit = messageaudit;
-		messagebuffer = new StringBuffer();
+		this.streaming = streaming;
+		messagebuffer = new StringBuffer(streaming ? STREAMING_CHUNK_SIZE : 16);
 		this.samelinestructureclose = true;
 	}
 
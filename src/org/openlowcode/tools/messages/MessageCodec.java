@@ -0,0 +1,240 @@
+/********************************************************************************
+ * Copyright (c) 2020 [Open Lowcode SAS](https://openlowcode.com/)
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0 .
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ********************************************************************************/
+package org.openlowcode.tools.messages;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.StringTokenizer;
+
+/**
+ * The codec used to encode the messages exchanged inside the encrypted
+ * envelope between client and server. The codec is agreed during the security
+ * handshake in a way that is transparent for parties that do not know about
+ * codecs:
+ * <ul>
+ * <li>the server adds the list of codecs it supports to the file name of the
+ * RSA public key it sends</li>
+ * <li>the client chooses the first codec it supports in this list, and adds
+ * its choice to the file name of the AES key it sends back</li>
+ * </ul>
+ * An old client ignores the file name of the RSA key and does not declare a
+ * codec, an old server does not offer codecs. In both cases, the text codec is
+ * used.
+ *
+ * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
+ *         SAS</a>
+ * @since 1.16
+ *
+ */
+public class MessageCodec {
+	/**
+	 * the original text format (CML)
+	 */
+	public static final MessageCodec TEXT = new MessageCodec("TEXT", false);
+	/**
+	 * the compact binary format
+	 */
+	public static final MessageCodec BINARY = new MessageCodec("BINARY", true);
+
+	private static final MessageCodec[] SUPPORTEDCODECS = new MessageCodec[] { BINARY, TEXT };
+	private static final String OPTION_SEPARATOR = ";";
+	private static final String OPTION_VALUE = "=";
+	private static final String CODECS_KEY = "CODECS";
+	private static final String CODEC_KEY = "CODEC";
+
+	private String name;
+	private boolean binary;
+
+	private MessageCodec(String name, boolean binary) {
+		this.name = name;
+		this.binary = binary;
+	}
+
+	/**
+	 * @return the name of the codec
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return true if the codec is binary
+	 */
+	public boolean isBinary() {
+		return binary;
+	}
+
+	/**
+	 * @param name name of the codec
+	 * @return the codec for the name, or null if the codec is not supported
+	 */
+	public static MessageCodec getCodec(String name) {
+		for (int i = 0; i < SUPPORTEDCODECS.length; i++)
+			if (SUPPORTEDCODECS[i].name.equals(name))
+				return SUPPORTEDCODECS[i];
+		return null;
+	}
+
+	/**
+	 * creates a writer for this codec. The writer is streaming: the message is
+	 * sent to the output stream while it is being written, and is never kept fully
+	 * in memory by the writer
+	 *
+	 * @param out          output stream to write the message to
+	 * @param messageaudit true to log messages sent (only for text codec)
+	 * @return a message writer
+	 */
+	public MessageWriter createWriter(OutputStream out, boolean messageaudit) {
+		if (binary)
+			return new MessageBinaryWriter(out);
+		return new MessageBufferedWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)),
+				messageaudit, true);
+	}
+
+	/**
+	 * creates a reader for this codec on a received payload
+	 *
+	 * @param payload a message encoded with this codec
+	 * @return a message reader
+	 */
+	public MessageReader createReader(byte[] payload) {
+		if (binary)
+			return new MessageBinaryReader(new ByteArrayInputStream(payload));
+		return new MessageSimpleReader(
+				new InputStreamReader(new ByteArrayInputStream(payload), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * creates a reader for this codec on a stream. The stream is read as the
+	 * message is parsed.
+	 *
+	 * @param in stream holding a message encoded with this codec
+	 * @return a message reader
+	 */
+	public MessageReader createReader(InputStream in) {
+		if (binary)
+			return new MessageBinaryReader(in);
+		return new MessageSimpleReader(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * adds an option to a label (typically a file name sent during handshake).
+	 * Options are added as ';KEY=VALUE'
+	 *
+	 * @param label original label
+	 * @param key   key of the option
+	 * @param value value of the option
+	 * @return the label with the option
+	 */
+	public static String addHandshakeOption(String label, String key, String value) {
+		return label + OPTION_SEPARATOR + key + OPTION_VALUE + value;
+	}
+
+	/**
+	 * reads an option in a label received from the other party
+	 *
+	 * @param label label as received from the other party (may be null)
+	 * @param key   key of the option
+	 * @return the value of the option, or null if the option is not present
+	 */
+	public static String getHandshakeOption(String label, String key) {
+		if (label == null)
+			return null;
+		String marker = OPTION_SEPARATOR + key + OPTION_VALUE;
+		int markerindex = label.indexOf(marker);
+		if (markerindex == -1)
+			return null;
+		int valuestart = markerindex + marker.length();
+		int valueend = label.indexOf(OPTION_SEPARATOR, valuestart);
+		if (valueend == -1)
+			valueend = label.length();
+		return label.substring(valuestart, valueend);
+	}
+
+	/**
+	 * adds to a label (typically a file name sent during handshake) the list of
+	 * codecs supported
+	 *
+	 * @param label       original label
+	 * @param allowbinary true if binary codec should be offered
+	 * @return the label with the codecs offered
+	 */
+	public static String offerCodecs(String label, boolean allowbinary) {
+		StringBuffer offer = new StringBuffer();
+		for (int i = 0; i < SUPPORTEDCODECS.length; i++) {
+			if ((!allowbinary) && (SUPPORTEDCODECS[i].binary))
+				continue;
+			if (offer.length() > 0)
+				offer.append(',');
+			offer.append(SUPPORTEDCODECS[i].name);
+		}
+		return addHandshakeOption(label, CODECS_KEY, offer.toString());
+	}
+
+	/**
+	 * chooses a codec in the offer made by the other party. Codecs are chosen in
+	 * the order of the offer
+	 *
+	 * @param label label as received from the other party (may be null)
+	 * @return the first supported codec in the offer, or text if there is no offer
+	 */
+	public static MessageCodec chooseCodec(String label) {
+		String offer = getHandshakeOption(label, CODECS_KEY);
+		if (offer == null)
+			return TEXT;
+		StringTokenizer offertokens = new StringTokenizer(offer, ",");
+		while (offertokens.hasMoreTokens()) {
+			MessageCodec codec = getCodec(offertokens.nextToken().trim());
+			if (codec != null)
+				return codec;
+		}
+		return TEXT;
+	}
+
+	/**
+	 * adds to a label the codec chosen. Nothing is added for the text codec, so
+	 * that the label stays exactly the same as for a party not supporting codecs
+	 *
+	 * @param label original label
+	 * @return the label with the codec declared
+	 */
+	public String declare(String label) {
+		if (this == TEXT)
+			return label;
+		return addHandshakeOption(label, CODEC_KEY, name);
+	}
+
+	/**
+	 * reads the codec declared by the other party
+	 *
+	 * @param label label as received from the other party (may be null)
+	 * @return the codec declared, or text if no codec declared
+	 */
+	public static MessageCodec getDeclaredCodec(String label) {
+		String codecname = getHandshakeOption(label, CODEC_KEY);
+		if (codecname == null)
+			return TEXT;
+		MessageCodec codec = getCodec(codecname);
+		if (codec == null)
+			throw new RuntimeException("Codec declared by other party is not supported: " + codecname);
+		return codec;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
@@ -494,6 +494,17 @@ public abstract class MessageReader {
 	 */
 	public abstract long charcountsinceStartMessage();
 
+	/**
+	 * closes the underlying source of the reader. Default implementation does
+	 * nothing
+	 * 
+	 * @throws IOException if any communication issue is encountered
+	 * @since 1.16
+	 */
+	public void close() throws IOException {
+
+	}
+
 	public BigDecimal returnNextDecimalField(String name) throws OLcRemoteException, IOException {
 		MessageElement nextelement = getNextElement();
 		if (nextelement instanceof MessageDecimalField) {
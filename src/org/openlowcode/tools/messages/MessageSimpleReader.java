@@ -12,17 +12,31 @@ package org.openlowcode.tools.messages;
 import java.io.IOException;
 import java.io.Reader;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Calendar;
 import java.util.Date;
-
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 
 /**
  * Standard Implementation of the  message
- * Reader.
+ * Reader. The scanner is designed to allocate
+ * as little as possible beyond the values of
+ * the fields:
+ * <ul>
+ * <li>characters are read by blocks in a buffer
+ * reused for the life of the reader</li>
+ * <li>character classes are checked through
+ * lookup tables</li>
+ * <li>tokens are built in a reusable character
+ * buffer</li>
+ * <li>structure and field names are taken from
+ * a table of names shared by all readers</li>
+ * </ul>
  * @author Open Lowcode SAS
  *
  */
@@ -64,12 +78,57 @@ public class MessageSimpleReader extends MessageReader {
 	private final static String firstcharDecimal = "X";
 	private final static String followingcharDecimal = "-1234567890.";
 
+	// character classes, used in the lookup table
+	private final static int CLASS_FIRSTCHAR_STRING = 0x01;
+	private final static int CLASS_FOLLOWINGCHAR_STRING = 0x02;
+	private final static int CLASS_FIRSTCHAR_NUMBER = 0x04;
+	private final static int CLASS_FOLLOWINGCHAR_NUMBER = 0x08;
+	private final static int CLASS_FIRSTCHAR_DECIMAL = 0x10;
+	private final static int CLASS_FOLLOWINGCHAR_DECIMAL = 0x20;
+	private final static byte[] characterclasses = new byte[128];
+	static {
+		addCharacterClass(firstcharStringToken, CLASS_FIRSTCHAR_STRING);
+		addCharacterClass(followingcharStringToken, CLASS_FOLLOWINGCHAR_STRING);
+		addCharacterClass(firstcharNumber, CLASS_FIRSTCHAR_NUMBER);
+		addCharacterClass(followingcharNumber, CLASS_FOLLOWINGCHAR_NUMBER);
+		addCharacterClass(firstcharDecimal, CLASS_FIRSTCHAR_DECIMAL);
+		addCharacterClass(followingcharDecimal, CLASS_FOLLOWINGCHAR_DECIMAL);
+	}
+
+	// names shared by all readers. The table is bounded, names not fitting are
+	// just not shared
+	private final static int NAMETABLE_SIZE = 4096;
+	private final static int NAMETABLE_MAXCOUNT = NAMETABLE_SIZE / 2;
+	private final static String[] nametable = new String[NAMETABLE_SIZE];
+	private static volatile int nametablecount = 0;
+
+	private final static int READ_BUFFER_SIZE = 8192;
+	private final static int DATE_TOKEN_LENGTH = 16;
+
 	private final static int boolean_true = 'T';
 	private final static int boolean_false = 'F';
 	private boolean recording = false;
 	private StringBuffer recordedstring = null;
 
 	private int currentcharacter = ' ';
+	private char[] readbuffer = new char[READ_BUFFER_SIZE];
+	private int readbufferposition = 0;
+	private int readbufferlength = 0;
+	private char[] token = new char[256];
+	private int tokenlength = 0;
+	private ArrayList<Object> arraylinepayload = new ArrayList<Object>();
+	private Calendar calendar;
+
+	private static void addCharacterClass(String characters, int characterclass) {
+		for (int i = 0; i < characters.length(); i++)
+			characterclasses[characters.charAt(i)] |= characterclass;
+	}
+
+	private static boolean isInClass(int thischar, int characterclass) {
+		if ((thischar < 0) || (thischar >= 128))
+			return false;
+		return ((characterclasses[thischar] & characterclass) != 0);
+	}
 
 	private boolean isUnsignificant(int thischar) {
 		if (thischar == ' ')
@@ -88,92 +147,225 @@ public class MessageSimpleReader extends MessageReader {
 		}
 	}
 
-	private String getNumberToken() throws IOException {
-		StringBuffer token = new StringBuffer();
-		if (firstcharNumber.indexOf(currentcharacter) == -1)
-			throw new RuntimeException(String.format("invalid first character in number %s : %c at %s",
-					token.toString(), currentcharacter, this.returnBufferTrace()));
-		char character = (char) currentcharacter;
-		token.append(character);
-		currentcharacter = readOneCharacter();
+	private void appendToToken(char character) {
+		if (tokenlength == token.length) {
+			char[] newtoken = new char[token.length * 2];
+			System.arraycopy(token, 0, newtoken, 0, tokenlength);
+			token = newtoken;
+		}
+		token[tokenlength] = character;
+		tokenlength++;
+	}
 
-		if (currentcharacter == -1)
-			throw new RuntimeException(String.format("end of file while parsing number token at path %s at %s",
-					this.getCurrentElementPath(), this.returnBufferTrace()));
+	private void appendToToken(char[] characters, int offset, int length) {
+		if (tokenlength + length > token.length) {
+			char[] newtoken = new char[Math.max(token.length * 2, tokenlength + length)];
+			System.arraycopy(token, 0, newtoken, 0, tokenlength);
+			token = newtoken;
+		}
+		System.arraycopy(characters, offset, token, tokenlength, length);
+		tokenlength += length;
+	}
 
-		while (followingcharNumber.indexOf(currentcharacter) != -1) {
-			character = (char) currentcharacter;
-			token.append(character);
-			currentcharacter = readOneCharacter();
+	private String getTokenAsString() {
+		return new String(token, 0, tokenlength);
+	}
 
+	/**
+	 * reads a token made of a first character of one class, and following
+	 * characters of another class, in the token buffer
+	 *
+	 * @param firstcharclass     class of the first character
+	 * @param followingcharclass class of the following characters
+	 * @param tokentype          type of token (for error messages)
+	 * @param context            extra context for error message (may be null)
+	 * @throws IOException if communication is broken
+	 */
+	private void readToken(int firstcharclass, int followingcharclass, String tokentype, String context)
+			throws IOException {
+		tokenlength = 0;
+		if (!isInClass(currentcharacter, firstcharclass))
+			throw new RuntimeException(String.format("invalid first character in %s : %c at %s, extracontext %s",
+					tokentype, currentcharacter, this.returnBufferTrace(), context));
+		appendToToken((char) currentcharacter);
+		currentcharacter = readOneCharacter();
+		while (true) {
 			if (currentcharacter == -1)
-				throw new RuntimeException(String.format("end of file while parsing number token at path %s at %s",
-						this.getCurrentElementPath(), this.returnBufferTrace()));
+				throw new RuntimeException(
+						String.format("end of file while parsing %s token at path %s at %s, extracontext %s",
+								tokentype, this.getCurrentElementPath(), this.returnBufferTrace(), context));
+			if (!isInClass(currentcharacter, followingcharclass))
+				return;
+			appendToToken((char) currentcharacter);
+			currentcharacter = readOneCharacter();
 		}
-		return token.toString();
 	}
 
-	private String getDecimalToken() throws IOException {
-		StringBuffer token = new StringBuffer();
-		if (firstcharDecimal.indexOf(currentcharacter) == -1)
-			throw new RuntimeException(String.format("invalid first character in number %d : %c at %s",
-					token.toString(), currentcharacter, this.returnBufferTrace()));
-		char character = (char) currentcharacter;
-		token.append(character);
-		currentcharacter = readOneCharacter();
+	private void getNumberToken() throws IOException {
+		readToken(CLASS_FIRSTCHAR_NUMBER, CLASS_FOLLOWINGCHAR_NUMBER, "number", null);
+	}
 
-		if (currentcharacter == -1)
-			throw new RuntimeException(String.format("end of file while parsing number token at path %s at %s ",
-					this.getCurrentElementPath(), this.returnBufferTrace()));
+	private void getDecimalToken() throws IOException {
+		readToken(CLASS_FIRSTCHAR_DECIMAL, CLASS_FOLLOWINGCHAR_DECIMAL, "decimal", null);
+	}
 
-		while (followingcharDecimal.indexOf(currentcharacter) != -1) {
-			character = (char) currentcharacter;
-			token.append(character);
-			currentcharacter = readOneCharacter();
+	/**
+	 * reads a name (structure, field or array name). The name is taken from the
+	 * table of names if it was already read
+	 *
+	 * @param context       extra context for error message (may be null)
+	 * @param openfirstchar true if the first character can be any character
+	 *                      allowed in the name
+	 * @return the name
+	 * @throws IOException if communication is broken
+	 */
+	private String getStringToken(String context, boolean openfirstchar) throws IOException {
+		readToken((openfirstchar ? CLASS_FOLLOWINGCHAR_STRING : CLASS_FIRSTCHAR_STRING), CLASS_FOLLOWINGCHAR_STRING,
+				"string", context);
+		return internToken();
+	}
 
-			if (currentcharacter == -1)
-				throw new RuntimeException(String.format("end of file while parsing number token at path %s at %s",
-						this.getCurrentElementPath(), this.returnBufferTrace()));
+	private String getStringToken() throws IOException {
+		return getStringToken(null, false);
+	}
+
+	/**
+	 * @return the name in the token buffer, taken from the shared table of names
+	 *         if present
+	 */
+	private String internToken() {
+		int hash = 0;
+		for (int i = 0; i < tokenlength; i++)
+			hash = 31 * hash + token[i];
+		int index = (hash ^ (hash >>> 16)) & (NAMETABLE_SIZE - 1);
+		for (int probe = 0; probe < NAMETABLE_SIZE; probe++) {
+			String candidate = nametable[index];
+			if (candidate == null) {
+				String name = getTokenAsString();
+				if (nametablecount < NAMETABLE_MAXCOUNT) {
+					nametable[index] = name;
+					nametablecount++;
+				}
+				return name;
+			}
+			if (isTokenEqualTo(candidate))
+				return candidate;
+			index = (index + 1) & (NAMETABLE_SIZE - 1);
 		}
-		return token.toString();
+		return getTokenAsString();
 	}
 
-	private String getStringToken(String context, boolean openfirstchar) throws IOException {
-		StringBuffer token = new StringBuffer();
+	private boolean isTokenEqualTo(String candidate) {
+		if (candidate.length() != tokenlength)
+			return false;
+		for (int i = 0; i < tokenlength; i++)
+			if (candidate.charAt(i) != token[i])
+				return false;
+		return true;
+	}
 
-		if (!openfirstchar)
-			if (firstcharStringToken.indexOf(currentcharacter) == -1)
+	/**
+	 * parses the integer in the token buffer, with the same rules as
+	 * Integer.parseInt
+	 *
+	 * @param context context for error message
+	 * @return the integer
+	 */
+	private int parseIntegerToken(String context) {
+		boolean negative = (token[0] == '-');
+		int index = (negative ? 1 : 0);
+		if (index == tokenlength)
+			throw new RuntimeException(
+					String.format("number format for %s could not be parsed to an Integer : %s at %s", context,
+							getTokenAsString(), this.returnBufferTrace()));
+		// accumulates negatively to be able to parse Integer.MIN_VALUE
+		long limit = (negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE);
+		long result = 0;
+		while (index < tokenlength) {
+			char digit = token[index];
+			if ((digit < '0') || (digit > '9'))
 				throw new RuntimeException(
-						String.format("invalid first character in string %s : %c at %s, extracontext %s",
-								token.toString(), currentcharacter, this.returnBufferTrace(), context));
-		if (openfirstchar)
-			if (followingcharStringToken.indexOf(currentcharacter) == -1)
+						String.format("number format for %s could not be parsed to an Integer : %s at %s", context,
+								getTokenAsString(), this.returnBufferTrace()));
+			result = result * 10 - (digit - '0');
+			if (result < limit)
 				throw new RuntimeException(
-						String.format("invalid open first character in string %s : %c at %s, extracontext %s",
-								token.toString(), currentcharacter, this.returnBufferTrace(), context));
-		char character = (char) currentcharacter;
-		token.append(character);
-		currentcharacter = readOneCharacter();
+						String.format("number format for %s could not be parsed to an Integer : %s at %s", context,
+								getTokenAsString(), this.returnBufferTrace()));
+			index++;
+		}
+		return (int) (negative ? result : -result);
+	}
 
-		if (currentcharacter == -1)
-			throw new RuntimeException(
-					String.format("end of file while parsing string token at path %s at %s, extracontext %s",
-							this.getCurrentElementPath(), this.returnBufferTrace(), context));
-		while (followingcharStringToken.indexOf(currentcharacter) != -1) {
-			character = (char) currentcharacter;
-			token.append(character);
-			currentcharacter = readOneCharacter();
+	/**
+	 * parses the decimal in the token buffer (starting with the decimal marker)
+	 *
+	 * @param context context for error message
+	 * @return the decimal, or null if no value
+	 */
+	private BigDecimal parseDecimalToken(String context) {
+		if (tokenlength <= 1)
+			return null;
+		try {
+			return new BigDecimal(token, 1, tokenlength - 1);
+		} catch (NumberFormatException e) {
+			throw new RuntimeException(String.format(
+					"invalid decimal format for attribute %s for value %s, original exception : %s at %s", context,
+					getTokenAsString(), e.getMessage(), this.returnBufferTrace()));
+		}
+	}
 
-			if (currentcharacter == -1)
-				throw new RuntimeException(
-						String.format("end of file while parsing string token at path %s at %s, extracontext %s",
-								this.getCurrentElementPath(), this.returnBufferTrace(), context));
+	/**
+	 * parses the date in the token buffer. The standard format DyyyyMMddTHHmmss is
+	 * parsed directly, other formats are parsed by the date format of the
+	 * MessageDateField
+	 *
+	 * @param context context for error message
+	 * @return the date, or null if no value
+	 */
+	private Date parseDateToken(String context) {
+		if (tokenlength <= 1)
+			return null;
+		if ((tokenlength == DATE_TOKEN_LENGTH) && (token[9] == 'T')) {
+			int year = parseDigits(1, 4);
+			int month = parseDigits(5, 2);
+			int day = parseDigits(7, 2);
+			int hour = parseDigits(10, 2);
+			int minute = parseDigits(12, 2);
+			int second = parseDigits(14, 2);
+			if ((year >= 0) && (month >= 0) && (day >= 0) && (hour >= 0) && (minute >= 0) && (second >= 0)) {
+				if (calendar == null)
+					calendar = Calendar.getInstance();
+				calendar.clear();
+				calendar.set(year, month - 1, day, hour, minute, second);
+				return calendar.getTime();
+			}
+		}
+		String datetoken = getTokenAsString();
+		try {
+			synchronized (MessageDateField.sdf) {
+				return MessageDateField.sdf.parse(datetoken);
+			}
+		} catch (ParseException e) {
+			throw new RuntimeException(
+					String.format("invalid date format for attribute %s for value %s, original exception : %s at %s ",
+							context, datetoken, e.getMessage(), this.returnBufferTrace()));
 		}
-		return token.toString();
 	}
 
-	private String getStringToken() throws IOException {
-		return getStringToken(null, false);
+	/**
+	 * @return the positive number made of the digits in the token buffer, or -1 if
+	 *         a character is not a digit
+	 */
+	private int parseDigits(int offset, int length) {
+		int result = 0;
+		for (int i = offset; i < offset + length; i++) {
+			char digit = token[i];
+			if ((digit < '0') || (digit > '9'))
+				return -1;
+			result = result * 10 + (digit - '0');
+		}
+		return result;
 	}
 
 	/**
@@ -205,7 +397,7 @@ public class MessageSimpleReader extends MessageReader {
 	 * @throws IOException if communication if broken
 	 */
 	private MessageElement parseNextElement(int recursivebreaker) throws IOException {
-		
+
 			// remove insignificant stuff
 			removeBlank();
 			if (currentcharacter == -1)
@@ -218,45 +410,39 @@ public class MessageSimpleReader extends MessageReader {
 
 				currentcharacter = readOneCharacter();
 
-				String numberparsed = getNumberToken();
-				logger.info("Got number info " + numberparsed);
-				try {
-					int errorcode = new Integer(numberparsed).intValue();
-					removeBlank();
-					logger.finest("parsed number ");
-					if (currentcharacter != ERROR_SEPARATOR)
-						throw new RuntimeException(
-								"for error code " + errorcode + ", separator is not correct. expected "
-										+ ERROR_SEPARATOR + ", got " + currentcharacter);
-					currentcharacter = readOneCharacter();
-
-					logger.finest("(1) ");
-					if (currentcharacter != STRING_DELIMITER)
-						throw new RuntimeException(String.format(
-								" Expected string as second argument of error, got the following character as string delimiter "
-										+ currentcharacter + " at %s",
-										this.returnBufferTrace()));
-					currentcharacter = readOneCharacter();
+				getNumberToken();
+				logger.info("Got number info " + getTokenAsString());
+				int errorcode = parseIntegerToken("errorcode");
+				removeBlank();
+				logger.finest("parsed number ");
+				if (currentcharacter != ERROR_SEPARATOR)
+					throw new RuntimeException(
+							"for error code " + errorcode + ", separator is not correct. expected "
+									+ ERROR_SEPARATOR + ", got " + currentcharacter);
+				currentcharacter = readOneCharacter();
 
-					logger.finest("(2) ");
-					String errormessage = parseStringAttribute("ERROR:" + errorcode);
-					logger.finest("(3) " + errormessage);
+				logger.finest("(1) ");
+				if (currentcharacter != STRING_DELIMITER)
+					throw new RuntimeException(String.format(
+							" Expected string as second argument of error, got the following character as string delimiter "
+									+ currentcharacter + " at %s",
+									this.returnBufferTrace()));
+				currentcharacter = readOneCharacter();
 
-					if (currentcharacter != ERROR_MARKER) {
-						StringBuffer error = new StringBuffer("for error code" + errorcode + ", error message "
-								+ errormessage + ", got bad error end delimiter ");
-						error.append(currentcharacter);
-						throw new RuntimeException(error.toString());
-					}
-					logger.finest("Finished parsing error ");
-					currentcharacter = readOneCharacter();
+				logger.finest("(2) ");
+				String errormessage = parseStringAttribute("ERROR:" + errorcode);
+				logger.finest("(3) " + errormessage);
 
-					return new MessageError(errorcode, errormessage);
-				} catch (NumberFormatException e) {
-					throw new RuntimeException(
-							String.format("number format for errorcode could not be parsed to an Integer : %s at %s",
-									numberparsed, this.returnBufferTrace()));
+				if (currentcharacter != ERROR_MARKER) {
+					StringBuffer error = new StringBuffer("for error code" + errorcode + ", error message "
+							+ errormessage + ", got bad error end delimiter ");
+					error.append(currentcharacter);
+					throw new RuntimeException(error.toString());
 				}
+				logger.finest("Finished parsing error ");
+				currentcharacter = readOneCharacter();
+
+				return new MessageError(errorcode, errormessage);
 			}
 
 			if (currentcharacter == MESSAGE_START) {
@@ -326,7 +512,7 @@ public class MessageSimpleReader extends MessageReader {
 								currentcharacter = readOneCharacter();
 
 								removeBlank();
-								Object type = this.parseAttributeContent(arrayname + "/" + fieldname);
+								Object type = this.parseAttributeContent(arrayname + "/" + fieldname, -1);
 								removeBlank();
 								if (!(type instanceof String))
 									throw new RuntimeException("Type for field " + fieldname + " should be a string");
@@ -349,7 +535,7 @@ public class MessageSimpleReader extends MessageReader {
 					// ********************** ARRAY PAYLOAD HEADER ******************
 
 					removeBlank();
-					ArrayList<Object> onelinepayload = new ArrayList<Object>();
+					arraylinepayload.clear();
 					int counter = 0;
 					do {
 						if (counter > 0) {
@@ -357,15 +543,15 @@ public class MessageSimpleReader extends MessageReader {
 
 							removeBlank();
 						}
-						Object payload = this.parseAttributeContent("payload column " + counter);
-						onelinepayload.add(payload);
+						Object payload = this.parseAttributeContent("payload column", counter);
+						arraylinepayload.add(payload);
 						counter++;
 					} while (currentcharacter == ',');
 					if (currentcharacter != ARRAY_END)
 						throw new RuntimeException("Expecting an ')' at the end of a line of array payload definition");
 					currentcharacter = readOneCharacter();
 
-					return new MessageArrayLine(onelinepayload.toArray(new Object[0]));
+					return new MessageArrayLine(arraylinepayload.toArray(new Object[arraylinepayload.size()]));
 
 				}
 			}
@@ -399,19 +585,10 @@ public class MessageSimpleReader extends MessageReader {
 						return new MessageStringField(attributename, attributecontent);
 					}
 					// treatment of integer or floats
-					if (firstcharNumber.indexOf(currentcharacter) != -1) {
-						String numberparsed = getNumberToken();
-
-						// tries to parse it to integer
-						try {
-							int value = new Integer(numberparsed).intValue();
-
-							return MessageIntegerField.getCSPMessageIntegerField(attributename, value);
-						} catch (NumberFormatException e) {
-							throw new RuntimeException(String.format(
-									"number format for attribute %s could not be parsed to an Integer : %s at %s",
-									attributename, numberparsed, this.returnBufferTrace()));
-						}
+					if (isInClass(currentcharacter, CLASS_FIRSTCHAR_NUMBER)) {
+						getNumberToken();
+						int value = parseIntegerToken(attributename);
+						return MessageIntegerField.getCSPMessageIntegerField(attributename, value);
 					}
 					// treatment of booleans
 
@@ -431,8 +608,8 @@ public class MessageSimpleReader extends MessageReader {
 					if (currentcharacter == BINARY_START) {
 						currentcharacter = readOneCharacter();
 
-						String sizetext = getNumberToken();
-						int size = new Integer(sizetext).intValue();
+						getNumberToken();
+						int size = parseIntegerToken(attributename);
 						logger.finer("file size  = " + size);
 						if (currentcharacter != BINARY_SEPARATOR)
 							throw new RuntimeException(String.format(
@@ -454,31 +631,19 @@ public class MessageSimpleReader extends MessageReader {
 								throw new RuntimeException(String.format(
 										"Expected to have a separator ':' after filename '%s' in binary field, got '%c' at %s",
 										filename, currentcharacter, this.returnBufferTrace()));
-							char[] base64content = new char[size];
-							int read = 0;
-							int breaker = 0;
-							while ((read < size) && (breaker < 100000)) {
-								read += br.read(base64content, read, size - read);
-								breaker++;
-								logger.fine("total read = " + read);
-								try {
-									Thread.sleep(20);
-
-								} catch (InterruptedException e) {
-									logger.warning(
-											"Error while waiting for file to be completly received " + e.getMessage());
-								}
+							byte[] base64content = new byte[size];
+							readBase64Characters(base64content);
+							charcounter += size;
+							if (logger.isLoggable(Level.FINE)) {
+								String base64string = new String(base64content, StandardCharsets.US_ASCII);
+								logger.fine("read = " + size + "generated ing length = " + base64string.length()
+										+ " hascode=" + base64string.hashCode() + " first 3 char = '"
+										+ base64string.substring(0, Math.min(3, base64string.length()))
+										+ "' last 100 chars = '" + base64string.substring(
+												(base64string.length() - 100 > 0 ? base64string.length() - 100 : 0)));
 							}
 
-							charcounter += size;
-							String base64string = new String(base64content);
-							// Correct code
-							logger.fine("read = " + read + "generated ing length = " + base64string.length()
-							+ " hascode=" + base64string.hashCode() + " first 3 char = '"
-							+ base64string.substring(0, 3) + "' last 100 chars = '" + base64string.substring(
-									(base64string.length() - 100 > 0 ? base64string.length() - 100 : 0)));
-
-							byte[] binary = base64decoder.decode(base64string);
+							byte[] binary = base64decoder.decode(base64content);
 							currentcharacter = readOneCharacter();
 
 							return new MessageBinaryField(attributename, binary, filename);
@@ -488,32 +653,13 @@ public class MessageSimpleReader extends MessageReader {
 					}
 
 					if (currentcharacter == DECIMAL_START) {
-						String token = getDecimalToken();
-
-						BigDecimal decimal = null;
-						if (token.length() > 1) {
-							try {
-								decimal = new BigDecimal(token.substring(1));
-
-							} catch (NumberFormatException e) {
-								throw new RuntimeException(String.format(
-										"invalid decimal format for attribute %s for value %s, original exception : %s at %s",
-										attributename, token, e.getMessage(), this.returnBufferTrace()));
-							}
-						}
+						getDecimalToken();
+						BigDecimal decimal = parseDecimalToken(attributename);
 						return new MessageDecimalField(attributename, decimal);
 					}
 					if (currentcharacter == DATE_START) {
-						String token = getStringToken();
-						Date date = null;
-						if (token.length() > 1)
-							try {
-								date = MessageDateField.sdf.parse(token);
-							} catch (ParseException e) {
-								throw new RuntimeException(String.format(
-										"invalid date format for attribute %s for value %s, original exception : %s at %s ",
-										attributename, token, e.getMessage(), this.returnBufferTrace()));
-							}
+						readToken(CLASS_FIRSTCHAR_STRING, CLASS_FOLLOWINGCHAR_STRING, "date", attributename);
+						Date date = parseDateToken(attributename);
 						return new MessageDateField(attributename, date);
 					}
 					if (currentcharacter == NULL_MARKER) {
@@ -536,7 +682,7 @@ public class MessageSimpleReader extends MessageReader {
 					String.format("no element could be parsed, invalid character %c at path %s at %s", currentcharacter,
 							this.getCurrentElementPath(), this.returnBufferTrace()));
 
-		
+
 	}
 
 	/**
@@ -547,12 +693,15 @@ public class MessageSimpleReader extends MessageReader {
 	 * <li>Integer</li>
 	 * <li>String</li>
 	 * </ul>
-	 * 
+	 *
+	 * @param context context for error messages
+	 * @param column  column of the payload for error messages, or -1 if not
+	 *                relevant
 	 * @return a class of the given type. Wrapper classes are used any time
 	 *         necessary
 	 * @throws IOException if communication is broken
 	 */
-	private Object parseAttributeContent(String context) throws IOException {
+	private Object parseAttributeContent(String context, int column) throws IOException {
 		if (currentcharacter == STRING_DELIMITER) {
 			currentcharacter = readOneCharacter();
 
@@ -560,30 +709,20 @@ public class MessageSimpleReader extends MessageReader {
 			return attributecontent;
 		}
 		// treatment of integer or floats
-		if (firstcharNumber.indexOf(currentcharacter) != -1) {
-			String numberparsed = getNumberToken();
-
-			// tries to parse it to integer
-			try {
-				int value = new Integer(numberparsed).intValue();
-
-				return new Integer(value);
-			} catch (NumberFormatException e) {
-				throw new RuntimeException(
-						String.format("number format for attribute %s could not be parsed to an Integer : %s at %s",
-								context, numberparsed, this.returnBufferTrace()));
-			}
+		if (isInClass(currentcharacter, CLASS_FIRSTCHAR_NUMBER)) {
+			getNumberToken();
+			return Integer.valueOf(parseIntegerToken((column >= 0 ? context + " " + column : context)));
 		}
 		if (currentcharacter == boolean_true) {
 			currentcharacter = readOneCharacter();
 
-			return new Boolean(true);
+			return Boolean.TRUE;
 		}
 
 		if (currentcharacter == boolean_false) {
 			currentcharacter = readOneCharacter();
 
-			return new Boolean(false);
+			return Boolean.FALSE;
 
 		}
 
@@ -598,68 +737,49 @@ public class MessageSimpleReader extends MessageReader {
 
 		}
 		if (currentcharacter == DECIMAL_START) {
-			String token = getDecimalToken();
-
-			BigDecimal decimal = null;
-			if (token.length() > 1) {
-				try {
-					decimal = new BigDecimal(token.substring(1));
-
-				} catch (NumberFormatException e) {
-					throw new RuntimeException(String.format(
-							"invalid decimal format for attribute %s for value %s, original exception : %s at %s",
-							context, token, e.getMessage(), this.returnBufferTrace()));
-				}
-			}
-			return decimal;
+			getDecimalToken();
+			return parseDecimalToken((column >= 0 ? context + " " + column : context));
 		}
 		if (currentcharacter == DATE_START) {
-			String token = getStringToken();
-			Date date = null;
-			if (token.length() > 1)
-				try {
-					date = MessageDateField.sdf.parse(token);
-				} catch (ParseException e) {
-					throw new RuntimeException(String.format(
-							"invalid date format for attribute %s for value %s, original exception : %s at %s ",
-							context, token, e.getMessage(), this.returnBufferTrace()));
-				}
-			return date;
+			readToken(CLASS_FIRSTCHAR_STRING, CLASS_FOLLOWINGCHAR_STRING, "date", context);
+			return parseDateToken((column >= 0 ? context + " " + column : context));
 		}
-		throw new RuntimeException(String.format(
-				"did not find a supported field type for " + context + " current char = '%c'", currentcharacter));
+		throw new RuntimeException(String.format("did not find a supported field type for "
+				+ (column >= 0 ? context + " " + column : context) + " current char = '%c'", currentcharacter));
 	}
 
 	/**
 	 * parses a string attribute with current character set to immediately after the
-	 * first '"'
-	 * 
+	 * first '"'. Characters until the next '"' are copied directly from the read
+	 * buffer.
+	 *
 	 * @return
 	 */
 	private String parseStringAttribute(String attributename) throws IOException {
-		StringBuffer content = new StringBuffer();
-		boolean laststringdelimiter = false;
+		tokenlength = 0;
 		while (currentcharacter != -1) {
-			char character = (char) currentcharacter;
-			// no '"' as last string -- normal process
-			if (!laststringdelimiter)
-				if (currentcharacter != STRING_DELIMITER)
-					content.append(character);
-
-			if (laststringdelimiter)
+			if (currentcharacter == STRING_DELIMITER) {
+				currentcharacter = readOneCharacter();
+				// a single '"' ends the string, two consecutive '"' mean a '"' in the string
 				if (currentcharacter != STRING_DELIMITER) {
-
-					return content.toString();
+					if (currentcharacter == -1)
+						break;
+					if (tokenlength == 0)
+						return "";
+					return getTokenAsString();
 				}
-			if (currentcharacter == STRING_DELIMITER) {
-				if (laststringdelimiter) {
-					laststringdelimiter = false;
-					content.append(character);
-				} else {
-					laststringdelimiter = true;
+			}
+			appendToToken((char) currentcharacter);
+			if (readbufferposition < readbufferlength) {
+				int runstart = readbufferposition;
+				int runend = runstart;
+				while ((runend < readbufferlength) && (readbuffer[runend] != STRING_DELIMITER))
+					runend++;
+				if (runend > runstart) {
+					appendToToken(readbuffer, runstart, runend - runstart);
+					consumeCharacters(runstart, runend - runstart);
 				}
 			}
-
 			currentcharacter = readOneCharacter();
 
 		}
@@ -669,8 +789,64 @@ public class MessageSimpleReader extends MessageReader {
 				this.getCurrentElementPath(), this.returnBufferTrace()));
 	}
 
+	/**
+	 * fills the read buffer if it has been fully read
+	 *
+	 * @return false if end of stream has been reached
+	 * @throws IOException if communication is broken
+	 */
+	private boolean fillReadBuffer() throws IOException {
+		while (readbufferposition == readbufferlength) {
+			int read = br.read(readbuffer, 0, readbuffer.length);
+			if (read == -1)
+				return false;
+			readbufferposition = 0;
+			readbufferlength = read;
+		}
+		return true;
+	}
+
+	/**
+	 * moves the position in the read buffer after characters read in bulk
+	 *
+	 * @param offset offset of the characters in the read buffer
+	 * @param length number of characters
+	 */
+	private void consumeCharacters(int offset, int length) {
+		readbufferposition = offset + length;
+		charcounter += length;
+		if (this.recording)
+			this.recordedstring.append(readbuffer, offset, length);
+	}
+
+	/**
+	 * reads the base64 characters of a binary payload. Those characters are not
+	 * recorded
+	 *
+	 * @param destination array to fill fully
+	 * @throws IOException if communication is broken
+	 */
+	private void readBase64Characters(byte[] destination) throws IOException {
+		int read = 0;
+		while (read < destination.length) {
+			if (!fillReadBuffer())
+				throw new RuntimeException(String.format(
+						"End of File reached while parsing binary content, read %d characters out of %d at %s", read,
+						destination.length, this.returnBufferTrace()));
+			int tocopy = Math.min(destination.length - read, readbufferlength - readbufferposition);
+			for (int i = 0; i < tocopy; i++)
+				destination[read + i] = (byte) readbuffer[readbufferposition + i];
+			readbufferposition += tocopy;
+			read += tocopy;
+		}
+	}
+
 	private int readOneCharacter() throws IOException {
-		int thischar = br.read();
+		int thischar = -1;
+		if (fillReadBuffer()) {
+			thischar = readbuffer[readbufferposition];
+			readbufferposition++;
+		}
 		charcounter++;
 		if (this.recording) {
 			this.recordedstring.append((char) thischar);
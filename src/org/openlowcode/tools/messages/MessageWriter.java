@@ -13,6 +13,8 @@ import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 
 import org.openlowcode.tools.enc.AESCommunicator;
 
@@ -30,6 +32,8 @@ public abstract class MessageWriter {
 	public boolean active;
 	private boolean isfirstelementinstructure = true;
 	private AESCommunicator aescommunicator;
+	private Map<String, Long> transferresumeoffsets;
+	private ArrayList<String> chunkedtransfers = new ArrayList<String>();
 
 	public boolean isIsfirstelementinstructure() {
 		return isfirstelementinstructure;
@@ -53,6 +57,53 @@ public abstract class MessageWriter {
 		return this.aescommunicator;
 	}
 	
+	/**
+	 * sets the offsets from which chunked transfers interrupted previously should
+	 * be resumed. This is only used by writers supporting chunked transfers
+	 * 
+	 * @param transferresumeoffsets a map with transfer id as key, and offset as
+	 *                              value
+	 * @since 1.16
+	 */
+	public void setTransferResumeOffsets(Map<String, Long> transferresumeoffsets) {
+		this.transferresumeoffsets = transferresumeoffsets;
+	}
+
+	/**
+	 * @param transferid id of a chunked transfer
+	 * @return the offset from which the transfer should start (0 if the transfer
+	 *         is not resumed)
+	 * @since 1.16
+	 */
+	protected long getTransferResumeOffset(String transferid) {
+		if (transferresumeoffsets == null)
+			return 0;
+		Long offset = transferresumeoffsets.get(transferid);
+		if (offset == null)
+			return 0;
+		return offset.longValue();
+	}
+
+	/**
+	 * records that a chunked transfer was started by this writer
+	 * 
+	 * @param transferid id of the chunked transfer
+	 * @since 1.16
+	 */
+	protected void registerChunkedTransfer(String transferid) {
+		chunkedtransfers.add(transferid);
+	}
+
+	/**
+	 * @return the ids of the chunked transfers started by this writer. If the
+	 *         connection is interrupted, the other party can be asked how much of
+	 *         those transfers it received
+	 * @since 1.16
+	 */
+	public List<String> getChunkedTransfers() {
+		return chunkedtransfers;
+	}
+
 	public String getCurrentPadding() {
 
 		return "";
@@ -71,6 +122,17 @@ public abstract class MessageWriter {
 
 	public abstract void flushMessage() throws IOException;
 
+	/**
+	 * closes the underlying destination of the writer. Default implementation does
+	 * nothing
+	 * 
+	 * @throws IOException if any communication issue is encountered
+	 * @since 1.16
+	 */
+	public void close() throws IOException {
+
+	}
+
 	private final static String firstcharLabel = "AZERTYUIOPQSDFGHJKLMWXCVBN";
 	private final static String followingcharLabel = "AZERTYUIOPQSDFGHJKLMWXCVBN1234567890_-";
 
@@ -339,6 +401,63 @@ public abstract class MessageWriter {
 		sendMessageElement(new MessageError(errorcode, errormessage));
 	}
 
+	/**
+	 * replays an element through the high level methods of the writer, so that the
+	 * content generated is the same as if the message had been written directly.
+	 * This is typically used to write again elements that were recorded. Structure
+	 * ends should have their name set.
+	 *
+	 * @param element the element to replay
+	 * @throws IOException if any issue is encountered writing
+	 * @since 1.16
+	 */
+	public void replayMessageElement(MessageElement element) throws IOException {
+		if (element instanceof MessageStartStructure) {
+			startStructure(((MessageStartStructure) element).getStructurename());
+			return;
+		}
+		if (element instanceof MessageEndStructure) {
+			endStructure(((MessageEndStructure) element).getName());
+			return;
+		}
+		if (element instanceof MessageStringField) {
+			MessageStringField field = (MessageStringField) element;
+			addStringField(field.getFieldName(), field.getFieldcontent());
+			return;
+		}
+		if (element instanceof MessageIntegerField) {
+			MessageIntegerField field = (MessageIntegerField) element;
+			addIntegerField(field.getFieldName(), field.getFieldContent());
+			return;
+		}
+		if (element instanceof MessageBooleanField) {
+			MessageBooleanField field = (MessageBooleanField) element;
+			addBooleanField(field.getFieldName(), field.getFieldContent());
+			return;
+		}
+		if (element instanceof MessageDecimalField) {
+			MessageDecimalField field = (MessageDecimalField) element;
+			addDecimalField(field.getFieldName(), field.getFieldcontent());
+			return;
+		}
+		if (element instanceof MessageDateField) {
+			MessageDateField field = (MessageDateField) element;
+			addDateField(field.getFieldName(), field.getFieldcontent());
+			return;
+		}
+		if (element instanceof MessageBinaryField) {
+			MessageBinaryField field = (MessageBinaryField) element;
+			addLongBinaryField(field.getFieldName(), field.getFieldContent());
+			return;
+		}
+		if ((element instanceof MessageArrayStart) || (element instanceof MessageArrayLine)
+				|| (element instanceof MessageArrayEnd)) {
+			sendMessageElement(element);
+			return;
+		}
+		throw new RuntimeException("Element " + element + " cannot be part of a recording");
+	}
+
 	/**
 	 * @return
 	 */
@@ -10,12 +10,21 @@
 package org.openlowcode.tools.messages;
 
 import java.io.ByteArrayInputStream;
-
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.UUID;
 
 /**
  * A light wrapper around a file, including
- * binary content and a filename
+ * binary content and a filename. The content
+ * is either held in memory, or stored in a file
+ * on disk (typically for a large file received
+ * through a chunked transfer, see {@link BinaryTransferStore})
  * @author Open Lowcode SAS
  *
  */
@@ -23,10 +32,24 @@ public class SFile {
 	private boolean empty;
 	private byte[] content;
 	private String filename;
+	private File diskfile;
+	private long length;
+	private String transferid;
 	/**
-	 * @return binary content
+	 * @return binary content. If the content is stored on disk, it
+	 * is loaded in memory. For large files, {@link #getStream()} should
+	 * be preferred
 	 */
 	public byte[] getContent() {
+		if (content == null)
+			if (diskfile != null) {
+				try {
+					content = Files.readAllBytes(diskfile.toPath());
+				} catch (IOException e) {
+					throw new RuntimeException("Could not read content of file " + filename + " stored in "
+							+ diskfile.getAbsolutePath() + ": " + e.getMessage(), e);
+				}
+			}
 		return content;
 	}
 	/**
@@ -47,12 +70,107 @@ public class SFile {
 		this.filename = filename;
 		if (content!=null) {
 		this.empty=false;
+		this.length=content.length;
 		} else {
 			this.empty=true;
 		}
 		
 	}
 	
+	/**
+	 * Creates a new file with content stored on disk. The content
+	 * is only loaded in memory if {@link #getContent()} is called.
+	 * @param filename name of the file (it should not include the path)
+	 * @param diskfile file on disk holding the content
+	 * @param length length of the content
+	 * @since 1.16
+	 */
+	public SFile(String filename,File diskfile,long length) {
+		this.filename = filename;
+		this.diskfile = diskfile;
+		this.length = length;
+		this.empty = false;
+	}
+	
+	/**
+	 * Creates a file with the content read from a stream. Content up to the
+	 * threshold is kept in memory. Larger content is spilled to a file on disk in
+	 * the {@link BinaryTransferStore}, so that it never needs to fit in memory.
+	 * The disk file is deleted when the current thread releases its spill files
+	 * (see {@link BinaryTransferStore#releaseSpillFilesForThread()}), so the file
+	 * returned should not be kept after the end of the request.
+	 * @param filename name of the file (it should not include the path)
+	 * @param stream stream of the content, read until its end. It is not closed
+	 * @param spillthreshold maximum size in bytes of content kept in memory
+	 * @return the file
+	 * @throws IOException if the stream cannot be read, or the disk file cannot
+	 * be written, or the store of spill files is full
+	 * @since 1.16
+	 */
+	public static SFile readFromStream(String filename,InputStream stream,int spillthreshold) throws IOException {
+		ByteArrayOutputStream memorycontent = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = stream.read(buffer)) != -1) {
+			if (memorycontent.size() + read > spillthreshold)
+				return spillToDisk(filename, memorycontent, buffer, read, stream);
+			memorycontent.write(buffer, 0, read);
+		}
+		return new SFile(filename, memorycontent.toByteArray());
+	}
+
+	/**
+	 * writes to a disk file the content already read and the rest of the stream
+	 * @param filename name of the file
+	 * @param memorycontent content already read
+	 * @param buffer last buffer read
+	 * @param read number of bytes in the last buffer
+	 * @param stream stream with the rest of the content
+	 * @return the file with content on disk
+	 * @throws IOException if the stream cannot be read or the disk file written
+	 */
+	private static SFile spillToDisk(String filename,ByteArrayOutputStream memorycontent,byte[] buffer,int read,InputStream stream) throws IOException {
+		BinaryTransferStore store = BinaryTransferStore.get();
+		File diskfile = store.newSpillFile();
+		boolean success = false;
+		try (FileOutputStream output = new FileOutputStream(diskfile)) {
+			store.reserveSpillLength(diskfile, memorycontent.size());
+			memorycontent.writeTo(output);
+			long length = memorycontent.size();
+			int currentread = read;
+			while (currentread != -1) {
+				store.reserveSpillLength(diskfile, currentread);
+				output.write(buffer, 0, currentread);
+				length += currentread;
+				currentread = stream.read(buffer);
+			}
+			success = true;
+			return new SFile(filename, diskfile, length);
+		} finally {
+			if (!success) store.deleteSpillFile(diskfile);
+		}
+	}
+	
+	/**
+	 * @return true if the content of the file is stored on disk
+	 * and not loaded in memory
+	 * @since 1.16
+	 */
+	public boolean isOnDisk() {
+		return ((content==null) && (diskfile!=null));
+	}
+	
+	/**
+	 * @return the identifier of this file for chunked transfers. It is generated
+	 * the first time it is requested, and then stays the same for this object, so
+	 * that a transfer interrupted can be resumed when the file is sent again.
+	 * @since 1.16
+	 */
+	public synchronized String getTransferId() {
+		if (transferid==null) transferid = UUID.randomUUID().toString();
+		return transferid;
+	}
+	
 	
 	/**
 	 * @return the file name
@@ -62,9 +180,18 @@ public class SFile {
 	}
 	
 	/**
-	 * @return an input stream with the content
+	 * @return an input stream with the content. If the content is
+	 * stored on disk, it is read from disk while the stream is read
 	 */
 	public InputStream getStream()  {
+		if (isOnDisk()) {
+			try {
+				return new FileInputStream(diskfile);
+			} catch (IOException e) {
+				throw new RuntimeException("Could not open file " + filename + " stored in "
+						+ diskfile.getAbsolutePath() + ": " + e.getMessage(), e);
+			}
+		}
 		 return new ByteArrayInputStream(content);
 	
 	}
@@ -73,7 +200,7 @@ public class SFile {
 	 * @return the length of the file
 	 */
 	public long getLength() {
-		return content.length;
+		return length;
 	}
 	/**
 	 * @return true if the file payload is 
@@ -90,6 +217,6 @@ public boolean equals(Object other) {
 	SFile othersfile = (SFile) other;
 	if (this.empty) if (!othersfile.empty) return false;
 	if (!this.filename.equals(othersfile.filename)) return false;
-	return java.util.Arrays.equals(this.content,othersfile.content);
+	return java.util.Arrays.equals(this.getContent(),othersfile.getContent());
 }
 }
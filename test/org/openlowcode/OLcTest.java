@@ -0,0 +1,125 @@
+/********************************************************************************
+ * Copyright (c) 2020 [Open Lowcode SAS](https://openlowcode.com/)
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0 .
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ********************************************************************************/
+
+package org.openlowcode;
+
+import java.util.ArrayList;
+
+/**
+ * A minimal base for the tests of the framework, that do not need any library
+ * beyond the java runtime. A test performs checks in its {@link #run()}
+ * method. Failed checks are collected and printed at the end of the test, and
+ * an exception thrown by the test is counted as a failure.<br>
+ * Each test can be launched on its own through its main method, or with all
+ * other tests through {@link OLcTestSuite}, for example with the test target
+ * of the build file.
+ *
+ * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
+ *         SAS</a>
+ * @since 1.16
+ *
+ */
+public abstract class OLcTest {
+	private int checks = 0;
+	private ArrayList<String> failures = new ArrayList<String>();
+
+	/**
+	 * performs all the checks of the test
+	 *
+	 * @throws Exception if any unexpected error happens, counted as a failure
+	 */
+	public abstract void run() throws Exception;
+
+	/**
+	 * checks that a condition is true
+	 *
+	 * @param condition the condition
+	 * @param label     description of the check, printed if it fails
+	 */
+	protected void check(boolean condition, String label) {
+		checks++;
+		if (!condition)
+			failures.add(label);
+	}
+
+	/**
+	 * checks that a value is equal to the expected value
+	 *
+	 * @param expected the expected value (may be null)
+	 * @param actual   the actual value (may be null)
+	 * @param label    description of the check, printed if it fails
+	 */
+	protected void checkEquals(Object expected, Object actual, String label) {
+		boolean equal = (expected == null ? actual == null : expected.equals(actual));
+		check(equal, label + ": expected <" + expected + "> but got <" + actual + ">");
+	}
+
+	/**
+	 * checks that an action throws an exception
+	 *
+	 * @param action the action to perform
+	 * @param label  description of the check, printed if it fails
+	 */
+	protected void checkThrows(ThrowingAction action, String label) {
+		boolean thrown = false;
+		try {
+			action.perform();
+		} catch (Exception e) {
+			thrown = true;
+		}
+		check(thrown, label + ": exception expected");
+	}
+
+	/**
+	 * an action that may throw an exception
+	 */
+	@FunctionalInterface
+	protected interface ThrowingAction {
+		public void perform() throws Exception;
+	}
+
+	/**
+	 * executes the test and prints the result
+	 *
+	 * @return true if all checks were successful
+	 */
+	public boolean execute() {
+		String name = this.getClass().getSimpleName();
+		long start = System.currentTimeMillis();
+		try {
+			run();
+		} catch (Throwable t) {
+			failures.add("unexpected " + t.getClass().getName() + ": " + t.getMessage());
+			t.printStackTrace(System.out);
+		}
+		System.out.println(" " + (failures.size() == 0 ? "OK    " : "FAILED") + " " + name + ": " + checks
+				+ " checks, " + failures.size() + " failures in " + (System.currentTimeMillis() - start) + "ms");
+		for (int i = 0; i < failures.size(); i++)
+			System.out.println("        - " + failures.get(i));
+		return (failures.size() == 0);
+	}
+
+	/**
+	 * executes the tests, and exits with a status of 1 if any test failed, so
+	 * that the build fails
+	 *
+	 * @param tests the tests to execute
+	 */
+	public static void executeAndExit(OLcTest... tests) {
+		boolean success = true;
+		for (int i = 0; i < tests.length; i++)
+			if (!tests[i].execute())
+				success = false;
+		if (!success) {
+			System.out.println(" Some tests failed");
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,37 @@
+/********************************************************************************
+ * Copyright (c) 2020 [Open Lowcode SAS](https://openlowcode.com/)
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0 .
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ********************************************************************************/
+
+package org.openlowcode;
+
+import org.openlowcode.server.data.SequenceTest;
+import org.openlowcode.server.data.properties.ObjectIdAllocatorTest;
+import org.openlowcode.server.data.storage.PersistenceGatewayTest;
+import org.openlowcode.server.data.storage.UnitOfWorkTest;
+import org.openlowcode.server.data.storage.jdbcpool.QueuedConnectionPoolTest;
+import org.openlowcode.tools.enc.MultiplexedChannelTest;
+import org.openlowcode.tools.messages.MessageSimpleReaderEquivalenceTest;
+import org.openlowcode.tools.messages.SFileSpillTest;
+
+/**
+ * Runs all the tests of the framework. New tests should be added to the list
+ * below.
+ *
+ * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
+ *         SAS</a>
+ * @since 1.16
+ *
+ */
+public class OLcTestSuite {
+	public static void main(String[] args) {
+		OLcTest.executeAndExit(new MessageSimpleReaderEquivalenceTest(), new MultiplexedChannelTest(),
+				new QueuedConnectionPoolTest(), new SequenceTest(), new ObjectIdAllocatorTest(), new UnitOfWorkTest(),
+				new PersistenceGatewayTest(), new SFileSpillTest());
+	}
+}
@@ -0,0 +1,112 @@
+/********************************************************************************
+ * Copyright (c) 2020 [Open Lowcode SAS](https://openlowcode.com/)
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0 .
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ********************************************************************************/
+
+package org.openlowcode.server.data;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openlowcode.OLcTest;
+
+/**
+ * Checks the allocation of values by a {@link Sequence}, with values reserved
+ * from a counter standing for the database sequence: a gapless sequence takes
+ * each value from the database, and a sequence reserving values by block
+ * gives each reserved value once, even with many threads.
+ *
+ * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
+ *         SAS</a>
+ * @since 1.16
+ *
+ */
+public class SequenceTest extends OLcTest {
+
+	public static void main(String[] args) {
+		OLcTest.executeAndExit(new SequenceTest());
+	}
+
+	@Override
+	public void run() throws Exception {
+		checkGapless();
+		checkBlocks();
+		checkBlocksConcurrent();
+		checkThrows(() -> new Sequence("INVALID", 0, (number) -> 1), "block size of 0");
+	}
+
+	/**
+	 * a sequence of block size 1 reserves each value in the database
+	 */
+	private void checkGapless() {
+		DatabaseSequence database = new DatabaseSequence();
+		Sequence sequence = new Sequence("GAPLESS", 1, database::reserve);
+		for (int i = 1; i <= 5; i++)
+			checkEquals(i, sequence.getNextValue(), "gapless value " + i);
+		checkEquals(5, database.reservations.get(), "one reservation per value");
+	}
+
+	/**
+	 * a sequence reserving values by block gives the values of the block in
+	 * order before reserving the next block
+	 */
+	private void checkBlocks() {
+		DatabaseSequence database = new DatabaseSequence();
+		Sequence sequence = new Sequence("BLOCK", 10, database::reserve);
+		for (int i = 1; i <= 25; i++)
+			checkEquals(i, sequence.getNextValue(), "block value " + i);
+		checkEquals(3, database.reservations.get(), "one reservation per block");
+	}
+
+	/**
+	 * values taken by many threads are all different and reserved in the
+	 * database, with only the last block partially used
+	 */
+	private void checkBlocksConcurrent() throws Exception {
+		DatabaseSequence database = new DatabaseSequence();
+		Sequence sequence = new Sequence("CONCURRENT", 100, database::reserve);
+		ConcurrentHashMap<Integer, Integer> values = new ConcurrentHashMap<Integer, Integer>();
+		AtomicInteger duplicates = new AtomicInteger(0);
+		ArrayList<Thread> threads = new ArrayList<Thread>();
+		int threadnumber = 8;
+		int valuesperthread = 5000;
+		for (int i = 0; i < threadnumber; i++) {
+			Thread thread = new Thread(() -> {
+				for (int j = 0; j < valuesperthread; j++)
+					if (values.put(Integer.valueOf(sequence.getNextValue()), Integer.valueOf(j)) != null)
+						duplicates.incrementAndGet();
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (int i = 0; i < threads.size(); i++)
+			threads.get(i).join(60000);
+		checkEquals(0, duplicates.get(), "values given twice");
+		checkEquals(threadnumber * valuesperthread, values.size(), "values given");
+		checkEquals(threadnumber * valuesperthread / 100, database.reservations.get(), "blocks reserved");
+		for (Integer value : values.keySet())
+			if (value.intValue() < 1 || value.intValue() > database.last.get()) {
+				check(false, "value " + value + " was not reserved");
+				break;
+			}
+	}
+
+	/**
+	 * a sequence in the database, giving consecutive values starting at 1
+	 */
+	private static class DatabaseSequence {
+		private AtomicInteger last = new AtomicInteger(0);
+		private AtomicInteger reservations = new AtomicInteger(0);
+
+		private int reserve(int number) {
+			reservations.incrementAndGet();
+			return last.getAndAdd(number) + 1;
+		}
+	}
+}
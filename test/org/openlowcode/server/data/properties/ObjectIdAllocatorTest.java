@@ -0,0 +1,131 @@
+/********************************************************************************
+ * Copyright (c) 2020 [Open Lowcode SAS](https://openlowcode.com/)
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0 .
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ********************************************************************************/
+
+package org.openlowcode.server.data.properties;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openlowcode.OLcTest;
+
+/**
+ * Checks the allocation of numbers by the {@link ObjectIdAllocator}, with
+ * seeds taken from a counter standing for the database sequence: numbers
+ * allocated by many threads in several stripes are all different and built
+ * from seeds reserved, and an error while reserving seeds is reported to the
+ * threads waiting for them without stopping later allocations.
+ *
+ * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
+ *         SAS</a>
+ * @since 1.16
+ *
+ */
+public class ObjectIdAllocatorTest extends OLcTest {
+
+	public static void main(String[] args) {
+		OLcTest.executeAndExit(new ObjectIdAllocatorTest());
+	}
+
+	@Override
+	public void run() throws Exception {
+		checkSingleThread();
+		checkConcurrent();
+		checkSeedError();
+		checkThrows(() -> new ObjectIdAllocator(0, 1, (number) -> 1), "stripe number of 0");
+		checkThrows(() -> new ObjectIdAllocator(1, 0, (number) -> 1), "prefetch of 0");
+	}
+
+	/**
+	 * a single thread uses all numbers of a seed before taking the next one
+	 */
+	private void checkSingleThread() {
+		SeedSequence seeds = new SeedSequence();
+		ObjectIdAllocator allocator = new ObjectIdAllocator(1, 4, seeds::reserve);
+		long first = allocator.getNextId();
+		boolean consecutive = true;
+		for (long i = 1; i < ObjectIdAllocator.IDS_PER_SEED; i++)
+			if (allocator.getNextId() != first + i)
+				consecutive = false;
+		check(consecutive, "numbers of a seed given in order");
+		long next = allocator.getNextId();
+		check(next / ObjectIdAllocator.IDS_PER_SEED != first / ObjectIdAllocator.IDS_PER_SEED,
+				"new seed when seed is used");
+		checkEquals(0L, next % ObjectIdAllocator.IDS_PER_SEED, "first number of new seed");
+	}
+
+	/**
+	 * numbers allocated by many threads are all different, and built from seeds
+	 * reserved
+	 */
+	private void checkConcurrent() throws Exception {
+		SeedSequence seeds = new SeedSequence();
+		ObjectIdAllocator allocator = new ObjectIdAllocator(4, 2, seeds::reserve);
+		ConcurrentHashMap<Long, Long> numbers = new ConcurrentHashMap<Long, Long>();
+		AtomicInteger duplicates = new AtomicInteger(0);
+		AtomicInteger errors = new AtomicInteger(0);
+		ArrayList<Thread> threads = new ArrayList<Thread>();
+		int threadnumber = 8;
+		int numbersperthread = 20000;
+		for (int i = 0; i < threadnumber; i++) {
+			Thread thread = new Thread(() -> {
+				try {
+					for (int j = 0; j < numbersperthread; j++)
+						if (numbers.put(Long.valueOf(allocator.getNextId()), Long.valueOf(j)) != null)
+							duplicates.incrementAndGet();
+				} catch (RuntimeException e) {
+					errors.incrementAndGet();
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (int i = 0; i < threads.size(); i++)
+			threads.get(i).join(60000);
+		checkEquals(0, errors.get(), "errors during allocation");
+		checkEquals(0, duplicates.get(), "numbers given twice");
+		checkEquals(threadnumber * numbersperthread, numbers.size(), "numbers given");
+		for (Long number : numbers.keySet()) {
+			long seed = number.longValue() / ObjectIdAllocator.IDS_PER_SEED;
+			if (seed < 1 || seed > seeds.last.get()) {
+				check(false, "number " + number + " built from seed " + seed + " not reserved");
+				break;
+			}
+		}
+	}
+
+	/**
+	 * an error reserving seeds is given to the thread waiting for them, and
+	 * seeds are reserved again on the next allocation
+	 */
+	private void checkSeedError() {
+		SeedSequence seeds = new SeedSequence();
+		seeds.failing = true;
+		ObjectIdAllocator allocator = new ObjectIdAllocator(1, 1, seeds::reserve);
+		checkThrows(() -> allocator.getNextId(), "allocation when seeds cannot be reserved");
+		seeds.failing = false;
+		checkEquals(Long.valueOf(ObjectIdAllocator.IDS_PER_SEED), Long.valueOf(allocator.getNextId()),
+				"first number once seeds can be reserved");
+	}
+
+	/**
+	 * a sequence in the database, giving consecutive seeds starting at 1
+	 */
+	private static class SeedSequence {
+		private AtomicInteger last = new AtomicInteger(0);
+		private volatile boolean failing = false;
+
+		private int reserve(int number) {
+			if (failing)
+				throw new RuntimeException("Database not available");
+			return last.getAndAdd(number) + 1;
+		}
+	}
+}
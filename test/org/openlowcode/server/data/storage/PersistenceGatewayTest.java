@@ -0,0 +1,174 @@
+/********************************************************************************
+ * Copyright (c) 2020 [Open Lowcode SAS](https://openlowcode.com/)
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0 .
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ********************************************************************************/
+
+package org.openlowcode.server.data.storage;
+
+import java.util.ArrayList;
+
+import org.openlowcode.OLcTest;
+import org.openlowcode.server.data.storage.jdbcpool.QueuedConnectionPool;
+import org.openlowcode.server.data.storage.jdbcpool.TestConnection;
+
+/**
+ * Checks the action transaction of the {@link PersistenceGateway} on test
+ * connections: actions after commit performed only once the transaction is
+ * committed, actions after rollback performed only if it is rolled back,
+ * tables with uncommitted writes known only during the transaction,
+ * autonomous storages taken from and given back to their own pool, and reads
+ * routed to the read replica until the thread writes.
+ *
+ * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
+ *         SAS</a>
+ * @since 1.16
+ *
+ */
+public class PersistenceGatewayTest extends OLcTest {
+	private QueuedConnectionPool pool;
+	private QueuedConnectionPool autonomouspool;
+	private QueuedConnectionPool readpool;
+
+	public static void main(String[] args) {
+		OLcTest.executeAndExit(new PersistenceGatewayTest());
+	}
+
+	@Override
+	public void run() throws Exception {
+		TestConnection.registerDriver();
+		pool = new QueuedConnectionPool(TestConnection.URL, null, null, 1, 2, 0, 10000,
+				QueuedConnectionPool.DEFAULT_LEAK_THRESHOLD);
+		autonomouspool = new QueuedConnectionPool(TestConnection.URL, null, null, 1, 1, 0, 10000,
+				QueuedConnectionPool.DEFAULT_LEAK_THRESHOLD);
+		readpool = new QueuedConnectionPool(TestConnection.URL, null, null, 1, 1, 0, 10000,
+				QueuedConnectionPool.DEFAULT_LEAK_THRESHOLD);
+		PersistenceGateway.setconnectionpool(PersistenceGateway.DBTYPE_DERBY, pool);
+		PersistenceGateway.setautonomousconnectionpool(autonomouspool);
+		try {
+			PersistenceGateway.setTransactionPerAction(true);
+			checkCommit();
+			checkRollback();
+			checkAutonomousStorage();
+			PersistenceGateway.setTransactionPerAction(false);
+			checkWithoutTransaction();
+			checkReadReplicaRouting();
+		} finally {
+			PersistenceGateway.setTransactionPerAction(false);
+			PersistenceGateway.setautonomousconnectionpool(null);
+			PersistenceGateway.setreadconnectionpool(null);
+			PersistenceGateway.releaseForThread();
+		}
+	}
+
+	/**
+	 * at commit, actions after commit are performed after the commit of the
+	 * connection, and actions after rollback are dropped
+	 */
+	private void checkCommit() {
+		ArrayList<String> calls = new ArrayList<String>();
+		PersistenceGateway.startActionTransaction();
+		PersistentStorage storage = PersistenceGateway.getStorage();
+		TestConnection connection = (TestConnection) ((JDBCstorage) storage).getConnection();
+		check(storage == PersistenceGateway.getStorage(), "same storage during the transaction");
+		checkEquals(false, PersistenceGateway.hasUncommittedWrites("FIRST"), "no uncommitted write before write");
+		PersistenceGateway.registerUncommittedWrite("FIRST", () -> calls.add("after rollback"));
+		PersistenceGateway.performAfterCommit(storage,
+				(committedstorage) -> calls.add("after commit " + connection.getCommits()));
+		PersistenceGateway.checkinStorage(storage);
+		checkEquals(true, PersistenceGateway.hasUncommittedWrites("FIRST"), "uncommitted write on table written");
+		checkEquals(false, PersistenceGateway.hasUncommittedWrites("SECOND"), "no uncommitted write on other table");
+		checkEquals(0, calls.size(), "no action performed before commit");
+		checkEquals(0, pool.getIdleConnectionNumber(), "connection kept after check in during transaction");
+		PersistenceGateway.endActionTransaction(true);
+		checkEquals("[after commit 1]", calls.toString(), "actions at commit");
+		checkEquals(0, connection.getRollbacks(), "no rollback at commit");
+		checkEquals(false, PersistenceGateway.hasUncommittedWrites("FIRST"), "no uncommitted write after commit");
+		checkEquals(1, pool.getIdleConnectionNumber(), "connection given back after commit");
+	}
+
+	/**
+	 * at rollback, actions after rollback are performed, and actions after
+	 * commit are dropped
+	 */
+	private void checkRollback() {
+		ArrayList<String> calls = new ArrayList<String>();
+		PersistenceGateway.startActionTransaction();
+		PersistentStorage storage = PersistenceGateway.getStorage();
+		TestConnection connection = (TestConnection) ((JDBCstorage) storage).getConnection();
+		int commits = connection.getCommits();
+		PersistenceGateway.registerUncommittedWrite("FIRST", () -> {
+			throw new RuntimeException("Failing action after rollback");
+		});
+		PersistenceGateway.registerUncommittedWrite("FIRST", () -> calls.add("after rollback"));
+		PersistenceGateway.performAfterCommit(storage, (committedstorage) -> calls.add("after commit"));
+		PersistenceGateway.endActionTransaction(false);
+		checkEquals("[after rollback]", calls.toString(), "actions at rollback");
+		checkEquals(commits, connection.getCommits(), "no commit at rollback");
+		checkEquals(1, connection.getRollbacks(), "rollback of connection");
+		checkEquals(false, PersistenceGateway.hasUncommittedWrites("FIRST"), "no uncommitted write after rollback");
+		checkEquals(1, pool.getIdleConnectionNumber(), "connection given back after rollback");
+	}
+
+	/**
+	 * an autonomous storage does not use the connection of the transaction, and
+	 * is given back to its own pool
+	 */
+	private void checkAutonomousStorage() {
+		PersistenceGateway.startActionTransaction();
+		PersistentStorage storage = PersistenceGateway.getStorage();
+		PersistentStorage autonomousstorage = PersistenceGateway.getAutonomousStorage();
+		check(storage != autonomousstorage, "autonomous storage outside of the transaction");
+		checkEquals(0, autonomouspool.getIdleConnectionNumber(), "autonomous connection taken");
+		PersistenceGateway.checkinStorage(autonomousstorage);
+		checkEquals(1, autonomouspool.getIdleConnectionNumber(), "autonomous connection given back to its pool");
+		checkEquals(0, pool.getIdleConnectionNumber(), "transaction connection still used");
+		PersistenceGateway.endActionTransaction(true);
+		checkEquals(1, pool.getIdleConnectionNumber(), "transaction connection given back");
+	}
+
+	/**
+	 * without transaction, writes are already committed, so actions after
+	 * commit are performed immediately, and no uncommitted write is recorded
+	 */
+	private void checkWithoutTransaction() {
+		ArrayList<String> calls = new ArrayList<String>();
+		PersistenceGateway.startActionTransaction();
+		PersistentStorage storage = PersistenceGateway.getStorage();
+		PersistenceGateway.registerUncommittedWrite("FIRST", () -> calls.add("after rollback"));
+		checkEquals(false, PersistenceGateway.hasUncommittedWrites("FIRST"), "no uncommitted write without transaction");
+		PersistenceGateway.performAfterCommit(storage, (committedstorage) -> calls.add("after commit"));
+		checkEquals("[after commit]", calls.toString(), "action performed immediately without transaction");
+		PersistenceGateway.checkinStorage(storage);
+		PersistenceGateway.endActionTransaction(false);
+		checkEquals("[after commit]", calls.toString(), "no action at end of action without transaction");
+	}
+
+	/**
+	 * reads go to the read replica only when the thread routes its reads there
+	 * and did not take a storage that may write
+	 */
+	private void checkReadReplicaRouting() {
+		checkEquals(false, PersistenceGateway.isReadOnReplica(), "no replica read without read pool");
+		PersistenceGateway.setreadconnectionpool(readpool);
+		checkEquals(false, PersistenceGateway.isReadOnReplica(), "no replica read without routing");
+		PersistenceGateway.startReadReplicaRouting();
+		checkEquals(true, PersistenceGateway.isReadOnReplica(), "replica read with routing");
+		PersistentStorage readstorage = PersistenceGateway.getReadStorage();
+		checkEquals(true, ((JDBCstorage) readstorage).isReadReplica(), "read storage on replica");
+		PersistenceGateway.checkinStorage(readstorage);
+		checkEquals(1, readpool.getIdleConnectionNumber(), "replica connection given back to its pool");
+		PersistentStorage storage = PersistenceGateway.getStorage();
+		PersistenceGateway.checkinStorage(storage);
+		checkEquals(false, PersistenceGateway.isReadOnReplica(), "no replica read after a storage to write");
+		readstorage = PersistenceGateway.getReadStorage();
+		checkEquals(false, ((JDBCstorage) readstorage).isReadReplica(), "read storage on primary after a storage to write");
+		PersistenceGateway.checkinStorage(readstorage);
+		PersistenceGateway.stopReadReplicaRouting();
+		checkEquals(false, PersistenceGateway.isReadOnReplica(), "no replica read after routing stopped");
+	}
+}
@@ -0,0 +1,330 @@
+/********************************************************************************
+ * Copyright (c) 2020 [Open Lowcode SAS](https://openlowcode.com/)
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0 .
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ********************************************************************************/
+
+package org.openlowcode.server.data.storage;
+
+import java.util.ArrayList;
+import java.util.function.Consumer;
+
+import org.openlowcode.OLcTest;
+
+/**
+ * Checks the writes of a {@link UnitOfWork} on a storage recording the calls
+ * it receives: batches per table and operation in the order of the writes,
+ * commit of the unit of work, actions after commit performed only once the
+ * writes are committed, or handed over to the caller when the unit of work is
+ * written in the transaction of the caller, and dropped when the writes are
+ * rolled back.
+ *
+ * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
+ *         SAS</a>
+ * @since 1.16
+ *
+ */
+public class UnitOfWorkTest extends OLcTest {
+	private StoredTableSchema firsttable;
+	private StringStoredField firstfield;
+	private StoredTableSchema secondtable;
+	private StringStoredField secondfield;
+
+	public static void main(String[] args) {
+		OLcTest.executeAndExit(new UnitOfWorkTest());
+	}
+
+	@Override
+	public void run() throws Exception {
+		firsttable = new StoredTableSchema("FIRST");
+		firstfield = new StringStoredField("NAME", firsttable, 64);
+		firsttable.addField(firstfield);
+		secondtable = new StoredTableSchema("SECOND");
+		secondfield = new StringStoredField("NAME", secondtable, 64);
+		secondtable.addField(secondfield);
+		checkCommit();
+		checkRollback();
+		checkOuterTransaction();
+		checkFailingActionAfterCommit();
+		checkFull();
+	}
+
+	/**
+	 * writes are grouped by table and operation, and actions after commit are
+	 * performed after the commit
+	 */
+	private void checkCommit() {
+		RecordingStorage storage = new RecordingStorage();
+		UnitOfWork unitofwork = new UnitOfWork(100);
+		unitofwork.addInsert(getRow(firsttable, firstfield, "A"), storage.record("after A"));
+		unitofwork.addInsert(getRow(secondtable, secondfield, "B"), storage.record("after B"));
+		unitofwork.addInsert(getRow(firsttable, firstfield, "C"), storage.record("after C"));
+		unitofwork.addDelete(firsttable, getCondition(firsttable, firstfield, "A"), storage.record("after delete A"));
+		unitofwork.addInsert(getRow(firsttable, firstfield, "D"), null);
+		check(unitofwork.hasPendingWrites(), "pending writes before flush");
+		checkEquals(0, storage.calls.size(), "nothing written before flush");
+		ArrayList<Consumer<PersistentStorage>> aftercommits = unitofwork.flush(storage, false);
+		checkEquals("autocommit false|insert FIRST 2|insert SECOND 1|delete FIRST 1|insert FIRST 1|commit|"
+				+ "autocommit true|after A|after C|after B|after delete A|", storage.getTrace(), "calls of flush");
+		checkEquals(0, aftercommits.size(), "no action left after commit of unit of work");
+		check(!unitofwork.hasPendingWrites(), "no pending writes after flush");
+		unitofwork.flush(storage, false);
+		checkEquals(11, storage.calls.size(), "empty flush does nothing");
+	}
+
+	/**
+	 * a failing write rolls back the unit of work, and actions after commit are
+	 * dropped
+	 */
+	private void checkRollback() {
+		RecordingStorage storage = new RecordingStorage();
+		storage.failingoperation = "delete";
+		UnitOfWork unitofwork = new UnitOfWork(100);
+		unitofwork.addInsert(getRow(firsttable, firstfield, "A"), storage.record("after A"));
+		unitofwork.addDelete(secondtable, getCondition(secondtable, secondfield, "B"), storage.record("after B"));
+		String message = null;
+		try {
+			unitofwork.flush(storage, false);
+		} catch (RuntimeException e) {
+			message = e.getMessage();
+		}
+		check(message != null, "exception on failing write");
+		check(message != null && message.contains("delete") && message.contains("SECOND"),
+				"exception names operation and table: " + message);
+		checkEquals("autocommit false|insert FIRST 1|rollback|autocommit true|", storage.getTrace(),
+				"calls of failing flush");
+		check(!unitofwork.hasPendingWrites(), "no pending writes after failing flush");
+	}
+
+	/**
+	 * in the transaction of the caller, the unit of work neither commits nor
+	 * performs the actions after commit, but gives them back
+	 */
+	private void checkOuterTransaction() {
+		RecordingStorage storage = new RecordingStorage();
+		UnitOfWork unitofwork = new UnitOfWork(100);
+		unitofwork.addInsert(getRow(firsttable, firstfield, "A"), storage.record("after A"));
+		unitofwork.addInsert(getRow(secondtable, secondfield, "B"), storage.record("after B"));
+		ArrayList<Consumer<PersistentStorage>> aftercommits = unitofwork.flush(storage, true);
+		checkEquals("insert FIRST 1|insert SECOND 1|", storage.getTrace(), "calls of flush in outer transaction");
+		checkEquals(2, aftercommits.size(), "actions after commit given back");
+		UnitOfWork.performAfterCommit(storage, aftercommits);
+		checkEquals("insert FIRST 1|insert SECOND 1|after A|after B|", storage.getTrace(),
+				"actions performed by the caller");
+
+		RecordingStorage failingstorage = new RecordingStorage();
+		failingstorage.failingoperation = "insert";
+		UnitOfWork failingunitofwork = new UnitOfWork(100);
+		failingunitofwork.addInsert(getRow(firsttable, firstfield, "A"), failingstorage.record("after A"));
+		checkThrows(() -> failingunitofwork.flush(failingstorage, true), "failing write in outer transaction");
+		checkEquals("", failingstorage.getTrace(), "no commit nor rollback in outer transaction");
+		check(!failingunitofwork.hasPendingWrites(), "no pending writes after failing flush in outer transaction");
+	}
+
+	/**
+	 * an action after commit that fails does not prevent the others
+	 */
+	private void checkFailingActionAfterCommit() {
+		RecordingStorage storage = new RecordingStorage();
+		UnitOfWork unitofwork = new UnitOfWork(100);
+		unitofwork.addInsert(getRow(firsttable, firstfield, "A"), (committedstorage) -> {
+			throw new RuntimeException("Failing action");
+		});
+		unitofwork.addInsert(getRow(firsttable, firstfield, "B"), storage.record("after B"));
+		unitofwork.flush(storage, false);
+		checkEquals("autocommit false|insert FIRST 2|commit|autocommit true|after B|", storage.getTrace(),
+				"calls with failing action after commit");
+	}
+
+	/**
+	 * the unit of work is full at the maximum number of rows
+	 */
+	private void checkFull() {
+		UnitOfWork unitofwork = new UnitOfWork(2);
+		unitofwork.addInsert(getRow(firsttable, firstfield, "A"), null);
+		check(!unitofwork.isFull(), "not full under maximum");
+		unitofwork.addInsert(getRow(firsttable, firstfield, "B"), null);
+		check(unitofwork.isFull(), "full at maximum");
+		unitofwork.discard();
+		check(!unitofwork.isFull(), "not full after discard");
+		check(!unitofwork.hasPendingWrites(), "no pending writes after discard");
+		checkThrows(() -> new UnitOfWork(0), "maximum rows of 0");
+	}
+
+	private static StoredTableRow getRow(StoredTableSchema table, StringStoredField field, String value) {
+		StoredTableRow row = new StoredTableRow(table);
+		row.setPayload(field, value);
+		return row;
+	}
+
+	private static QueryCondition getCondition(StoredTableSchema table, StringStoredField field, String value) {
+		return new SimpleQueryCondition<String>(new TableAlias(table, "T"), field, new QueryOperatorEqual<String>(),
+				value);
+	}
+
+	/**
+	 * a storage recording the writes and transaction calls it receives
+	 */
+	private static class RecordingStorage
+			implements
+			PersistentStorage {
+		private ArrayList<String> calls = new ArrayList<String>();
+		private String failingoperation = null;
+
+		private Consumer<PersistentStorage> record(String call) {
+			return (storage) -> calls.add(call);
+		}
+
+		private String getTrace() {
+			StringBuffer trace = new StringBuffer();
+			for (int i = 0; i < calls.size(); i++) {
+				trace.append(calls.get(i));
+				trace.append('|');
+			}
+			return trace.toString();
+		}
+
+		private void write(String operation, MultipleTableRow rows) {
+			if (operation.equals(failingoperation))
+				throw new RuntimeException("Test error on " + operation);
+			calls.add(operation + " " + rows.getTableSchema().getName() + " " + rows.getPayloadSize());
+		}
+
+		@Override
+		public void MassiveInsertOnDB(MultipleTableRow row) {
+			write("insert", row);
+		}
+
+		@Override
+		public void MassiveUpdateOnDB(MultipleTableRow row) {
+			write("update", row);
+		}
+
+		@Override
+		public void MassiveDeleteOnDB(MultipleTableRow rowstodelete) {
+			write("delete", rowstodelete);
+		}
+
+		@Override
+		public void setAutoCommit(boolean autocommit) {
+			calls.add("autocommit " + autocommit);
+		}
+
+		@Override
+		public void commitTransaction() {
+			calls.add("commit");
+		}
+
+		@Override
+		public void rollbackTransaction() {
+			calls.add("rollback");
+		}
+
+		@Override
+		public void technicalInit() {
+			throw new RuntimeException("Not supported by the test storage");
+		}
+
+		@Override
+		public Row selectOnDB(SelectQuery sq) {
+			throw new RuntimeException("Not supported by the test storage");
+		}
+
+		@Override
+		public void insertOnDB(StoredTableRow row) {
+			throw new RuntimeException("Not supported by the test storage");
+		}
+
+		@Override
+		public void UpdateOnDB(UpdateQuery uq) {
+			throw new RuntimeException("Not supported by the test storage");
+		}
+
+		@Override
+		public void LimitedFieldUpdateOnDB(LimitedFieldsUpdateQuery limitedfieldsupdatequery) {
+			throw new RuntimeException("Not supported by the test storage");
+		}
+
+		@Override
+		public void DeleteOnDB(DeleteQuery dq) {
+			throw new RuntimeException("Not supported by the test storage");
+		}
+
+		@Override
+		public boolean DoesObjectExist(StoredTableSchema object) {
+			throw new RuntimeException("Not supported by the test storage");
+		}
+
+		@Override
+		public int DoesFieldExist(StoredTableSchema object, int fieldindex) {
+			throw new RuntimeException("Not supported by the test storage");
+		}
+
+		@Override
+		public void dropIndex(String name) {
+			throw new RuntimeException("Not supported by the test storage");
+		}
+
+		@SuppressWarnings("rawtypes")
+		@Override
+		public int DoesIndexExist(StoredTableSchema object, StoredFieldSchema[] fields, String name) {
+			throw new RuntimeException("Not supported by the test storage");
+		}
+
+		@Override
+		public void createObject(StoredTableSchema object) {
+			throw new RuntimeException("Not supported by the test storage");
+		}
+
+		@Override
+		public void createField(StoredTableSchema object, int fieldindex) {
+			throw new RuntimeException("Not supported by the test storage");
+		}
+
+		@Override
+		public void extendField(StoredTableSchema object, int fieldindex) {
+			throw new RuntimeException("Not supported by the test storage");
+		}
+
+		@SuppressWarnings("rawtypes")
+		@Override
+		public void createSearchIndex(String name, StoredTableSchema object, StoredFieldSchema[] fields,
+				boolean unique) {
+			throw new RuntimeException("Not supported by the test storage");
+		}
+
+		@Override
+		public void startTransaction() {
+			throw new RuntimeException("Not supported by the test storage");
+		}
+
+		@Override
+		public boolean isSequenceExisting(String sequencename) {
+			throw new RuntimeException("Not supported by the test storage");
+		}
+
+		@Override
+		public void createSequence(String sequencename, int firstvalue) {
+			throw new RuntimeException("Not supported by the test storage");
+		}
+
+		@Override
+		public int getNextValue(String sequencename) {
+			throw new RuntimeException("Not supported by the test storage");
+		}
+
+		@Override
+		public int getNextValues(String sequencename, int count) {
+			throw new RuntimeException("Not supported by the test storage");
+		}
+
+		@Override
+		public void closeConnections() {
+			throw new RuntimeException("Not supported by the test storage");
+		}
+	}
+}
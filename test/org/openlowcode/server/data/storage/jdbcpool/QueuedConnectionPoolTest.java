@@ -0,0 +1,214 @@
+/********************************************************************************
+ * Copyright (c) 2020 [Open Lowcode SAS](https://openlowcode.com/)
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0 .
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ********************************************************************************/
+
+package org.openlowcode.server.data.storage.jdbcpool;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.openlowcode.OLcTest;
+
+/**
+ * Checks the {@link QueuedConnectionPool} on test connections: connections
+ * given to waiters in their order of arrival, timeout and interruption of a
+ * waiter, reset of a connection after an error, release of the connections of
+ * a thread, and exclusive use of connections under contention.
+ *
+ * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
+ *         SAS</a>
+ * @since 1.16
+ *
+ */
+public class QueuedConnectionPoolTest extends OLcTest {
+
+	public static void main(String[] args) {
+		OLcTest.executeAndExit(new QueuedConnectionPoolTest());
+	}
+
+	@Override
+	public void run() throws Exception {
+		TestConnection.registerDriver();
+		checkOrderOfArrival();
+		checkTimeout();
+		checkInterruption();
+		checkReset();
+		checkFreeThreadConnections();
+		checkContention();
+	}
+
+	private static QueuedConnectionPool createPool(int maxnumber, int timeout) throws Exception {
+		return new QueuedConnectionPool(TestConnection.URL, null, null, 1, maxnumber, 0, timeout,
+				QueuedConnectionPool.DEFAULT_LEAK_THRESHOLD);
+	}
+
+	/**
+	 * when all connections are used, connections given back go to the waiting
+	 * threads in their order of arrival, and not to a thread arriving later
+	 */
+	private void checkOrderOfArrival() throws Exception {
+		QueuedConnectionPool pool = createPool(2, 10000);
+		Connection first = pool.getConnectionWithRetry();
+		Connection second = pool.getConnectionWithRetry();
+		checkEquals(2, pool.getConnectionNumber(), "connections created up to maximum");
+		check(first != second, "different connections given to two requests");
+		AtomicReference<Connection> firstwaiter = new AtomicReference<Connection>();
+		AtomicReference<Connection> secondwaiter = new AtomicReference<Connection>();
+		Thread firstthread = startWaiter(pool, firstwaiter);
+		waitForWaiters(pool, 1);
+		Thread secondthread = startWaiter(pool, secondwaiter);
+		waitForWaiters(pool, 2);
+		pool.checkin(first);
+		firstthread.join(5000);
+		check(firstwaiter.get() == first, "connection given back goes to first waiter");
+		checkEquals(null, secondwaiter.get(), "second waiter still waiting");
+		checkEquals(1, pool.getWaiterNumber(), "waiters after first connection given back");
+		pool.checkin(second);
+		secondthread.join(5000);
+		check(secondwaiter.get() == second, "connection given back goes to second waiter");
+		checkEquals(0, pool.getWaiterNumber(), "waiters at the end");
+		checkEquals(2, pool.getConnectionNumber(), "no connection created beyond maximum");
+	}
+
+	/**
+	 * a waiter gives up after the timeout, and is not kept in the queue
+	 */
+	private void checkTimeout() throws Exception {
+		QueuedConnectionPool pool = createPool(1, 200);
+		Connection connection = pool.getConnectionWithRetry();
+		long start = System.currentTimeMillis();
+		checkEquals(null, pool.getConnectionWithRetry(), "no connection when pool is exhausted");
+		check(System.currentTimeMillis() - start >= 200, "waited until timeout");
+		checkEquals(1L, pool.getTimeouts(), "timeouts counted");
+		checkEquals(0, pool.getWaiterNumber(), "waiter removed after timeout");
+		pool.checkin(connection);
+		check(pool.getConnectionWithRetry() == connection, "connection available after timeout of waiter");
+	}
+
+	/**
+	 * an interrupted waiter stops waiting with an exception, and is not kept in
+	 * the queue
+	 */
+	private void checkInterruption() throws Exception {
+		QueuedConnectionPool pool = createPool(1, 10000);
+		Connection connection = pool.getConnectionWithRetry();
+		AtomicReference<Exception> error = new AtomicReference<Exception>();
+		Thread waiter = new Thread(() -> {
+			try {
+				pool.getConnectionWithRetry();
+			} catch (Exception e) {
+				error.set(e);
+			}
+		});
+		waiter.start();
+		waitForWaiters(pool, 1);
+		waiter.interrupt();
+		waiter.join(5000);
+		check(error.get() instanceof InterruptedException, "interrupted waiter gets an interrupted exception");
+		checkEquals(0, pool.getWaiterNumber(), "waiter removed after interruption");
+		pool.checkin(connection);
+		checkEquals(1, pool.getIdleConnectionNumber(), "connection idle after interrupted waiter");
+	}
+
+	/**
+	 * a connection given back after an error is closed and replaced before it
+	 * is given again
+	 */
+	private void checkReset() throws Exception {
+		QueuedConnectionPool pool = createPool(1, 10000);
+		TestConnection connection = (TestConnection) pool.getConnectionWithRetry();
+		pool.checkinandreset(connection);
+		Connection newconnection = pool.getConnectionWithRetry();
+		check(connection.isClosed(), "connection closed after reset");
+		check(newconnection != connection, "new connection given after reset");
+		check(!newconnection.isClosed(), "new connection is open");
+		checkEquals(1, pool.getConnectionNumber(), "connection number after reset");
+	}
+
+	/**
+	 * all connections held by a thread are given back at once
+	 */
+	private void checkFreeThreadConnections() throws Exception {
+		QueuedConnectionPool pool = createPool(3, 10000);
+		pool.getConnectionWithRetry();
+		pool.getConnectionWithRetry();
+		Thread other = new Thread(() -> {
+			try {
+				pool.getConnectionWithRetry();
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		});
+		other.start();
+		other.join(5000);
+		checkEquals(0, pool.getIdleConnectionNumber(), "no idle connection");
+		pool.freecurrentthreadconnections();
+		checkEquals(2, pool.getIdleConnectionNumber(), "only connections of the thread freed");
+	}
+
+	/**
+	 * many threads borrowing and giving back connections never share a
+	 * connection, and all connections are idle at the end
+	 */
+	private void checkContention() throws Exception {
+		QueuedConnectionPool pool = createPool(4, 10000);
+		AtomicInteger shared = new AtomicInteger(0);
+		AtomicInteger failed = new AtomicInteger(0);
+		ArrayList<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < 16; i++) {
+			Thread thread = new Thread(() -> {
+				try {
+					for (int j = 0; j < 500; j++) {
+						TestConnection connection = (TestConnection) pool.getConnectionWithRetry();
+						if (connection == null) {
+							failed.incrementAndGet();
+							continue;
+						}
+						if (!connection.startUse())
+							shared.incrementAndGet();
+						Thread.yield();
+						connection.endUse();
+						pool.checkin(connection);
+					}
+				} catch (Exception e) {
+					failed.incrementAndGet();
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (int i = 0; i < threads.size(); i++)
+			threads.get(i).join(60000);
+		checkEquals(0, shared.get(), "connections given to two threads at the same time");
+		checkEquals(0, failed.get(), "requests without connection");
+		checkEquals(0, pool.getWaiterNumber(), "waiters at the end");
+		check(pool.getConnectionNumber() <= 4, "connections created within maximum");
+		checkEquals(pool.getConnectionNumber(), pool.getIdleConnectionNumber(), "all connections idle at the end");
+	}
+
+	private static Thread startWaiter(QueuedConnectionPool pool, AtomicReference<Connection> result) {
+		Thread thread = new Thread(() -> {
+			try {
+				result.set(pool.getConnectionWithRetry());
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		});
+		thread.start();
+		return thread;
+	}
+
+	private static void waitForWaiters(QueuedConnectionPool pool, int waiters) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (pool.getWaiterNumber() < waiters && System.currentTimeMillis() < deadline)
+			Thread.sleep(5);
+	}
+}
@@ -0,0 +1,432 @@
+/********************************************************************************
+ * Copyright (c) 2020 [Open Lowcode SAS](https://openlowcode.com/)
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0 .
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ********************************************************************************/
+
+package org.openlowcode.server.data.storage.jdbcpool;
+
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.DatabaseMetaData;
+import java.sql.NClob;
+import java.sql.PreparedStatement;
+import java.sql.SQLClientInfoException;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Struct;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * A JDBC connection that does not access any database, for tests of
+ * connection pools and transactions. The connections are created through the
+ * JDBC driver manager for the URL {@link #URL}, once {@link #registerDriver()}
+ * is called. A connection only knows if it is closed, its auto-commit mode,
+ * the number of commits and rollbacks, and how many threads currently use it,
+ * so that a test can detect a connection given to two threads at the same
+ * time. Statements are not supported.
+ *
+ * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
+ *         SAS</a>
+ * @since 1.16
+ *
+ */
+public class TestConnection
+		implements
+		Connection {
+	/**
+	 * URL to give to a connection pool to get test connections
+	 */
+	public static final String URL = "jdbc:olctest:pool";
+	private static AtomicInteger created = new AtomicInteger(0);
+	private static boolean registered = false;
+
+	private volatile boolean closed = false;
+	private volatile boolean autocommit = true;
+	private AtomicInteger commits = new AtomicInteger(0);
+	private AtomicInteger rollbacks = new AtomicInteger(0);
+	private AtomicInteger users = new AtomicInteger(0);
+
+	/**
+	 * registers the driver creating test connections, if not already done
+	 *
+	 * @throws SQLException if the driver cannot be registered
+	 */
+	public static synchronized void registerDriver() throws SQLException {
+		if (registered)
+			return;
+		DriverManager.registerDriver(new TestDriver());
+		registered = true;
+	}
+
+	/**
+	 * @return the number of test connections created since the start
+	 */
+	public static int getCreatedNumber() {
+		return created.get();
+	}
+
+	/**
+	 * to be called by a thread starting to use the connection
+	 *
+	 * @return true if no other thread was using the connection
+	 */
+	public boolean startUse() {
+		return users.incrementAndGet() == 1;
+	}
+
+	/**
+	 * to be called by a thread ending to use the connection
+	 */
+	public void endUse() {
+		users.decrementAndGet();
+	}
+
+	/**
+	 * @return the number of commits on the connection
+	 */
+	public int getCommits() {
+		return commits.get();
+	}
+
+	/**
+	 * @return the number of rollbacks on the connection
+	 */
+	public int getRollbacks() {
+		return rollbacks.get();
+	}
+
+	@Override
+	public Statement createStatement() throws SQLException {
+		throw new SQLFeatureNotSupportedException("Not supported by the test connection");
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql) throws SQLException {
+		throw new SQLFeatureNotSupportedException("Not supported by the test connection");
+	}
+
+	@Override
+	public CallableStatement prepareCall(String sql) throws SQLException {
+		throw new SQLFeatureNotSupportedException("Not supported by the test connection");
+	}
+
+	@Override
+	public String nativeSQL(String sql) throws SQLException {
+		throw new SQLFeatureNotSupportedException("Not supported by the test connection");
+	}
+
+	@Override
+	public void setAutoCommit(boolean flag) throws SQLException {
+		this.autocommit = flag;
+	}
+
+	@Override
+	public boolean getAutoCommit() throws SQLException {
+		return autocommit;
+	}
+
+	@Override
+	public void commit() throws SQLException {
+		commits.incrementAndGet();
+	}
+
+	@Override
+	public void rollback() throws SQLException {
+		rollbacks.incrementAndGet();
+	}
+
+	@Override
+	public void close() throws SQLException {
+		closed = true;
+	}
+
+	@Override
+	public boolean isClosed() throws SQLException {
+		return closed;
+	}
+
+	@Override
+	public DatabaseMetaData getMetaData() throws SQLException {
+		throw new SQLFeatureNotSupportedException("Not supported by the test connection");
+	}
+
+	@Override
+	public void setReadOnly(boolean flag) throws SQLException {
+		// not used by tests
+	}
+
+	@Override
+	public boolean isReadOnly() throws SQLException {
+		return false;
+	}
+
+	@Override
+	public void setCatalog(String text) throws SQLException {
+		// not used by tests
+	}
+
+	@Override
+	public String getCatalog() throws SQLException {
+		throw new SQLFeatureNotSupportedException("Not supported by the test connection");
+	}
+
+	@Override
+	public void setTransactionIsolation(int value) throws SQLException {
+		// not used by tests
+	}
+
+	@Override
+	public int getTransactionIsolation() throws SQLException {
+		return 0;
+	}
+
+	@Override
+	public SQLWarning getWarnings() throws SQLException {
+		throw new SQLFeatureNotSupportedException("Not supported by the test connection");
+	}
+
+	@Override
+	public void clearWarnings() throws SQLException {
+		// not used by tests
+	}
+
+	@Override
+	public Statement createStatement(int value1, int value2) throws SQLException {
+		throw new SQLFeatureNotSupportedException("Not supported by the test connection");
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, int value2, int value3) throws SQLException {
+		throw new SQLFeatureNotSupportedException("Not supported by the test connection");
+	}
+
+	@Override
+	public CallableStatement prepareCall(String sql, int value2, int value3) throws SQLException {
+		throw new SQLFeatureNotSupportedException("Not supported by the test connection");
+	}
+
+	@Override
+	public Map<String, Class<?>> getTypeMap() throws SQLException {
+		throw new SQLFeatureNotSupportedException("Not supported by the test connection");
+	}
+
+	@Override
+	public void setTypeMap(Map<String, Class<?>> map) throws SQLException {
+		// not used by tests
+	}
+
+	@Override
+	public void setHoldability(int value) throws SQLException {
+		// not used by tests
+	}
+
+	@Override
+	public int getHoldability() throws SQLException {
+		return 0;
+	}
+
+	@Override
+	public Savepoint setSavepoint() throws SQLException {
+		throw new SQLFeatureNotSupportedException("Not supported by the test connection");
+	}
+
+	@Override
+	public Savepoint setSavepoint(String text) throws SQLException {
+		throw new SQLFeatureNotSupportedException("Not supported by the test connection");
+	}
+
+	@Override
+	public void rollback(Savepoint savepoint) throws SQLException {
+		// not used by tests
+	}
+
+	@Override
+	public void releaseSavepoint(Savepoint savepoint) throws SQLException {
+		// not used by tests
+	}
+
+	@Override
+	public Statement createStatement(int value1, int value2, int value3) throws SQLException {
+		throw new SQLFeatureNotSupportedException("Not supported by the test connection");
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, int value2, int value3, int value4) throws SQLException {
+		throw new SQLFeatureNotSupportedException("Not supported by the test connection");
+	}
+
+	@Override
+	public CallableStatement prepareCall(String sql, int value2, int value3, int value4) throws SQLException {
+		throw new SQLFeatureNotSupportedException("Not supported by the test connection");
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, int value2) throws SQLException {
+		throw new SQLFeatureNotSupportedException("Not supported by the test connection");
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, int[] columnindexes2) throws SQLException {
+		throw new SQLFeatureNotSupportedException("Not supported by the test connection");
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, String[] columnnames2) throws SQLException {
+		throw new SQLFeatureNotSupportedException("Not supported by the test connection");
+	}
+
+	@Override
+	public Clob createClob() throws SQLException {
+		throw new SQLFeatureNotSupportedException("Not supported by the test connection");
+	}
+
+	@Override
+	public Blob createBlob() throws SQLException {
+		throw new SQLFeatureNotSupportedException("Not supported by the test connection");
+	}
+
+	@Override
+	public NClob createNClob() throws SQLException {
+		throw new SQLFeatureNotSupportedException("Not supported by the test connection");
+	}
+
+	@Override
+	public SQLXML createSQLXML() throws SQLException {
+		throw new SQLFeatureNotSupportedException("Not supported by the test connection");
+	}
+
+	@Override
+	public boolean isValid(int value) throws SQLException {
+		return !closed;
+	}
+
+	@Override
+	public void setClientInfo(String text1, String text2) throws SQLClientInfoException {
+		// not used by tests
+	}
+
+	@Override
+	public void setClientInfo(Properties properties) throws SQLClientInfoException {
+		// not used by tests
+	}
+
+	@Override
+	public String getClientInfo(String text) throws SQLException {
+		throw new SQLFeatureNotSupportedException("Not supported by the test connection");
+	}
+
+	@Override
+	public Properties getClientInfo() throws SQLException {
+		throw new SQLFeatureNotSupportedException("Not supported by the test connection");
+	}
+
+	@Override
+	public Array createArrayOf(String text1, Object[] elements2) throws SQLException {
+		throw new SQLFeatureNotSupportedException("Not supported by the test connection");
+	}
+
+	@Override
+	public Struct createStruct(String text1, Object[] elements2) throws SQLException {
+		throw new SQLFeatureNotSupportedException("Not supported by the test connection");
+	}
+
+	@Override
+	public void setSchema(String text) throws SQLException {
+		// not used by tests
+	}
+
+	@Override
+	public String getSchema() throws SQLException {
+		throw new SQLFeatureNotSupportedException("Not supported by the test connection");
+	}
+
+	@Override
+	public void abort(Executor executor) throws SQLException {
+		// not used by tests
+	}
+
+	@Override
+	public void setNetworkTimeout(Executor executor1, int value2) throws SQLException {
+		// not used by tests
+	}
+
+	@Override
+	public int getNetworkTimeout() throws SQLException {
+		return 0;
+	}
+
+	@Override
+	public <T> T unwrap(Class<T> type) throws SQLException {
+		throw new SQLFeatureNotSupportedException("Not supported by the test connection");
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> type) throws SQLException {
+		return false;
+	}
+
+	/**
+	 * the driver creating test connections
+	 */
+	private static class TestDriver
+			implements
+			Driver {
+
+		@Override
+		public Connection connect(String url, Properties info) throws SQLException {
+			if (!acceptsURL(url))
+				return null;
+			created.incrementAndGet();
+			return new TestConnection();
+		}
+
+		@Override
+		public boolean acceptsURL(String url) throws SQLException {
+			return URL.equals(url);
+		}
+
+		@Override
+		public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) throws SQLException {
+			return new DriverPropertyInfo[0];
+		}
+
+		@Override
+		public int getMajorVersion() {
+			return 1;
+		}
+
+		@Override
+		public int getMinorVersion() {
+			return 0;
+		}
+
+		@Override
+		public boolean jdbcCompliant() {
+			return false;
+		}
+
+		@Override
+		public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+			throw new SQLFeatureNotSupportedException("Not supported by the test driver");
+		}
+	}
+}
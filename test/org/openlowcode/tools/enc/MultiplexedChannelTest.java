@@ -0,0 +1,333 @@
+/********************************************************************************
+ * Copyright (c) 2020 [Open Lowcode SAS](https://openlowcode.com/)
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0 .
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ********************************************************************************/
+
+package org.openlowcode.tools.enc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Random;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+import org.openlowcode.OLcTest;
+import org.openlowcode.tools.messages.MessageReader;
+import org.openlowcode.tools.messages.MessageWriter;
+
+/**
+ * Checks the framing of the {@link MultiplexedChannel}: concurrent requests
+ * answered out of order on one connection, messages much larger than a frame
+ * and than the frames that can be kept pending for a reader, frames for an
+ * unknown request, the failure of pending readers when the connection
+ * ends or an invalid frame is received, and the reception on the thread of the
+ * caller.
+ *
+ * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
+ *         SAS</a>
+ * @since 1.16
+ *
+ */
+public class MultiplexedChannelTest extends OLcTest {
+
+	public static void main(String[] args) {
+		OLcTest.executeAndExit(new MultiplexedChannelTest());
+	}
+
+	@Override
+	public void run() throws Exception {
+		KeyGenerator keygenerator = KeyGenerator.getInstance("AES");
+		keygenerator.init(128);
+		SecretKey key = keygenerator.generateKey();
+		checkConcurrentRequests(key);
+		checkUnknownRequest(key);
+		checkEndOfStream(key);
+		checkInvalidFrame(key);
+		checkReceiveOnCallerThread(key);
+	}
+
+	/**
+	 * sends requests from several threads, the server answering the last requests
+	 * first. One answer is larger than all the frames that can be pending for a
+	 * message, so that the dispatching thread has to wait for the reader
+	 */
+	private void checkConcurrentRequests(SecretKey key) throws Exception {
+		BytePipe clienttoserver = new BytePipe();
+		BytePipe servertoclient = new BytePipe();
+		MultiplexedChannel client = new MultiplexedChannel(new AESCommunicator(key), servertoclient.in,
+				clienttoserver.out);
+		MultiplexedChannel server = new MultiplexedChannel(new AESCommunicator(key), clienttoserver.in,
+				servertoclient.out);
+		int requestnumber = 8;
+		server.startReceiving((requestid, reader) -> startDaemon(() -> {
+			try {
+				reader.returnNextMessageStart();
+				reader.returnNextStartStructure("REQUEST");
+				int index = reader.returnNextIntegerField("INDEX");
+				int size = reader.returnNextIntegerField("SIZE");
+				reader.returnNextEndStructure("REQUEST");
+				reader.returnNextEndMessage();
+				// first requests are answered last
+				Thread.sleep((requestnumber - index) * 40);
+				MessageWriter writer = server.startMessage(requestid);
+				writeText(writer, "ANSWER", getText(index, size));
+				server.finishMessage(writer);
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		}));
+		client.startReceiving(null);
+
+		String[] answers = new String[requestnumber];
+		Exception[] errors = new Exception[requestnumber];
+		int[] sizes = new int[requestnumber];
+		ArrayList<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < requestnumber; i++) {
+			int index = i;
+			sizes[i] = (i == 0 ? 4000000 : (i % 2 == 0 ? 100000 : 10 + i));
+			threads.add(startDaemon(() -> {
+				try {
+					MessageReader reader = client.sendRequest((writer) -> {
+						writer.startNewMessage();
+						writer.startStructure("REQUEST");
+						writer.addIntegerField("INDEX", index);
+						writer.addIntegerField("SIZE", sizes[index]);
+						writer.endStructure("REQUEST");
+						writer.endMessage();
+					});
+					answers[index] = readText(reader, "ANSWER");
+				} catch (Exception e) {
+					errors[index] = e;
+				}
+			}));
+		}
+		for (int i = 0; i < threads.size(); i++)
+			threads.get(i).join(60000);
+		for (int i = 0; i < requestnumber; i++) {
+			checkEquals(null, errors[i], "error for request " + i);
+			check(getText(i, sizes[i]).equals(answers[i]), "answer for request " + i + " of size " + sizes[i]);
+		}
+		check(client.isReceiving(), "client still receiving after all answers");
+		check(server.isReceiving(), "server still receiving after all answers");
+	}
+
+	/**
+	 * frames for a request the client did not send are discarded, and the
+	 * following messages are received normally
+	 */
+	private void checkUnknownRequest(SecretKey key) throws Exception {
+		BytePipe servertoclient = new BytePipe();
+		MultiplexedChannel client = new MultiplexedChannel(new AESCommunicator(key), servertoclient.in,
+				new ByteArrayOutputStream());
+		MultiplexedChannel server = new MultiplexedChannel(new AESCommunicator(key), new BytePipe().in,
+				servertoclient.out);
+		client.startReceiving(null);
+		MessageReader reader = client.sendRequest((writer) -> writeText(writer, "REQUEST", "hello"));
+		MessageWriter unknown = server.startMessage(99);
+		writeText(unknown, "ANSWER", getText(99, 50000));
+		server.finishMessage(unknown);
+		MessageWriter answer = server.startMessage(1);
+		writeText(answer, "ANSWER", "world");
+		server.finishMessage(answer);
+		checkEquals("world", readText(reader, "ANSWER"), "answer received after frames of unknown request");
+		check(client.isReceiving(), "client still receiving after frames of unknown request");
+	}
+
+	/**
+	 * the end of the connection fails the messages being received and the next
+	 * requests
+	 */
+	private void checkEndOfStream(SecretKey key) throws Exception {
+		BytePipe servertoclient = new BytePipe();
+		MultiplexedChannel client = new MultiplexedChannel(new AESCommunicator(key), servertoclient.in,
+				new ByteArrayOutputStream());
+		client.startReceiving(null);
+		MessageReader reader = client.sendRequest((writer) -> writeText(writer, "REQUEST", "hello"));
+		servertoclient.out.close();
+		checkThrows(() -> readText(reader, "ANSWER"), "reading answer after end of stream");
+		check(!client.isReceiving(), "client not receiving after end of stream");
+		checkThrows(() -> client.sendRequest((writer) -> writeText(writer, "REQUEST", "again")),
+				"sending request after end of stream");
+	}
+
+	/**
+	 * a frame longer than the maximum frame size stops the channel
+	 */
+	private void checkInvalidFrame(SecretKey key) throws Exception {
+		BytePipe servertoclient = new BytePipe();
+		MultiplexedChannel client = new MultiplexedChannel(new AESCommunicator(key), servertoclient.in,
+				new ByteArrayOutputStream());
+		client.startReceiving(null);
+		MessageReader reader = client.sendRequest((writer) -> writeText(writer, "REQUEST", "hello"));
+		DataOutputStream rawserver = new DataOutputStream(servertoclient.out);
+		rawserver.writeInt(1);
+		rawserver.writeInt(Integer.MAX_VALUE);
+		rawserver.flush();
+		checkThrows(() -> readText(reader, "ANSWER"), "reading answer after invalid frame");
+		check(!client.isReceiving(), "client not receiving after invalid frame");
+	}
+
+	/**
+	 * frames are dispatched on the thread calling receive, which returns when the
+	 * input of the channel is closed
+	 */
+	private void checkReceiveOnCallerThread(SecretKey key) throws Exception {
+		BytePipe clienttoserver = new BytePipe();
+		BytePipe servertoclient = new BytePipe();
+		MultiplexedChannel client = new MultiplexedChannel(new AESCommunicator(key), servertoclient.in,
+				clienttoserver.out);
+		MultiplexedChannel server = new MultiplexedChannel(new AESCommunicator(key), clienttoserver.in,
+				servertoclient.out);
+		Thread[] handlerthread = new Thread[1];
+		String[] requesttext = new String[1];
+		Thread receivingthread = startDaemon(() -> server.receive((requestid, reader) -> {
+			handlerthread[0] = Thread.currentThread();
+			startDaemon(() -> {
+				try {
+					requesttext[0] = readText(reader, "REQUEST");
+					MessageWriter writer = server.startMessage(requestid);
+					writeText(writer, "ANSWER", "world");
+					server.finishMessage(writer);
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			});
+		}));
+		client.startReceiving(null);
+		MessageReader reader = client.sendRequest((writer) -> writeText(writer, "REQUEST", "hello"));
+		checkEquals("world", readText(reader, "ANSWER"), "answer received from server receiving on caller thread");
+		checkEquals("hello", requesttext[0], "request read by the server");
+		check(receivingthread == handlerthread[0], "new request handled on the thread calling receive");
+		check(receivingthread.isAlive(), "receive still running while the channel is open");
+		clienttoserver.out.close();
+		receivingthread.join(10000);
+		check(!receivingthread.isAlive(), "receive returns when the input is closed");
+		check(!server.isReceiving(), "server not receiving after receive returned");
+	}
+
+	private static Thread startDaemon(Runnable runnable) {
+		Thread thread = new Thread(runnable);
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	/**
+	 * @param seed seed of the text
+	 * @param size number of characters
+	 * @return a text that compresses poorly, always the same for a seed and size
+	 */
+	private static String getText(int seed, int size) {
+		Random random = new Random(seed);
+		StringBuffer text = new StringBuffer();
+		String alphabet = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789 ,;.\"\n";
+		for (int i = 0; i < size; i++)
+			text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+		return text.toString();
+	}
+
+	private static void writeText(MessageWriter writer, String structure, String text) throws IOException {
+		writer.startNewMessage();
+		writer.startStructure(structure);
+		writer.addStringField("TEXT", text);
+		writer.endStructure(structure);
+		writer.endMessage();
+	}
+
+	private static String readText(MessageReader reader, String structure) throws Exception {
+		reader.returnNextMessageStart();
+		reader.returnNextStartStructure(structure);
+		String text = reader.returnNextStringField("TEXT");
+		reader.returnNextEndStructure(structure);
+		reader.returnNextEndMessage();
+		return text;
+	}
+
+	/**
+	 * a bounded in-memory pipe that, unlike the piped streams of the java
+	 * runtime, can be written and read by any number of threads
+	 */
+	private static class BytePipe {
+		private byte[] buffer = new byte[65536];
+		private int start = 0;
+		private int count = 0;
+		private boolean closed = false;
+
+		private InputStream in = new InputStream() {
+			@Override
+			public int read() throws IOException {
+				byte[] single = new byte[1];
+				int read = read(single, 0, 1);
+				return (read == -1 ? -1 : single[0] & 0xFF);
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				synchronized (BytePipe.this) {
+					while (count == 0 && !closed)
+						waitOnPipe();
+					if (count == 0)
+						return -1;
+					int toread = Math.min(len, Math.min(count, buffer.length - start));
+					System.arraycopy(buffer, start, b, off, toread);
+					start = (start + toread) % buffer.length;
+					count -= toread;
+					BytePipe.this.notifyAll();
+					return toread;
+				}
+			}
+		};
+
+		private OutputStream out = new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				write(new byte[] { (byte) b }, 0, 1);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				synchronized (BytePipe.this) {
+					while (len > 0) {
+						while (count == buffer.length && !closed)
+							waitOnPipe();
+						if (closed)
+							throw new IOException("Pipe closed");
+						int end = (start + count) % buffer.length;
+						int towrite = Math.min(len, Math.min(buffer.length - count, buffer.length - end));
+						System.arraycopy(b, off, buffer, end, towrite);
+						count += towrite;
+						off += towrite;
+						len -= towrite;
+						BytePipe.this.notifyAll();
+					}
+				}
+			}
+
+			@Override
+			public void close() throws IOException {
+				synchronized (BytePipe.this) {
+					closed = true;
+					BytePipe.this.notifyAll();
+				}
+			}
+		};
+
+		private void waitOnPipe() throws IOException {
+			try {
+				this.wait();
+			} catch (InterruptedException e) {
+				throw new IOException("Interrupted while waiting on pipe");
+			}
+		}
+	}
+}
@@ -0,0 +1,213 @@
+/********************************************************************************
+ * Copyright (c) 2020 [Open Lowcode SAS](https://openlowcode.com/)
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0 .
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ********************************************************************************/
+
+package org.openlowcode.tools.messages;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Date;
+
+/**
+ * A benchmark of the throughput of the message readers. It parses messages
+ * recorded from real exchanges (for example with the message audit of the
+ * server) with the text reader, with the previous implementation of the text
+ * reader as a baseline and, after conversion, with the binary reader, and
+ * prints for each reader the throughput and the memory allocated per
+ * message.<br>
+ * Usage: MessageReaderBenchmark [file1] [file2] ... where each file holds one
+ * or several text messages. If no file is provided, a generated message
+ * similar to a page with a large table is used. The benchmark is part of the
+ * test folder and runs on the classes compiled by the test target of the build
+ * file.
+ *
+ * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
+ *         SAS</a>
+ * @since 1.16
+ *
+ */
+public class MessageReaderBenchmark {
+	private static final long WARMUP_MS = 3000;
+	private static final long MEASURE_MS = 5000;
+
+	@FunctionalInterface
+	private interface ReaderFactory {
+		MessageReader create(int index);
+	}
+
+	public static void main(String[] args) {
+		try {
+			ArrayList<String> textmessages = new ArrayList<String>();
+			if (args.length == 0) {
+				textmessages.add(generateSampleMessage(10000));
+			} else {
+				for (int i = 0; i < args.length; i++)
+					textmessages.add(new String(Files.readAllBytes(Paths.get(args[i])), StandardCharsets.UTF_8));
+			}
+			ArrayList<byte[]> binarymessages = new ArrayList<byte[]>();
+			long textsize = 0;
+			long binarysize = 0;
+			for (int i = 0; i < textmessages.size(); i++) {
+				textsize += textmessages.get(i).length();
+				byte[] binarymessage = convertToBinary(textmessages.get(i));
+				binarysize += binarymessage.length;
+				binarymessages.add(binarymessage);
+			}
+			System.out.println(" -----------------------------------------------------------");
+			System.out.println(" Message reader benchmark on " + textmessages.size() + " message file(s)");
+			System.out.println(" -----------------------------------------------------------");
+			runBenchmark("previous text", textmessages.size(), textsize,
+					(index) -> new MessageSimpleReaderBaseline(new StringReader(textmessages.get(index))));
+			runBenchmark("text reader", textmessages.size(), textsize,
+					(index) -> new MessageSimpleReader(new StringReader(textmessages.get(index))));
+			runBenchmark("binary reader", binarymessages.size(), binarysize,
+					(index) -> new MessageBinaryReader(new ByteArrayInputStream(binarymessages.get(index))));
+		} catch (Exception e) {
+			System.err.println("An error happended " + e.getMessage());
+			for (int i = 0; i < e.getStackTrace().length; i++) {
+				System.err.println("   - " + e.getStackTrace()[i]);
+			}
+		}
+	}
+
+	/**
+	 * parses all messages of a reader until the end of the stream
+	 *
+	 * @param reader the reader
+	 * @return the number of elements parsed
+	 */
+	private static long parseAll(MessageReader reader) {
+		long elements = 0;
+		try {
+			while (true) {
+				reader.getNextElement();
+				elements++;
+			}
+		} catch (Exception e) {
+			// end of stream reached
+		}
+		return elements;
+	}
+
+	private static void runBenchmark(String name, int messagenumber, long totalsize, ReaderFactory factory) {
+		long warmupend = System.currentTimeMillis() + WARMUP_MS;
+		while (System.currentTimeMillis() < warmupend)
+			for (int i = 0; i < messagenumber; i++)
+				parseAll(factory.create(i));
+		long allocatedstart = getAllocatedBytes();
+		long start = System.nanoTime();
+		long measureend = System.currentTimeMillis() + MEASURE_MS;
+		long iterations = 0;
+		long elements = 0;
+		while (System.currentTimeMillis() < measureend) {
+			for (int i = 0; i < messagenumber; i++)
+				elements += parseAll(factory.create(i));
+			iterations++;
+		}
+		long elapsednanos = System.nanoTime() - start;
+		long allocated = getAllocatedBytes() - allocatedstart;
+		double seconds = elapsednanos / 1e9;
+		System.out.println(String.format(" %-14s: %8.1f MB/s, %10.0f elements/s, %6.0f bytes allocated per element",
+				name, (totalsize * iterations) / seconds / 1e6, elements / seconds,
+				(allocatedstart >= 0 ? (double) allocated / elements : Double.NaN)));
+	}
+
+	/**
+	 * @return the bytes allocated by the current thread, or -1 if the JVM does not
+	 *         provide this information
+	 */
+	private static long getAllocatedBytes() {
+		java.lang.management.ThreadMXBean threadbean = ManagementFactory.getThreadMXBean();
+		if (threadbean instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean) threadbean)
+					.getThreadAllocatedBytes(Thread.currentThread().getId());
+		return -1;
+	}
+
+	/**
+	 * converts text messages to the binary codec, by replaying all elements
+	 *
+	 * @param textmessage one or several text messages
+	 * @return the messages in binary codec
+	 * @throws IOException if any issue is encountered
+	 */
+	private static byte[] convertToBinary(String textmessage) throws IOException {
+		MessageSimpleReader reader = new MessageSimpleReader(new StringReader(textmessage));
+		ByteArrayOutputStream binarymessage = new ByteArrayOutputStream();
+		MessageWriter writer = MessageCodec.BINARY.createWriter(binarymessage, false);
+		try {
+			while (true) {
+				MessageElement element = reader.getNextElement();
+				if (element instanceof MessageStart) {
+					writer.startNewMessage();
+				} else if (element instanceof MessageEnd) {
+					writer.endMessage();
+				} else {
+					writer.replayMessageElement(element);
+				}
+			}
+		} catch (Exception e) {
+			// end of stream reached
+		}
+		writer.flushMessage();
+		return binarymessage.toByteArray();
+	}
+
+	/**
+	 * generates a message similar to a page showing an object and a table of
+	 * objects
+	 *
+	 * @param rows number of rows in the table
+	 * @return the message in text format
+	 * @throws IOException if any issue is encountered
+	 */
+	private static String generateSampleMessage(int rows) throws IOException {
+		StringWriter messageholder = new StringWriter();
+		MessageBufferedWriter writer = new MessageBufferedWriter(new BufferedWriter(messageholder), false);
+		writer.startNewMessage();
+		writer.startStructure("PAGE");
+		writer.addStringField("NAME", "SHOWOBJECT");
+		writer.startStructure("WIDGETS");
+		for (int i = 0; i < 200; i++) {
+			writer.startStructure("TXF");
+			writer.addStringField("LBL", "Label of field " + i);
+			writer.addStringField("HLP", "Help text for field " + i + ", with \"quotes\"");
+			writer.addIntegerField("MXL", 80);
+			writer.addBooleanField("CMP", (i % 2 == 0));
+			writer.endStructure("TXF");
+		}
+		writer.endStructure("WIDGETS");
+		ArrayList<MessageFieldSpec> fieldspecs = new ArrayList<MessageFieldSpec>();
+		fieldspecs.add(new MessageFieldSpec("ID", MessageFieldTypeString.singleton));
+		fieldspecs.add(new MessageFieldSpec("NR", MessageFieldTypeString.singleton));
+		fieldspecs.add(new MessageFieldSpec("QTY", MessageFieldTypeInteger.singleton));
+		fieldspecs.add(new MessageFieldSpec("PRICE", MessageFieldTypeDecimal.singleton));
+		fieldspecs.add(new MessageFieldSpec("UPDATE", MessageFieldTypeDate.singleton));
+		MessageArrayStart arraystart = new MessageArrayStart("DATA", fieldspecs);
+		writer.sendMessageElement(arraystart);
+		Date date = new Date();
+		for (int i = 0; i < rows; i++)
+			writer.sendMessageElement(new MessageArrayLine(arraystart, new Object[] { "" + (1000000 + i),
+					"PN-" + i + "-REV", new Integer(i % 500), new BigDecimal(i).movePointLeft(2), date }));
+		writer.sendMessageElement(new MessageArrayEnd());
+		writer.endStructure("PAGE");
+		writer.endMessage();
+		return messageholder.toString();
+	}
+}
@@ -0,0 +1,305 @@
+/********************************************************************************
+ * Copyright (c) 2020 [Open Lowcode SAS](https://openlowcode.com/)
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0 .
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ********************************************************************************/
+
+package org.openlowcode.tools.messages;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Random;
+
+import org.openlowcode.OLcTest;
+
+/**
+ * Checks that the {@link MessageSimpleReader} produces exactly the same
+ * elements as the previous implementation kept in
+ * {@link MessageSimpleReaderBaseline}, on a series of edge-case messages,
+ * valid or not. Each message is fed to the new reader in full, one character
+ * per read, by chunks of random size, and by chunks of the size of its
+ * internal buffer, as the new reader scans a buffer filled by bulk reads.<br>
+ * The comparison covers, for each element, its type, its serialization and
+ * the character count since the start of the message, the text recorded for
+ * each message, and the type of exception ending the parsing.
+ *
+ * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
+ *         SAS</a>
+ * @since 1.16
+ *
+ */
+public class MessageSimpleReaderEquivalenceTest extends OLcTest {
+
+	public static void main(String[] args) {
+		OLcTest.executeAndExit(new MessageSimpleReaderEquivalenceTest());
+	}
+
+	@FunctionalInterface
+	private interface MessageContent {
+		public void write(MessageBufferedWriter writer) throws IOException;
+	}
+
+	@Override
+	public void run() throws Exception {
+		ArrayList<String> messages = new ArrayList<String>();
+		ArrayList<String> labels = new ArrayList<String>();
+		addValidMessages(messages, labels);
+		addInvalidMessages(messages, labels);
+		Random random = new Random(1234);
+		for (int i = 0; i < messages.size(); i++) {
+			String message = messages.get(i);
+			String expected = parse(new MessageSimpleReaderBaseline(new StringReader(message)));
+			check(expected.length() > 0, labels.get(i) + ": baseline produced no trace");
+			checkEquals(expected, parse(new MessageSimpleReader(new StringReader(message))),
+					labels.get(i) + " read in full");
+			checkEquals(expected, parse(new MessageSimpleReader(new ChunkedReader(message, null, 1))),
+					labels.get(i) + " read one character at a time");
+			checkEquals(expected, parse(new MessageSimpleReader(new ChunkedReader(message, random, 17))),
+					labels.get(i) + " read by random chunks");
+			checkEquals(expected, parse(new MessageSimpleReader(new ChunkedReader(message, null, 8192))),
+					labels.get(i) + " read by chunks of the buffer size");
+		}
+	}
+
+	/**
+	 * parses a stream until the end or an error
+	 *
+	 * @param reader the reader
+	 * @return a trace of all elements read and of the end of parsing
+	 */
+	private static String parse(MessageReader reader) {
+		StringBuffer trace = new StringBuffer();
+		try {
+			while (true) {
+				MessageElement element = reader.getNextElement();
+				trace.append(element.getClass().getSimpleName());
+				trace.append(' ');
+				trace.append(element.toString());
+				trace.append(" @");
+				trace.append(reader.charcountsinceStartMessage());
+				trace.append('\n');
+				if (element instanceof MessageStart)
+					reader.startrecord();
+				if (element instanceof MessageEnd) {
+					trace.append("RECORDED ");
+					trace.append(reader.endrecord());
+					trace.append('\n');
+				}
+			}
+		} catch (Exception e) {
+			trace.append("STOPPED BY ");
+			trace.append(e.getClass().getName());
+		}
+		return trace.toString();
+	}
+
+	private static String write(MessageContent content) throws IOException {
+		StringWriter messageholder = new StringWriter();
+		MessageBufferedWriter writer = new MessageBufferedWriter(new BufferedWriter(messageholder), false);
+		writer.startNewMessage();
+		writer.startStructure("TEST");
+		content.write(writer);
+		writer.endStructure("TEST");
+		writer.endMessage();
+		return messageholder.toString();
+	}
+
+	private static String repeat(String pattern, int times) {
+		StringBuffer result = new StringBuffer();
+		for (int i = 0; i < times; i++)
+			result.append(pattern);
+		return result.toString();
+	}
+
+	private static void addValidMessages(ArrayList<String> messages, ArrayList<String> labels) throws IOException {
+		labels.add("empty structure");
+		messages.add(write((writer) -> {
+		}));
+		labels.add("nested empty structures");
+		messages.add(write((writer) -> {
+			writer.startStructure("A");
+			writer.startStructure("B");
+			writer.endStructure("B");
+			writer.endStructure("A");
+		}));
+		labels.add("simple string");
+		messages.add(write((writer) -> writer.addStringField("NAME", "value")));
+		labels.add("empty string");
+		messages.add(write((writer) -> writer.addStringField("NAME", "")));
+		labels.add("null string");
+		messages.add(write((writer) -> writer.addStringField("NAME", null)));
+		labels.add("string with quotes");
+		messages.add(write((writer) -> writer.addStringField("NAME", "\"a\"\"b\" \"")));
+		labels.add("string with new lines");
+		messages.add(write((writer) -> writer.addStringField("NAME", "\nline1\nline2\n\n")));
+		labels.add("string with non ascii characters");
+		messages.add(write((writer) -> writer.addStringField("NAME", "été 中文 😀")));
+		labels.add("string longer than the read buffer");
+		messages.add(write((writer) -> writer.addStringField("NAME", repeat("abc\"def\n", 3000))));
+		labels.add("integers");
+		messages.add(write((writer) -> {
+			writer.addIntegerField("ZERO", 0);
+			writer.addIntegerField("MIN", Integer.MIN_VALUE);
+			writer.addIntegerField("MAX", Integer.MAX_VALUE);
+			writer.addIntegerField("NEG", -1);
+		}));
+		labels.add("booleans");
+		messages.add(write((writer) -> {
+			writer.addBooleanField("T", true);
+			writer.addBooleanField("F", false);
+		}));
+		labels.add("decimals");
+		messages.add(write((writer) -> {
+			writer.addDecimalField("ZERO", BigDecimal.ZERO);
+			writer.addDecimalField("SMALL", new BigDecimal("-0.00012"));
+			writer.addDecimalField("LARGE", new BigDecimal("123456789012345678901234567890.5"));
+			writer.addDecimalField("NULL", null);
+		}));
+		labels.add("dates");
+		messages.add(write((writer) -> {
+			writer.addDateField("EPOCH", new Date(0));
+			writer.addDateField("RECENT", new Date(1600000000000L));
+			writer.addDateField("NULL", null);
+		}));
+		labels.add("empty binary");
+		messages.add(write((writer) -> writer.addLongBinaryField("FILE", new SFile("empty.bin", new byte[0]))));
+		labels.add("binary longer than the read buffer");
+		messages.add(write((writer) -> {
+			byte[] content = new byte[20000];
+			for (int i = 0; i < content.length; i++)
+				content[i] = (byte) (i * 7);
+			writer.addLongBinaryField("FILE", new SFile("large \"file\".bin", content));
+		}));
+		labels.add("names up to the maximum length");
+		messages.add(write((writer) -> {
+			writer.startStructure(repeat("S", 64));
+			writer.addStringField(repeat("F", 64), "v");
+			writer.addStringField(repeat("G", 300), "w");
+			writer.endStructure(repeat("S", 64));
+		}));
+		labels.add("array with all types");
+		messages.add(write((writer) -> {
+			ArrayList<MessageFieldSpec> fieldspecs = new ArrayList<MessageFieldSpec>();
+			fieldspecs.add(new MessageFieldSpec("S", MessageFieldTypeString.singleton));
+			fieldspecs.add(new MessageFieldSpec("I", MessageFieldTypeInteger.singleton));
+			fieldspecs.add(new MessageFieldSpec("X", MessageFieldTypeDecimal.singleton));
+			fieldspecs.add(new MessageFieldSpec("D", MessageFieldTypeDate.singleton));
+			MessageArrayStart arraystart = new MessageArrayStart("DATA", fieldspecs);
+			writer.sendMessageElement(arraystart);
+			for (int i = 0; i < 500; i++)
+				writer.sendMessageElement(new MessageArrayLine(arraystart,
+						new Object[] { (i % 10 == 0 ? null : "row \"" + i + "\""), new Integer(i - 250),
+								(i % 7 == 0 ? null : new BigDecimal(i).movePointLeft(3)),
+								(i % 5 == 0 ? null : new Date(i * 86400000L)) }));
+			writer.sendMessageElement(new MessageArrayEnd());
+		}));
+		labels.add("empty array");
+		messages.add(write((writer) -> {
+			ArrayList<MessageFieldSpec> fieldspecs = new ArrayList<MessageFieldSpec>();
+			fieldspecs.add(new MessageFieldSpec("S", MessageFieldTypeString.singleton));
+			writer.sendMessageElement(new MessageArrayStart("DATA", fieldspecs));
+			writer.sendMessageElement(new MessageArrayEnd());
+		}));
+		labels.add("error message");
+		messages.add("{#12:\"bad \"\"thing\"\"\"#\n");
+		labels.add("several messages in one stream");
+		messages.add(write((writer) -> writer.addIntegerField("FIRST", 1))
+				+ write((writer) -> writer.addStringField("SECOND", "2")) + "{#3:\"third\"#\n");
+		labels.add("additional blanks between elements");
+		messages.add("  {\n\n[A:B=\"x\" , C=12\n,D=T ]   \n}\n");
+		labels.add("no blank at all");
+		messages.add("{[A:B=\"x\",C=-3,D=F,E=X1.5,F=D20200102T030405,G=NS][H]}");
+		labels.add("large page sample");
+		messages.add(write((writer) -> {
+			for (int i = 0; i < 300; i++) {
+				writer.startStructure("TXF");
+				writer.addStringField("LBL", "Label of field " + i);
+				writer.addIntegerField("MXL", i);
+				writer.addBooleanField("CMP", (i % 2 == 0));
+				writer.endStructure("TXF");
+			}
+		}));
+	}
+
+	private static void addInvalidMessages(ArrayList<String> messages, ArrayList<String> labels) {
+		labels.add("empty stream");
+		messages.add("");
+		labels.add("only blanks");
+		messages.add("   \n  ");
+		labels.add("truncated in string");
+		messages.add("{[A:B=\"abc");
+		labels.add("truncated in number");
+		messages.add("{[A:B=123");
+		labels.add("truncated in name");
+		messages.add("{[ABC");
+		labels.add("invalid character at element start");
+		messages.add("{[A:B=\"x\"]?}");
+		labels.add("name starting with a digit");
+		messages.add("{[1A:B=1]}");
+		labels.add("message end with structure open");
+		messages.add("{[A:B=1}");
+		labels.add("structure end without structure");
+		messages.add("{]}");
+		labels.add("invalid decimal");
+		messages.add("{[A:B=X1.2.3]}");
+		labels.add("invalid date");
+		messages.add("{[A:B=D2020]}");
+		labels.add("invalid binary");
+		messages.add("{[A:B=B3:\"f\":@@@@]}");
+		labels.add("unterminated error");
+		messages.add("{#12:\"error");
+		labels.add("value without field name");
+		messages.add("{[A:=1]}");
+		labels.add("array line without array");
+		messages.add("{[A:(\"x\")]}");
+	}
+
+	/**
+	 * a reader returning the content by chunks, to exercise the refill of the
+	 * read buffer at any position
+	 */
+	private static class ChunkedReader extends Reader {
+		private String content;
+		private Random random;
+		private int chunksize;
+		private int position = 0;
+
+		/**
+		 * @param content   content to return
+		 * @param random    if not null, each chunk has a random size up to chunk
+		 *                  size
+		 * @param chunksize maximum number of characters returned by a read
+		 */
+		private ChunkedReader(String content, Random random, int chunksize) {
+			this.content = content;
+			this.random = random;
+			this.chunksize = chunksize;
+		}
+
+		@Override
+		public int read(char[] buffer, int offset, int length) throws IOException {
+			if (position >= content.length())
+				return -1;
+			int size = (random != null ? 1 + random.nextInt(chunksize) : chunksize);
+			size = Math.min(size, Math.min(length, content.length() - position));
+			content.getChars(position, position + size, buffer, offset);
+			position += size;
+			return size;
+		}
+
+		@Override
+		public void close() throws IOException {
+			// nothing to do
+		}
+	}
+}
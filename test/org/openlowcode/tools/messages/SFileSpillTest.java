@@ -0,0 +1,88 @@
+/********************************************************************************
+ * Copyright (c) 2020 [Open Lowcode SAS](https://openlowcode.com/)
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0 .
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ********************************************************************************/
+
+package org.openlowcode.tools.messages;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.Arrays;
+
+import org.openlowcode.OLcTest;
+
+/**
+ * Checks that content read from a stream is kept in memory under the
+ * threshold, spilled to disk above, that spill files are deleted when the
+ * thread releases them, and that the total size of spill files in the
+ * {@link BinaryTransferStore} is limited.
+ *
+ * @author <a href="https://openlowcode.com/" rel="nofollow">Open Lowcode
+ *         SAS</a>
+ * @since 1.16
+ *
+ */
+public class SFileSpillTest extends OLcTest {
+
+	public static void main(String[] args) {
+		OLcTest.executeAndExit(new SFileSpillTest());
+	}
+
+	@Override
+	public void run() throws Exception {
+		BinaryTransferStore store = BinaryTransferStore.get();
+		store.releaseSpillFilesForThread();
+		long initiallength = store.getSpillLength();
+		int initialfiles = countSpillFiles();
+		byte[] content = new byte[50000];
+		for (int i = 0; i < content.length; i++)
+			content[i] = (byte) (i % 251);
+
+		SFile small = SFile.readFromStream("small", new ByteArrayInputStream(content), 100000);
+		check(!small.isOnDisk(), "content under threshold is kept in memory");
+		checkEquals(0L, store.getSpillLength() - initiallength, "no spill for content under threshold");
+
+		SFile first = SFile.readFromStream("first", new ByteArrayInputStream(content), 10000);
+		SFile second = SFile.readFromStream("second", new ByteArrayInputStream(content), 10000);
+		check(first.isOnDisk(), "content over threshold is spilled to disk");
+		checkEquals(50000L, first.getLength(), "length of spilled content");
+		check(Arrays.equals(content, first.getContent()), "spilled content is read back identical");
+		checkEquals(100000L, store.getSpillLength() - initiallength, "spill length counts both files");
+		checkEquals(initialfiles + 2, countSpillFiles(), "spill files exist before release");
+
+		store.releaseSpillFilesForThread();
+		checkEquals(initialfiles, countSpillFiles(), "spill files deleted on release");
+		checkEquals(initiallength, store.getSpillLength(), "spill length back to initial after release");
+
+		store.setMaxSpillLength(initiallength + 70000);
+		try {
+			SFile.readFromStream("kept", new ByteArrayInputStream(content), 10000);
+			checkThrows(() -> SFile.readFromStream("over", new ByteArrayInputStream(content), 10000),
+					"spill refused over the maximum length");
+			checkEquals(50000L, store.getSpillLength() - initiallength, "refused spill does not use space");
+			checkEquals(initialfiles + 1, countSpillFiles(), "refused spill file deleted");
+		} finally {
+			store.setMaxSpillLength(4L * 1024 * 1024 * 1024);
+			store.releaseSpillFilesForThread();
+		}
+		checkEquals(initiallength, store.getSpillLength(), "spill length back to initial at the end");
+	}
+
+	/**
+	 * @return the number of spill files in the directory of the store
+	 */
+	private static int countSpillFiles() {
+		File[] files = new File(System.getProperty("java.io.tmpdir"), "olctransfer").listFiles();
+		int spillfiles = 0;
+		if (files != null)
+			for (int i = 0; i < files.length; i++)
+				if (files[i].getName().startsWith("spill-"))
+					spillfiles++;
+		return spillfiles;
+	}
+}